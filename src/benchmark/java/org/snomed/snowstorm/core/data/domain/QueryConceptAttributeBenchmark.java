@@ -0,0 +1,58 @@
+package org.snomed.snowstorm.core.data.domain;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialisation of the grouped attribute map of semantic index concepts, done for every concept saved to the semantic index
+ * and read back for every concept checked by an ECL refinement inclusion filter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class QueryConceptAttributeBenchmark {
+
+	@Param({"1", "4", "12"})
+	private int groupCount;
+
+	private QueryConcept queryConcept;
+
+	private String attrMap;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(123);
+		queryConcept = new QueryConcept(404684003L, Set.of(138875005L), Set.of(138875005L), false);
+		queryConcept.addAttribute(0, 116680003L, "64572001");
+		for (int group = 1; group <= groupCount; group++) {
+			queryConcept.addAttribute(group, 363698007L, String.valueOf(10_000_000L + random.nextInt(90_000_000)));
+			queryConcept.addAttribute(group, 116676008L, String.valueOf(10_000_000L + random.nextInt(90_000_000)));
+			queryConcept.addAttribute(group, 246075003L, String.valueOf(10_000_000L + random.nextInt(90_000_000)));
+			// Concrete value
+			queryConcept.addAttribute(group, 1142135004L, random.nextInt(500));
+		}
+		attrMap = queryConcept.getAttrMap();
+	}
+
+	@Benchmark
+	public String serializeAttrMap() {
+		return queryConcept.getAttrMap();
+	}
+
+	@Benchmark
+	public Map<String, Set<Object>> serializeFlatAttributes() {
+		return queryConcept.getAttr();
+	}
+
+	@Benchmark
+	public Map<Integer, Map<String, List<Object>>> deserializeAttrMap() {
+		QueryConcept loaded = new QueryConcept();
+		loaded.setAttrMap(attrMap);
+		return loaded.getGroupedAttributesMap();
+	}
+
+}
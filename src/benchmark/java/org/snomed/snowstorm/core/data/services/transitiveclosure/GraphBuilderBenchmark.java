@@ -0,0 +1,62 @@
+package org.snomed.snowstorm.core.data.services.transitiveclosure;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transitive closure of every node in a synthetic polyhierarchy, as computed when the semantic index is rebuilt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class GraphBuilderBenchmark {
+
+	private static final long ROOT = 138875005L;
+
+	@Param({"10000", "350000"})
+	private int conceptCount;
+
+	// Average number of parents of each concept
+	@Param({"1.5"})
+	private double parentsPerConcept;
+
+	private long[] sourceIds;
+
+	private long[] destinationIds;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(123);
+		int relationshipCount = (int) (conceptCount * parentsPerConcept);
+		sourceIds = new long[relationshipCount];
+		destinationIds = new long[relationshipCount];
+		for (int i = 0; i < relationshipCount; i++) {
+			// Every concept has a parent with a lower number so the graph has no loops
+			int concept = i < conceptCount ? i + 1 : 1 + random.nextInt(conceptCount);
+			int parent = concept <= 20 ? 0 : random.nextInt(concept);
+			sourceIds[i] = toId(concept);
+			destinationIds[i] = toId(parent);
+		}
+	}
+
+	@Benchmark
+	public void buildAndComputeClosures(Blackhole blackhole) throws GraphBuilderException {
+		GraphBuilder graphBuilder = new GraphBuilder();
+		for (int i = 0; i < sourceIds.length; i++) {
+			graphBuilder.addParent(sourceIds[i], destinationIds[i]);
+		}
+		for (Node node : graphBuilder.getNodes()) {
+			blackhole.consume(node.getTransitiveClosure("MAIN", true));
+		}
+	}
+
+	private static long toId(int concept) {
+		return concept == 0 ? ROOT : (100_000L + concept) * 1000 + 5;
+	}
+
+}
@@ -0,0 +1,69 @@
+package org.snomed.snowstorm.ecl;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongComparators;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.SearchAfterPageRequest;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paging through a full list of selected concept ids, as done for ECL results which are fetched in full and then paged in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ConceptSelectorPagingBenchmark {
+
+	@Param({"10000", "350000"})
+	private int idCount;
+
+	@Param({"100", "10000"})
+	private int pageSize;
+
+	private List<Long> ids;
+
+	private PageRequest middlePage;
+
+	private SearchAfterPageRequest middleSearchAfterPage;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(123);
+		LongArrayList idList = new LongArrayList(idCount);
+		for (int i = 0; i < idCount; i++) {
+			// Synthetic SCTIDs with partition 00
+			idList.add((100_000L + random.nextInt(900_000_000)) * 1000 + 5);
+		}
+		idList.sort(LongComparators.OPPOSITE_COMPARATOR);
+		ids = idList;
+
+		int middle = idCount / 2;
+		middlePage = PageRequest.of(middle / pageSize, pageSize);
+		middleSearchAfterPage = SearchAfterPageRequest.of(ConceptSelectorHelper.CONCEPT_ID_SEARCH_AFTER_EXTRACTOR.apply(ids.get(middle)),
+				pageSize, Sort.unsorted());
+	}
+
+	@Benchmark
+	public Page<Long> pageNumber() {
+		return ConceptSelectorHelper.getPage(middlePage, ids);
+	}
+
+	@Benchmark
+	public Page<Long> searchAfter() {
+		return ConceptSelectorHelper.getPage(middleSearchAfterPage, ids);
+	}
+
+	@Benchmark
+	public Page<Long> unpaged() {
+		return ConceptSelectorHelper.getPage(null, ids);
+	}
+
+}
@@ -0,0 +1,46 @@
+package org.snomed.snowstorm.ecl;
+
+import org.openjdk.jmh.annotations.*;
+import org.snomed.langauges.ecl.ECLQueryBuilder;
+import org.snomed.langauges.ecl.domain.expressionconstraint.ExpressionConstraint;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and cache key normalisation of ECL strings, done on every ECL request before any query runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ECLParseBenchmark {
+
+	@Param({
+			"<< 404684003 |Clinical finding|",
+			"<< 404684003 |Clinical finding| : 363698007 |Finding site| = << 39057004 |Pulmonary valve structure|",
+			"(<< 404684003 |Clinical finding| AND ^ 447562003 |ICD-10 complex map reference set|) MINUS << 64572001 |Disease| " +
+					": { 363698007 |Finding site| = << 39057004, 116676008 |Associated morphology| = << 415582006 |Stenosis| }",
+			"< 373873005 |Pharmaceutical / biologic product| : [1..3] 127489000 |Has active ingredient| = < 105590001 |Substance|, " +
+					"1142139005 |Count of base of active ingredient| >= #2"
+	})
+	private String ecl;
+
+	private ECLQueryBuilder eclQueryBuilder;
+
+	@Setup
+	public void setup() {
+		eclQueryBuilder = new ECLQueryBuilder(new SECLObjectFactory());
+	}
+
+	@Benchmark
+	public ExpressionConstraint createQuery() {
+		return eclQueryBuilder.createQuery(ecl);
+	}
+
+	@Benchmark
+	public String normaliseEclString() {
+		return BranchVersionECLCache.normaliseEclString(ecl);
+	}
+
+}
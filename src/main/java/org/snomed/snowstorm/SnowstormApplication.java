@@ -8,6 +8,7 @@ import org.snomed.snowstorm.core.data.domain.CodeSystem;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
 import org.snomed.snowstorm.core.data.services.CodeSystemService;
 import org.snomed.snowstorm.core.data.services.CodeSystemVersionService;
+import org.snomed.snowstorm.core.data.services.FrozenVersionSnapshotService;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
 import org.snomed.snowstorm.core.data.services.StartupException;
 import org.snomed.snowstorm.core.rf2.RF2Type;
@@ -53,6 +54,9 @@ public class SnowstormApplication extends Config implements ApplicationRunner {
 	@Autowired
 	private CodeSystemVersionService codeSystemVersionService;
 
+	@Autowired
+	private FrozenVersionSnapshotService frozenVersionSnapshotService;
+
 	private static final Logger logger = LoggerFactory.getLogger(SnowstormApplication.class);
 
 	public static void main(String[] args) {
@@ -91,6 +95,9 @@ public class SnowstormApplication extends Config implements ApplicationRunner {
 			logger.info("Warming CodeSystemVersion dependency cache...");
 			codeSystemVersionService.initDependantVersionCache(codeSystems);
 
+			// Built in the background
+			frozenVersionSnapshotService.update(codeSystems);
+
 			logger.info("Caches are hot.");
 
 			if (applicationArguments.containsOption(IMPORT_ARG)) {
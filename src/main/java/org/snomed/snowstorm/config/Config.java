@@ -5,7 +5,7 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.ComponentService;
-import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.elasticsearch.action.admin.indices.settings.put.UpdateSettingsRequest;
 import org.elasticsearch.client.RequestOptions;
 import org.elasticsearch.common.settings.Settings;
@@ -15,7 +15,11 @@ import org.snomed.langauges.ecl.ECLQueryBuilder;
 import org.snomed.snowstorm.core.data.domain.CodeSystem;
 import org.snomed.snowstorm.core.data.domain.CodeSystemVersion;
 import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.ECLStoredResult;
+import org.snomed.snowstorm.core.data.domain.MultiSearchDescription;
+import org.snomed.snowstorm.core.data.domain.MultiSearchIndexedVersion;
 import org.snomed.snowstorm.core.data.domain.SnomedComponent;
+import org.snomed.snowstorm.core.data.domain.TraceabilityOutboxEntry;
 import org.snomed.snowstorm.core.data.domain.classification.Classification;
 import org.snomed.snowstorm.core.data.domain.classification.EquivalentConcepts;
 import org.snomed.snowstorm.core.data.domain.classification.RelationshipChange;
@@ -23,6 +27,7 @@ import org.snomed.snowstorm.core.data.domain.jobs.ExportConfiguration;
 import org.snomed.snowstorm.core.data.domain.jobs.IdentifiersForRegistration;
 import org.snomed.snowstorm.core.data.services.*;
 import org.snomed.snowstorm.core.data.services.classification.BranchClassificationStatusService;
+import org.snomed.snowstorm.core.data.services.commit.CommitListenerPipeline;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierCacheManager;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierSource;
 import org.snomed.snowstorm.core.data.services.identifier.LocalRandomIdentifierSource;
@@ -31,10 +36,10 @@ import org.snomed.snowstorm.core.data.services.pojo.DescriptionCriteria;
 import org.snomed.snowstorm.core.data.services.servicehook.CommitServiceHookClient;
 import org.snomed.snowstorm.core.data.services.traceability.TraceabilityLogService;
 import org.snomed.snowstorm.core.pojo.LanguageDialect;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService;
 import org.snomed.snowstorm.ecl.SECLObjectFactory;
 import org.snomed.snowstorm.ecl.validation.ECLPreprocessingService;
 import org.snomed.snowstorm.fhir.config.FHIRConceptMapImplicitConfig;
-import org.snomed.snowstorm.mrcm.MRCMLoader;
 import org.snomed.snowstorm.mrcm.MRCMUpdateService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -63,6 +68,7 @@ import org.springframework.jms.support.converter.MessageType;
 import org.springframework.scheduling.annotation.EnableAsync;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.IOException;
 import java.util.Collections;
 import java.util.Date;
@@ -121,6 +127,9 @@ public abstract class Config extends ElasticsearchConfig {
 	@Value("${search.term.minimumLength}")
 	private int searchTermMinimumLength;
 
+	@Value("${commit.listeners.threads}")
+	private int commitListenerThreads;
+
 	@Value("${search.term.maximumLength}")
 	private int searchTermMaximumLength;
 
@@ -151,45 +160,69 @@ public abstract class Config extends ElasticsearchConfig {
 	@Autowired
 	private IntegrityService integrityService;
 	
-	@Autowired
-	private MultiSearchService multiSearchService;
-
 	@Autowired
 	private CommitServiceHookClient commitServiceHookClient;
 
 	@Autowired
-	private MRCMLoader mrcmLoader;
+	private ECLPreprocessingService eclPreprocessingService;
 
 	@Autowired
-	private ECLPreprocessingService eclPreprocessingService;
+	private ECLCacheVersionService eclCacheVersionService;
 
 	@Autowired
 	private RefsetDescriptorUpdaterService refsetDescriptorUpdaterService;
 
+	@Autowired
+	private CachingVersionControlHelper versionControlHelper;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	private CommitListenerPipeline commitListenerPipeline;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	@PostConstruct
 	public void configureCommitListeners() {
-		// Commit listeners will be called in this order
-		branchService.addCommitListener(mrcmLoader);
-		branchService.addCommitListener(conceptDefinitionStatusUpdateService);
-		branchService.addCommitListener(semanticIndexUpdateService);
-		branchService.addCommitListener(mrcmUpdateService);
-		branchService.addCommitListener(branchClassificationStatusService);
-		branchService.addCommitListener(refsetDescriptorUpdaterService);
-		branchService.addCommitListener(traceabilityLogService);
-		branchService.addCommitListener(integrityService);
-		branchService.addCommitListener(multiSearchService);
-		branchService.addCommitListener(eclPreprocessingService);
-		branchService.addCommitListener(commitServiceHookClient);
-		branchService.addCommitListener(BranchMetadataHelper::clearTransientMetadata);
-		branchService.addCommitListener(commit ->
-			logger.info("Completed commit on {} in {} seconds.", commit.getBranch().getPath(), secondsDuration(commit.getTimepoint())));
+		// Commit listeners run as a dependency graph, listeners without a dependency between them run in parallel.
+		// Listeners saving content or changing branch metadata depend on each other because neither is thread safe,
+		// they run one after another in the original listener order.
+		CommitListenerPipeline pipeline = new CommitListenerPipeline(commitListenerThreads, meterRegistry);
+		pipeline.add("version-control-helper", versionControlHelper);
+
+		// Content and branch metadata changes, in series in the original listener order
+		pipeline.add("concept-definition-status", conceptDefinitionStatusUpdateService, "version-control-helper");
+		pipeline.add("semantic-index", semanticIndexUpdateService, "concept-definition-status");
+		pipeline.add("mrcm-update", mrcmUpdateService, "semantic-index");
+		pipeline.add("branch-classification-status", branchClassificationStatusService, "mrcm-update");
+		pipeline.add("refset-descriptor", refsetDescriptorUpdaterService, "branch-classification-status");
+		pipeline.add("traceability", traceabilityLogService, "refset-descriptor");
+		pipeline.add("integrity", integrityService, "traceability");
+
+		// Cache listeners only read the commit and update their own concurrent caches once the last content change is saved,
+		// they do not read or write branch metadata so they may run alongside traceability and integrity.
+		pipeline.add("ecl-preprocessing", eclPreprocessingService, "refset-descriptor");
+		pipeline.add("ecl-cache-version", eclCacheVersionService, "refset-descriptor");
+
+		pipeline.add("commit-service-hook", commitServiceHookClient, pipeline.all());
+		pipeline.add("clear-transient-metadata", BranchMetadataHelper::clearTransientMetadata, pipeline.all());
+		pipeline.add("completed-log", commit ->
+				logger.info("Completed commit on {} in {} seconds.", commit.getBranch().getPath(), secondsDuration(commit.getTimepoint())),
+				"clear-transient-metadata");
+		branchService.addCommitListener(pipeline);
+		commitListenerPipeline = pipeline;
 
 		// Push configured term constraints into static field
 		DescriptionCriteria.configure(searchTermMinimumLength, searchTermMaximumLength);
 	}
 	
+	@PreDestroy
+	public void shutdownCommitListeners() {
+		if (commitListenerPipeline != null) {
+			commitListenerPipeline.shutdown();
+		}
+	}
+
 	private String secondsDuration(Date timepoint) {
 		return "" + (float) (new Date().getTime() - timepoint.getTime()) / 1000f;
 	}
@@ -205,8 +238,10 @@ public abstract class Config extends ElasticsearchConfig {
 	}
 
 	@Bean
-	public VersionControlHelper getVersionControlHelper() {
-		return new VersionControlHelper();
+	public CachingVersionControlHelper getVersionControlHelper(
+			@Value("${cache.branch-criteria.max-size}") long maxSize,
+			@Value("${cache.branch-criteria.expire-after-write-seconds}") long expireAfterWriteSeconds) {
+		return new CachingVersionControlHelper(maxSize, expireAfterWriteSeconds);
 	}
 
 	@Bean
@@ -329,7 +364,11 @@ public abstract class Config extends ElasticsearchConfig {
 					RelationshipChange.class,
 					EquivalentConcepts.class,
 					IdentifiersForRegistration.class,
-					ExportConfiguration.class
+					ExportConfiguration.class,
+					ECLStoredResult.class,
+					TraceabilityOutboxEntry.class,
+					MultiSearchDescription.class,
+					MultiSearchIndexedVersion.class
 			);
 			for (Class aClass : objectsNotVersionControlled) {
 				IndexCoordinates indexCoordinates = elasticsearchTemplate.getIndexCoordinatesFor(aClass);
@@ -1,6 +1,8 @@
 package org.snomed.snowstorm.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jms.activemq.ActiveMQConnectionFactoryCustomizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
@@ -21,4 +23,10 @@ public class JMSConfig {
 		factory.setPubSubDomain(true);
 		return factory;
 	}
+
+	// Static because the connection factory autowired above is created using this customizer
+	@Bean
+	public static ActiveMQConnectionFactoryCustomizer compressionCustomizer(@Value("${activemq.use-compression}") boolean useCompression) {
+		return connectionFactory -> connectionFactory.setUseCompression(useCompression);
+	}
 }
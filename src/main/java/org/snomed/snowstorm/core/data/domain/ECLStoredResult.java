@@ -0,0 +1,121 @@
+package org.snomed.snowstorm.core.data.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+/**
+ * Complete result of an expensive ECL query for one content version, shared by all Snowstorm instances using the same Elasticsearch cluster.
+ * Concept ids are held as a compressed binary field, see ECLResultStore.
+ */
+@Document(indexName = "ecl-result")
+public class ECLStoredResult {
+
+	public interface Fields {
+		String CREATED = "created";
+	}
+
+	@Id
+	@Field(type = FieldType.Keyword)
+	private String id;
+
+	@Field(type = FieldType.Keyword)
+	private String branchPath;
+
+	@Field(type = FieldType.Long)
+	private long timepoint;
+
+	@Field(type = FieldType.Boolean)
+	private boolean stated;
+
+	@Field(type = FieldType.Keyword, index = false)
+	private String ecl;
+
+	@Field(type = FieldType.Integer, index = false)
+	private int count;
+
+	@Field(type = FieldType.Binary)
+	private String conceptIds;
+
+	@Field(type = FieldType.Long)
+	private long created;
+
+	public ECLStoredResult() {
+	}
+
+	public ECLStoredResult(String id, String branchPath, long timepoint, boolean stated, String ecl, int count, String conceptIds) {
+		this.id = id;
+		this.branchPath = branchPath;
+		this.timepoint = timepoint;
+		this.stated = stated;
+		this.ecl = ecl;
+		this.count = count;
+		this.conceptIds = conceptIds;
+		this.created = System.currentTimeMillis();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getBranchPath() {
+		return branchPath;
+	}
+
+	public void setBranchPath(String branchPath) {
+		this.branchPath = branchPath;
+	}
+
+	public long getTimepoint() {
+		return timepoint;
+	}
+
+	public void setTimepoint(long timepoint) {
+		this.timepoint = timepoint;
+	}
+
+	public boolean isStated() {
+		return stated;
+	}
+
+	public void setStated(boolean stated) {
+		this.stated = stated;
+	}
+
+	public String getEcl() {
+		return ecl;
+	}
+
+	public void setEcl(String ecl) {
+		this.ecl = ecl;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public void setCount(int count) {
+		this.count = count;
+	}
+
+	public String getConceptIds() {
+		return conceptIds;
+	}
+
+	public void setConceptIds(String conceptIds) {
+		this.conceptIds = conceptIds;
+	}
+
+	public long getCreated() {
+		return created;
+	}
+
+	public void setCreated(long created) {
+		this.created = created;
+	}
+}
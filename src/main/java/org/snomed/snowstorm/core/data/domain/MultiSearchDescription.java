@@ -0,0 +1,185 @@
+package org.snomed.snowstorm.core.data.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+import java.util.Set;
+
+/**
+ * Description from the latest version of a code system, for searching across all code systems in one simple query.
+ * Derived from the version branch content, see MultiSearchDescriptionIndexService.
+ * Search field names match Description so that the same term clauses can be used.
+ */
+@Document(indexName = "multisearch-description")
+public class MultiSearchDescription {
+
+	public interface Fields {
+		String CODE_SYSTEM = "codeSystem";
+		String VERSION_PATH = "versionPath";
+		String CONCEPT_ACTIVE = "conceptActive";
+		String CONCEPT_MEMBER_OF = "conceptMemberOf";
+	}
+
+	@Id
+	@Field(type = FieldType.Keyword)
+	private String id;
+
+	@Field(type = FieldType.Keyword)
+	private String codeSystem;
+
+	@Field(type = FieldType.Keyword)
+	private String versionPath;
+
+	@Field(type = FieldType.Integer)
+	private Integer versionEffectiveTime;
+
+	// Path of the branch where the description was committed, as returned by multi-search
+	@Field(type = FieldType.Keyword, index = false)
+	private String path;
+
+	@Field(type = FieldType.Keyword)
+	private String descriptionId;
+
+	@Field(type = FieldType.Integer)
+	private Integer effectiveTimeI;
+
+	@Field(type = FieldType.Boolean)
+	private boolean active;
+
+	@Field(type = FieldType.Keyword)
+	private String moduleId;
+
+	@Field(type = FieldType.Keyword)
+	private String term;
+
+	@Field(type = FieldType.Text)
+	private String termFolded;
+
+	@Field(type = FieldType.Integer)
+	private int termLen;
+
+	@Field(type = FieldType.Keyword)
+	private String conceptId;
+
+	@Field(type = FieldType.Keyword)
+	private String languageCode;
+
+	@Field(type = FieldType.Keyword)
+	private String typeId;
+
+	@Field(type = FieldType.Keyword, index = false)
+	private String caseSignificanceId;
+
+	@Field(type = FieldType.Boolean)
+	private boolean conceptActive;
+
+	// Reference sets which the concept is an active member of
+	@Field(type = FieldType.Keyword)
+	private Set<String> conceptMemberOf;
+
+	public MultiSearchDescription() {
+	}
+
+	public MultiSearchDescription(String codeSystem, String versionPath, Integer versionEffectiveTime, Description description,
+			boolean conceptActive, Set<String> conceptMemberOf) {
+
+		this.id = codeSystem + "_" + versionEffectiveTime + "_" + description.getDescriptionId();
+		this.codeSystem = codeSystem;
+		this.versionPath = versionPath;
+		this.versionEffectiveTime = versionEffectiveTime;
+		this.path = description.getPath();
+		this.descriptionId = description.getDescriptionId();
+		this.effectiveTimeI = description.getEffectiveTimeI();
+		this.active = description.isActive();
+		this.moduleId = description.getModuleId();
+		this.term = description.getTerm();
+		this.termFolded = description.getTermFolded();
+		this.termLen = description.getTermLen();
+		this.conceptId = description.getConceptId();
+		this.languageCode = description.getLanguageCode();
+		this.typeId = description.getTypeId();
+		this.caseSignificanceId = description.getCaseSignificanceId();
+		this.conceptActive = conceptActive;
+		this.conceptMemberOf = conceptMemberOf;
+	}
+
+	public Description toDescription() {
+		Description description = new Description(descriptionId, effectiveTimeI, active, moduleId, conceptId, languageCode, typeId, term, caseSignificanceId);
+		description.setPath(path);
+		return description;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getCodeSystem() {
+		return codeSystem;
+	}
+
+	public String getVersionPath() {
+		return versionPath;
+	}
+
+	public Integer getVersionEffectiveTime() {
+		return versionEffectiveTime;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public String getDescriptionId() {
+		return descriptionId;
+	}
+
+	public Integer getEffectiveTimeI() {
+		return effectiveTimeI;
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	public String getModuleId() {
+		return moduleId;
+	}
+
+	public String getTerm() {
+		return term;
+	}
+
+	public String getTermFolded() {
+		return termFolded;
+	}
+
+	public int getTermLen() {
+		return termLen;
+	}
+
+	public String getConceptId() {
+		return conceptId;
+	}
+
+	public String getLanguageCode() {
+		return languageCode;
+	}
+
+	public String getTypeId() {
+		return typeId;
+	}
+
+	public String getCaseSignificanceId() {
+		return caseSignificanceId;
+	}
+
+	public boolean isConceptActive() {
+		return conceptActive;
+	}
+
+	public Set<String> getConceptMemberOf() {
+		return conceptMemberOf;
+	}
+}
@@ -0,0 +1,52 @@
+package org.snomed.snowstorm.core.data.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+/**
+ * Records which version of a code system is completely held in the multi-search description index.
+ */
+@Document(indexName = "multisearch-indexed-version")
+public class MultiSearchIndexedVersion {
+
+	@Id
+	@Field(type = FieldType.Keyword)
+	private String codeSystem;
+
+	@Field(type = FieldType.Keyword)
+	private String versionPath;
+
+	@Field(type = FieldType.Long)
+	private long descriptionCount;
+
+	@Field(type = FieldType.Long)
+	private long indexed;
+
+	public MultiSearchIndexedVersion() {
+	}
+
+	public MultiSearchIndexedVersion(String codeSystem, String versionPath, long descriptionCount) {
+		this.codeSystem = codeSystem;
+		this.versionPath = versionPath;
+		this.descriptionCount = descriptionCount;
+		this.indexed = System.currentTimeMillis();
+	}
+
+	public String getCodeSystem() {
+		return codeSystem;
+	}
+
+	public String getVersionPath() {
+		return versionPath;
+	}
+
+	public long getDescriptionCount() {
+		return descriptionCount;
+	}
+
+	public long getIndexed() {
+		return indexed;
+	}
+}
@@ -0,0 +1,110 @@
+package org.snomed.snowstorm.core.data.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+/**
+ * Traceability activity of one commit, written during the commit and removed once sent to the traceability JMS queue.
+ * The activity is held as deflated JSON in a binary field, see TraceabilityOutbox.
+ */
+@Document(indexName = "traceability-outbox")
+public class TraceabilityOutboxEntry {
+
+	public interface Fields {
+		String BRANCH_PATH = "branchPath";
+		String COMMIT_TIMESTAMP = "commitTimestamp";
+		String CREATED = "created";
+	}
+
+	@Id
+	@Field(type = FieldType.Keyword)
+	private String id;
+
+	@Field(type = FieldType.Keyword)
+	private String branchPath;
+
+	@Field(type = FieldType.Long)
+	private long commitTimestamp;
+
+	@Field(type = FieldType.Integer, index = false)
+	private int changeCount;
+
+	@Field(type = FieldType.Binary)
+	private String activity;
+
+	@Field(type = FieldType.Integer, index = false)
+	private int attempts;
+
+	@Field(type = FieldType.Long)
+	private long created;
+
+	public TraceabilityOutboxEntry() {
+	}
+
+	public TraceabilityOutboxEntry(String id, String branchPath, long commitTimestamp, int changeCount, String activity) {
+		this.id = id;
+		this.branchPath = branchPath;
+		this.commitTimestamp = commitTimestamp;
+		this.changeCount = changeCount;
+		this.activity = activity;
+		this.created = System.currentTimeMillis();
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public String getBranchPath() {
+		return branchPath;
+	}
+
+	public void setBranchPath(String branchPath) {
+		this.branchPath = branchPath;
+	}
+
+	public long getCommitTimestamp() {
+		return commitTimestamp;
+	}
+
+	public void setCommitTimestamp(long commitTimestamp) {
+		this.commitTimestamp = commitTimestamp;
+	}
+
+	public int getChangeCount() {
+		return changeCount;
+	}
+
+	public void setChangeCount(int changeCount) {
+		this.changeCount = changeCount;
+	}
+
+	public String getActivity() {
+		return activity;
+	}
+
+	public void setActivity(String activity) {
+		this.activity = activity;
+	}
+
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	public long getCreated() {
+		return created;
+	}
+
+	public void setCreated(long created) {
+		this.created = created;
+	}
+}
@@ -6,7 +6,9 @@ import org.springframework.data.elasticsearch.annotations.Document;
 
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
 
 @Document(indexName = "export-config")
@@ -48,6 +50,9 @@ public class ExportConfiguration {
 	@Schema(description = "If refsetIds are included, this indicates that the export will be a refset-only export.")
 	private Set<String> refsetIds;
 
+	@Schema(accessMode = Schema.AccessMode.READ_ONLY, description = "Rows and throughput of each file, added as files are written.")
+	private List<ExportFileStats> fileStats = new ArrayList<>();
+
 	public ExportConfiguration() {
 	}
 
@@ -151,4 +156,12 @@ public class ExportConfiguration {
 	public void setRefsetIds(Set<String> refsetIds) {
 		this.refsetIds = refsetIds;
 	}
+
+	public List<ExportFileStats> getFileStats() {
+		return fileStats;
+	}
+
+	public void setFileStats(List<ExportFileStats> fileStats) {
+		this.fileStats = fileStats;
+	}
 }
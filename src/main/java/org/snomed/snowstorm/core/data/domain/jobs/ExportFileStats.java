@@ -0,0 +1,73 @@
+package org.snomed.snowstorm.core.data.domain.jobs;
+
+/**
+ * Throughput of one file of an RF2 export, reported in the export job status.
+ */
+public class ExportFileStats {
+
+	private String filePath;
+
+	private long rows;
+
+	private long bytes;
+
+	private float seconds;
+
+	private long rowsPerSecond;
+
+	public ExportFileStats() {
+	}
+
+	public ExportFileStats(String filePath, long rows, long bytes, long millis) {
+		this.filePath = filePath;
+		this.rows = rows;
+		this.bytes = bytes;
+		this.seconds = millis / 1000f;
+		this.rowsPerSecond = millis > 0 ? rows * 1000 / millis : rows;
+	}
+
+	public String getFilePath() {
+		return filePath;
+	}
+
+	public void setFilePath(String filePath) {
+		this.filePath = filePath;
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	public void setRows(long rows) {
+		this.rows = rows;
+	}
+
+	public long getBytes() {
+		return bytes;
+	}
+
+	public void setBytes(long bytes) {
+		this.bytes = bytes;
+	}
+
+	public float getSeconds() {
+		return seconds;
+	}
+
+	public void setSeconds(float seconds) {
+		this.seconds = seconds;
+	}
+
+	public long getRowsPerSecond() {
+		return rowsPerSecond;
+	}
+
+	public void setRowsPerSecond(long rowsPerSecond) {
+		this.rowsPerSecond = rowsPerSecond;
+	}
+
+	@Override
+	public String toString() {
+		return filePath + " " + rows + " rows in " + seconds + " seconds (" + rowsPerSecond + " rows/s)";
+	}
+}
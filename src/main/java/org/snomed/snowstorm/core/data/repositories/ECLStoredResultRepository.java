@@ -0,0 +1,8 @@
+package org.snomed.snowstorm.core.data.repositories;
+
+import org.snomed.snowstorm.core.data.domain.ECLStoredResult;
+import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
+
+public interface ECLStoredResultRepository extends ElasticsearchRepository<ECLStoredResult, String> {
+
+}
@@ -0,0 +1,8 @@
+package org.snomed.snowstorm.core.data.repositories;
+
+import org.snomed.snowstorm.core.data.domain.MultiSearchIndexedVersion;
+import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
+
+public interface MultiSearchIndexedVersionRepository extends ElasticsearchRepository<MultiSearchIndexedVersion, String> {
+
+}
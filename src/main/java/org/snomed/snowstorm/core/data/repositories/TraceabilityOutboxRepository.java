@@ -0,0 +1,8 @@
+package org.snomed.snowstorm.core.data.repositories;
+
+import org.snomed.snowstorm.core.data.domain.TraceabilityOutboxEntry;
+import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
+
+public interface TraceabilityOutboxRepository extends ElasticsearchRepository<TraceabilityOutboxEntry, String> {
+
+}
@@ -0,0 +1,161 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.domain.Branch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.UnaryOperator;
+
+/**
+ * Base of the services holding in-memory snapshots of branch content.
+ * <p>
+ * Snapshots are held in a cache of limited size and built one at a time on a background thread.
+ * Callers are given a snapshot only once it has been built and must read from Elasticsearch in the meantime.
+ * Builds on demand are only started for branch heads, reads of older timepoints do not fill the cache.
+ * Snapshots of new versions derived from a held snapshot are also created on the build thread, see {@link #scheduleUpdate}.
+ *
+ * @param <K> snapshot key, usually including the content version
+ * @param <V> snapshot
+ */
+public abstract class AbstractSnapshotService<K, V> {
+
+	private final String snapshotName;
+
+	@Autowired
+	private BranchService branchService;
+
+	private Cache<K, V> snapshots;
+
+	private final Set<K> snapshotsBuilding = ConcurrentHashMap.newKeySet();
+
+	private final ExecutorService buildExecutor = Executors.newSingleThreadExecutor();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	protected AbstractSnapshotService(String snapshotName) {
+		this.snapshotName = snapshotName;
+	}
+
+	/**
+	 * @return maximum number of snapshots held, zero or less to hold all snapshots until removed.
+	 */
+	protected abstract int getMaxCount();
+
+	/**
+	 * Builds a snapshot, called on the build thread.
+	 */
+	protected abstract V buildSnapshot(K key);
+
+	@PostConstruct
+	public void initSnapshots() {
+		int maxCount = getMaxCount();
+		snapshots = maxCount > 0 ? Caffeine.newBuilder().maximumSize(maxCount).build() : Caffeine.newBuilder().build();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		buildExecutor.shutdownNow();
+	}
+
+	/**
+	 * @return the snapshot if already built. If not, a build is scheduled when the branch criteria is for a branch head.
+	 */
+	protected Optional<V> getOrScheduleBuild(K key, BranchCriteria branchCriteria) {
+		V snapshot = snapshots.getIfPresent(key);
+		if (snapshot == null && snapshotsBuilding.add(key)) {
+			submitBuild(key, () -> {
+				if (isBranchHead(branchCriteria)) {
+					snapshots.put(key, buildSnapshot(key));
+				}
+			});
+		}
+		return Optional.ofNullable(snapshot);
+	}
+
+	/**
+	 * Schedules a build unless one is already running for the key, whatever the branch version.
+	 * The snapshot is passed to {@link #snapshotBuilt(Object, Object)} once built.
+	 */
+	protected void scheduleBuild(K key) {
+		if (snapshotsBuilding.add(key)) {
+			submitBuild(key, () -> snapshotBuilt(key, buildSnapshot(key)));
+		}
+	}
+
+	/**
+	 * Schedules the snapshot of a new version to be derived from the snapshot of the version before it, on the build thread,
+	 * so that the caller, usually a commit, does not wait for the derivation. Builds and updates run in the order scheduled,
+	 * so an update scheduled after the update or build of the previous version sees its snapshot.
+	 * Nothing is derived if the previous snapshot is not held by then, the snapshot is built if requested.
+	 * Until the update has run readers are not given a snapshot for the key and a build is not scheduled for it.
+	 */
+	protected void scheduleUpdate(K key, K previousKey, UnaryOperator<V> update) {
+		if (snapshotsBuilding.add(key)) {
+			submitBuild(key, () -> {
+				V previousSnapshot = snapshots.getIfPresent(previousKey);
+				if (previousSnapshot != null) {
+					snapshots.put(key, update.apply(previousSnapshot));
+				}
+			});
+		}
+	}
+
+	/**
+	 * Called on the build thread once a snapshot scheduled with {@link #scheduleBuild(Object)} is built. Caches the snapshot by default.
+	 */
+	protected void snapshotBuilt(K key, V snapshot) {
+		snapshots.put(key, snapshot);
+	}
+
+	/**
+	 * @return the snapshot, built on the calling thread if not already held.
+	 */
+	protected V getOrBuild(K key) {
+		return snapshots.get(key, this::buildSnapshot);
+	}
+
+	protected V getIfPresent(K key) {
+		return snapshots.getIfPresent(key);
+	}
+
+	protected void put(K key, V snapshot) {
+		snapshots.put(key, snapshot);
+	}
+
+	protected Cache<K, V> getSnapshots() {
+		return snapshots;
+	}
+
+	public void clearCache() {
+		snapshots.invalidateAll();
+	}
+
+	private void submitBuild(K key, Runnable build) {
+		buildExecutor.submit(() -> {
+			try {
+				build.run();
+			} catch (RuntimeException e) {
+				logger.error("Failed to build {} for {}.", snapshotName, key, e);
+			} finally {
+				snapshotsBuilding.remove(key);
+			}
+		});
+	}
+
+	private boolean isBranchHead(BranchCriteria branchCriteria) {
+		Branch branch = branchService.findLatest(branchCriteria.getBranchPath());
+		return branch != null && branch.getHead().equals(branchCriteria.getTimepoint());
+	}
+}
@@ -0,0 +1,149 @@
+package org.snomed.snowstorm.core.data.services;
+
+import ch.qos.logback.classic.Level;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.util.TimerUtil;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService.ContentVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import java.util.Optional;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+
+/**
+ * Keeps in-memory sets of the active concept ids of branch versions so that integrity checks can test whether referenced concepts
+ * are active without Elasticsearch.
+ * <p>
+ * Sets are keyed by content version rather than semantic version because any concept change, including inactivation,
+ * changes the set. Branches without content of their own share the set of their parent.
+ * The full integrity check loads the set straight away because it needs every active concept anyway.
+ * Content commits derive the new set from the previous one using the concepts changed in the commit.
+ */
+@Service
+public class ActiveConceptSnapshotService extends AbstractSnapshotService<ContentVersion, LongSet> {
+
+	@Value("${integrity.active-concepts.enabled}")
+	private boolean enabled;
+
+	@Value("${integrity.active-concepts.max-count}")
+	private int maxCount;
+
+	@Autowired
+	private ECLCacheVersionService eclCacheVersionService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private ElasticsearchRestTemplate elasticsearchTemplate;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public ActiveConceptSnapshotService() {
+		super("active concepts");
+	}
+
+	@Override
+	protected int getMaxCount() {
+		return maxCount;
+	}
+
+	/**
+	 * @return ids of the active concepts of the branch version, if enabled and already built.
+	 * A missing set of a branch head is built in the background.
+	 */
+	public Optional<LongSet> getActiveConcepts(BranchCriteria branchCriteria) {
+		if (!enabled) {
+			return Optional.empty();
+		}
+		ContentVersion contentVersion = eclCacheVersionService.resolve(branchCriteria.getBranchPath(), branchCriteria.getTimepoint(), false);
+		if (!contentVersion.isCommitted()) {
+			return Optional.empty();
+		}
+		return getOrScheduleBuild(contentVersion, branchCriteria);
+	}
+
+	/**
+	 * @return ids of the active concepts of the branch version, loaded now if not already held. Kept for later use if enabled.
+	 */
+	public LongSet getOrLoadActiveConcepts(BranchCriteria branchCriteria) {
+		if (enabled) {
+			ContentVersion contentVersion = eclCacheVersionService.resolve(branchCriteria.getBranchPath(), branchCriteria.getTimepoint(), false);
+			if (contentVersion.isCommitted()) {
+				return getOrBuild(contentVersion);
+			}
+		}
+		return LongSets.unmodifiable(new LongOpenHashSet(conceptService.findAllActiveConcepts(branchCriteria)));
+	}
+
+	/**
+	 * Called during a content commit, after all content changes have been saved.
+	 * If the set of the version before the commit is held, the concept changes are applied to create the set for the new version.
+	 */
+	public void applyCommit(Commit commit) {
+		if (!enabled || commit.getCommitType() != Commit.CommitType.CONTENT) {
+			return;
+		}
+		Branch branch = commit.getBranch();
+		LongSet previousActiveConcepts = getIfPresent(eclCacheVersionService.resolve(branch.getPath(), branch.getHead(), false));
+		if (previousActiveConcepts == null) {
+			// Will be built if requested
+			return;
+		}
+
+		// Changed concepts include the versions replaced, only versions written in this commit are current
+		LongSet changedConcepts = new LongOpenHashSet();
+		LongSet nowActive = new LongOpenHashSet();
+		try (SearchHitsIterator<Concept> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery().must(versionControlHelper.getBranchCriteriaChangesAndDeletionsWithinOpenCommitOnly(commit).getEntityBranchCriteria(Concept.class)))
+				.withPageable(LARGE_PAGE)
+				.build(), Concept.class)) {
+			stream.forEachRemaining(hit -> {
+				Concept concept = hit.getContent();
+				changedConcepts.add(concept.getConceptIdAsLong());
+				if (concept.isActive() && concept.getEnd() == null && branch.getPath().equals(concept.getPath())
+						&& commit.getTimepoint().equals(concept.getStart())) {
+					nowActive.add(concept.getConceptIdAsLong());
+				}
+			});
+		}
+		LongSet activeConcepts = previousActiveConcepts;
+		if (!changedConcepts.isEmpty()) {
+			LongSet updated = new LongOpenHashSet(previousActiveConcepts);
+			updated.removeAll(changedConcepts);
+			updated.addAll(nowActive);
+			activeConcepts = LongSets.unmodifiable(updated);
+		}
+		put(new ContentVersion(branch.getPath(), commit.getTimepoint()), activeConcepts);
+		logger.debug("Active concepts {} updated with {} changed concepts.", branch.getPath(), changedConcepts.size());
+	}
+
+	@Override
+	protected LongSet buildSnapshot(ContentVersion contentVersion) {
+		TimerUtil timer = new TimerUtil("Active concepts " + contentVersion, Level.INFO, 5);
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteriaAtTimepoint(contentVersion.getPath(), contentVersion.getTimepoint());
+		LongSet activeConcepts = LongSets.unmodifiable(new LongOpenHashSet(conceptService.findAllActiveConcepts(branchCriteria)));
+		timer.finish();
+		logger.info("Loaded {} active concepts for {}.", activeConcepts.size(), contentVersion);
+		return activeConcepts;
+	}
+}
@@ -0,0 +1,140 @@
+package org.snomed.snowstorm.core.data.services;
+
+import ch.qos.logback.classic.Level;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.QueryConcept;
+import org.snomed.snowstorm.core.data.services.snapshot.AttributeIndex;
+import org.snomed.snowstorm.core.util.TimerUtil;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService.ContentVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+
+/**
+ * Keeps in-memory indexes of the stated and inferred concept attributes so that dotted ECL and reverse attribute refinements
+ * can be answered without Elasticsearch.
+ * <p>
+ * Indexes are keyed by semantic content version, in the same way as hierarchy snapshots, see HierarchySnapshotService.
+ * An index is loaded from the attribute maps held in the semantic index, only the concept id and attributes of each
+ * QueryConcept are read. Content commits replace the attributes of the changed concepts to derive the index of the new version.
+ */
+@Service
+public class AttributeIndexService extends AbstractSnapshotService<SemanticSnapshotKey, AttributeIndex> {
+
+	@Value("${ecl.attribute-index.enabled}")
+	private boolean enabled;
+
+	@Value("${ecl.attribute-index.max-count}")
+	private int maxCount;
+
+	@Autowired
+	private ECLCacheVersionService eclCacheVersionService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchRestTemplate elasticsearchTemplate;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public AttributeIndexService() {
+		super("attribute index");
+	}
+
+	@Override
+	protected int getMaxCount() {
+		return maxCount;
+	}
+
+	/**
+	 * @return the attribute index for the branch version and form, if enabled and already built.
+	 * A missing index of a branch head is built in the background.
+	 */
+	public Optional<AttributeIndex> getIndex(BranchCriteria branchCriteria, boolean stated) {
+		if (!enabled) {
+			return Optional.empty();
+		}
+		ContentVersion contentVersion = eclCacheVersionService.resolve(branchCriteria.getBranchPath(), branchCriteria.getTimepoint(), true);
+		if (!contentVersion.isCommitted()) {
+			// Content of an open commit can not be read back from the index at a timepoint
+			return Optional.empty();
+		}
+		return getOrScheduleBuild(new SemanticSnapshotKey(contentVersion, stated), branchCriteria);
+	}
+
+	/**
+	 * Called during a content commit, after the semantic index changes have been saved.
+	 * The changes are applied to the index of the version before the commit, if held, to create the index for the new version.
+	 * Like hierarchy snapshots this runs on the build thread, outside the commit.
+	 */
+	public void applySemanticChanges(Commit commit, boolean stated, Collection<QueryConcept> savedQueryConcepts) {
+		if (!enabled) {
+			return;
+		}
+		Branch branch = commit.getBranch();
+		ContentVersion previousVersion = eclCacheVersionService.resolve(branch.getPath(), branch.getHead(), true);
+
+		Map<Long, Map<String, Set<Object>>> changedConceptAttributes = new Long2ObjectOpenHashMap<>();
+		Set<Long> removedConceptIds = new LongOpenHashSet();
+		for (QueryConcept queryConcept : savedQueryConcepts) {
+			if (queryConcept.isDeleted()) {
+				removedConceptIds.add(queryConcept.getConceptIdL());
+			} else {
+				changedConceptAttributes.put(queryConcept.getConceptIdL(), queryConcept.getAttr());
+			}
+		}
+		SemanticSnapshotKey key = new SemanticSnapshotKey(new ContentVersion(branch.getPath(), commit.getTimepoint()), stated);
+		scheduleUpdate(key, new SemanticSnapshotKey(previousVersion, stated), previousIndex -> {
+			if (changedConceptAttributes.isEmpty() && removedConceptIds.isEmpty()) {
+				return previousIndex;
+			}
+			AttributeIndex index = previousIndex.withChanges(changedConceptAttributes, removedConceptIds);
+			logger.debug("Attribute index {} {} updated with {} changed and {} removed concepts.", branch.getPath(), stated ? "stated" : "inferred",
+					changedConceptAttributes.size(), removedConceptIds.size());
+			return index;
+		});
+	}
+
+	@Override
+	protected AttributeIndex buildSnapshot(SemanticSnapshotKey key) {
+		ContentVersion contentVersion = key.getContentVersion();
+		TimerUtil timer = new TimerUtil("Attribute index " + key, Level.INFO, 5);
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteriaAtTimepoint(contentVersion.getPath(), contentVersion.getTimepoint());
+		AttributeIndex.Builder builder = AttributeIndex.builder();
+		try (SearchHitsIterator<QueryConcept> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+						.must(termQuery(QueryConcept.Fields.STATED, key.isStated())))
+				.withFields(QueryConcept.Fields.CONCEPT_ID, QueryConcept.Fields.ATTR_MAP)
+				.withPageable(LARGE_PAGE)
+				.build(), QueryConcept.class)) {
+			stream.forEachRemaining(hit -> builder.addConcept(hit.getContent().getConceptIdL(), hit.getContent().getAttr()));
+		}
+		AttributeIndex index = builder.build();
+		timer.finish();
+		logger.info("Built attribute index {} with {} concepts and {} attributes, around {} MB.", key, index.getConceptCount(), index.getAttributeCount(),
+				index.getSizeInBytes() / (1024 * 1024));
+		return index;
+	}
+}
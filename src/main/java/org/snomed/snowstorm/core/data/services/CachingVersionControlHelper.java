@@ -0,0 +1,90 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the branch criteria of the latest version of each branch so that the branch ancestry and versions replaced
+ * are not loaded and compiled again on every request.
+ * <p>
+ * Only the branch itself is loaded on each request. Cached criteria are used when their timepoint is still the branch head,
+ * so a commit made by any instance is seen by the next request. Criteria of a branch version within an open commit,
+ * or at a timepoint, are not cached here.
+ * Entries are dropped when a commit on the branch, or a promotion from it, reaches completion on this instance, only so that
+ * criteria of replaced versions are not held until they expire.
+ */
+public class CachingVersionControlHelper extends VersionControlHelper implements CommitListener {
+
+	public static final String METRICS_NAME = "branch-criteria";
+
+	private final long maxSize;
+	private final long expireAfterWriteSeconds;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	private Cache<String, BranchCriteria> cache;
+
+	// Branch path -> timepoint of a commit reaching completion on that branch
+	private final Map<String, Date> commitsCompleting = new ConcurrentHashMap<>();
+
+	public CachingVersionControlHelper(long maxSize, long expireAfterWriteSeconds) {
+		this.maxSize = maxSize;
+		this.expireAfterWriteSeconds = expireAfterWriteSeconds;
+	}
+
+	@PostConstruct
+	public void init() {
+		cache = Caffeine.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(expireAfterWriteSeconds, TimeUnit.SECONDS)
+				.recordStats()
+				.build();
+		if (meterRegistry != null) {
+			CaffeineCacheMetrics.monitor(meterRegistry, cache, METRICS_NAME);
+		}
+	}
+
+	@Override
+	public BranchCriteria getBranchCriteria(String path) {
+		if (maxSize == 0) {
+			return super.getBranchCriteria(path);
+		}
+		Branch branch = branchService.findBranchOrThrow(path);
+		BranchCriteria branchCriteria = cache.getIfPresent(path);
+		if (branchCriteria != null && branchCriteria.getTimepoint().equals(branch.getHead())) {
+			return branchCriteria;
+		}
+		branchCriteria = super.getBranchCriteria(branch);
+		cache.put(path, branchCriteria);
+		return branchCriteria;
+	}
+
+	@Override
+	public void preCommitCompletion(Commit commit) {
+		cache.invalidate(commit.getBranch().getPath());
+		if (commit.getSourceBranchPath() != null) {
+			// Promotion also moves the source branch
+			cache.invalidate(commit.getSourceBranchPath());
+		}
+	}
+
+	public void clearCache() {
+		cache.invalidateAll();
+	}
+}
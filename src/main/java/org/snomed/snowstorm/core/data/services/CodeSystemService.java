@@ -104,6 +104,12 @@ public class CodeSystemService {
 	@Autowired
 	private JmsTemplate jmsTemplate;
 
+	@Autowired
+	private MultiSearchDescriptionIndexService multiSearchDescriptionIndexService;
+
+	@Autowired
+	private FrozenVersionSnapshotService frozenVersionSnapshotService;
+
 	@Value("${codesystem.all.latest-version.allow-future}")
 	private boolean latestVersionCanBeFuture;
 
@@ -249,6 +255,11 @@ public class CodeSystemService {
 		logger.info("Persisting Code System Version...");
 		versionRepository.save(new CodeSystemVersion(codeSystem.getShortName(), branch.getHead(), branchPath, effectiveDate, version, description, internalRelease));
 
+		logger.info("Updating multi-search description index...");
+		CodeSystemVersion latestVisibleVersion = findLatestVisibleVersion(codeSystem.getShortName());
+		multiSearchDescriptionIndexService.update(codeSystem.getShortName(), latestVisibleVersion);
+		frozenVersionSnapshotService.update(codeSystem.getShortName(), latestVisibleVersion);
+
 		logger.info("Versioning complete.");
 
 		Map payload = new HashMap();
@@ -572,6 +583,8 @@ public class CodeSystemService {
 	public void deleteAll() {
 		repository.deleteAll();
 		versionRepository.deleteAll();
+		multiSearchDescriptionIndexService.deleteAll();
+		frozenVersionSnapshotService.deleteAll();
 	}
 
 	CodeSystem findOneByBranchPath(String path) {
@@ -597,6 +610,9 @@ public class CodeSystemService {
 			throw new IllegalArgumentException("The given code system and version do not match.");
 		}
 		versionRepository.delete(version);
+		CodeSystemVersion latestVisibleVersion = findLatestVisibleVersion(codeSystem.getShortName());
+		multiSearchDescriptionIndexService.update(codeSystem.getShortName(), latestVisibleVersion);
+		frozenVersionSnapshotService.update(codeSystem.getShortName(), latestVisibleVersion);
 	}
 
 	@PreAuthorize("hasPermission('ADMIN', #codeSystem.branchPath)")
@@ -609,6 +625,8 @@ public class CodeSystemService {
 		List<CodeSystemVersion> allVersions = findAllVersions(codeSystem.getShortName(), true, false);
 		versionRepository.deleteAll(allVersions);
 		repository.delete(codeSystem);
+		multiSearchDescriptionIndexService.update(codeSystem.getShortName(), null);
+		frozenVersionSnapshotService.update(codeSystem.getShortName(), null);
 		logger.info("Deleted Code System '{}' and versions.", codeSystem.getShortName());
 	}
 
@@ -0,0 +1,176 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.google.common.collect.Lists;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.ConceptMini;
+import org.snomed.snowstorm.core.pojo.LanguageDialect;
+import org.snomed.snowstorm.core.util.SearchAfterPage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.SearchAfterPageRequest;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static java.lang.String.format;
+
+/**
+ * Resolves large sets of concept ids to concept minis in chunks, several chunks at a time.
+ * The branch criteria are resolved once for the whole request and each chunk is handed to the caller as soon as it is loaded,
+ * so the caller can stream results rather than holding them all.
+ * Concepts can be given as ids or selected using ECL.
+ */
+@Service
+public class ConceptMiniBulkLookupService {
+
+	public static final int CHUNK_SIZE = 1_000;
+
+	@Value("${snowstorm.rest-api.bulk-concept-mini.max-concepts}")
+	private int maxConcepts;
+
+	@Value("${snowstorm.rest-api.bulk-concept-mini.parallelism}")
+	private int parallelism;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private QueryService queryService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	private ExecutorService lookupExecutor;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		lookupExecutor = Executors.newFixedThreadPool(parallelism);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		lookupExecutor.shutdownNow();
+	}
+
+	/**
+	 * Chunks are passed to the consumer on the calling thread, in the order they finish loading rather than the order requested.
+	 * Concepts which do not exist on the branch are left out.
+	 * @return the number of concept minis found
+	 */
+	public int findConceptMinis(String path, Collection<String> conceptIds, List<LanguageDialect> languageDialects, ChunkConsumer chunkConsumer) throws IOException {
+		Set<String> uniqueConceptIds = new LinkedHashSet<>(conceptIds);
+		if (uniqueConceptIds.size() > maxConcepts) {
+			throw new IllegalArgumentException(format("A maximum of %s concept ids can be looked up in one request.", maxConcepts));
+		}
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(path);
+		List<List<String>> chunks = Lists.partition(new ArrayList<>(uniqueConceptIds), CHUNK_SIZE);
+		int found = lookupChunks(branchCriteria, chunks.iterator(), languageDialects, chunkConsumer);
+		logger.info("Bulk lookup of {} concept minis on {}, {} found.", uniqueConceptIds.size(), path, found);
+		return found;
+	}
+
+	/**
+	 * Selects concepts using ECL and resolves all of them to concept minis, with no limit on the number of concepts.
+	 * Concept ids are fetched from the ECL results one large page at a time, only when the lookups need more,
+	 * so memory use does not grow with the size of the result.
+	 * Chunks are passed to the consumer on the calling thread, in the order they finish loading.
+	 * @return the number of concept minis found
+	 */
+	public int findConceptMinisByECL(String path, String ecl, boolean stated, List<LanguageDialect> languageDialects, ChunkConsumer chunkConsumer) throws IOException {
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(path);
+		int found = lookupChunks(branchCriteria, new ECLConceptIdChunks(ecl, stated, branchCriteria), languageDialects, chunkConsumer);
+		logger.info("Bulk lookup of concept minis using ECL {} on {}, {} found.", ecl, path, found);
+		return found;
+	}
+
+	private int lookupChunks(BranchCriteria branchCriteria, Iterator<List<String>> chunks, List<LanguageDialect> languageDialects,
+			ChunkConsumer chunkConsumer) throws IOException {
+
+		// Only a few chunks are loaded ahead of the consumer so that a slow client does not cause a build up of results in memory.
+		CompletionService<Collection<ConceptMini>> completionService = new ExecutorCompletionService<>(lookupExecutor);
+		List<Future<Collection<ConceptMini>>> inFlight = new ArrayList<>();
+		int found = 0;
+		try {
+			while (true) {
+				while (inFlight.size() < parallelism && chunks.hasNext()) {
+					List<String> chunk = chunks.next();
+					inFlight.add(completionService.submit(() -> conceptService.findConceptMinis(branchCriteria, chunk, languageDialects).getResultsMap().values()));
+				}
+				if (inFlight.isEmpty()) {
+					break;
+				}
+				Future<Collection<ConceptMini>> done = completionService.take();
+				inFlight.remove(done);
+				Collection<ConceptMini> conceptMinis = done.get();
+				found += conceptMinis.size();
+				chunkConsumer.accept(conceptMinis);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeServiceException("Concept mini lookup interrupted.", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeServiceException("Concept mini lookup failed.", e.getCause());
+		} finally {
+			// Stop any remaining lookups if the consumer failed, for example because the client disconnected
+			inFlight.forEach(future -> future.cancel(true));
+		}
+		return found;
+	}
+
+	public interface ChunkConsumer {
+		void accept(Collection<ConceptMini> conceptMinis) throws IOException;
+	}
+
+	/**
+	 * Chunks of the concept ids selected by an ECL, fetched one large page at a time using search after.
+	 */
+	private final class ECLConceptIdChunks implements Iterator<List<String>> {
+
+		private final String ecl;
+		private final boolean stated;
+		private final BranchCriteria branchCriteria;
+		private Iterator<List<String>> pageChunks = Collections.emptyIterator();
+		private SearchAfterPage<Long> previousPage;
+		private boolean loadedAll;
+
+		private ECLConceptIdChunks(String ecl, boolean stated, BranchCriteria branchCriteria) {
+			this.ecl = ecl;
+			this.stated = stated;
+			this.branchCriteria = branchCriteria;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!pageChunks.hasNext() && !loadedAll) {
+				PageRequest pageRequest = previousPage == null ? PageRequest.of(0, LARGE_PAGE.getPageSize()) :
+						SearchAfterPageRequest.of(previousPage.getSearchAfter(), LARGE_PAGE.getPageSize(), previousPage.getSort());
+				SearchAfterPage<Long> page = queryService.searchForIds(queryService.createQueryBuilder(stated).ecl(ecl), branchCriteria, pageRequest);
+				List<String> conceptIds = page.getContent().stream().map(Object::toString).collect(Collectors.toList());
+				pageChunks = Lists.partition(conceptIds, CHUNK_SIZE).iterator();
+				loadedAll = page.getNumberOfElements() < pageRequest.getPageSize();
+				previousPage = page;
+			}
+			return pageChunks.hasNext();
+		}
+
+		@Override
+		public List<String> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return pageChunks.next();
+		}
+	}
+}
@@ -9,6 +9,7 @@ import io.kaicode.elasticvc.api.*;
 import io.kaicode.elasticvc.domain.Branch;
 import io.kaicode.elasticvc.domain.Commit;
 import io.kaicode.elasticvc.domain.DomainEntity;
+import io.micrometer.core.instrument.MeterRegistry;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.index.query.BoolQueryBuilder;
@@ -20,11 +21,13 @@ import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.repositories.*;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
 import org.snomed.snowstorm.core.data.services.pojo.*;
+import org.snomed.snowstorm.core.data.services.snapshot.FrozenVersionSnapshot;
 import org.snomed.snowstorm.core.pojo.BranchTimepoint;
 import org.snomed.snowstorm.core.pojo.LanguageDialect;
 import org.snomed.snowstorm.core.util.PageHelper;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
@@ -42,9 +45,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
 import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -68,6 +75,9 @@ public class ConceptService extends ComponentService {
 	@Autowired
 	private ConceptUpdateHelper conceptUpdateHelper;
 
+	@Autowired
+	private FrozenVersionSnapshotService frozenVersionSnapshotService;
+
 	@Autowired
 	private ConceptRepository conceptRepository;
 
@@ -121,12 +131,30 @@ public class ConceptService extends ComponentService {
 	@Autowired
 	private QueryService queryService;
 
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	@Value("${snowstorm.concept-loading.join-threads}")
+	private int joinThreads;
+
+	private ExecutorService joinExecutor;
+
 	private final Cache<String, AsyncConceptChangeBatch> batchConceptChanges;
 
 	private final Cache<BranchTimepoint, BranchCriteria> branchCriteriaCache = CacheBuilder.newBuilder().expireAfterAccess(Duration.ofDays(1)).build();
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
+	@PostConstruct
+	public void init() {
+		joinExecutor = Executors.newFixedThreadPool(joinThreads);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		joinExecutor.shutdownNow();
+	}
+
 	public ConceptService() {
 		batchConceptChanges = CacheBuilder.newBuilder().expireAfterWrite(2, TimeUnit.HOURS).build();
 	}
@@ -319,6 +347,11 @@ public class ConceptService extends ComponentService {
 		if (conceptIds.isEmpty()) {
 			return new ResultMapPage<>(new HashMap<>(), 0);
 		}
+		Optional<FrozenVersionSnapshot> frozenVersionSnapshot = frozenVersionSnapshotService.getSnapshot(branchCriteria);
+		if (frozenVersionSnapshot.isPresent()) {
+			Map<String, ConceptMini> conceptMinis = frozenVersionSnapshot.get().getConceptMinis(conceptIds, languageDialects);
+			return new ResultMapPage<>(conceptMinis, conceptMinis.size());
+		}
 		return findConceptMinis(branchCriteria, conceptIds, languageDialects, PageRequest.of(0, conceptIds.size()));
 	}
 
@@ -405,32 +438,62 @@ public class ConceptService extends ComponentService {
 			concept.getRelationships().clear();
 		}
 
-		Map<String, ConceptMini> conceptMiniMap = new HashMap<>();
+		// Concept joins run concurrently, each one writes to different fields of the concepts.
+		// Concept minis are shared through a concurrent map so that each id has a single instance.
+		Map<String, ConceptMini> conceptMiniMap = new ConcurrentHashMap<>();
 
+		// Joins of the concepts themselves
+		Map<String, Consumer<TimerUtil>> conceptJoins = new LinkedHashMap<>();
 		if (includeRelationships) {
-			// Fetch Relationships
-			joinRelationships(conceptIdMap, conceptMiniMap, languageDialects, branchPath, branchCriteria, timer, false);
-
-			// Fetch Axioms
-			for (List<String> conceptIds : Iterables.partition(conceptIdMap.keySet(), CLAUSE_LIMIT)) {
-				queryBuilder.withQuery(boolQuery()
-						.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
-						.must(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds))
-						.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class)))
-						.withPageable(LARGE_PAGE);
-
-				try (final SearchHitsIterator<ReferenceSetMember> axiomMembers = elasticsearchTemplate.searchForStream(queryBuilder.build(), ReferenceSetMember.class)) {
-					axiomMembers.forEachRemaining(axiomMember -> joinAxiom(axiomMember.getContent(), conceptIdMap, conceptMiniMap, languageDialects));
-				}
-			}
-			timer.checkpoint("get axioms " + getFetchCount(conceptIdMap.size()));
+			conceptJoins.put("relationships", joinTimer -> joinRelationships(conceptIdMap, conceptMiniMap, languageDialects, branchPath, branchCriteria, joinTimer, false));
+			conceptJoins.put("axioms", joinTimer -> joinAxioms(conceptIdMap, conceptMiniMap, languageDialects, branchCriteria, joinTimer));
 		}
-
 		if (includeIdentifiers) {
-			identifierComponentService.joinIdentifiers(branchCriteria, conceptIdMap, conceptMiniMap, languageDialects, timer);
+			conceptJoins.put("identifiers", joinTimer -> identifierComponentService.joinIdentifiers(branchCriteria, conceptIdMap, conceptMiniMap, languageDialects, joinTimer));
+		}
+		conceptJoins.put("descriptions", joinTimer -> descriptionService.joinDescriptions(branchCriteria, conceptIdMap, null, joinTimer, true, includeDescriptionInactivationInfo));
+		if (!conceptIdMap.isEmpty()) {
+			runJoins(conceptJoins, timer);
+		}
+
+		// Joins of the concept minis collected above
+		if (!conceptMiniMap.isEmpty()) {
+			Map<String, Consumer<TimerUtil>> conceptMiniJoins = new LinkedHashMap<>();
+			conceptMiniJoins.put("mini-definition-status", joinTimer -> joinConceptMiniDefinitionStatus(conceptMiniMap, branchCriteria, joinTimer));
+			conceptMiniJoins.put("mini-descriptions", joinTimer -> descriptionService.joinDescriptions(branchCriteria, null, conceptMiniMap, joinTimer, true, false));
+			// Both joins write to the same concept minis and are cheap, run one after the other
+			conceptMiniJoins.forEach(this::runJoin);
+			timer.checkpoint("joins " + conceptMiniJoins.keySet());
+		}
+
+		conceptAttributeSortHelper.sortAttributes(conceptIdMap.values());
+		timer.checkpoint("Sort attributes");
+
+		timer.finish();
+
+		return concepts;
+	}
+
+	private void joinAxioms(Map<String, Concept> conceptIdMap, Map<String, ConceptMini> conceptMiniMap, List<LanguageDialect> languageDialects,
+			BranchCriteria branchCriteria, TimerUtil timer) {
+
+		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
+		for (List<String> conceptIds : Iterables.partition(conceptIdMap.keySet(), CLAUSE_LIMIT)) {
+			queryBuilder.withQuery(boolQuery()
+					.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
+					.must(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds))
+					.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class)))
+					.withPageable(LARGE_PAGE);
+
+			try (final SearchHitsIterator<ReferenceSetMember> axiomMembers = elasticsearchTemplate.searchForStream(queryBuilder.build(), ReferenceSetMember.class)) {
+				axiomMembers.forEachRemaining(axiomMember -> joinAxiom(axiomMember.getContent(), conceptIdMap, conceptMiniMap, languageDialects));
+			}
 		}
+		timer.checkpoint("get axioms " + getFetchCount(conceptIdMap.size()));
+	}
 
-		// Fetch ConceptMini definition statuses
+	private void joinConceptMiniDefinitionStatus(Map<String, ConceptMini> conceptMiniMap, BranchCriteria branchCriteria, TimerUtil timer) {
+		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
 		for (List<String> conceptIds : Iterables.partition(conceptMiniMap.keySet(), CLAUSE_LIMIT)) {
 			queryBuilder.withQuery(boolQuery()
 					.must(termsQuery("conceptId", conceptIds))
@@ -448,15 +511,69 @@ public class ConceptService extends ComponentService {
 			}
 		}
 		timer.checkpoint("get relationship def status " + getFetchCount(conceptMiniMap.size()));
+	}
 
-		descriptionService.joinDescriptions(branchCriteria, conceptIdMap, conceptMiniMap, timer, true, includeDescriptionInactivationInfo);
-
-		conceptAttributeSortHelper.sortAttributes(conceptIdMap.values());
-		timer.checkpoint("Sort attributes");
+	/**
+	 * Runs independent joins at the same time, the first on the calling thread and the others on the join executor.
+	 * Each join gets its own timer because timers are not thread safe, the duration of each join is also recorded as a metric.
+	 * If a join fails, joins not yet started are skipped and joins already running are awaited before the failure is thrown,
+	 * so no join is still writing to the concepts once this returns.
+	 */
+	void runJoins(Map<String, Consumer<TimerUtil>> joins, TimerUtil timer) {
+		List<Map.Entry<String, Consumer<TimerUtil>>> joinList = new ArrayList<>(joins.entrySet());
+		AtomicBoolean failed = new AtomicBoolean();
+		List<Future<?>> futures = new ArrayList<>();
+		try {
+			for (Map.Entry<String, Consumer<TimerUtil>> join : joinList.subList(1, joinList.size())) {
+				futures.add(joinExecutor.submit(() -> {
+					if (!failed.get()) {
+						runJoin(join.getKey(), join.getValue());
+					}
+				}));
+			}
+			runJoin(joinList.get(0).getKey(), joinList.get(0).getValue());
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			failed.set(true);
+			futures.forEach(future -> future.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new RuntimeServiceException("Interrupted while loading concepts.", e);
+		} catch (ExecutionException e) {
+			failed.set(true);
+			awaitQuietly(futures);
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeServiceException("Failed to load concepts.", e.getCause());
+		} catch (RuntimeException e) {
+			failed.set(true);
+			awaitQuietly(futures);
+			throw e;
+		}
+		timer.checkpoint("joins " + joins.keySet());
+	}
 
-		timer.finish();
+	private void awaitQuietly(List<Future<?>> futures) {
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				logger.debug("Concept join failed after an earlier join failure.", e.getCause());
+			}
+		}
+	}
 
-		return concepts;
+	private void runJoin(String joinName, Consumer<TimerUtil> join) {
+		long start = System.nanoTime();
+		join.accept(new TimerUtil("Find concept " + joinName, Level.DEBUG));
+		if (meterRegistry != null) {
+			meterRegistry.timer("snowstorm.concept.find.join", "join", joinName).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
 	}
 
 	public void joinRelationships(Map<String, Concept> conceptIdMap, Map<String, ConceptMini> typeAndTargetConceptMiniMap, List<LanguageDialect> languageDialects,
@@ -0,0 +1,274 @@
+package org.snomed.snowstorm.core.data.services;
+
+import ch.qos.logback.classic.Level;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.CodeSystem;
+import org.snomed.snowstorm.core.data.domain.CodeSystemVersion;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
+import org.snomed.snowstorm.core.data.services.snapshot.FrozenVersionSnapshot;
+import org.snomed.snowstorm.core.util.TimerUtil;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService.ContentVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+
+/**
+ * Holds an in-memory snapshot of the latest version of each code system, so that reads of released content do not need Elasticsearch.
+ * Concept minis, reference set membership and the hierarchy are served from the snapshot, the hierarchy is pinned in HierarchySnapshotService.
+ * <p>
+ * Snapshots are looked up by content version, so any branch with the same content as the version, for example a version branch
+ * or a code system branch which has not changed since it was versioned, is served from the snapshot.
+ * Builds are scheduled at startup and when a version is created rather than on demand, and the snapshot of a code system
+ * is held until the next version replaces it.
+ */
+@Service
+public class FrozenVersionSnapshotService extends AbstractSnapshotService<FrozenVersionSnapshotService.VersionKey, FrozenVersionSnapshot> {
+
+	private static final int CONCEPT_BATCH_SIZE = 10_000;
+
+	@Value("${frozen-version-snapshot.enabled}")
+	private boolean enabled;
+
+	// Code systems to hold a snapshot for, empty for all code systems
+	@Value("${frozen-version-snapshot.code-systems}")
+	private Set<String> codeSystemFilter;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchRestTemplate elasticsearchTemplate;
+
+	@Autowired
+	private ECLCacheVersionService eclCacheVersionService;
+
+	@Autowired
+	private DescriptionService descriptionService;
+
+	@Autowired
+	private HierarchySnapshotService hierarchySnapshotService;
+
+	// Snapshots held, one per code system, by content version
+	private final Map<ContentVersion, FrozenVersionSnapshot> contentVersionSnapshots = new ConcurrentHashMap<>();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public FrozenVersionSnapshotService() {
+		super("frozen version snapshot");
+	}
+
+	@Override
+	protected int getMaxCount() {
+		// Replaced when the code system is versioned, never evicted
+		return 0;
+	}
+
+	/**
+	 * @return the snapshot holding the same content as the branch criteria, if any
+	 */
+	public Optional<FrozenVersionSnapshot> getSnapshot(BranchCriteria branchCriteria) {
+		if (contentVersionSnapshots.isEmpty()) {
+			return Optional.empty();
+		}
+		ContentVersion contentVersion = eclCacheVersionService.resolve(branchCriteria.getBranchPath(), branchCriteria.getTimepoint(), false);
+		return Optional.ofNullable(contentVersionSnapshots.get(contentVersion));
+	}
+
+	/**
+	 * Schedules a snapshot build for the latest version of each code system given. Used at startup.
+	 */
+	public void update(Collection<CodeSystem> codeSystems) {
+		for (CodeSystem codeSystem : codeSystems) {
+			update(codeSystem.getShortName(), codeSystem.getLatestVersion());
+		}
+	}
+
+	/**
+	 * Schedules a snapshot build unless the version is already held.
+	 * @param latestVersion the latest visible version of the code system, or null to remove the snapshot of the code system
+	 */
+	public void update(String codeSystem, CodeSystemVersion latestVersion) {
+		if (!enabled || (!codeSystemFilter.isEmpty() && !codeSystemFilter.contains(codeSystem))) {
+			return;
+		}
+		if (latestVersion == null) {
+			remove(codeSystem);
+			return;
+		}
+		VersionKey key = new VersionKey(codeSystem, latestVersion.getBranchPath());
+		if (getIfPresent(key) == null) {
+			scheduleBuild(key);
+		}
+	}
+
+	public synchronized void deleteAll() {
+		getSnapshots().asMap().keySet().stream().map(VersionKey::getCodeSystem).collect(Collectors.toList()).forEach(this::remove);
+	}
+
+	@Override
+	public void clearCache() {
+		deleteAll();
+	}
+
+	/**
+	 * @return the snapshot, or null if the version branch does not exist
+	 */
+	@Override
+	protected FrozenVersionSnapshot buildSnapshot(VersionKey key) {
+		String codeSystem = key.getCodeSystem();
+		String versionPath = key.getVersionPath();
+		Branch branch = branchService.findLatest(versionPath);
+		if (branch == null) {
+			logger.warn("Version branch {} of {} not found, no frozen version snapshot built.", versionPath, codeSystem);
+			return null;
+		}
+		logger.info("Building frozen version snapshot of {} version {}.", codeSystem, versionPath);
+		TimerUtil timer = new TimerUtil("Frozen version snapshot " + versionPath, Level.INFO, 5);
+		ContentVersion contentVersion = eclCacheVersionService.resolve(versionPath, branch.getHead(), false);
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
+		FrozenVersionSnapshot.Builder builder = FrozenVersionSnapshot.builder(codeSystem, versionPath, contentVersion);
+
+		try (SearchHitsIterator<Concept> concepts = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(branchCriteria.getEntityBranchCriteria(Concept.class))
+				.withPageable(LARGE_PAGE).build(), Concept.class)) {
+			Map<String, Concept> batch = new HashMap<>();
+			while (concepts.hasNext()) {
+				Concept concept = concepts.next().getContent();
+				batch.put(concept.getConceptId(), concept);
+				if (batch.size() == CONCEPT_BATCH_SIZE || !concepts.hasNext()) {
+					descriptionService.joinDescriptions(branchCriteria, batch, null, new TimerUtil("Frozen version descriptions", Level.DEBUG), true, false);
+					batch.values().forEach(builder::addConcept);
+					batch = new HashMap<>();
+				}
+			}
+		}
+		timer.checkpoint("Load concepts and descriptions");
+
+		try (SearchHitsIterator<ReferenceSetMember> members = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+						.must(termQuery(ReferenceSetMember.Fields.ACTIVE, true)))
+				.withFields(ReferenceSetMember.Fields.REFSET_ID, ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID)
+				.withPageable(LARGE_PAGE).build(), ReferenceSetMember.class)) {
+			members.forEachRemaining(hit -> {
+				ReferenceSetMember member = hit.getContent();
+				if (IdentifierService.isConceptId(member.getReferencedComponentId())) {
+					builder.addReferenceSetMember(Long.parseLong(member.getRefsetId()), Long.parseLong(member.getReferencedComponentId()));
+				}
+			});
+		}
+		timer.checkpoint("Load reference set members");
+
+		for (boolean stated : new boolean[]{true, false}) {
+			builder.setHierarchy(stated, hierarchySnapshotService.loadSnapshot(branchCriteria, stated));
+		}
+		timer.checkpoint("Load hierarchy");
+		FrozenVersionSnapshot snapshot = builder.build();
+		timer.finish();
+		logger.info("Built frozen version snapshot of {} version {} with {} concepts and {} reference sets.", codeSystem, versionPath,
+				snapshot.getConceptCount(), snapshot.getReferenceSetCount());
+		return snapshot;
+	}
+
+	/**
+	 * Replaces the snapshot of the code system.
+	 */
+	@Override
+	protected synchronized void snapshotBuilt(VersionKey key, FrozenVersionSnapshot snapshot) {
+		if (snapshot == null) {
+			return;
+		}
+		remove(key.getCodeSystem());
+		put(key, snapshot);
+		contentVersionSnapshots.put(snapshot.getContentVersion(), snapshot);
+		pinHierarchy(snapshot);
+	}
+
+	private synchronized void remove(String codeSystem) {
+		VersionKey key = getSnapshots().asMap().keySet().stream().filter(k -> k.getCodeSystem().equals(codeSystem)).findFirst().orElse(null);
+		if (key == null) {
+			return;
+		}
+		FrozenVersionSnapshot snapshot = getSnapshots().asMap().remove(key);
+		if (snapshot == null) {
+			return;
+		}
+		logger.info("Removing frozen version snapshot of {} version {}.", codeSystem, snapshot.getVersionPath());
+		contentVersionSnapshots.remove(snapshot.getContentVersion());
+		Branch branch = branchService.findLatest(snapshot.getVersionPath());
+		if (branch != null) {
+			hierarchySnapshotService.unpin(snapshot.getVersionPath(), branch.getHead());
+		}
+		// Another code system version may have the same content
+		getSnapshots().asMap().values().forEach(this::pinHierarchy);
+	}
+
+	private void pinHierarchy(FrozenVersionSnapshot snapshot) {
+		Branch branch = branchService.findLatest(snapshot.getVersionPath());
+		if (branch != null) {
+			contentVersionSnapshots.put(snapshot.getContentVersion(), snapshot);
+			for (boolean stated : new boolean[]{true, false}) {
+				hierarchySnapshotService.pin(snapshot.getVersionPath(), branch.getHead(), stated, snapshot.getHierarchy(stated));
+			}
+		}
+	}
+
+	static final class VersionKey {
+
+		private final String codeSystem;
+		private final String versionPath;
+
+		VersionKey(String codeSystem, String versionPath) {
+			this.codeSystem = codeSystem;
+			this.versionPath = versionPath;
+		}
+
+		String getCodeSystem() {
+			return codeSystem;
+		}
+
+		String getVersionPath() {
+			return versionPath;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			VersionKey that = (VersionKey) o;
+			return codeSystem.equals(that.codeSystem) && versionPath.equals(that.versionPath);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(codeSystem, versionPath);
+		}
+
+		@Override
+		public String toString() {
+			return codeSystem + " version " + versionPath;
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package org.snomed.snowstorm.core.data.services;
+
+import ch.qos.logback.classic.Level;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.QueryConcept;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.HierarchySnapshot;
+import org.snomed.snowstorm.core.util.TimerUtil;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService.ContentVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+
+/**
+ * Keeps in-memory snapshots of the stated and inferred is-a hierarchy so that hierarchy selections can be answered without Elasticsearch.
+ * <p>
+ * Snapshots are keyed by semantic content version so task branches without semantic changes share the snapshot of their parent.
+ * Snapshots are loaded from the parents held in the semantic index. Content commits derive the new snapshot from the previous one
+ * using the semantic index changes of the commit, so a snapshot follows the branch head without being loaded again.
+ * The new snapshot is derived on the build thread rather than in the commit, reads of the new head use Elasticsearch until it is ready.
+ * <p>
+ * Snapshots of released versions can be pinned, see FrozenVersionSnapshotService. Pinned snapshots are never evicted
+ * and are used even when on demand snapshots are disabled.
+ */
+@Service
+public class HierarchySnapshotService extends AbstractSnapshotService<SemanticSnapshotKey, HierarchySnapshot> {
+
+	@Value("${ecl.hierarchy-snapshot.enabled}")
+	private boolean enabled;
+
+	@Value("${ecl.hierarchy-snapshot.max-count}")
+	private int maxCount;
+
+	@Autowired
+	private ECLCacheVersionService eclCacheVersionService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchRestTemplate elasticsearchTemplate;
+
+	private final Map<SemanticSnapshotKey, HierarchySnapshot> pinnedSnapshots = new ConcurrentHashMap<>();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public HierarchySnapshotService() {
+		super("hierarchy snapshot");
+	}
+
+	@Override
+	protected int getMaxCount() {
+		return maxCount;
+	}
+
+	/**
+	 * @return the hierarchy snapshot for the branch version and form, if enabled and already built.
+	 * A missing snapshot of a branch head is built in the background, older timepoints are left to Elasticsearch.
+	 */
+	public Optional<HierarchySnapshot> getSnapshot(BranchCriteria branchCriteria, boolean stated) {
+		return getSnapshot(branchCriteria, stated, true);
+	}
+
+	/**
+	 * @return the hierarchy snapshot for the branch version and form, if enabled and already built. A missing snapshot is not built,
+	 * for callers which only benefit from a snapshot when one is held, such as query planning.
+	 */
+	public Optional<HierarchySnapshot> getSnapshotIfBuilt(BranchCriteria branchCriteria, boolean stated) {
+		return getSnapshot(branchCriteria, stated, false);
+	}
+
+	private Optional<HierarchySnapshot> getSnapshot(BranchCriteria branchCriteria, boolean stated, boolean scheduleBuild) {
+		if (!enabled && pinnedSnapshots.isEmpty()) {
+			return Optional.empty();
+		}
+		ContentVersion contentVersion = eclCacheVersionService.resolve(branchCriteria.getBranchPath(), branchCriteria.getTimepoint(), true);
+		if (!contentVersion.isCommitted()) {
+			// Content of an open commit can not be read back from the index at a timepoint
+			return Optional.empty();
+		}
+		SemanticSnapshotKey key = new SemanticSnapshotKey(contentVersion, stated);
+		HierarchySnapshot pinnedSnapshot = pinnedSnapshots.get(key);
+		if (pinnedSnapshot != null || !enabled) {
+			return Optional.ofNullable(pinnedSnapshot);
+		}
+		return scheduleBuild ? getOrScheduleBuild(key, branchCriteria) : Optional.ofNullable(getIfPresent(key));
+	}
+
+	/**
+	 * Called during a content commit, after the semantic index changes have been saved.
+	 * The changes are applied to the snapshot of the version before the commit, if held, to create the snapshot for the new version.
+	 * That runs on the build thread so the commit, which holds the branch lock, does not wait while the hierarchy arrays are rebuilt.
+	 */
+	public void applySemanticChanges(Commit commit, boolean stated, Collection<QueryConcept> savedQueryConcepts) {
+		if (!enabled) {
+			return;
+		}
+		Branch branch = commit.getBranch();
+		ContentVersion previousVersion = eclCacheVersionService.resolve(branch.getPath(), branch.getHead(), true);
+
+		Map<Long, Set<Long>> changedConceptParents = new Long2ObjectOpenHashMap<>();
+		Set<Long> removedConceptIds = new LongOpenHashSet();
+		for (QueryConcept queryConcept : savedQueryConcepts) {
+			if (queryConcept.isDeleted()) {
+				removedConceptIds.add(queryConcept.getConceptIdL());
+			} else {
+				changedConceptParents.put(queryConcept.getConceptIdL(), queryConcept.getParents());
+			}
+		}
+		SemanticSnapshotKey key = new SemanticSnapshotKey(new ContentVersion(branch.getPath(), commit.getTimepoint()), stated);
+		scheduleUpdate(key, new SemanticSnapshotKey(previousVersion, stated), previousSnapshot -> {
+			if (changedConceptParents.isEmpty() && removedConceptIds.isEmpty()) {
+				return previousSnapshot;
+			}
+			HierarchySnapshot snapshot = previousSnapshot.withChanges(changedConceptParents, removedConceptIds);
+			logger.debug("Hierarchy snapshot {} {} updated with {} changed and {} removed concepts.", branch.getPath(), stated ? "stated" : "inferred",
+					changedConceptParents.size(), removedConceptIds.size());
+			return snapshot;
+		});
+	}
+
+	/**
+	 * Holds the snapshot of the latest version of a branch until it is unpinned.
+	 */
+	public void pin(String path, Date head, boolean stated, HierarchySnapshot snapshot) {
+		pinnedSnapshots.put(new SemanticSnapshotKey(eclCacheVersionService.resolve(path, head, true), stated), snapshot);
+	}
+
+	public void unpin(String path, Date head) {
+		ContentVersion contentVersion = eclCacheVersionService.resolve(path, head, true);
+		pinnedSnapshots.remove(new SemanticSnapshotKey(contentVersion, true));
+		pinnedSnapshots.remove(new SemanticSnapshotKey(contentVersion, false));
+	}
+
+	@Override
+	public void clearCache() {
+		super.clearCache();
+		pinnedSnapshots.clear();
+	}
+
+	@Override
+	protected HierarchySnapshot buildSnapshot(SemanticSnapshotKey key) {
+		TimerUtil timer = new TimerUtil("Hierarchy snapshot " + key, Level.INFO, 5);
+		ContentVersion contentVersion = key.getContentVersion();
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteriaAtTimepoint(contentVersion.getPath(), contentVersion.getTimepoint());
+		HierarchySnapshot snapshot = loadSnapshot(branchCriteria, key.isStated());
+		timer.finish();
+		logger.info("Built hierarchy snapshot {} with {} concepts and {} edges, around {} MB.", key, snapshot.getConceptCount(), snapshot.getEdgeCount(),
+				snapshot.getSizeInBytes() / (1024 * 1024));
+		return snapshot;
+	}
+
+	/**
+	 * Loads a snapshot of the hierarchy from the semantic index, without caching.
+	 */
+	public HierarchySnapshot loadSnapshot(BranchCriteria branchCriteria, boolean stated) {
+		HierarchySnapshot.Builder builder = HierarchySnapshot.builder();
+		try (SearchHitsIterator<QueryConcept> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+						.must(termQuery(QueryConcept.Fields.STATED, stated)))
+				.withFields(QueryConcept.Fields.CONCEPT_ID, QueryConcept.Fields.PARENTS)
+				.withPageable(LARGE_PAGE)
+				.build(), QueryConcept.class)) {
+			stream.forEachRemaining(hit -> builder.addConcept(hit.getContent().getConceptIdL(), hit.getContent().getParents()));
+		}
+		return builder.build();
+	}
+}
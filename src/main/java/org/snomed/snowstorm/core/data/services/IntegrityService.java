@@ -8,12 +8,14 @@ import io.kaicode.elasticvc.domain.Commit;
 import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.otf.owltoolkit.conversion.ConversionException;
 import org.snomed.snowstorm.config.Config;
 import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
 import org.snomed.snowstorm.core.data.services.pojo.IntegrityIssueReport;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -57,12 +59,17 @@ public class IntegrityService extends ComponentService implements CommitListener
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Autowired
+	private ActiveConceptSnapshotService activeConceptSnapshotService;
+
 	public static final String INTEGRITY_ISSUE_METADATA_KEY = "integrityIssue";
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	@Override
 	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		activeConceptSnapshotService.applyCommit(commit);
+
 		final String integrityIssueString = commit.getBranch().getMetadata().getMapOrCreate(INTERNAL_METADATA_KEY).get(INTEGRITY_ISSUE_METADATA_KEY);
 		if (Boolean.parseBoolean(integrityIssueString)) {
 			try {
@@ -107,9 +114,12 @@ public class IntegrityService extends ComponentService implements CommitListener
 		final Map<Long, Long> relationshipWithInactiveDestination = new Long2LongOpenHashMap();
 		final Map<String, Set<Long>> axiomWithInactiveReferencedConcept = new HashMap<>();
 
+		// Active concepts of this branch version if held in memory
+		Optional<LongSet> activeConceptSnapshot = activeConceptSnapshotService.getActiveConcepts(branchCriteria);
+
 		// Find any active stated relationships using the concepts which have been deleted or inactivated on this branch
 		// First find those concept
-		Set<Long> deletedOrInactiveConcepts = findDeletedOrInactivatedConcepts(branch, branchCriteria);
+		Set<Long> deletedOrInactiveConcepts = findDeletedOrInactivatedConcepts(branch, branchCriteria, activeConceptSnapshot);
 		timer.checkpoint("Collect deleted or inactive concepts: " + deletedOrInactiveConcepts.size());
 
 		// Then find the relationships with bad integrity
@@ -241,17 +251,7 @@ public class IntegrityService extends ComponentService implements CommitListener
 		conceptsRequiredActive.addAll(conceptUsedInAxioms.keySet());
 		timer.checkpoint("Collect concepts referenced in changed relationships and axioms: " + conceptsRequiredActive.size());
 
-		Set<Long> activeConcepts = new LongOpenHashSet();
-		try (SearchHitsIterator<Concept> activeConceptStream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
-				.withQuery(boolQuery()
-						.must(branchCriteria.getEntityBranchCriteria(Concept.class))
-						.must(termQuery(ACTIVE, true))
-						.must(termsQuery(Concept.Fields.CONCEPT_ID, conceptsRequiredActive))
-				)
-				.withFields(Concept.Fields.CONCEPT_ID)
-				.build(), Concept.class)) {
-			activeConceptStream.forEachRemaining(hit -> activeConcepts.add(hit.getContent().getConceptIdAsLong()));
-		}
+		Set<Long> activeConcepts = findActiveConcepts(conceptsRequiredActive, branchCriteria, activeConceptSnapshot);
 		timer.checkpoint("Collect active concepts referenced in changed relationships and axioms: " + activeConcepts.size());
 
 		// If any concepts not active add the relationships which use them to the report because they have bad integrity
@@ -384,17 +384,7 @@ public class IntegrityService extends ComponentService implements CommitListener
 		conceptIdsToCheck.addAll(relationshipIdToDestinationMap.values());
 		conceptIdsToCheck.addAll(relationshipIdToTypeMap.values());
 
-		Set<Long> activeConcepts = new LongOpenHashSet();
-		try (SearchHitsIterator<Concept> activeConceptStream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
-				.withQuery(boolQuery()
-						.must(taskBranchCriteria.getEntityBranchCriteria(Concept.class))
-						.must(termQuery(ACTIVE, true))
-						.must(termsQuery(Concept.Fields.CONCEPT_ID, conceptIdsToCheck))
-				)
-				.withFields(Concept.Fields.CONCEPT_ID)
-				.build(), Concept.class)) {
-			activeConceptStream.forEachRemaining(hit -> activeConcepts.add(hit.getContent().getConceptIdAsLong()));
-		}
+		Set<Long> activeConcepts = findActiveConcepts(conceptIdsToCheck, taskBranchCriteria, activeConceptSnapshotService.getActiveConcepts(taskBranchCriteria));
 		timer.checkpoint("Collect active concepts referenced in changed relationships and axioms: " + activeConcepts.size() + " on " + fixBranch.getPath());
 
 		// check axioms still with bad integrity
@@ -459,52 +449,56 @@ public class IntegrityService extends ComponentService implements CommitListener
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
 		TimerUtil timer = new TimerUtil("Full integrity check on " + branch.getPath());
 
-		// Fetch all active concepts
-		Set<Long> activeConcepts = new LongOpenHashSet(conceptService.findAllActiveConcepts(branchCriteria));
+		// Fetch all active concepts, referenced concepts are then checked in memory
+		LongSet activeConcepts = activeConceptSnapshotService.getOrLoadActiveConcepts(branchCriteria);
 		timer.checkpoint("Fetch active concepts: " + activeConcepts.size());
 
 		// Find relationships pointing to something other than the active concepts
-		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder();
-		BoolQueryBuilder boolQueryBuilder = boolQuery();
-		queryBuilder
-				.withQuery(boolQueryBuilder
-						.must(branchCriteria.getEntityBranchCriteria(Relationship.class))
-						.must(termQuery(ACTIVE, true))
-						.must(boolQuery()
-							.should(boolQuery().mustNot(termsQuery(SOURCE_ID, activeConcepts)))
-							.should(boolQuery().mustNot(termsQuery(TYPE_ID, activeConcepts)))
-							.should(boolQuery().mustNot(termsQuery(Relationship.Fields.DESTINATION_ID, activeConcepts)))
-						)
-				)
-				.withPageable(LARGE_PAGE);
+		BoolQueryBuilder relationshipQuery = boolQuery()
+				.must(branchCriteria.getEntityBranchCriteria(Relationship.class))
+				.must(termQuery(ACTIVE, true));
 		if (stated) {
-			boolQueryBuilder.mustNot(termsQuery(CHARACTERISTIC_TYPE_ID, Concepts.INFERRED_RELATIONSHIP));
+			relationshipQuery.mustNot(termsQuery(CHARACTERISTIC_TYPE_ID, Concepts.INFERRED_RELATIONSHIP));
 		} else {
-			boolQueryBuilder.must(termsQuery(CHARACTERISTIC_TYPE_ID, Concepts.INFERRED_RELATIONSHIP));
+			relationshipQuery.must(termsQuery(CHARACTERISTIC_TYPE_ID, Concepts.INFERRED_RELATIONSHIP));
 		}
-		try (SearchHitsIterator<Relationship> relationshipStream = elasticsearchTemplate.searchForStream(queryBuilder.build(), Relationship.class)) {
+		try (SearchHitsIterator<Relationship> relationshipStream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(relationshipQuery)
+				.withFields(Relationship.Fields.RELATIONSHIP_ID, SOURCE_ID, TYPE_ID, DESTINATION_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), Relationship.class)) {
 			relationshipStream.forEachRemaining(hit -> {
 				Relationship relationship = hit.getContent();
 				long relationshipId = parseLong(relationship.getRelationshipId());
 				putIfInactive(relationship.getSourceId(), activeConcepts, relationshipId, relationshipWithInactiveSource);
 				putIfInactive(relationship.getTypeId(), activeConcepts, relationshipId, relationshipWithInactiveType);
-				putIfInactive(relationship.getDestinationId(), activeConcepts, relationshipId, relationshipWithInactiveDestination);
+				// Concrete relationships have a value rather than a destination
+				if (relationship.getDestinationId() != null) {
+					putIfInactive(relationship.getDestinationId(), activeConcepts, relationshipId, relationshipWithInactiveDestination);
+				}
 			});
 		}
+		timer.checkpoint("Check relationships: " + (relationshipWithInactiveSource.size() + relationshipWithInactiveType.size() + relationshipWithInactiveDestination.size()));
 
 		// Find Axioms pointing to something other than the active concepts, use semantic index first.
 		Set<Long> conceptIdsWithBadAxioms = new LongOpenHashSet();
-		try (SearchHitsIterator<QueryConcept> badStatedIndexConcepts = elasticsearchTemplate.searchForStream(
+		try (SearchHitsIterator<QueryConcept> statedIndexConcepts = elasticsearchTemplate.searchForStream(
 				new NativeSearchQueryBuilder()
 						.withQuery(boolQuery()
 								.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
 								.must(termQuery(QueryConcept.Fields.STATED, true))
-								.mustNot(termsQuery(QueryConcept.Fields.ATTR + "." + QueryConcept.ATTR_TYPE_WILDCARD, activeConcepts))
 						)
+						.withFields(QueryConcept.Fields.CONCEPT_ID, QueryConcept.Fields.PARENTS, QueryConcept.Fields.ATTR_MAP)
 						.withPageable(LARGE_PAGE).build(),
 				QueryConcept.class)) {
-			badStatedIndexConcepts.forEachRemaining(hit -> conceptIdsWithBadAxioms.add(hit.getContent().getConceptIdL()));
+			statedIndexConcepts.forEachRemaining(hit -> {
+				QueryConcept queryConcept = hit.getContent();
+				if (referencesInactiveConcept(queryConcept, activeConcepts)) {
+					conceptIdsWithBadAxioms.add(queryConcept.getConceptIdL());
+				}
+			});
 		}
+		timer.checkpoint("Check semantic index: " + conceptIdsWithBadAxioms.size());
 		if (!conceptIdsWithBadAxioms.isEmpty()) {
 			try (SearchHitsIterator<ReferenceSetMember> possiblyBadAxioms = elasticsearchTemplate.searchForStream(
 					new NativeSearchQueryBuilder()
@@ -540,6 +534,57 @@ public class IntegrityService extends ComponentService implements CommitListener
 		return getReport(axiomWithInactiveReferencedConcept, relationshipWithInactiveSource, relationshipWithInactiveType, relationshipWithInactiveDestination);
 	}
 
+	private Set<Long> findActiveConcepts(Set<Long> conceptIds, BranchCriteria branchCriteria, Optional<LongSet> activeConceptSnapshot) {
+		Set<Long> activeConcepts = new LongOpenHashSet();
+		if (activeConceptSnapshot.isPresent()) {
+			LongSet snapshot = activeConceptSnapshot.get();
+			for (Long conceptId : conceptIds) {
+				if (snapshot.contains(conceptId.longValue())) {
+					activeConcepts.add(conceptId);
+				}
+			}
+			return activeConcepts;
+		}
+		try (SearchHitsIterator<Concept> activeConceptStream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(Concept.class))
+						.must(termQuery(ACTIVE, true))
+						.must(termsQuery(Concept.Fields.CONCEPT_ID, conceptIds))
+				)
+				.withFields(Concept.Fields.CONCEPT_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), Concept.class)) {
+			activeConceptStream.forEachRemaining(hit -> activeConcepts.add(hit.getContent().getConceptIdAsLong()));
+		}
+		return activeConcepts;
+	}
+
+	private boolean referencesInactiveConcept(QueryConcept queryConcept, LongSet activeConcepts) {
+		if (queryConcept.getParents() != null) {
+			for (Long parent : queryConcept.getParents()) {
+				if (!activeConcepts.contains(parent.longValue())) {
+					return true;
+				}
+			}
+		}
+		for (Map.Entry<String, Set<Object>> attribute : queryConcept.getAttr().entrySet()) {
+			// Skip the wildcard entries of the flat attribute map
+			if (!IdentifierService.isConceptId(attribute.getKey())) {
+				continue;
+			}
+			if (!activeConcepts.contains(parseLong(attribute.getKey()))) {
+				return true;
+			}
+			for (Object value : attribute.getValue()) {
+				// Concept ids are held as strings, concrete values as numbers or strings
+				if (value instanceof String && IdentifierService.isConceptId((String) value) && !activeConcepts.contains(parseLong((String) value))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
 	private void addConceptMini(Map<String, ConceptMini> axiomsWithInactiveReferencedConcept, Map<String, ConceptMini> conceptMiniMap,
 			String axiomMemberId, String referencedComponentId, Collection<Long> badReferences) {
 
@@ -575,7 +620,7 @@ public class IntegrityService extends ComponentService implements CommitListener
 		return issueReport;
 	}
 
-	private void putIfInactive(String sourceId, Collection<Long> activeConcepts, long relationshipId, Map<Long, Long> relationshipWithInactiveSource) {
+	private void putIfInactive(String sourceId, LongSet activeConcepts, long relationshipId, Map<Long, Long> relationshipWithInactiveSource) {
 		long source = parseLong(sourceId);
 		if (!activeConcepts.contains(source)) {
 			relationshipWithInactiveSource.put(relationshipId, source);
@@ -618,7 +663,7 @@ public class IntegrityService extends ComponentService implements CommitListener
 		return new ConceptsInForm(statedIds, inferredIds);
 	}
 
-	private Set<Long> findDeletedOrInactivatedConcepts(Branch branch, BranchCriteria branchCriteria) {
+	private Set<Long> findDeletedOrInactivatedConcepts(Branch branch, BranchCriteria branchCriteria, Optional<LongSet> activeConceptSnapshot) {
 		// Find Concepts changed or deleted on this branch
 		final Set<Long> changedOrDeletedConcepts = new LongOpenHashSet();
 		try (SearchHitsIterator<Concept> changedOrDeletedConceptStream = elasticsearchTemplate.searchForStream(
@@ -631,19 +676,7 @@ public class IntegrityService extends ComponentService implements CommitListener
 		logger.info("Concepts changed or deleted on branch {} = {}", branch.getPath(), changedOrDeletedConcepts.size());
 
 		// Of these concepts, which are currently present and active?
-		final Set<Long> changedAndActiveConcepts = new LongOpenHashSet();
-		try (SearchHitsIterator<Concept> changedOrDeletedConceptStream = elasticsearchTemplate.searchForStream(
-				new NativeSearchQueryBuilder()
-						.withQuery(boolQuery()
-								.must(branchCriteria.getEntityBranchCriteria(Concept.class))
-								.must(termsQuery(Concept.Fields.CONCEPT_ID, changedOrDeletedConcepts))
-								.must(termQuery(ACTIVE, true))
-						)
-						.withFields(Concept.Fields.CONCEPT_ID)
-						.withPageable(LARGE_PAGE).build(),
-				Concept.class)) {
-			changedOrDeletedConceptStream.forEachRemaining(hit -> changedAndActiveConcepts.add(hit.getContent().getConceptIdAsLong()));
-		}
+		final Set<Long> changedAndActiveConcepts = findActiveConcepts(changedOrDeletedConcepts, branchCriteria, activeConceptSnapshot);
 		logger.info("Concepts changed, currently present and active on branch {} = {}", branch.getPath(), changedAndActiveConcepts.size());
 
 		// Therefore concepts deleted or inactive are:
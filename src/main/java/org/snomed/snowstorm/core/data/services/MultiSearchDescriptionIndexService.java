@@ -0,0 +1,252 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.PathUtil;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.repositories.MultiSearchDescriptionRepository;
+import org.snomed.snowstorm.core.data.repositories.MultiSearchIndexedVersionRepository;
+import org.snomed.snowstorm.core.util.TimerUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+
+/**
+ * Maintains the multi-search description index, which holds the descriptions of the latest version of every code system
+ * together with the code system, the concept active flag and the concept reference set membership.
+ * <p>
+ * Updates are queued and run one at a time in the background so that version creation and the scheduled update do not wait on each other.
+ * A version is only searchable once all of its descriptions are indexed, until then the previous version of the code system is searched.
+ * Versions never change so a code system is only indexed again when its latest version changes.
+ * <p>
+ * The indexed versions are read from Elasticsearch and held for a few seconds, so that all instances see a version once it is indexed.
+ */
+@Service
+public class MultiSearchDescriptionIndexService {
+
+	private static final int BATCH_SIZE = 10_000;
+	private static final int INDEXED_VERSIONS_CACHE_SECONDS = 10;
+	private static final String INDEXED_VERSIONS_KEY = "indexed-versions";
+
+	@Value("${search.multi.index.synchronous}")
+	private boolean synchronous;
+
+	@Autowired
+	private MultiSearchDescriptionRepository repository;
+
+	@Autowired
+	private MultiSearchIndexedVersionRepository indexedVersionRepository;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchRestTemplate elasticsearchTemplate;
+
+	// Code system short name -> version branch path completely held in the index
+	private final Cache<String, Map<String, String>> indexedVersionsCache = Caffeine.newBuilder()
+			.expireAfterWrite(INDEXED_VERSIONS_CACHE_SECONDS, TimeUnit.SECONDS)
+			.build();
+
+	private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PreDestroy
+	public void shutdown() {
+		indexExecutor.shutdownNow();
+	}
+
+	/**
+	 * @return version branch path of each code system that can be searched, by code system short name
+	 */
+	public Map<String, String> getIndexedVersions() {
+		return indexedVersionsCache.get(INDEXED_VERSIONS_KEY, key -> loadIndexedVersions());
+	}
+
+	/**
+	 * Queues indexing the latest version of each code system given and removing code systems which are not given or have no version.
+	 */
+	public void update(Collection<CodeSystem> codeSystems) {
+		Map<String, CodeSystemVersion> latestVersions = new HashMap<>();
+		for (CodeSystem codeSystem : codeSystems) {
+			if (codeSystem.getLatestVersion() != null) {
+				latestVersions.put(codeSystem.getShortName(), codeSystem.getLatestVersion());
+			}
+		}
+		run("update all code systems", () -> {
+			latestVersions.forEach(this::doUpdate);
+			for (String codeSystem : loadIndexedVersions().keySet()) {
+				if (!latestVersions.containsKey(codeSystem)) {
+					remove(codeSystem);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Queues indexing the descriptions of the version unless this is already the indexed version of the code system.
+	 * @param latestVersion the latest visible version of the code system, or null to remove the code system
+	 */
+	public void update(String codeSystem, CodeSystemVersion latestVersion) {
+		run("update " + codeSystem, () -> doUpdate(codeSystem, latestVersion));
+	}
+
+	public void deleteAll() {
+		Future<?> future = indexExecutor.submit(() -> {
+			repository.deleteAll();
+			indexedVersionRepository.deleteAll();
+			indexedVersionsCache.invalidateAll();
+		});
+		await(future);
+	}
+
+	private void run(String name, Runnable update) {
+		Future<?> future = indexExecutor.submit(() -> {
+			try {
+				update.run();
+			} catch (RuntimeException e) {
+				logger.error("Failed to {} in the multi-search description index.", name, e);
+			}
+		});
+		if (synchronous) {
+			await(future);
+		}
+	}
+
+	private void await(Future<?> future) {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while updating the multi-search description index.", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Failed to update the multi-search description index.", e.getCause());
+		}
+	}
+
+	private void doUpdate(String codeSystem, CodeSystemVersion latestVersion) {
+		if (latestVersion == null) {
+			remove(codeSystem);
+			return;
+		}
+		String versionPath = latestVersion.getBranchPath();
+		if (!versionPath.equals(loadIndexedVersions().get(codeSystem))) {
+			index(codeSystem, versionPath, latestVersion.getEffectiveDate());
+		}
+	}
+
+	private void index(String codeSystem, String versionPath, Integer versionEffectiveTime) {
+		logger.info("Indexing multi-search descriptions of {} version {}.", codeSystem, versionPath);
+		TimerUtil timer = new TimerUtil("Multi-search index " + codeSystem);
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(versionPath);
+		BoolQueryBuilder descriptionQuery = boolQuery()
+				.must(branchCriteria.getEntityBranchCriteria(Description.class));
+		if (!Branch.MAIN.equals(PathUtil.getParentPath(versionPath))) {
+			// Prevent content on MAIN being found in every other code system
+			descriptionQuery.mustNot(termQuery("path", Branch.MAIN));
+		}
+
+		long descriptionCount = 0;
+		try (SearchHitsIterator<Description> descriptions = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(descriptionQuery)
+				.withPageable(LARGE_PAGE).build(), Description.class)) {
+			List<Description> batch = new ArrayList<>(BATCH_SIZE);
+			while (descriptions.hasNext()) {
+				batch.add(descriptions.next().getContent());
+				if (batch.size() == BATCH_SIZE || !descriptions.hasNext()) {
+					indexBatch(codeSystem, versionPath, versionEffectiveTime, batch, branchCriteria);
+					descriptionCount += batch.size();
+					batch = new ArrayList<>(BATCH_SIZE);
+				}
+			}
+		}
+		timer.checkpoint("Index descriptions");
+
+		// The new version becomes searchable before the previous version is removed
+		indexedVersionRepository.save(new MultiSearchIndexedVersion(codeSystem, versionPath, descriptionCount));
+		indexedVersionsCache.invalidateAll();
+		deleteDescriptions(boolQuery()
+				.must(termQuery(MultiSearchDescription.Fields.CODE_SYSTEM, codeSystem))
+				.mustNot(termQuery(MultiSearchDescription.Fields.VERSION_PATH, versionPath)));
+		timer.finish();
+		logger.info("Indexed {} multi-search descriptions of {} version {}.", descriptionCount, codeSystem, versionPath);
+	}
+
+	private void indexBatch(String codeSystem, String versionPath, Integer versionEffectiveTime, List<Description> descriptions, BranchCriteria branchCriteria) {
+		Set<Long> conceptIds = new HashSet<>();
+		for (Description description : descriptions) {
+			conceptIds.add(Long.parseLong(description.getConceptId()));
+		}
+
+		Set<String> activeConceptIds = new HashSet<>();
+		try (SearchHitsIterator<Concept> concepts = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(Concept.class))
+						.must(termQuery(Concept.Fields.ACTIVE, true))
+						.filter(termsQuery(Concept.Fields.CONCEPT_ID, conceptIds)))
+				.withFields(Concept.Fields.CONCEPT_ID)
+				.withPageable(LARGE_PAGE).build(), Concept.class)) {
+			concepts.forEachRemaining(hit -> activeConceptIds.add(hit.getContent().getConceptId()));
+		}
+
+		Map<String, Set<String>> conceptMemberOf = new HashMap<>();
+		try (SearchHitsIterator<ReferenceSetMember> members = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+						.must(termQuery(ReferenceSetMember.Fields.ACTIVE, true))
+						.filter(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds)))
+				.withFields(ReferenceSetMember.Fields.REFSET_ID, ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID)
+				.withPageable(LARGE_PAGE).build(), ReferenceSetMember.class)) {
+			members.forEachRemaining(hit -> conceptMemberOf.computeIfAbsent(hit.getContent().getReferencedComponentId(), id -> new HashSet<>())
+					.add(hit.getContent().getRefsetId()));
+		}
+
+		List<MultiSearchDescription> multiSearchDescriptions = new ArrayList<>(descriptions.size());
+		for (Description description : descriptions) {
+			String conceptId = description.getConceptId();
+			multiSearchDescriptions.add(new MultiSearchDescription(codeSystem, versionPath, versionEffectiveTime, description,
+					activeConceptIds.contains(conceptId), conceptMemberOf.getOrDefault(conceptId, Collections.emptySet())));
+		}
+		repository.saveAll(multiSearchDescriptions);
+	}
+
+	private void remove(String codeSystem) {
+		if (!loadIndexedVersions().containsKey(codeSystem)) {
+			return;
+		}
+		logger.info("Removing {} from the multi-search description index.", codeSystem);
+		indexedVersionRepository.deleteById(codeSystem);
+		indexedVersionsCache.invalidateAll();
+		deleteDescriptions(boolQuery().must(termQuery(MultiSearchDescription.Fields.CODE_SYSTEM, codeSystem)));
+	}
+
+	private void deleteDescriptions(BoolQueryBuilder query) {
+		elasticsearchTemplate.delete(new NativeSearchQueryBuilder().withQuery(query).build(), MultiSearchDescription.class,
+				elasticsearchTemplate.getIndexCoordinatesFor(MultiSearchDescription.class));
+	}
+
+	private Map<String, String> loadIndexedVersions() {
+		Map<String, String> versions = new HashMap<>();
+		for (MultiSearchIndexedVersion indexedVersion : indexedVersionRepository.findAll()) {
+			versions.put(indexedVersion.getCodeSystem(), indexedVersion.getVersionPath());
+		}
+		return versions;
+	}
+}
@@ -6,7 +6,6 @@ import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
 
 import static org.snomed.snowstorm.config.Config.AGGREGATION_SEARCH_SIZE;
 
-import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -14,18 +13,22 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.search.aggregations.Aggregation;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.Cardinality;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.CodeSystem;
 import org.snomed.snowstorm.core.data.domain.CodeSystemVersion;
 import org.snomed.snowstorm.core.data.domain.Concept;
 import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.MultiSearchDescription;
 import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
 import org.snomed.snowstorm.core.data.services.pojo.ConceptCriteria;
 import org.snomed.snowstorm.core.data.services.pojo.DescriptionCriteria;
@@ -41,22 +44,27 @@ import org.springframework.data.elasticsearch.core.SearchHits;
 import org.springframework.data.elasticsearch.core.SearchHitsIterator;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
-import io.kaicode.elasticvc.api.CommitListener;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
 import io.kaicode.elasticvc.api.PathUtil;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.elasticvc.domain.Branch;
-import io.kaicode.elasticvc.domain.Commit;
-import io.kaicode.elasticvc.domain.Commit.CommitType;
+import io.kaicode.elasticvc.domain.DomainEntity;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 
 @Service
 /*
  * Service specifically for searching across multiple code systems or branches.
  */
-public class MultiSearchService implements CommitListener {
+public class MultiSearchService {
+
+	private static final int LATEST_VERSIONS_CACHE_SECONDS = 60;
+	private static final String LATEST_VERSIONS_CACHE_KEY = "latest-versions";
 
 	@Autowired
 	private DescriptionService descriptionService;
@@ -72,54 +80,119 @@ public class MultiSearchService implements CommitListener {
 
 	@Autowired
 	private ElasticsearchRestTemplate elasticsearchTemplate;
-	
+
+	@Autowired
+	private MultiSearchDescriptionIndexService descriptionIndexService;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 	
 	Map<String, String> publishedBranches = new HashMap<>();
-	
-	BoolQueryBuilder cachedBranchesQuery = null;
-	LocalDate cacheDate = null;
+
+	// Latest version branch path by code system short name, finding the latest versions of all code systems is expensive.
+	// A new version is searched through the description index straight away, other searches may use the previous version for up to a minute.
+	private final Cache<String, Map<String, String>> latestVersionPathsCache = Caffeine.newBuilder()
+			.expireAfterWrite(LATEST_VERSIONS_CACHE_SECONDS, TimeUnit.SECONDS)
+			.build();
 
 	public Page<Description> findDescriptions(DescriptionCriteria criteria, PageRequest pageRequest) {
-		
-		SearchHits<Description> searchHits = findDescriptionsHelper(criteria, pageRequest);
-		return new PageImpl<>(searchHits.get().map(SearchHit::getContent).collect(Collectors.toList()), pageRequest, searchHits.getTotalHits());
+		Map<String, String> latestVersionPaths = getLatestVersionPaths();
+		if (!isDescriptionIndexComplete(latestVersionPaths)) {
+			SearchHits<Description> searchHits = findVersionDescriptions(criteria, latestVersionPaths.values(), pageRequest);
+			return new PageImpl<>(searchHits.get().map(SearchHit::getContent).collect(Collectors.toList()), pageRequest, searchHits.getTotalHits());
+		}
+		SearchHits<MultiSearchDescription> searchHits = elasticsearchTemplate.search(getDescriptionQuery(criteria, pageRequest, false), MultiSearchDescription.class);
+		return new PageImpl<>(searchHits.get().map(hit -> hit.getContent().toDescription()).collect(Collectors.toList()), pageRequest, searchHits.getTotalHits());
 	}
-	
-	public PageWithBucketAggregations<Description> findDescriptionsReferenceSets(DescriptionCriteria criteria, PageRequest pageRequest) {
 
-		// all search results are required to determine total refset bucket membership
-		SearchHits<Description> allSearchHits = findDescriptionsHelper(criteria, null);
-		// paged results are required for the list of descriptions returned
-		SearchHits<Description> searchHits = findDescriptionsHelper(criteria, pageRequest);
-		
-		List<Aggregation> allAggregations = new ArrayList<>();
-		Set<Long> conceptIds = new HashSet<>();
-		for (SearchHit<Description> desc : allSearchHits) {
-			conceptIds.add(Long.parseLong(desc.getContent().getConceptId()));
+	public PageWithBucketAggregations<Description> findDescriptionsReferenceSets(DescriptionCriteria criteria, PageRequest pageRequest) {
+		Map<String, String> latestVersionPaths = getLatestVersionPaths();
+		if (!isDescriptionIndexComplete(latestVersionPaths)) {
+			return findVersionDescriptionsReferenceSets(criteria, latestVersionPaths.values(), pageRequest);
 		}
-		// Fetch concept refset membership aggregation
-		SearchHits<ReferenceSetMember> membershipResults = elasticsearchTemplate.search(new NativeSearchQueryBuilder()
-						.withQuery(boolQuery()
-								//.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
-								.must(termsQuery(ReferenceSetMember.Fields.ACTIVE, true))
-								.filter(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds))
-						)
-						.withPageable(PageRequest.of(0, 1))
-						.addAggregation(AggregationBuilders.terms("membership").field(ReferenceSetMember.Fields.REFSET_ID).size(AGGREGATION_SEARCH_SIZE))
-						.build(), ReferenceSetMember.class);
-		Aggregations aggregations = membershipResults.getAggregations();
+
+		// Reference set membership of the concepts of all matching descriptions is aggregated in the same query as the page
+		SearchHits<MultiSearchDescription> searchHits = elasticsearchTemplate.search(getDescriptionQuery(criteria, pageRequest, true), MultiSearchDescription.class);
+
+		// Count concepts rather than descriptions in each reference set
+		Map<String, Long> membership = new HashMap<>();
+		Aggregations aggregations = searchHits.getAggregations();
 		if (aggregations != null) {
-			allAggregations.add(aggregations.get("membership"));
+			Terms membershipTerms = aggregations.get("membership");
+			for (Terms.Bucket bucket : membershipTerms.getBuckets()) {
+				Cardinality concepts = bucket.getAggregations().get("concepts");
+				membership.put(bucket.getKeyAsString(), concepts.getValue());
+			}
 		}
+		Map<String, Map<String, Long>> buckets = new HashMap<>();
+		buckets.put("membership", membership);
 
-		return PageWithBucketAggregationsFactory.createPage(searchHits, new Aggregations(allAggregations), pageRequest);
+		List<Description> descriptions = searchHits.get().map(hit -> hit.getContent().toDescription()).collect(Collectors.toList());
+		return new PageWithBucketAggregations<>(descriptions, pageRequest, searchHits.getTotalHits(), buckets);
 	}
-	
-	private SearchHits<Description> findDescriptionsHelper(DescriptionCriteria criteria, PageRequest pageRequest) {
-		final BoolQueryBuilder branchesQuery = getBranchesQuery();
+
+	// A code system with a version which has never been indexed can only be found in the version branch content
+	private boolean isDescriptionIndexComplete(Map<String, String> latestVersionPaths) {
+		return descriptionIndexService.getIndexedVersions().keySet().containsAll(latestVersionPaths.keySet());
+	}
+
+	private NativeSearchQuery getDescriptionQuery(DescriptionCriteria criteria, PageRequest pageRequest, boolean aggregateMembership) {
+		// Only search versions which are completely indexed
+		BoolQueryBuilder versionsQuery = boolQuery();
+		Map<String, String> indexedVersions = descriptionIndexService.getIndexedVersions();
+		for (Map.Entry<String, String> indexedVersion : indexedVersions.entrySet()) {
+			versionsQuery.should(boolQuery()
+					.must(termQuery(MultiSearchDescription.Fields.CODE_SYSTEM, indexedVersion.getKey()))
+					.must(termQuery(MultiSearchDescription.Fields.VERSION_PATH, indexedVersion.getValue())));
+		}
+
+		final BoolQueryBuilder descriptionQuery = boolQuery()
+				.filter(versionsQuery);
+
+		descriptionService.addTermClauses(criteria.getTerm(), criteria.getSearchMode(), criteria.getSearchLanguageCodes(), criteria.getType(), descriptionQuery);
+
+		Boolean active = criteria.getActive();
+		if (active != null) {
+			descriptionQuery.must(termQuery(Description.Fields.ACTIVE, active));
+		}
+
+		Collection<String> modules = criteria.getModules();
+		if (!CollectionUtils.isEmpty(modules)) {
+			descriptionQuery.must(termsQuery(Description.Fields.MODULE_ID, modules));
+		}
+
+		if (criteria.getConceptActive() != null) {
+			descriptionQuery.filter(termQuery(MultiSearchDescription.Fields.CONCEPT_ACTIVE, criteria.getConceptActive()));
+		}
+
+		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+				.withQuery(descriptionQuery)
+				.withPageable(pageRequest);
+		if (aggregateMembership) {
+			queryBuilder.addAggregation(AggregationBuilders.terms("membership").field(MultiSearchDescription.Fields.CONCEPT_MEMBER_OF).size(AGGREGATION_SEARCH_SIZE)
+					.subAggregation(AggregationBuilders.cardinality("concepts").field(Description.Fields.CONCEPT_ID).precisionThreshold(40_000)));
+		}
+		NativeSearchQuery query = queryBuilder.build();
+		query.setTrackTotalHits(true);
+		DescriptionService.addTermSort(query);
+		return query;
+	}
+
+	/**
+	 * Keeps the multi-search description index in line with the latest version of each code system,
+	 * including versions which only become visible over time. New versions are indexed as they are created.
+	 */
+	@Scheduled(fixedDelay = 3600_000, initialDelay = 60_000)
+	public void updateDescriptionIndex() {
+		descriptionIndexService.update(codeSystemService.findAll());
+	}
+
+	/**
+	 * Searches the descriptions of the version branches, used while a code system version has not yet been added to the description index.
+	 */
+	private SearchHits<Description> findVersionDescriptions(DescriptionCriteria criteria, Collection<String> versionPaths, PageRequest pageRequest) {
+		final BoolQueryBuilder versionsQuery = getVersionsQuery(versionPaths, Description.class);
 		final BoolQueryBuilder descriptionQuery = boolQuery()
-				.must(branchesQuery);
+				.must(versionsQuery);
 
 		descriptionService.addTermClauses(criteria.getTerm(), criteria.getSearchMode(), criteria.getSearchLanguageCodes(), criteria.getType(), descriptionQuery);
 
@@ -133,18 +206,14 @@ public class MultiSearchService implements CommitListener {
 			descriptionQuery.must(termsQuery(Description.Fields.MODULE_ID, modules));
 		}
 
-		NativeSearchQueryBuilder queryBuilder;
-		// if pageRequest is null, get all (needed for bucket membership
-		if (pageRequest == null) {
-		  queryBuilder = new NativeSearchQueryBuilder()
+		NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
 				.withQuery(descriptionQuery);
-		} else {
-		  queryBuilder = new NativeSearchQueryBuilder()
-						.withQuery(descriptionQuery)
-						.withPageable(pageRequest);
+		// if pageRequest is null, get all (needed for bucket membership)
+		if (pageRequest != null) {
+			queryBuilder.withPageable(pageRequest);
 		}
 		if (criteria.getConceptActive() != null) {
-			Set<Long> conceptsToFetch = getMatchedConcepts(criteria.getConceptActive(), branchesQuery, descriptionQuery);
+			Set<Long> conceptsToFetch = getMatchedConcepts(criteria.getConceptActive(), getVersionsQuery(versionPaths, Concept.class), descriptionQuery);
 			queryBuilder.withFilter(boolQuery().must(termsQuery(Description.Fields.CONCEPT_ID, conceptsToFetch)));
 		}
 		NativeSearchQuery query = queryBuilder.build();
@@ -154,8 +223,38 @@ public class MultiSearchService implements CommitListener {
 		return elasticsearchTemplate.search(query, Description.class);
 	}
 
+	private PageWithBucketAggregations<Description> findVersionDescriptionsReferenceSets(DescriptionCriteria criteria, Collection<String> versionPaths,
+			PageRequest pageRequest) {
+
+		// all search results are required to determine total refset bucket membership
+		SearchHits<Description> allSearchHits = findVersionDescriptions(criteria, versionPaths, null);
+		// paged results are required for the list of descriptions returned
+		SearchHits<Description> searchHits = findVersionDescriptions(criteria, versionPaths, pageRequest);
 
-	private Set<Long> getMatchedConcepts(Boolean conceptActiveFlag, BoolQueryBuilder branchesQuery, BoolQueryBuilder descriptionQuery) {
+		List<Aggregation> allAggregations = new ArrayList<>();
+		Set<Long> conceptIds = new HashSet<>();
+		for (SearchHit<Description> desc : allSearchHits) {
+			conceptIds.add(Long.parseLong(desc.getContent().getConceptId()));
+		}
+		// Fetch concept refset membership aggregation
+		SearchHits<ReferenceSetMember> membershipResults = elasticsearchTemplate.search(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(getVersionsQuery(versionPaths, ReferenceSetMember.class))
+						.must(termsQuery(ReferenceSetMember.Fields.ACTIVE, true))
+						.filter(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds))
+				)
+				.withPageable(PageRequest.of(0, 1))
+				.addAggregation(AggregationBuilders.terms("membership").field(ReferenceSetMember.Fields.REFSET_ID).size(AGGREGATION_SEARCH_SIZE))
+				.build(), ReferenceSetMember.class);
+		Aggregations aggregations = membershipResults.getAggregations();
+		if (aggregations != null) {
+			allAggregations.add(aggregations.get("membership"));
+		}
+
+		return PageWithBucketAggregationsFactory.createPage(searchHits, new Aggregations(allAggregations), pageRequest);
+	}
+
+	private Set<Long> getMatchedConcepts(Boolean conceptActiveFlag, BoolQueryBuilder conceptVersionsQuery, BoolQueryBuilder descriptionQuery) {
 		// return description and concept ids
 		Set<Long> conceptIdsMatched = new LongOpenHashSet();
 		try (final SearchHitsIterator<Description> descriptions = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
@@ -164,14 +263,14 @@ public class MultiSearchService implements CommitListener {
 				.withPageable(ConceptService.LARGE_PAGE).build(), Description.class)) {
 			while (descriptions.hasNext()) {
 				conceptIdsMatched.add(Long.valueOf(descriptions.next().getContent().getConceptId()));
-		}
+			}
 		}
 		// filter description ids based on concept query results using active flag
 		Set<Long> result = new LongOpenHashSet();
 		if (!conceptIdsMatched.isEmpty()) {
 			try (final SearchHitsIterator<Concept> concepts = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
 					.withQuery(boolQuery()
-							.must(branchesQuery)
+							.must(conceptVersionsQuery)
 							.must(termsQuery(Concept.Fields.CONCEPT_ID, conceptIdsMatched))
 					)
 					.withFilter(boolQuery().must(termQuery(Concept.Fields.ACTIVE, conceptActiveFlag)))
@@ -185,32 +284,42 @@ public class MultiSearchService implements CommitListener {
 		return result;
 	}
 
-	private BoolQueryBuilder getBranchesQuery() {
-		LocalDate today = LocalDate.now();
-		if (cachedBranchesQuery == null || !cacheDate.equals(today)) {
-			long startTime = System.currentTimeMillis();
-			Set<String> branchPaths = getAllPublishedVersionBranchPaths();
-			//long endTime = System.currentTimeMillis();
-			//logger.info("Mutisearch finding published paths took " + (endTime - startTime) + "ms");
-			
-			cachedBranchesQuery = boolQuery();
-			if (branchPaths.isEmpty()) {
-				cachedBranchesQuery.must(termQuery("path", "this-will-match-nothing"));
+	private BoolQueryBuilder getVersionsQuery(Collection<String> versionPaths, Class<? extends DomainEntity> entityClass) {
+		BoolQueryBuilder versionsQuery = boolQuery();
+		if (versionPaths.isEmpty()) {
+			versionsQuery.must(termQuery("path", "this-will-match-nothing"));
+		}
+		for (String versionPath : versionPaths) {
+			BoolQueryBuilder versionQuery = boolQuery();
+			if (!Branch.MAIN.equals(PathUtil.getParentPath(versionPath))) {
+				// Prevent content on MAIN being found in every other code system
+				versionQuery.mustNot(termQuery("path", Branch.MAIN));
 			}
-			for (String branchPath : branchPaths) {
-				BoolQueryBuilder branchQuery = boolQuery();
-				if (!Branch.MAIN.equals(PathUtil.getParentPath(branchPath))) {
-					// Prevent content on MAIN being found in every other code system
-					branchQuery.mustNot(termQuery("path", Branch.MAIN));
+			versionQuery.must(versionControlHelper.getBranchCriteria(versionPath).getEntityBranchCriteria(entityClass));
+			versionsQuery.should(versionQuery);
+		}
+		return versionsQuery;
+	}
+
+	private Map<String, String> getLatestVersionPaths() {
+		return latestVersionPathsCache.get(LATEST_VERSIONS_CACHE_KEY, key -> {
+			List<CodeSystem> codeSystems = codeSystemService.findAll();
+			Map<String, String> latestVersionPaths = new HashMap<>();
+			synchronized(this) {
+				publishedBranches.clear();
+				for (CodeSystem codeSystem : codeSystems) {
+					if (codeSystem.getLatestVersion() != null) {
+						latestVersionPaths.put(codeSystem.getShortName(), codeSystem.getLatestVersion().getBranchPath());
+						publishedBranches.put(codeSystem.getBranchPath(), codeSystem.getLatestVersion().getBranchPath());
+					}
 				}
-				branchQuery.must(versionControlHelper.getBranchCriteria(branchPath).getEntityBranchCriteria(Description.class));
-				cachedBranchesQuery.should(branchQuery);
 			}
-			long endTime = System.currentTimeMillis();
-			logger.info("Mutisearch branches query took " + (endTime - startTime) + "ms");
-		}
-		cacheDate = today;
-		return cachedBranchesQuery;
+			return latestVersionPaths;
+		});
+	}
+
+	public void clearCache() {
+		latestVersionPathsCache.invalidateAll();
 	}
 
 	public Set<String> getAllPublishedVersionBranchPaths() {
@@ -259,7 +368,7 @@ public class MultiSearchService implements CommitListener {
 	}
 
 	public Page<Concept> findConcepts(ConceptCriteria criteria, PageRequest pageRequest) {
-		final BoolQueryBuilder conceptQuery = boolQuery().must(getBranchesQuery());
+		final BoolQueryBuilder conceptQuery = boolQuery().must(getVersionsQuery(getLatestVersionPaths().values(), Concept.class));
 		conceptService.addClauses(criteria.getConceptIds(), criteria.getActive(), conceptQuery);
 		NativeSearchQuery query = new NativeSearchQueryBuilder()
 				.withQuery(conceptQuery)
@@ -273,11 +382,4 @@ public class MultiSearchService implements CommitListener {
 				.collect(Collectors.toList());
 		return new PageImpl<>(concepts, pageRequest, searchHits.getTotalHits());
 	}
-
-	@Override
-	public void preCommitCompletion(Commit commit) throws IllegalStateException {
-		if (commit.getCommitType().equals(CommitType.CONTENT)) {
-			cachedBranchesQuery = null;
-		}
-	}
 }
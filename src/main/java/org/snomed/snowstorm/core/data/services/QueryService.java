@@ -3,8 +3,13 @@ package org.snomed.snowstorm.core.data.services;
 import com.google.common.collect.Iterables;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.VersionControlHelper;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.IncludeExclude;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +17,7 @@ import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
 import org.snomed.snowstorm.core.data.services.pojo.DescriptionCriteria;
 import org.snomed.snowstorm.core.data.services.pojo.ResultMapPage;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.HierarchySnapshot;
 import org.snomed.snowstorm.core.pojo.BranchTimepoint;
 import org.snomed.snowstorm.core.pojo.LanguageDialect;
 import org.snomed.snowstorm.core.util.PageHelper;
@@ -55,6 +61,8 @@ import static org.snomed.snowstorm.ecl.ConceptSelectorHelper.getDefaultSortForCo
 public class QueryService implements ApplicationContextAware {
 
 	static final PageRequest PAGE_OF_ONE = PageRequest.of(0, 1);
+	private static final int DESCENDANT_COUNT_BATCH_SIZE = 1_000;
+	private static final String AGGREGATION_DESCENDANT_COUNTS = "descendantCounts";
 
 	@Autowired
 	private ElasticsearchRestTemplate elasticsearchTemplate;
@@ -68,6 +76,9 @@ public class QueryService implements ApplicationContextAware {
 	@Autowired
 	private DescriptionService descriptionService;
 
+	@Autowired
+	private HierarchySnapshotService hierarchySnapshotService;
+
 	private ConceptService conceptService;
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -388,6 +399,10 @@ public class QueryService implements ApplicationContextAware {
 	}
 
 	public Set<Long> findAncestorIdsAsUnion(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptId) {
+		Optional<HierarchySnapshot> hierarchySnapshot = hierarchySnapshotService.getSnapshot(branchCriteria, stated);
+		if (hierarchySnapshot.isPresent()) {
+			return hierarchySnapshot.get().getAncestors(conceptId, false);
+		}
 		final NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
 						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
@@ -406,6 +421,10 @@ public class QueryService implements ApplicationContextAware {
 	}
 
 	public Set<Long> findParentIdsAsUnion(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptId) {
+		Optional<HierarchySnapshot> hierarchySnapshot = hierarchySnapshotService.getSnapshot(branchCriteria, stated);
+		if (hierarchySnapshot.isPresent()) {
+			return hierarchySnapshot.get().getParents(conceptId, false);
+		}
 		final NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
 						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
@@ -424,6 +443,10 @@ public class QueryService implements ApplicationContextAware {
 	}
 
 	public Set<Long> findDescendantIdsAsUnion(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIds) {
+		Optional<HierarchySnapshot> hierarchySnapshot = hierarchySnapshotService.getSnapshot(branchCriteria, stated);
+		if (hierarchySnapshot.isPresent()) {
+			return hierarchySnapshot.get().getDescendants(conceptIds, false);
+		}
 		final NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
 						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
@@ -439,6 +462,10 @@ public class QueryService implements ApplicationContextAware {
 	}
 
 	public Set<Long> findChildrenIdsAsUnion(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIds) {
+		Optional<HierarchySnapshot> hierarchySnapshot = hierarchySnapshotService.getSnapshot(branchCriteria, stated);
+		if (hierarchySnapshot.isPresent()) {
+			return hierarchySnapshot.get().getChildren(conceptIds, false);
+		}
 		final NativeSearchQuery searchQuery = new NativeSearchQueryBuilder()
 				.withQuery(boolQuery()
 						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
@@ -508,11 +535,51 @@ public class QueryService implements ApplicationContextAware {
 			return;
 		}
 
+		boolean stated = form == Relationship.CharacteristicType.stated;
+		Set<Long> conceptIds = concepts.stream().map(mini -> Long.parseLong(mini.getConceptId())).collect(Collectors.toCollection(LongOpenHashSet::new));
+		Map<Long, Long> descendantCounts = findDescendantCounts(conceptIds, stated, branchCriteria);
 		for (ConceptMini concept : concepts) {
-			SearchAfterPage<Long> page = searchForIds(createQueryBuilder(form).ecl("<" + concept.getId()), branchCriteria, PAGE_OF_ONE);
-			concept.setDescendantCount(page.getTotalElements());
-			concept.setLeaf(form, page.getTotalElements() == 0);
+			long descendantCount = descendantCounts.getOrDefault(Long.parseLong(concept.getConceptId()), 0L);
+			concept.setDescendantCount(descendantCount);
+			concept.setLeaf(form, descendantCount == 0);
+		}
+	}
+
+	/**
+	 * Counts descendants of many concepts at once. Uses the counts of the hierarchy snapshot if available, without collecting descendant ids,
+	 * otherwise a terms aggregation on the ancestors of the semantic index, one request per batch of concepts.
+	 * @return descendant count by concept id, concepts without descendants may be missing
+	 */
+	private Map<Long, Long> findDescendantCounts(Set<Long> conceptIds, boolean stated, BranchCriteria branchCriteria) {
+		Map<Long, Long> descendantCounts = new Long2LongOpenHashMap();
+		Optional<HierarchySnapshot> snapshot = hierarchySnapshotService.getSnapshot(branchCriteria, stated);
+		if (snapshot.isPresent()) {
+			for (Long conceptId : conceptIds) {
+				descendantCounts.put(conceptId, (long) snapshot.get().countDescendants(conceptId, false));
+			}
+			return descendantCounts;
+		}
+
+		for (List<Long> batch : Iterables.partition(conceptIds, DESCENDANT_COUNT_BATCH_SIZE)) {
+			NativeSearchQuery query = new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+							.must(termQuery(QueryConcept.Fields.STATED, stated))
+							.must(termsQuery(QueryConcept.Fields.ANCESTORS, batch)))
+					// Only buckets of the requested concepts, so the counts are exact
+					.addAggregation(AggregationBuilders.terms(AGGREGATION_DESCENDANT_COUNTS).field(QueryConcept.Fields.ANCESTORS)
+							.includeExclude(new IncludeExclude(batch.stream().mapToLong(Long::longValue).toArray(), null))
+							.size(batch.size())
+							.shardSize(batch.size()))
+					.withPageable(PAGE_OF_ONE)
+					.build();
+			SearchHits<QueryConcept> searchHits = elasticsearchTemplate.search(query, QueryConcept.class);
+			Terms terms = Objects.requireNonNull(searchHits.getAggregations()).get(AGGREGATION_DESCENDANT_COUNTS);
+			for (Terms.Bucket bucket : terms.getBuckets()) {
+				descendantCounts.put(bucket.getKeyAsNumber().longValue(), bucket.getDocCount());
+			}
 		}
+		return descendantCounts;
 	}
 
 	public void joinDescendantCount(Concept concept, Relationship.CharacteristicType form, List<LanguageDialect> languageDialects, BranchTimepoint branchTimepoint) {
@@ -7,6 +7,7 @@ import io.kaicode.elasticvc.api.*;
 import io.kaicode.elasticvc.domain.Branch;
 import io.kaicode.elasticvc.domain.Commit;
 import io.kaicode.elasticvc.domain.Entity;
+import io.micrometer.core.instrument.MeterRegistry;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.apache.commons.lang3.math.NumberUtils;
@@ -81,6 +82,15 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 	@Autowired
 	private MRCMLoader mrcmLoader;
 
+	@Autowired
+	private HierarchySnapshotService hierarchySnapshotService;
+
+	@Autowired
+	private AttributeIndexService attributeIndexService;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 
@@ -202,6 +212,10 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 			updatedConceptIds = buildRelevantPartsOfExistingGraph(graphBuilder, form, changesCriteria, previousStateCriteria, internalIdsOfDeletedComponents, timer);
 			if (updatedConceptIds.isEmpty()) {
 				// Nothing to do
+				if (!rebuild) {
+					hierarchySnapshotService.applySemanticChanges(commit, form.isStated(), Collections.emptySet());
+					attributeIndexService.applySemanticChanges(commit, form.isStated(), Collections.emptySet());
+				}
 				return 0;
 			}
 			// Strategy: Clear the modelling of updated concepts then add/remove edges and attributes based on the new commit
@@ -316,6 +330,9 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		// either by authoring or importing the new version of the extension.
 		boolean throwExceptionIfTransitiveClosureLoopFound = !commit.isRebase();
 
+		// Count of concepts whose parents or ancestors are different after this change
+		int hierarchyChanges = 0;
+
 		final BoolQueryBuilder filter = boolQuery()
 				// Exclude those QueryConcepts which were removed in this commit
 				.mustNot(boolQuery()
@@ -340,6 +357,9 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 				if (completeRebuild) {
 					if (node != null) {
 						QueryConcept newQueryConcept = createQueryConcept(form, branchPath, conceptAttributeChanges, throwExceptionIfTransitiveClosureLoopFound, node.getId(), node);
+						if (isHierarchyChanged(queryConcept, newQueryConcept)) {
+							hierarchyChanges++;
+						}
 						if (!queryConcept.fieldsMatch(newQueryConcept)) {
 							queryConcept = newQueryConcept;
 							save = true;
@@ -352,8 +372,11 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 					QueryConcept newQueryConcept = new QueryConcept(queryConcept);
 					if (node != null) {
 						// TC changes
-						newQueryConcept.setParents(node.getParents().stream().map(Node::getId).collect(Collectors.toSet()));
+						newQueryConcept.setParents(new HashSet<>(node.getParentIds()));
 						newQueryConcept.setAncestors(new HashSet<>(node.getTransitiveClosure(branchPath, throwExceptionIfTransitiveClosureLoopFound)));
+						if (isHierarchyChanged(queryConcept, newQueryConcept)) {
+							hierarchyChanges++;
+						}
 					}
 					if (updatedConceptIds.contains(conceptId)) {
 						applyAttributeChanges(newQueryConcept, conceptId, conceptAttributeChanges);
@@ -376,12 +399,13 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		for (Long nodeId : nodesNotFound) {
 			Node node = nodesToSave.get(nodeId);
 			QueryConcept queryConcept = createQueryConcept(form, branchPath, conceptAttributeChanges, throwExceptionIfTransitiveClosureLoopFound, nodeId, node);
-			if (node.getParents().isEmpty() && !queryConcept.isRoot()) {
+			if (node.getParentIds().isEmpty() && !queryConcept.isRoot()) {
 				// Concept is probably inactive, don't add to semantic index.
 				continue;
 			}
 			queryConcept.setCreating(true);
 			queryConceptsToSave.add(queryConcept);
+			hierarchyChanges++;
 		}
 
 		// Delete query concepts which have no parents
@@ -404,8 +428,9 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		String deleteMessage = firstToDelete.isPresent() ? String.format("%s semantic concepts deleted including %s.", countToDelete, firstToDelete.get()) :
 				"No semantic concepts need deleting.";
 
-		logger.info("Semantic index change summary for {} form: {} concepts loaded into the graph. {} {} {}", form.getName(), graphBuilder.getNodes().size(),
-				createMessage, updateMessage, deleteMessage);
+		logger.info("Semantic index change summary for {} form: {} concepts loaded into the graph, {} with hierarchy changes. {} {} {}", form.getName(),
+				graphBuilder.getNodeCount(), hierarchyChanges, createMessage, updateMessage, deleteMessage);
+		recordUpdateMetrics(form, graphBuilder.getNodeCount(), hierarchyChanges, dryRun ? 0 : queryConceptsToSave.size());
 
 		if (!queryConceptsToSave.isEmpty()) {
 
@@ -419,6 +444,11 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 			}
 		}
 		timer.checkpoint("Save updated QueryConcepts");
+
+		if (!rebuild) {
+			hierarchySnapshotService.applySemanticChanges(commit, form.isStated(), queryConceptsToSave);
+			attributeIndexService.applySemanticChanges(commit, form.isStated(), queryConceptsToSave);
+		}
 		logger.debug("{} concepts updated within the {} semantic index.", queryConceptsToSave.size(), form.getName());
 
 		timer.finish();
@@ -429,12 +459,27 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 			boolean throwExceptionIfTransitiveClosureLoopFound, Long nodeId, Node node) throws GraphBuilderException {
 
 		final Set<Long> transitiveClosure = new HashSet<>(node.getTransitiveClosure(branchPath, throwExceptionIfTransitiveClosureLoopFound));
-		final Set<Long> parentIds = node.getParents().stream().map(Node::getId).collect(Collectors.toSet());
+		final Set<Long> parentIds = new HashSet<>(node.getParentIds());
 		QueryConcept queryConcept = new QueryConcept(nodeId, parentIds, transitiveClosure, form.isStated());
 		applyAttributeChanges(queryConcept, nodeId, conceptAttributeChanges);
 		return queryConcept;
 	}
 
+	private boolean isHierarchyChanged(QueryConcept existingQueryConcept, QueryConcept newQueryConcept) {
+		return !Objects.equals(existingQueryConcept.getParents(), newQueryConcept.getParents())
+				|| !Objects.equals(existingQueryConcept.getAncestors(), newQueryConcept.getAncestors());
+	}
+
+	private void recordUpdateMetrics(Form form, int nodesLoaded, int nodesChanged, int documentsWritten) {
+		if (meterRegistry == null) {
+			return;
+		}
+		String formName = form.getName();
+		meterRegistry.summary("snowstorm.semantic-index.nodes.loaded", "form", formName).record(nodesLoaded);
+		meterRegistry.summary("snowstorm.semantic-index.nodes.changed", "form", formName).record(nodesChanged);
+		meterRegistry.summary("snowstorm.semantic-index.documents.written", "form", formName).record(documentsWritten);
+	}
+
 	private Object convertConcreteValue(Relationship relationship, Map<String, ConcreteValue.DataType> concreteAttributeDataTypeMap) {
 		ConcreteValue.DataType actualType = relationship.getConcreteValue().getDataType();
 		ConcreteValue.DataType mrcmDataType = concreteAttributeDataTypeMap.get(relationship.getTypeId());
@@ -0,0 +1,45 @@
+package org.snomed.snowstorm.core.data.services;
+
+import org.snomed.snowstorm.ecl.ECLCacheVersionService.ContentVersion;
+
+import java.util.Objects;
+
+/**
+ * Key of a snapshot of the stated or inferred semantic index at a content version.
+ */
+final class SemanticSnapshotKey {
+
+	private final ContentVersion contentVersion;
+	private final boolean stated;
+
+	SemanticSnapshotKey(ContentVersion contentVersion, boolean stated) {
+		this.contentVersion = contentVersion;
+		this.stated = stated;
+	}
+
+	ContentVersion getContentVersion() {
+		return contentVersion;
+	}
+
+	boolean isStated() {
+		return stated;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		SemanticSnapshotKey that = (SemanticSnapshotKey) o;
+		return stated == that.stated && contentVersion.equals(that.contentVersion);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(contentVersion, stated);
+	}
+
+	@Override
+	public String toString() {
+		return contentVersion + (stated ? " stated" : " inferred");
+	}
+}
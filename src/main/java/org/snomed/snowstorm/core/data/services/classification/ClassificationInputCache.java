@@ -0,0 +1,199 @@
+package org.snomed.snowstorm.core.data.services.classification;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.google.common.hash.Hashing;
+import io.kaicode.elasticvc.domain.Branch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.CodeSystem;
+import org.snomed.snowstorm.core.data.services.CodeSystemService;
+import org.snomed.snowstorm.core.rf2.RF2Type;
+import org.snomed.snowstorm.core.rf2.export.ExportException;
+import org.snomed.snowstorm.core.rf2.export.ExportService;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService.ContentVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the RF2 delta archives sent to the classification service so that classifying the same content again does not export it again.
+ * <p>
+ * Archives are keyed by the version of content they were exported from, so a task without changes of its own
+ * reuses the archive of its parent at the task base, and classifying again with another reasoner, or after a failure, reuses the last archive.
+ * Any commit gives a new key.
+ * <p>
+ * Archives are counted while in use. An archive leaving the cache while it is being sent is deleted once released.
+ */
+@Service
+class ClassificationInputCache {
+
+	@Value("${classification-service.input-cache.max-files}")
+	private int maxFiles;
+
+	@Value("${classification-service.input-cache.expire-after-access-minutes}")
+	private int expireAfterAccessMinutes;
+
+	@Autowired
+	private ExportService exportService;
+
+	@Autowired
+	private CodeSystemService codeSystemService;
+
+	@Autowired
+	private ECLCacheVersionService contentVersionService;
+
+	private Cache<String, CachedArchive> deltaArchives;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		deltaArchives = Caffeine.newBuilder()
+				.maximumSize(maxFiles)
+				.expireAfterAccess(expireAfterAccessMinutes, TimeUnit.MINUTES)
+				// Removal is handled on the thread using the cache, files are not deleted late
+				.executor(Runnable::run)
+				.removalListener((String key, CachedArchive archive, RemovalCause cause) -> {
+					if (archive != null && archive.evict()) {
+						deleteFile(archive.file);
+					}
+				})
+				.build();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		deltaArchives.invalidateAll();
+		deltaArchives.cleanUp();
+	}
+
+	/**
+	 * @return an RF2 delta archive of the content to classify on the latest version of the branch
+	 */
+	ClassificationInput getDeltaArchive(Branch branch) throws ExportException {
+		String path = branch.getPath();
+		String filenameEffectiveDate = new SimpleDateFormat("yyyyMMdd").format(new Date());
+		if (maxFiles == 0) {
+			return new ClassificationInput(null, exportService.exportRF2ArchiveFile(path, filenameEffectiveDate, RF2Type.DELTA, true));
+		}
+
+		ContentVersion contentVersion = contentVersionService.resolve(path, branch.getHead(), false);
+		if (!contentVersion.isCommitted()) {
+			return new ClassificationInput(null, exportService.exportRF2ArchiveFile(path, filenameEffectiveDate, RF2Type.DELTA, true));
+		}
+		// Archive file names include the code system short name and the date
+		CodeSystem codeSystem = codeSystemService.findClosestCodeSystemUsingAnyBranch(path, false);
+		String key = Hashing.sha256().hashString(String.join("|", contentVersion.toString(),
+				codeSystem != null ? codeSystem.getShortCode() : "", filenameEffectiveDate), StandardCharsets.UTF_8).toString();
+
+		CachedArchive cachedArchive = deltaArchives.getIfPresent(key);
+		if (cachedArchive != null && cachedArchive.acquire()) {
+			if (cachedArchive.file.isFile()) {
+				logger.info("Reusing classification input exported from {} for {}.", contentVersion, path);
+				return new ClassificationInput(key, cachedArchive);
+			}
+			release(new ClassificationInput(key, cachedArchive));
+		}
+		cachedArchive = new CachedArchive(exportService.exportRF2ArchiveFile(path, filenameEffectiveDate, RF2Type.DELTA, true));
+		cachedArchive.acquire();
+		deltaArchives.put(key, cachedArchive);
+		return new ClassificationInput(key, cachedArchive);
+	}
+
+	/**
+	 * Ends use of the archive. The archive is deleted if it is not held in the cache and no longer in use.
+	 */
+	void release(ClassificationInput input) {
+		if (input.cachedArchive == null) {
+			deleteFile(input.getDeltaArchive());
+		} else if (input.cachedArchive.release()) {
+			deleteFile(input.getDeltaArchive());
+		}
+	}
+
+	private void deleteFile(File file) {
+		if (file != null && file.exists() && !file.delete()) {
+			logger.warn("Failed to delete classification input file {}", file.getAbsolutePath());
+		}
+	}
+
+	// Archive held in the cache, counting users so that it is only deleted once evicted and no longer in use
+	private static final class CachedArchive {
+
+		private final File file;
+		private int users;
+		private boolean evicted;
+
+		private CachedArchive(File file) {
+			this.file = file;
+		}
+
+		/**
+		 * @return false if the archive has already been evicted and must not be used
+		 */
+		private synchronized boolean acquire() {
+			if (evicted) {
+				return false;
+			}
+			users++;
+			return true;
+		}
+
+		/**
+		 * @return true if the archive should now be deleted
+		 */
+		private synchronized boolean release() {
+			users--;
+			return evicted && users == 0;
+		}
+
+		/**
+		 * @return true if the archive should now be deleted
+		 */
+		private synchronized boolean evict() {
+			evicted = true;
+			return users == 0;
+		}
+	}
+
+	static final class ClassificationInput {
+
+		private final String key;
+		private final File deltaArchive;
+		private final CachedArchive cachedArchive;
+
+		private ClassificationInput(String key, File deltaArchive) {
+			this.key = key;
+			this.deltaArchive = deltaArchive;
+			this.cachedArchive = null;
+		}
+
+		private ClassificationInput(String key, CachedArchive cachedArchive) {
+			this.key = key;
+			this.deltaArchive = cachedArchive.file;
+			this.cachedArchive = cachedArchive;
+		}
+
+		/**
+		 * @return stable key of the content version, null if the archive is not cached
+		 */
+		String getKey() {
+			return key;
+		}
+
+		File getDeltaArchive() {
+			return deltaArchive;
+		}
+	}
+}
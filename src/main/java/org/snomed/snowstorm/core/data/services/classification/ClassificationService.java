@@ -31,16 +31,13 @@ import org.snomed.snowstorm.core.data.services.*;
 import org.snomed.snowstorm.core.data.services.classification.pojo.ClassificationStatusResponse;
 import org.snomed.snowstorm.core.data.services.classification.pojo.EquivalentConceptsResponse;
 import org.snomed.snowstorm.core.pojo.LanguageDialect;
-import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.snomed.snowstorm.core.rf2.export.ExportException;
-import org.snomed.snowstorm.core.rf2.export.ExportService;
 import org.snomed.snowstorm.core.util.DateUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.data.domain.Sort;
 import org.springframework.data.elasticsearch.core.*;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.jms.core.JmsTemplate;
@@ -54,11 +51,11 @@ import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import java.io.*;
 import java.text.NumberFormat;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.function.Function;
+import java.util.concurrent.Future;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
@@ -68,7 +65,6 @@ import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 import static java.lang.Long.parseLong;
 import static org.elasticsearch.index.query.QueryBuilders.*;
 import static org.snomed.snowstorm.core.data.domain.classification.ClassificationStatus.*;
-import static org.snomed.snowstorm.core.data.domain.classification.RelationshipChange.Fields.SOURCE_ID;
 
 @Service
 public class ClassificationService {
@@ -76,6 +72,9 @@ public class ClassificationService {
 	@Value("${classification-service.job.abort-after-minutes}")
 	private int abortRemoteClassificationAfterMinutes;
 
+	@Value("${classification-service.save.batch-size}")
+	private int saveBatchSize;
+
 	@Autowired
 	private ElasticsearchOperations elasticsearchOperations;
 
@@ -98,7 +97,7 @@ public class ClassificationService {
 	private RemoteClassificationServiceClient serviceClient;
 
 	@Autowired
-	private ExportService exportService;
+	private ClassificationInputCache classificationInputCache;
 
 	@Autowired
 	private DescriptionService descriptionService;
@@ -126,6 +125,9 @@ public class ClassificationService {
 	public static final int RESULT_PROCESSING_THREADS = 2;// Two threads is a good limit here. The processing is very Elasticsearch heavy while looking up inferred-not-stated values.
 	private final ExecutorService classificationProcessingExecutor = Executors.newFixedThreadPool(RESULT_PROCESSING_THREADS);
 
+	// Background saves and lookups of result processing and saving, tasks in this pool never wait on each other.
+	private final ExecutorService classificationPipelineExecutor = Executors.newFixedThreadPool(RESULT_PROCESSING_THREADS * 2);
+
 	private static final int SECOND = 1000;
 
 	private static final PageRequest PAGE_FIRST_1K = PageRequest.of(0, 1000);
@@ -296,6 +298,7 @@ public class ClassificationService {
 	public void shutdownPolling() {
 		shutdownRequested = true;
 		classificationProcessingExecutor.shutdown();
+		classificationPipelineExecutor.shutdown();
 	}
 
 	public Page<Classification> findClassifications(String path) {
@@ -348,8 +351,13 @@ public class ClassificationService {
 		}
 
 		try {
-			File deltaExport = exportService.exportRF2ArchiveFile(path, new SimpleDateFormat("yyyyMMdd").format(new Date()), RF2Type.DELTA, true);
-			String remoteClassificationId = serviceClient.createClassification(previousPackage, dependencyPackage, deltaExport, path, reasonerId);
+			ClassificationInputCache.ClassificationInput input = classificationInputCache.getDeltaArchive(branch);
+			String remoteClassificationId;
+			try {
+				remoteClassificationId = serviceClient.createClassification(previousPackage, dependencyPackage, input.getDeltaArchive(), path, reasonerId);
+			} finally {
+				classificationInputCache.release(input);
+			}
 			classification.setId(remoteClassificationId);
 			classification.setStatus(ClassificationStatus.SCHEDULED);
 			classificationRepository.save(classification);
@@ -382,65 +390,51 @@ public class ClassificationService {
 
 						setClassificationSaveMetadata(commit);
 
-						List<RelationshipChange> changesBatch = null;
-						Object[] searchAfterToken = null;
-						while (changesBatch == null || changesBatch.size() == LARGE_PAGE.getPageSize()) {
-
-							changesBatch = new ArrayList<>();
-
-							PageRequest pageRequest;
-							if (searchAfterToken != null) {
-								pageRequest = SearchAfterPageRequest.of(searchAfterToken, LARGE_PAGE.getPageSize(), Sort.by(SOURCE_ID, "_id"));
-							} else {
-								pageRequest = PageRequest.of(0, LARGE_PAGE.getPageSize(), Sort.by(SOURCE_ID, "_id"));
-							}
-
-							NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
-									.withQuery(termQuery("classificationId", classificationId))
-									.withPageable(pageRequest);
-
-							final SearchHits<RelationshipChange> searchHits = elasticsearchOperations.search(queryBuilder.build(), RelationshipChange.class);
-							for (SearchHit<RelationshipChange> searchHit : searchHits) {
-								changesBatch.add(searchHit.getContent());
-								searchAfterToken = searchHit.getSortValues().toArray();
-							}
-
-							if (changesBatch.isEmpty()) {
-								break;
-							}
+						// Changes are read in batches of whole concepts. The changes of the next batch are read while the current batch is saved.
+						RelationshipChangeBatchReader batchReader = new RelationshipChangeBatchReader(elasticsearchOperations, classificationId, saveBatchSize);
+						Future<Map<Long, List<RelationshipChange>>> nextBatch = readConceptChangesBatch(batchReader);
+						try {
+							while (nextBatch != null) {
+								Map<Long, List<RelationshipChange>> conceptToChangeMap = getPipelineResult(nextBatch);
+								if (conceptToChangeMap.isEmpty()) {
+									break;
+								}
+								nextBatch = batchReader.isExhausted() ? null : readConceptChangesBatch(batchReader);
 
-							// Group changes by concept
-							Map<Long, List<RelationshipChange>> conceptToChangeMap = new Long2ObjectOpenHashMap<>();
-							for (RelationshipChange relationshipChange : changesBatch) {
-								conceptToChangeMap.computeIfAbsent(parseLong(relationshipChange.getSourceId()), conceptId -> new ArrayList<>()).add(relationshipChange);
-							}
+								// Concepts are loaded on this thread, after the previous batch has been saved, because the commit is not thread safe
+								Map<Long, Concept> conceptMap = new Long2ObjectOpenHashMap<>();
+								BranchCriteria branchCriteriaIncludingOpenCommit = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
+								for (Concept concept : conceptService.find(branchCriteriaIncludingOpenCommit, path, conceptToChangeMap.keySet(), Config.DEFAULT_LANGUAGE_DIALECTS)) {
+									conceptMap.put(concept.getConceptIdAsLong(), concept);
+								}
 
-							// Load concepts
-							final BranchCriteria branchCriteriaIncludingOpenCommit = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
-							Collection<Concept> concepts = conceptService.find(branchCriteriaIncludingOpenCommit, path, conceptToChangeMap.keySet(), Config.DEFAULT_LANGUAGE_DIALECTS);
-							Map<Long, Concept> conceptMap = concepts.stream().collect(Collectors.toMap(Concept::getConceptIdAsLong, Function.identity()));
-
-							// Apply changes to concepts
-							Set<String> orphanedRelationshipsToDelete = new HashSet<>();
-							for (Map.Entry<Long, List<RelationshipChange>> changes : conceptToChangeMap.entrySet()) {
-								Concept concept = conceptMap.get(changes.getKey());
-								List<RelationshipChange> relationshipChanges = changes.getValue();
-								if (concept != null) {
-									applyRelationshipChangesToConcept(concept, relationshipChanges, false);
-								} else {
-									// Concept must have been deleted. Remove orphaned inactive relationships.
-									orphanedRelationshipsToDelete.addAll(relationshipChanges.stream()
-											.filter(Predicate.not(RelationshipChange::isActive))
-											.map(RelationshipChange::getRelationshipId)
-											.collect(Collectors.toSet()));
+								// Apply changes to concepts
+								Set<String> orphanedRelationshipsToDelete = new HashSet<>();
+								for (Map.Entry<Long, List<RelationshipChange>> changes : conceptToChangeMap.entrySet()) {
+									Concept concept = conceptMap.get(changes.getKey());
+									List<RelationshipChange> relationshipChanges = changes.getValue();
+									if (concept != null) {
+										applyRelationshipChangesToConcept(concept, relationshipChanges, false);
+									} else {
+										// Concept must have been deleted. Remove orphaned inactive relationships.
+										orphanedRelationshipsToDelete.addAll(relationshipChanges.stream()
+												.filter(Predicate.not(RelationshipChange::isActive))
+												.map(RelationshipChange::getRelationshipId)
+												.collect(Collectors.toSet()));
+									}
 								}
+								if (!orphanedRelationshipsToDelete.isEmpty()) {
+									relationshipService.deleteRelationshipsWithinCommit(orphanedRelationshipsToDelete, commit);
+								}
+
+								// Update concepts
+								conceptService.updateWithinCommit(conceptMap.values(), commit);// Traceability is skipped here because it gets logged soon after
 							}
-							if (!orphanedRelationshipsToDelete.isEmpty()) {
-								relationshipService.deleteRelationshipsWithinCommit(orphanedRelationshipsToDelete, commit);
+						} finally {
+							if (nextBatch != null) {
+								// Failed part way, the commit will be rolled back
+								nextBatch.cancel(true);
 							}
-
-							// Update concepts
-							conceptService.updateWithinCommit(concepts, commit);// Traceability is skipped here because it gets logged soon after
 						}
 
 						BranchClassificationStatusService.setClassificationStatus(commit.getBranch(), true);
@@ -468,6 +462,32 @@ public class ClassificationService {
 		BranchMetadataHelper.classificationCommit(commit);
 	}
 
+	// Reads the classification results only, the commit is not used off the commit thread
+	private Future<Map<Long, List<RelationshipChange>>> readConceptChangesBatch(RelationshipChangeBatchReader batchReader) {
+		return classificationPipelineExecutor.submit(() -> {
+			// Group changes by concept
+			Map<Long, List<RelationshipChange>> conceptToChangeMap = new Long2ObjectOpenHashMap<>();
+			for (RelationshipChange relationshipChange : batchReader.readBatch()) {
+				conceptToChangeMap.computeIfAbsent(parseLong(relationshipChange.getSourceId()), conceptId -> new ArrayList<>()).add(relationshipChange);
+			}
+			return conceptToChangeMap;
+		});
+	}
+
+	private static <T> T getPipelineResult(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while processing classification results.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException("Failed to process classification results.", e.getCause());
+		}
+	}
+
 	public Classification classificationSaveStatusCheck(String path, String classificationId) {
 
 		// Check completed
@@ -663,10 +683,19 @@ public class ClassificationService {
 					numberFormat.format(activeRows), classification.getId());
 		}
 		long rowsProcessed = 0;
-		Map<Long, List<RelationshipChange>> activeConceptChanges = new HashMap<>();
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(classification.getPath());
+
+		// Changes are saved in the background while the next partition is looked up, one save at a time.
+		int chunkSize = 10_000;
+		List<RelationshipChange> changesToSave = new ArrayList<>();
+		Future<?> pendingSave = null;
+		if (!relationshipChanges.isEmpty()) {
+			logger.info("Saving {} classification relationship changes total.", numberFormat.format(relationshipChanges.size()));
+		}
 
 		// The max clauses for bool query in elastic search by default is 1024
 		for (List<RelationshipChange> relationshipChangePartition : Lists.partition(relationshipChanges, 1000)) {
+			Map<Long, List<RelationshipChange>> activeConceptChanges = new HashMap<>();
 			BoolQueryBuilder allConceptsQuery = boolQuery();
 			for (RelationshipChange relationshipChange : relationshipChangePartition) {
 				if (relationshipChange.isActive()) {
@@ -688,52 +717,78 @@ public class ClassificationService {
 			}
 
 			// make sure the should clause is not empty before running semantic index search
-			if (allConceptsQuery.should().isEmpty()) {
-				continue;
+			if (!allConceptsQuery.should().isEmpty()) {
+				markInferredNotStated(branchCriteria, allConceptsQuery, activeConceptChanges);
 			}
 
-			BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(classification.getPath());
-			try (SearchHitsIterator<QueryConcept> semanticIndexConcepts = elasticsearchOperations.searchForStream(
-					new NativeSearchQueryBuilder()
-							.withQuery(boolQuery()
-									.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
-									.must(termQuery(QueryConcept.Fields.STATED, true)))
-							.withFilter(allConceptsQuery)
-							.withPageable(LARGE_PAGE).build(),
-					QueryConcept.class)) {
-
-				semanticIndexConcepts.forEachRemaining(hit -> {
-					// One or more inferred attributes or parents do not exist on this stated semanticIndexConcept
-					List<RelationshipChange> conceptChanges = activeConceptChanges.get(hit.getContent().getConceptIdL());
-					if (conceptChanges != null) {
-						Map<String, Set<Object>> conceptAttributes = hit.getContent().getAttr();
-						for (RelationshipChange relationshipChange : conceptChanges) {
-							if (relationshipChange.getTypeId().equals(Concepts.ISA)) {
-								if (!hit.getContent().getParents().contains(parseLong(relationshipChange.getDestinationId()))) {
-									relationshipChange.setInferredNotStated(true);
-								}
-							} else {
-								if (!conceptAttributes.getOrDefault(relationshipChange.getTypeId(), Collections.emptySet())
-                                        .contains(relationshipChange.getDestinationOrRawValue())) {
-									relationshipChange.setInferredNotStated(true);
-								}
+			changesToSave.addAll(relationshipChangePartition);
+			if (changesToSave.size() >= chunkSize) {
+				pendingSave = saveRelationshipChangesInBackground(changesToSave, pendingSave);
+				changesToSave = new ArrayList<>();
+			}
+		}
+
+		if (!changesToSave.isEmpty()) {
+			pendingSave = saveRelationshipChangesInBackground(changesToSave, pendingSave);
+		}
+		waitForRelationshipChangesSave(pendingSave);
+	}
+
+	private void markInferredNotStated(BranchCriteria branchCriteria, BoolQueryBuilder allConceptsQuery, Map<Long, List<RelationshipChange>> activeConceptChanges) {
+		try (SearchHitsIterator<QueryConcept> semanticIndexConcepts = elasticsearchOperations.searchForStream(
+				new NativeSearchQueryBuilder()
+						.withQuery(boolQuery()
+								.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+								.must(termQuery(QueryConcept.Fields.STATED, true)))
+						.withFilter(allConceptsQuery)
+						.withPageable(LARGE_PAGE).build(),
+				QueryConcept.class)) {
+
+			semanticIndexConcepts.forEachRemaining(hit -> {
+				// One or more inferred attributes or parents do not exist on this stated semanticIndexConcept
+				List<RelationshipChange> conceptChanges = activeConceptChanges.get(hit.getContent().getConceptIdL());
+				if (conceptChanges != null) {
+					Map<String, Set<Object>> conceptAttributes = hit.getContent().getAttr();
+					for (RelationshipChange relationshipChange : conceptChanges) {
+						if (relationshipChange.getTypeId().equals(Concepts.ISA)) {
+							if (!hit.getContent().getParents().contains(parseLong(relationshipChange.getDestinationId()))) {
+								relationshipChange.setInferredNotStated(true);
+							}
+						} else {
+							if (!conceptAttributes.getOrDefault(relationshipChange.getTypeId(), Collections.emptySet())
+									.contains(relationshipChange.getDestinationOrRawValue())) {
+								relationshipChange.setInferredNotStated(true);
 							}
 						}
 					}
-				});
-			}
+				}
+			});
 		}
+	}
 
-		if (!relationshipChanges.isEmpty()) {
-			logger.info("Saving {} classification relationship changes total.", numberFormat.format(relationshipChanges.size()));
-			int chunkSize = 10_000;
-			List<List<RelationshipChange>> partition = Lists.partition(relationshipChanges, chunkSize);
-			for (List<RelationshipChange> changes : partition) {
-				if (relationshipChanges.size() > chunkSize) {
-					logger.info("Saving batch of {} classification relationship changes.", numberFormat.format(changes.size()));
-				}
-				relationshipChangeRepository.saveAll(changes);
+	private Future<?> saveRelationshipChangesInBackground(List<RelationshipChange> changes, Future<?> previousSave) throws IOException {
+		// Only one save in flight so that parsed changes do not build up in memory if Elasticsearch falls behind
+		waitForRelationshipChangesSave(previousSave);
+		return classificationPipelineExecutor.submit(() -> {
+			logger.info("Saving batch of {} classification relationship changes.", NumberFormat.getIntegerInstance().format(changes.size()));
+			relationshipChangeRepository.saveAll(changes);
+		});
+	}
+
+	private void waitForRelationshipChangesSave(Future<?> save) throws IOException {
+		if (save == null) {
+			return;
+		}
+		try {
+			save.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while saving classification relationship changes.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
 			}
+			throw new IOException("Failed to save classification relationship changes.", e.getCause());
 		}
 	}
 
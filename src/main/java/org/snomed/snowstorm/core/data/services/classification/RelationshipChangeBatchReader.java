@@ -0,0 +1,81 @@
+package org.snomed.snowstorm.core.data.services.classification;
+
+import org.snomed.snowstorm.core.data.domain.classification.RelationshipChange;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchAfterPageRequest;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.elasticsearch.index.query.QueryBuilders.termQuery;
+import static org.snomed.snowstorm.core.data.domain.classification.RelationshipChange.Fields.SOURCE_ID;
+
+/**
+ * Reads the relationship changes of a classification in batches of whole concepts, ordered by source concept.
+ * The changes of one concept are never split across batches. Not thread safe, batches must be read one after another.
+ */
+class RelationshipChangeBatchReader {
+
+	private final ElasticsearchOperations elasticsearchOperations;
+	private final String classificationId;
+	private final int pageSize;
+	private List<RelationshipChange> carriedOver = new ArrayList<>();
+	private Object[] searchAfterToken;
+	private boolean exhausted;
+
+	RelationshipChangeBatchReader(ElasticsearchOperations elasticsearchOperations, String classificationId, int pageSize) {
+		this.elasticsearchOperations = elasticsearchOperations;
+		this.classificationId = classificationId;
+		this.pageSize = pageSize;
+	}
+
+	List<RelationshipChange> readBatch() {
+		List<RelationshipChange> batch = carriedOver;
+		carriedOver = new ArrayList<>();
+		while (!exhausted) {
+			PageRequest pageRequest;
+			if (searchAfterToken != null) {
+				pageRequest = SearchAfterPageRequest.of(searchAfterToken, pageSize, Sort.by(SOURCE_ID, "_id"));
+			} else {
+				pageRequest = PageRequest.of(0, pageSize, Sort.by(SOURCE_ID, "_id"));
+			}
+
+			NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+					.withQuery(termQuery("classificationId", classificationId))
+					.withPageable(pageRequest);
+
+			final SearchHits<RelationshipChange> searchHits = elasticsearchOperations.search(queryBuilder.build(), RelationshipChange.class);
+			for (SearchHit<RelationshipChange> searchHit : searchHits) {
+				batch.add(searchHit.getContent());
+				searchAfterToken = searchHit.getSortValues().toArray();
+			}
+			if (searchHits.getSearchHits().size() < pageSize) {
+				exhausted = true;
+				break;
+			}
+
+			// Hold back the changes of the last concept because the next page may have more of them
+			String lastSourceId = batch.get(batch.size() - 1).getSourceId();
+			int split = batch.size();
+			while (split > 0 && batch.get(split - 1).getSourceId().equals(lastSourceId)) {
+				split--;
+			}
+			if (split > 0) {
+				carriedOver.addAll(batch.subList(split, batch.size()));
+				batch = new ArrayList<>(batch.subList(0, split));
+				break;
+			}
+			// The whole page is one concept, keep reading
+		}
+		return batch;
+	}
+
+	boolean isExhausted() {
+		return exhausted && carriedOver.isEmpty();
+	}
+}
@@ -0,0 +1,158 @@
+package org.snomed.snowstorm.core.data.services.commit;
+
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.domain.Commit;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Runs commit listeners as a dependency graph, registered with the BranchService as a single commit listener.
+ * <p>
+ * A listener starts once all the listeners it depends on have completed, listeners without a dependency between them run in parallel.
+ * Listeners which save components or change branch metadata must depend on each other because neither the commit nor the branch metadata is thread safe.
+ * If a listener fails its dependents are not run, the other listeners are allowed to finish and the first failure is thrown, failing the commit.
+ * <p>
+ * The duration of each listener is published as a timer with a histogram, named snowstorm.commit.listener and tagged by listener and commit type.
+ */
+public class CommitListenerPipeline implements CommitListener {
+
+	private static final String METER_NAME = "snowstorm.commit.listener";
+
+	private final Map<String, Node> nodes = new LinkedHashMap<>();
+	private final ExecutorService executor;
+	private final MeterRegistry meterRegistry;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * @param threads number of listeners run at the same time, 1 to run all listeners on the commit thread in registration order
+	 * @param meterRegistry registry for listener timers, may be null
+	 */
+	public CommitListenerPipeline(int threads, MeterRegistry meterRegistry) {
+		this.executor = threads > 1 ? Executors.newFixedThreadPool(threads) : null;
+		this.meterRegistry = meterRegistry;
+	}
+
+	/**
+	 * Adds a listener which runs after the listeners named. Listeners must be added after their dependencies.
+	 */
+	public CommitListenerPipeline add(String name, CommitListener listener, String... dependsOn) {
+		if (nodes.containsKey(name)) {
+			throw new IllegalArgumentException(String.format("Commit listener %s already added.", name));
+		}
+		for (String dependency : dependsOn) {
+			if (!nodes.containsKey(dependency)) {
+				throw new IllegalArgumentException(String.format("Commit listener %s depends on %s which has not been added.", name, dependency));
+			}
+		}
+		nodes.put(name, new Node(name, listener, Arrays.asList(dependsOn)));
+		return this;
+	}
+
+	/**
+	 * @return names of all listeners added so far, to make a listener depend on everything before it
+	 */
+	public String[] all() {
+		return nodes.keySet().toArray(new String[0]);
+	}
+
+	/**
+	 * @return listeners in the order added, the order they run in with a single thread
+	 */
+	public List<CommitListener> getListeners() {
+		return nodes.values().stream().map(node -> node.listener).collect(Collectors.toList());
+	}
+
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		if (executor == null) {
+			for (Node node : nodes.values()) {
+				run(node, commit);
+			}
+			return;
+		}
+
+		// Listeners may read the user of the commit
+		SecurityContext securityContext = SecurityContextHolder.getContext();
+		Queue<RuntimeException> failures = new ConcurrentLinkedQueue<>();
+		Map<String, CompletableFuture<Void>> futures = new HashMap<>();
+		for (Node node : nodes.values()) {
+			Runnable task = new DelegatingSecurityContextRunnable(() -> {
+				try {
+					run(node, commit);
+				} catch (RuntimeException e) {
+					failures.add(e);
+					throw e;
+				}
+			}, securityContext);
+			CompletableFuture<Void> future;
+			if (node.dependsOn.isEmpty()) {
+				future = CompletableFuture.runAsync(task, executor);
+			} else {
+				CompletableFuture<?>[] dependencies = node.dependsOn.stream().map(futures::get).toArray(CompletableFuture[]::new);
+				future = CompletableFuture.allOf(dependencies).thenRunAsync(task, executor);
+			}
+			futures.put(node.name, future);
+		}
+
+		try {
+			CompletableFuture.allOf(futures.values().toArray(new CompletableFuture[0])).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while running commit listeners.", e);
+		} catch (ExecutionException e) {
+			// All listeners have completed, the first listener to fail is reported rather than a listener not run because of it
+			RuntimeException failure = failures.peek();
+			if (failure != null) {
+				throw failure;
+			}
+			throw new IllegalStateException("Commit listener failed.", e.getCause());
+		}
+	}
+
+	private void run(Node node, Commit commit) {
+		long start = System.nanoTime();
+		try {
+			node.listener.preCommitCompletion(commit);
+		} finally {
+			long duration = System.nanoTime() - start;
+			if (meterRegistry != null) {
+				Timer.builder(METER_NAME)
+						.tag("listener", node.name)
+						.tag("type", commit.getCommitType().name())
+						.publishPercentileHistogram()
+						.register(meterRegistry)
+						.record(duration, TimeUnit.NANOSECONDS);
+			}
+			logger.debug("Commit listener {} took {} ms on {}.", node.name, TimeUnit.NANOSECONDS.toMillis(duration), commit.getBranch().getPath());
+		}
+	}
+
+	private static final class Node {
+
+		private final String name;
+		private final CommitListener listener;
+		private final List<String> dependsOn;
+
+		private Node(String name, CommitListener listener, List<String> dependsOn) {
+			this.name = name;
+			this.listener = listener;
+			this.dependsOn = dependsOn;
+		}
+	}
+}
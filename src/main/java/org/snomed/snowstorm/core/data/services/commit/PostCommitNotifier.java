@@ -0,0 +1,161 @@
+package org.snomed.snowstorm.core.data.services.commit;
+
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Best effort delivery of notifications to other systems after a commit has completed, so that they do not hold the branch lock.
+ * <p>
+ * Deliveries are added by commit listeners. Each delivery waits until the branch head has moved to the commit timepoint
+ * and is dropped if the commit is rolled back. A failed delivery is retried with exponential backoff.
+ * <p>
+ * Deliveries are only held in memory, pending deliveries are lost if the application stops.
+ * Notifications which must not be lost keep their own durable store and use this only to send promptly, see TraceabilityOutbox.
+ * <p>
+ * In synchronous mode, used for testing, deliveries are run once on the committing thread when added, before the commit completes.
+ */
+@Service
+public class PostCommitNotifier {
+
+	private static final long FIRST_ATTEMPT_DELAY_MILLIS = 100;
+
+	@Value("${commit.notifications.max-attempts}")
+	private int maxAttempts;
+
+	@Value("${commit.notifications.max-retry-delay-seconds}")
+	private int maxRetryDelaySeconds;
+
+	@Value("${commit.notifications.synchronous}")
+	private boolean synchronous;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	private final ScheduledExecutorService deliveryExecutor = Executors.newSingleThreadScheduledExecutor();
+
+	private final AtomicInteger pendingCount = new AtomicInteger();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PostConstruct
+	public void init() {
+		if (meterRegistry != null) {
+			meterRegistry.gauge("snowstorm.commit.notifications.pending", pendingCount);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		deliveryExecutor.shutdownNow();
+	}
+
+	/**
+	 * Delivers once the commit has completed. The security context of the caller is used for the delivery.
+	 * @param name describes the delivery in logs
+	 * @param delivery throws an exception to be retried
+	 */
+	public void add(Commit commit, String name, Runnable delivery) {
+		add(commit.getBranch().getPath(), commit.getTimepoint(), name, delivery);
+	}
+
+	/**
+	 * @param timepoint commit timepoint to wait for, null to deliver without waiting
+	 */
+	public void add(String path, Date timepoint, String name, Runnable delivery) {
+		if (synchronous) {
+			try {
+				delivery.run();
+			} catch (RuntimeException e) {
+				logger.error("Failed {} for commit on {}.", name, path, e);
+			}
+			return;
+		}
+		// Copied because the request thread may change its context before delivery
+		SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+		securityContext.setAuthentication(SecurityContextHolder.getContext().getAuthentication());
+		Delivery pending = new Delivery(path, timepoint, name, new DelegatingSecurityContextRunnable(delivery, securityContext));
+		pendingCount.incrementAndGet();
+		deliveryExecutor.schedule(() -> attempt(pending), FIRST_ATTEMPT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return number of deliveries not yet delivered, dropped or given up
+	 */
+	public int getPendingCount() {
+		return pendingCount.get();
+	}
+
+	private void attempt(Delivery delivery) {
+		delivery.attempts++;
+		try {
+			if (delivery.timepoint != null) {
+				Branch branch = branchService.findLatest(delivery.path);
+				if (branch == null || branch.getHead().before(delivery.timepoint)) {
+					if (branch == null || !branch.isLocked()) {
+						logger.info("Commit on {} at {} did not complete, {} dropped.", delivery.path, delivery.timepoint.getTime(), delivery.name);
+						pendingCount.decrementAndGet();
+						return;
+					}
+					// Commit still completing
+					retry(delivery, null);
+					return;
+				}
+			}
+			delivery.action.run();
+			pendingCount.decrementAndGet();
+		} catch (RuntimeException e) {
+			retry(delivery, e);
+		}
+	}
+
+	private void retry(Delivery delivery, RuntimeException failure) {
+		if (delivery.attempts >= maxAttempts) {
+			logger.error("Giving up {} for commit on {} after {} attempts.", delivery.name, delivery.path, delivery.attempts, failure);
+			pendingCount.decrementAndGet();
+			return;
+		}
+		long delayMillis = Math.min(FIRST_ATTEMPT_DELAY_MILLIS << Math.min(delivery.attempts, 20), maxRetryDelaySeconds * 1000L);
+		if (failure != null) {
+			logger.warn("Failed {} for commit on {}, attempt {} of {}, retrying in {} ms.", delivery.name, delivery.path, delivery.attempts, maxAttempts,
+					delayMillis, failure);
+		}
+		deliveryExecutor.schedule(() -> attempt(delivery), delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private static final class Delivery {
+
+		private final String path;
+		private final Date timepoint;
+		private final String name;
+		private final Runnable action;
+		private int attempts;
+
+		private Delivery(String path, Date timepoint, String name, Runnable action) {
+			this.path = path;
+			this.timepoint = timepoint;
+			this.name = name;
+			this.action = action;
+		}
+	}
+}
@@ -34,7 +34,7 @@ public class ExpressionContext {
 
 	public MRCM getBranchMRCM() throws ServiceException {
 		if (mrcm == null) {
-			mrcm = mrcmService.loadActiveMRCMFromCache(branch);
+			mrcm = mrcmService.loadActiveMRCMFromCache(getBranchCriteria());
 		}
 		return mrcm;
 	}
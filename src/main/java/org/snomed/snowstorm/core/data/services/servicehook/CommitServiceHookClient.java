@@ -6,6 +6,8 @@ import io.kaicode.elasticvc.domain.Commit;
 import org.ihtsdo.sso.integration.SecurityUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.services.commit.PostCommitNotifier;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.boot.web.client.RestTemplateBuilder;
@@ -25,6 +27,9 @@ public class CommitServiceHookClient implements CommitListener {
 
 	private final RestTemplate restTemplate;
 
+	@Autowired
+	private PostCommitNotifier postCommitNotifier;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 	private final String serviceUrl;
 	private final boolean failIfError;
@@ -75,13 +80,23 @@ public class CommitServiceHookClient implements CommitListener {
 			return;
 		}
 
+		if (!failIfError && !blockPromotion) {
+			// The external system can not fail the commit so is notified once the commit has completed, with retries.
+			// The branch is not locked when a new branch is announced, there is no commit to wait for.
+			CommitInformation commitInformation = new CommitInformation(commit);
+			Branch branch = commit.getBranch();
+			postCommitNotifier.add(branch.getPath(), branch.isLocked() ? commit.getTimepoint() : null, "commit service hook", () -> {
+				try {
+					post(commit, commitInformation);
+				} catch (HttpClientErrorException.Conflict e) {
+					logger.error("External system indicates not all criteria have been completed.");
+				}
+			});
+			return;
+		}
+
 		try {
-			String authenticationToken = SecurityUtil.getAuthenticationToken();
-			HttpHeaders httpHeaders = buildHttpHeaders(authenticationToken);
-			logRequest(commit, authenticationToken, commit.getBranch());
-			ResponseEntity<?> responseEntity = restTemplate.postForEntity("/integration/snowstorm/commit",
-					new HttpEntity<>(new CommitInformation(commit), httpHeaders), Void.class);
-			logger.info("External system returned HTTP status code {}.", responseEntity.getStatusCodeValue());
+			post(commit, new CommitInformation(commit));
 		} catch (HttpClientErrorException.Conflict e) {
 			// External system indicates criteria has not been completed.
 			logger.error("External system indicates not all criteria have been completed.");
@@ -103,6 +118,15 @@ public class CommitServiceHookClient implements CommitListener {
 		}
 	}
 
+	private void post(Commit commit, CommitInformation commitInformation) {
+		String authenticationToken = SecurityUtil.getAuthenticationToken();
+		HttpHeaders httpHeaders = buildHttpHeaders(authenticationToken);
+		logRequest(commit, authenticationToken, commit.getBranch());
+		ResponseEntity<?> responseEntity = restTemplate.postForEntity("/integration/snowstorm/commit",
+				new HttpEntity<>(commitInformation, httpHeaders), Void.class);
+		logger.info("External system returned HTTP status code {}.", responseEntity.getStatusCodeValue());
+	}
+
 	private HttpHeaders buildHttpHeaders(String authenticationToken) {
 		HttpHeaders httpHeaders = new HttpHeaders();
 		httpHeaders.setContentType(MediaType.APPLICATION_JSON);
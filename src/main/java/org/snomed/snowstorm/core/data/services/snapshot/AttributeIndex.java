@@ -0,0 +1,185 @@
+package org.snomed.snowstorm.core.data.services.snapshot;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.*;
+import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Immutable index of the concept valued attributes of one form of one branch version, held in primitive arrays.
+ * Is-a is not included, see HierarchySnapshot, nor are concrete values.
+ * <p>
+ * Source concepts are held in a sorted id array. The attributes of each source are stored as offsets into flat arrays
+ * of attribute type positions and destination ids, attribute types being few.
+ */
+public final class AttributeIndex {
+
+	private final long[] sourceIds;
+	private final int[] offsets;
+	private final long[] typeIds;
+	private final int[] types;
+	private final long[] destinations;
+
+	private AttributeIndex(long[] sourceIds, int[] offsets, long[] typeIds, int[] types, long[] destinations) {
+		this.sourceIds = sourceIds;
+		this.offsets = offsets;
+		this.typeIds = typeIds;
+		this.types = types;
+		this.destinations = destinations;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Creates a new index with changes applied, without modifying this one.
+	 * @param changedConceptAttributes concepts with new or changed attributes, values by attribute type as held in the semantic index
+	 * @param removedConceptIds concepts no longer in the semantic index
+	 */
+	public AttributeIndex withChanges(Map<Long, ? extends Map<String, ? extends Collection<Object>>> changedConceptAttributes, Collection<Long> removedConceptIds) {
+		Builder builder = new Builder();
+		LongSet skip = new LongOpenHashSet(removedConceptIds);
+		skip.addAll(changedConceptAttributes.keySet());
+		for (int i = 0; i < sourceIds.length; i++) {
+			long sourceId = sourceIds[i];
+			if (!skip.contains(sourceId)) {
+				for (int a = offsets[i]; a < offsets[i + 1]; a++) {
+					builder.addAttribute(sourceId, typeIds[types[a]], destinations[a]);
+				}
+			}
+		}
+		for (Map.Entry<Long, ? extends Map<String, ? extends Collection<Object>>> entry : changedConceptAttributes.entrySet()) {
+			if (!removedConceptIds.contains(entry.getKey())) {
+				builder.addConcept(entry.getKey(), entry.getValue());
+			}
+		}
+		return builder.build();
+	}
+
+	/**
+	 * @param sourceConceptIds concepts to follow attributes from, null for all concepts
+	 * @param attributeTypeIds attribute types to follow, null for all types
+	 * @return ids of the attribute values
+	 */
+	public LongSet getDestinations(Collection<Long> sourceConceptIds, Collection<Long> attributeTypeIds) {
+		LongSet result = new LongOpenHashSet();
+		boolean[] typeFilter = null;
+		if (attributeTypeIds != null) {
+			typeFilter = new boolean[typeIds.length];
+			for (Long attributeTypeId : attributeTypeIds) {
+				int typeIndex = Arrays.binarySearch(typeIds, attributeTypeId);
+				if (typeIndex >= 0) {
+					typeFilter[typeIndex] = true;
+				}
+			}
+		}
+		if (sourceConceptIds == null) {
+			collectDestinations(0, destinations.length, typeFilter, result);
+		} else {
+			for (Long sourceConceptId : sourceConceptIds) {
+				int index = Arrays.binarySearch(sourceIds, sourceConceptId);
+				if (index >= 0) {
+					collectDestinations(offsets[index], offsets[index + 1], typeFilter, result);
+				}
+			}
+		}
+		return result;
+	}
+
+	public int getConceptCount() {
+		return sourceIds.length;
+	}
+
+	public int getAttributeCount() {
+		return destinations.length;
+	}
+
+	/**
+	 * Estimated heap use, for logging.
+	 */
+	public long getSizeInBytes() {
+		return (sourceIds.length + typeIds.length + destinations.length) * 8L + (offsets.length + types.length) * 4L;
+	}
+
+	private void collectDestinations(int from, int to, boolean[] typeFilter, LongSet result) {
+		for (int a = from; a < to; a++) {
+			if (typeFilter == null || typeFilter[types[a]]) {
+				result.add(destinations[a]);
+			}
+		}
+	}
+
+	public static final class Builder {
+
+		private final Long2ObjectMap<LongArrayList> sourceAttributes = new Long2ObjectOpenHashMap<>();
+
+		private Builder() {
+		}
+
+		/**
+		 * Adds the concept valued attributes of a semantic index concept. Concrete values are ignored.
+		 * @param attributes values by attribute type, as held in the semantic index
+		 */
+		public Builder addConcept(long conceptId, Map<String, ? extends Collection<Object>> attributes) {
+			for (Map.Entry<String, ? extends Collection<Object>> entry : attributes.entrySet()) {
+				// Skip the wildcard entries of the flat attribute map
+				if (!IdentifierService.isConceptId(entry.getKey())) {
+					continue;
+				}
+				long typeId = Long.parseLong(entry.getKey());
+				for (Object value : entry.getValue()) {
+					// Concept ids are held as strings, concrete values as numbers or strings
+					if (value instanceof String && IdentifierService.isConceptId((String) value)) {
+						addAttribute(conceptId, typeId, Long.parseLong((String) value));
+					}
+				}
+			}
+			return this;
+		}
+
+		public Builder addAttribute(long sourceId, long typeId, long destinationId) {
+			LongArrayList attributes = sourceAttributes.get(sourceId);
+			if (attributes == null) {
+				attributes = new LongArrayList(4);
+				sourceAttributes.put(sourceId, attributes);
+			}
+			// Pairs of type and destination
+			attributes.add(typeId);
+			attributes.add(destinationId);
+			return this;
+		}
+
+		public AttributeIndex build() {
+			long[] sourceIds = sourceAttributes.keySet().toLongArray();
+			Arrays.sort(sourceIds);
+			LongSortedSet typeIdSet = new LongAVLTreeSet();
+			int attributeCount = 0;
+			for (LongArrayList attributes : sourceAttributes.values()) {
+				for (int p = 0; p < attributes.size(); p += 2) {
+					typeIdSet.add(attributes.getLong(p));
+				}
+				attributeCount += attributes.size() / 2;
+			}
+			long[] typeIds = typeIdSet.toLongArray();
+
+			int[] offsets = new int[sourceIds.length + 1];
+			IntArrayList types = new IntArrayList(attributeCount);
+			long[] destinations = new long[attributeCount];
+			for (int i = 0; i < sourceIds.length; i++) {
+				offsets[i] = types.size();
+				LongArrayList attributes = sourceAttributes.get(sourceIds[i]);
+				for (int p = 0; p < attributes.size(); p += 2) {
+					destinations[types.size()] = attributes.getLong(p + 1);
+					types.add(Arrays.binarySearch(typeIds, attributes.getLong(p)));
+				}
+			}
+			offsets[sourceIds.length] = types.size();
+
+			return new AttributeIndex(sourceIds, offsets, typeIds, types.toIntArray(), destinations);
+		}
+	}
+}
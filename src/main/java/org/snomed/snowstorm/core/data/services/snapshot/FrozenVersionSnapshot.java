@@ -0,0 +1,168 @@
+package org.snomed.snowstorm.core.data.services.snapshot;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.ConceptMini;
+import org.snomed.snowstorm.core.data.domain.SnomedComponent;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.HierarchySnapshot;
+import org.snomed.snowstorm.core.pojo.LanguageDialect;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService.ContentVersion;
+
+import java.util.*;
+
+/**
+ * Read-only snapshot of a released code system version, held in memory.
+ * Holds each concept with its active descriptions and their acceptability, the stated and inferred hierarchy
+ * and the concepts which are active members of each reference set.
+ * <p>
+ * Released versions never change so the snapshot is never updated, it is replaced when a newer version is released.
+ */
+public final class FrozenVersionSnapshot {
+
+	private final String codeSystem;
+	private final String versionPath;
+	private final ContentVersion contentVersion;
+	private final Long2ObjectMap<Concept> concepts;
+	private final HierarchySnapshot statedHierarchy;
+	private final HierarchySnapshot inferredHierarchy;
+	private final Long2ObjectMap<LongSet> referenceSetMembers;
+
+	private FrozenVersionSnapshot(String codeSystem, String versionPath, ContentVersion contentVersion, Long2ObjectMap<Concept> concepts,
+			HierarchySnapshot statedHierarchy, HierarchySnapshot inferredHierarchy, Long2ObjectMap<LongSet> referenceSetMembers) {
+
+		this.codeSystem = codeSystem;
+		this.versionPath = versionPath;
+		this.contentVersion = contentVersion;
+		this.concepts = concepts;
+		this.statedHierarchy = statedHierarchy;
+		this.inferredHierarchy = inferredHierarchy;
+		this.referenceSetMembers = referenceSetMembers;
+	}
+
+	public static Builder builder(String codeSystem, String versionPath, ContentVersion contentVersion) {
+		return new Builder(codeSystem, versionPath, contentVersion);
+	}
+
+	/**
+	 * @return concept minis of the concepts found, by concept id, using the given language dialects for the preferred terms
+	 */
+	public Map<String, ConceptMini> getConceptMinis(Collection<?> conceptIds, List<LanguageDialect> languageDialects) {
+		Map<String, ConceptMini> conceptMinis = new HashMap<>();
+		for (Object conceptId : conceptIds) {
+			Concept concept = concepts.get(Long.parseLong(conceptId.toString()));
+			if (concept != null) {
+				conceptMinis.put(concept.getConceptId(), new ConceptMini(concept, languageDialects));
+			}
+		}
+		return conceptMinis;
+	}
+
+	/**
+	 * @param referenceSetIds reference sets to include, null for all reference sets
+	 * @return ids of the concepts which are active members of any of the reference sets
+	 */
+	public LongSet getConceptIdsInReferenceSets(Collection<Long> referenceSetIds) {
+		Collection<LongSet> memberSets;
+		if (referenceSetIds == null) {
+			memberSets = referenceSetMembers.values();
+		} else {
+			memberSets = new ArrayList<>();
+			for (Long referenceSetId : referenceSetIds) {
+				LongSet members = referenceSetMembers.get(referenceSetId.longValue());
+				if (members != null) {
+					memberSets.add(members);
+				}
+			}
+		}
+		LongSet conceptIds = new LongOpenHashSet();
+		memberSets.forEach(conceptIds::addAll);
+		return conceptIds;
+	}
+
+	/**
+	 * @return number of concepts which are active members of the reference set, without collecting them
+	 */
+	public int countConceptsInReferenceSet(long referenceSetId) {
+		LongSet members = referenceSetMembers.get(referenceSetId);
+		return members != null ? members.size() : 0;
+	}
+
+	public HierarchySnapshot getHierarchy(boolean stated) {
+		return stated ? statedHierarchy : inferredHierarchy;
+	}
+
+	public String getCodeSystem() {
+		return codeSystem;
+	}
+
+	public String getVersionPath() {
+		return versionPath;
+	}
+
+	public ContentVersion getContentVersion() {
+		return contentVersion;
+	}
+
+	public int getConceptCount() {
+		return concepts.size();
+	}
+
+	public int getReferenceSetCount() {
+		return referenceSetMembers.size();
+	}
+
+	public static final class Builder {
+
+		private final String codeSystem;
+		private final String versionPath;
+		private final ContentVersion contentVersion;
+		private final Long2ObjectMap<Concept> concepts = new Long2ObjectOpenHashMap<>();
+		private final Long2ObjectMap<LongSet> referenceSetMembers = new Long2ObjectOpenHashMap<>();
+		private HierarchySnapshot statedHierarchy;
+		private HierarchySnapshot inferredHierarchy;
+
+		private Builder(String codeSystem, String versionPath, ContentVersion contentVersion) {
+			this.codeSystem = codeSystem;
+			this.versionPath = versionPath;
+			this.contentVersion = contentVersion;
+		}
+
+		/**
+		 * Only the concept fields used by concept minis and the active descriptions are kept.
+		 */
+		public Builder addConcept(Concept concept) {
+			Concept frozenConcept = new Concept(concept.getConceptId(), concept.getEffectiveTimeI(), concept.isActive(), concept.getModuleId(),
+					concept.getDefinitionStatusId());
+			concept.getDescriptions().stream().filter(SnomedComponent::isActive).forEach(frozenConcept::addDescription);
+			concepts.put(concept.getConceptIdAsLong().longValue(), frozenConcept);
+			return this;
+		}
+
+		public Builder addReferenceSetMember(long referenceSetId, long conceptId) {
+			LongSet members = referenceSetMembers.get(referenceSetId);
+			if (members == null) {
+				members = new LongOpenHashSet();
+				referenceSetMembers.put(referenceSetId, members);
+			}
+			members.add(conceptId);
+			return this;
+		}
+
+		public Builder setHierarchy(boolean stated, HierarchySnapshot hierarchy) {
+			if (stated) {
+				statedHierarchy = hierarchy;
+			} else {
+				inferredHierarchy = hierarchy;
+			}
+			return this;
+		}
+
+		public FrozenVersionSnapshot build() {
+			referenceSetMembers.values().forEach(members -> ((LongOpenHashSet) members).trim());
+			return new FrozenVersionSnapshot(codeSystem, versionPath, contentVersion, concepts, statedHierarchy, inferredHierarchy, referenceSetMembers);
+		}
+	}
+}
@@ -18,6 +18,7 @@ import org.snomed.snowstorm.config.Config;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.services.BranchMetadataHelper;
 import org.snomed.snowstorm.core.data.services.ServiceUtil;
+import org.snomed.snowstorm.core.data.services.commit.PostCommitNotifier;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
 import org.snomed.snowstorm.core.data.services.pojo.PersistedComponents;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -28,6 +29,7 @@ import org.springframework.data.elasticsearch.core.SearchHitsIterator;
 import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
@@ -60,6 +62,12 @@ public class TraceabilityLogService implements CommitListener {
 	@Autowired
 	private TraceabilityLogServiceHelper traceabilityLogServiceHelper;
 
+	@Autowired
+	private PostCommitNotifier postCommitNotifier;
+
+	@Autowired
+	private TraceabilityOutbox traceabilityOutbox;
+
 	@Autowired
 	private ElasticsearchOperations elasticsearchTemplate;
 
@@ -106,7 +114,22 @@ public class TraceabilityLogService implements CommitListener {
 		PersistedComponents persistedComponents = activityType == Activity.ActivityType.PROMOTION || activityType == Activity.ActivityType.CREATE_CODE_SYSTEM_VERSION ?
 				new PersistedComponents() : buildPersistedComponents(commit);
 
-		logActivity(SecurityUtil.getUsername(), commit, persistedComponents, activityType);
+		// Changes can only be read while the commit is open, the activity is stored and sent once the commit has completed
+		Activity activity = createActivity(SecurityUtil.getUsername(), commit, persistedComponents, activityType);
+		if (activity != null) {
+			String outboxEntryId = traceabilityOutbox.add(commit, activity);
+			postCommitNotifier.add(commit, "traceability", () -> traceabilityOutbox.publish(outboxEntryId, traceabilityConsumer::accept));
+		}
+	}
+
+	/**
+	 * Sends activities which could not be sent when their commit completed, for example while the broker was unavailable.
+	 */
+	@Scheduled(fixedDelayString = "${authoring.traceability.outbox.poll-interval-ms}", initialDelay = 30_000)
+	public void publishPending() {
+		if (enabled) {
+			traceabilityOutbox.publishPending(traceabilityConsumer::accept);
+		}
 	}
 
 	private PersistedComponents buildPersistedComponents(final Commit commit) {
@@ -125,12 +148,22 @@ public class TraceabilityLogService implements CommitListener {
 	}
 
 	void logActivity(String userId, final Commit commit, final PersistedComponents persistedComponents, Activity.ActivityType activityType) {
+		Activity activity = createActivity(userId, commit, persistedComponents, activityType);
+		if (activity != null) {
+			traceabilityConsumer.accept(activity);
+		}
+	}
+
+	/**
+	 * @return the activity to send, null if traceability is disabled or there is nothing to log
+	 */
+	private Activity createActivity(String userId, final Commit commit, final PersistedComponents persistedComponents, Activity.ActivityType activityType) {
 
 		ServiceUtil.assertNotNull("activityType", activityType);
 		ServiceUtil.assertNotNull("persistedComponents", persistedComponents);
 
 		if (!enabled) {
-			return;
+			return null;
 		}
 
 		if (userId == null) {
@@ -171,7 +204,7 @@ public class TraceabilityLogService implements CommitListener {
 		boolean changeFound = changes.values().stream().anyMatch(conceptActivity -> !conceptActivity.getComponentChanges().isEmpty());
 		if (commit.getCommitType() == CONTENT && !changeFound && activityType != CREATE_CODE_SYSTEM_VERSION) {
 			logger.info("Skipping traceability because there was no traceable change for commit {} at {}.", commit.getBranch().getPath(), commit.getTimepoint().getTime());
-			return;
+			return null;
 		}
 
 		// Limit the number of inferred relationship changes logged
@@ -206,8 +239,7 @@ public class TraceabilityLogService implements CommitListener {
 		} catch (JsonProcessingException e) {
 			logger.error("Failed to serialize activity {} to JSON.", activity.getCommitTimestamp());
 		}
-
-		traceabilityConsumer.accept(activity);
+		return activity;
 	}
 
 	private Map<Long, List<ReferenceSetMember>> filterRefsetMembersAndLookupComponentConceptIds(Iterable<ReferenceSetMember> persistedReferenceSetMembers,
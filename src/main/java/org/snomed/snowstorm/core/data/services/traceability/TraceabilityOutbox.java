@@ -0,0 +1,221 @@
+package org.snomed.snowstorm.core.data.services.traceability;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import org.elasticsearch.search.sort.SortBuilders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.TraceabilityOutboxEntry;
+import org.snomed.snowstorm.core.data.repositories.TraceabilityOutboxRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+
+/**
+ * Durable store of traceability activities waiting to be sent, held in Elasticsearch so that sending does not hold the commit
+ * and activities survive a broker outage or restart.
+ * <p>
+ * Activities are written during the commit, as deflated JSON, and sent once the commit has completed. Activities not sent straight away
+ * are sent by a background publisher, a limited number per run, backing off while sending fails.
+ * The activities of a branch are always sent in commit order, older activities of the branch are sent before a new one.
+ * Activities of commits which were rolled back are removed without being sent.
+ * Delivery is at least once. Only one Snowstorm instance per Elasticsearch cluster should have traceability enabled.
+ */
+@Service
+public class TraceabilityOutbox {
+
+	private static final long FIRST_RETRY_DELAY_MILLIS = 1_000;
+
+	@Value("${authoring.traceability.outbox.batch-size}")
+	private int batchSize;
+
+	@Value("${authoring.traceability.outbox.max-retry-delay-seconds}")
+	private int maxRetryDelaySeconds;
+
+	@Autowired
+	private TraceabilityOutboxRepository repository;
+
+	@Autowired
+	private ElasticsearchRestTemplate elasticsearchTemplate;
+
+	@Autowired
+	private BranchService branchService;
+
+	private final ObjectMapper objectMapper;
+
+	private int consecutiveFailures;
+
+	private long nextAttemptMillis;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public TraceabilityOutbox() {
+		objectMapper = Jackson2ObjectMapperBuilder.json()
+				.serializationInclusion(JsonInclude.Include.NON_NULL)
+				.build();
+	}
+
+	/**
+	 * Stores the activity of an open commit.
+	 * @return id of the outbox entry
+	 */
+	public String add(Commit commit, Activity activity) {
+		String id = commit.getBranch().getPath() + "_" + commit.getTimepoint().getTime();
+		repository.save(new TraceabilityOutboxEntry(id, commit.getBranch().getPath(), commit.getTimepoint().getTime(), activity.getChanges().size(),
+				encode(activity)));
+		return id;
+	}
+
+	/**
+	 * Sends the activity of a completed commit, unless already sent, after any older activities of the same branch still waiting.
+	 * If sending fails the remaining activities are left for the background publisher.
+	 */
+	public synchronized void publish(String id, Consumer<Activity> sender) {
+		if (isBackingOff()) {
+			return;
+		}
+		Optional<TraceabilityOutboxEntry> entry = repository.findById(id);
+		if (!entry.isPresent()) {
+			return;
+		}
+		// Commits on a branch are serial, older commits have completed or were rolled back
+		SearchHits<TraceabilityOutboxEntry> olderEntries = elasticsearchTemplate.search(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(termQuery(TraceabilityOutboxEntry.Fields.BRANCH_PATH, entry.get().getBranchPath()))
+						.must(rangeQuery(TraceabilityOutboxEntry.Fields.COMMIT_TIMESTAMP).lt(entry.get().getCommitTimestamp())))
+				.withSort(SortBuilders.fieldSort(TraceabilityOutboxEntry.Fields.COMMIT_TIMESTAMP))
+				.withPageable(LARGE_PAGE)
+				.build(), TraceabilityOutboxEntry.class);
+		for (SearchHit<TraceabilityOutboxEntry> hit : olderEntries) {
+			TraceabilityOutboxEntry olderEntry = hit.getContent();
+			if (!isCommitCompleted(olderEntry)) {
+				removeRolledBack(olderEntry);
+			} else if (!send(olderEntry, sender)) {
+				return;
+			}
+		}
+		if (send(entry.get(), sender)) {
+			consecutiveFailures = 0;
+		}
+	}
+
+	/**
+	 * Sends the oldest activities of completed commits. Activities of a branch are sent in commit order,
+	 * the activities of a branch with a commit still open wait for the next run.
+	 */
+	public synchronized void publishPending(Consumer<Activity> sender) {
+		if (isBackingOff()) {
+			return;
+		}
+		SearchHits<TraceabilityOutboxEntry> hits = elasticsearchTemplate.search(new NativeSearchQueryBuilder()
+				.withSort(SortBuilders.fieldSort(TraceabilityOutboxEntry.Fields.COMMIT_TIMESTAMP))
+				.withPageable(PageRequest.of(0, batchSize))
+				.build(), TraceabilityOutboxEntry.class);
+
+		Set<String> branchesWaiting = new HashSet<>();
+		for (SearchHit<TraceabilityOutboxEntry> hit : hits) {
+			TraceabilityOutboxEntry entry = hit.getContent();
+			String branchPath = entry.getBranchPath();
+			if (branchesWaiting.contains(branchPath)) {
+				continue;
+			}
+			Branch branch = branchService.findLatest(branchPath);
+			if (branch != null && branch.getHead().getTime() >= entry.getCommitTimestamp()) {
+				if (!isCommitCompleted(entry)) {
+					removeRolledBack(entry);
+				} else if (!send(entry, sender)) {
+					return;
+				}
+			} else if (branch != null && branch.isLocked()) {
+				// Commit may still be open
+				branchesWaiting.add(branchPath);
+			} else {
+				removeRolledBack(entry);
+			}
+		}
+		consecutiveFailures = 0;
+	}
+
+	public long getPendingCount() {
+		return repository.count();
+	}
+
+	// A completed commit has a branch version with its head at the commit timepoint
+	private boolean isCommitCompleted(TraceabilityOutboxEntry entry) {
+		Branch branchVersion = branchService.findAtTimepointOrThrow(entry.getBranchPath(), new Date(entry.getCommitTimestamp()));
+		return branchVersion.getHead().getTime() == entry.getCommitTimestamp();
+	}
+
+	private void removeRolledBack(TraceabilityOutboxEntry entry) {
+		logger.info("Commit on {} at {} did not complete, traceability activity removed.", entry.getBranchPath(), entry.getCommitTimestamp());
+		repository.deleteById(entry.getId());
+	}
+
+	private boolean isBackingOff() {
+		return consecutiveFailures > 0 && System.currentTimeMillis() < nextAttemptMillis;
+	}
+
+	private boolean send(TraceabilityOutboxEntry entry, Consumer<Activity> sender) {
+		Activity activity;
+		try {
+			activity = decode(entry.getActivity());
+		} catch (RuntimeException e) {
+			// Would block the outbox if kept
+			logger.error("Failed to read traceability activity for commit on {} at {}, activity removed.", entry.getBranchPath(), entry.getCommitTimestamp(), e);
+			repository.deleteById(entry.getId());
+			return true;
+		}
+		try {
+			sender.accept(activity);
+		} catch (RuntimeException e) {
+			consecutiveFailures++;
+			long delayMillis = Math.min(FIRST_RETRY_DELAY_MILLIS << Math.min(consecutiveFailures - 1, 20), maxRetryDelaySeconds * 1000L);
+			nextAttemptMillis = System.currentTimeMillis() + delayMillis;
+			entry.setAttempts(entry.getAttempts() + 1);
+			repository.save(entry);
+			logger.warn("Failed to send traceability activity for commit on {} at {}, attempt {}, sending paused for {} ms.",
+					entry.getBranchPath(), entry.getCommitTimestamp(), entry.getAttempts(), delayMillis, e);
+			return false;
+		}
+		repository.deleteById(entry.getId());
+		logger.debug("Sent traceability activity with {} changes for commit on {} at {}.", entry.getChangeCount(), entry.getBranchPath(),
+				entry.getCommitTimestamp());
+		return true;
+	}
+
+	String encode(Activity activity) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (OutputStream out = new DeflaterOutputStream(bytes)) {
+			objectMapper.writeValue(out, activity);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return Base64.getEncoder().encodeToString(bytes.toByteArray());
+	}
+
+	Activity decode(String encoded) {
+		try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encoded)))) {
+			return objectMapper.readValue(in, Activity.class);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
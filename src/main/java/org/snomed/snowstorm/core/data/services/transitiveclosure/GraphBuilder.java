@@ -1,42 +1,225 @@
 package org.snomed.snowstorm.core.data.services.transitiveclosure;
 
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collection;
-import java.util.Map;
+import java.util.*;
 
+/**
+ * Concept graph held as primitive adjacency arrays indexed by node number rather than as linked objects.
+ * Transitive closures are memoised so that each part of the hierarchy is walked once per graph, not once per descendant.
+ * The memoised state is discarded whenever the graph is changed.
+ */
 public class GraphBuilder {
 
-	private final Map<Long, Node> nodeLookup = new Long2ObjectOpenHashMap<>();
+	private static final int[] NO_PARENTS = new int[0];
+
+	private final Long2IntOpenHashMap indexLookup = new Long2IntOpenHashMap();
+	private long[] ids = new long[1024];
+	private int[][] parents = new int[1024][];
+	private int[] parentCounts = new int[1024];
+	private final BitSet updated = new BitSet();
+	private int nodeCount;
+
+	private int[][] closures;
+	private BitSet closuresInProgress;
+	private BitSet ancestorOrSelfUpdated;
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(GraphBuilder.class);
 
+	public GraphBuilder() {
+		indexLookup.defaultReturnValue(-1);
+	}
+
 	public void addParent(Long sourceId, Long destinationId) {
 		LOGGER.debug("{} -> {}", sourceId, destinationId);
-		Node createNode = getCreateNode(sourceId);
-		createNode.addParent(getCreateNode(destinationId));
+		int source = getCreateIndex(sourceId);
+		int destination = getCreateIndex(destinationId);
+		int[] sourceParents = parents[source];
+		int count = parentCounts[source];
+		for (int i = 0; i < count; i++) {
+			if (sourceParents[i] == destination) {
+				return;
+			}
+		}
+		if (count == sourceParents.length) {
+			sourceParents = Arrays.copyOf(sourceParents, Math.max(2, count * 2));
+			parents[source] = sourceParents;
+		}
+		sourceParents[count] = destination;
+		parentCounts[source] = count + 1;
+		graphChanged();
 	}
 
-	private Node getCreateNode(Long id) {
-		Node node = nodeLookup.get(id);
-		if (node == null) {
-			node = new Node(id);
-			nodeLookup.put(node.getId(), node);
+	private int getCreateIndex(long id) {
+		int index = indexLookup.get(id);
+		if (index == -1) {
+			index = nodeCount++;
+			if (index == ids.length) {
+				int capacity = ids.length * 2;
+				ids = Arrays.copyOf(ids, capacity);
+				parents = Arrays.copyOf(parents, capacity);
+				parentCounts = Arrays.copyOf(parentCounts, capacity);
+			}
+			ids[index] = id;
+			parents[index] = NO_PARENTS;
+			indexLookup.put(id, index);
+			graphChanged();
 		}
-		return node;
+		return index;
 	}
 
 	public Collection<Node> getNodes() {
-		return nodeLookup.values();
+		List<Node> nodes = new ArrayList<>(nodeCount);
+		for (int i = 0; i < nodeCount; i++) {
+			nodes.add(new Node(this, i));
+		}
+		return nodes;
 	}
 
 	public int getNodeCount() {
-		return nodeLookup.size();
+		return nodeCount;
 	}
 
 	public void clearParentsAndMarkUpdated(Long sourceId) {
-		getCreateNode(sourceId).markUpdated().getParents().clear();
+		int index = getCreateIndex(sourceId);
+		updated.set(index);
+		parentCounts[index] = 0;
+		graphChanged();
+	}
+
+	long getId(int index) {
+		return ids[index];
+	}
+
+	int[] getParentIndexes(int index) {
+		return Arrays.copyOf(parents[index], parentCounts[index]);
+	}
+
+	boolean isAncestorOrSelfUpdated(int index) {
+		if (ancestorOrSelfUpdated == null) {
+			ancestorOrSelfUpdated = markUpdatedAndDescendants();
+		}
+		return ancestorOrSelfUpdated.get(index);
+	}
+
+	Set<Long> getTransitiveClosure(int index, String path, boolean throwExceptionIfLoopFound) throws GraphBuilderException {
+		if (closures == null) {
+			closures = new int[nodeCount][];
+			closuresInProgress = new BitSet(nodeCount);
+		}
+		int[] ancestorIndexes = getAncestorIndexes(index);
+		if (ancestorIndexes == null) {
+			// There is a loop in the ancestry, walk the graph again without memoisation so that the loop can be reported
+			return getTransitiveClosureWithLoop(index, path, throwExceptionIfLoopFound);
+		}
+		Set<Long> ancestorIds = new LongOpenHashSet(ancestorIndexes.length);
+		for (int ancestorIndex : ancestorIndexes) {
+			ancestorIds.add(ids[ancestorIndex]);
+		}
+		return ancestorIds;
+	}
+
+	/**
+	 * @return indexes of all ancestors of the node, or null if a loop was found above the node
+	 */
+	private int[] getAncestorIndexes(int index) {
+		int[] ancestorIndexes = closures[index];
+		if (ancestorIndexes != null) {
+			return ancestorIndexes;
+		}
+		if (closuresInProgress.get(index)) {
+			return null;
+		}
+		closuresInProgress.set(index);
+		IntOpenHashSet ancestors = new IntOpenHashSet();
+		int[] nodeParents = parents[index];
+		for (int i = 0; i < parentCounts[index]; i++) {
+			int parent = nodeParents[i];
+			int[] parentAncestors = getAncestorIndexes(parent);
+			if (parentAncestors == null) {
+				closuresInProgress.clear(index);
+				return null;
+			}
+			ancestors.add(parent);
+			for (int parentAncestor : parentAncestors) {
+				ancestors.add(parentAncestor);
+			}
+		}
+		closuresInProgress.clear(index);
+		ancestorIndexes = ancestors.toIntArray();
+		closures[index] = ancestorIndexes;
+		return ancestorIndexes;
+	}
+
+	private Set<Long> getTransitiveClosureWithLoop(int index, String path, boolean throwExceptionIfLoopFound) throws GraphBuilderException {
+		long id = ids[index];
+		Set<Long> parentIds = throwExceptionIfLoopFound ? new LinkedHashSet<>() : new LongOpenHashSet();
+		collectAncestorsInIdOrder(index, parentIds);
+		if (parentIds.contains(id)) {
+			String message = String.format("Loop found in transitive closure for concept %s on branch %s. The concept %s is in its own set of ancestors: %s", id, path, id, parentIds);
+			if (throwExceptionIfLoopFound) {
+				new Node(this, index).dumpTransitiveClosure();
+				throw new GraphBuilderException(message);
+			} else {
+				LOGGER.warn(message);
+			}
+			parentIds.remove(id);
+		}
+		return parentIds;
+	}
+
+	private void collectAncestorsInIdOrder(int index, Set<Long> parentIds) {
+		long[] parentIdsInOrder = Arrays.stream(getParentIndexes(index)).mapToLong(parent -> ids[parent]).sorted().toArray();
+		for (long parentId : parentIdsInOrder) {
+			if (parentIds.add(parentId)) {
+				collectAncestorsInIdOrder(indexLookup.get(parentId), parentIds);
+			}
+		}
+	}
+
+	private BitSet markUpdatedAndDescendants() {
+		// Child adjacency in compressed sparse row form
+		int[] childStart = new int[nodeCount + 1];
+		for (int node = 0; node < nodeCount; node++) {
+			for (int i = 0; i < parentCounts[node]; i++) {
+				childStart[parents[node][i] + 1]++;
+			}
+		}
+		for (int node = 0; node < nodeCount; node++) {
+			childStart[node + 1] += childStart[node];
+		}
+		int[] children = new int[childStart[nodeCount]];
+		int[] childFill = Arrays.copyOf(childStart, nodeCount);
+		for (int node = 0; node < nodeCount; node++) {
+			for (int i = 0; i < parentCounts[node]; i++) {
+				children[childFill[parents[node][i]]++] = node;
+			}
+		}
+
+		BitSet marked = (BitSet) updated.clone();
+		IntArrayFIFOQueue queue = new IntArrayFIFOQueue();
+		marked.stream().forEach(queue::enqueue);
+		while (!queue.isEmpty()) {
+			int node = queue.dequeueInt();
+			for (int i = childStart[node]; i < childStart[node + 1]; i++) {
+				int child = children[i];
+				if (!marked.get(child)) {
+					marked.set(child);
+					queue.enqueue(child);
+				}
+			}
+		}
+		return marked;
+	}
+
+	private void graphChanged() {
+		closures = null;
+		closuresInProgress = null;
+		ancestorOrSelfUpdated = null;
 	}
 }
@@ -0,0 +1,250 @@
+package org.snomed.snowstorm.core.data.services.transitiveclosure;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.*;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Immutable is-a hierarchy of one form of one branch version, held in primitive arrays.
+ * Concepts are numbered by their position in a sorted id array. Parent and child edges are stored as
+ * offsets into flat arrays of concept positions, which is compact enough to keep a whole edition in memory.
+ */
+public final class HierarchySnapshot {
+
+	private final long[] conceptIds;
+	private final int[] parentOffsets;
+	private final int[] parents;
+	private final int[] childOffsets;
+	private final int[] children;
+
+	private HierarchySnapshot(long[] conceptIds, int[] parentOffsets, int[] parents, int[] childOffsets, int[] children) {
+		this.conceptIds = conceptIds;
+		this.parentOffsets = parentOffsets;
+		this.parents = parents;
+		this.childOffsets = childOffsets;
+		this.children = children;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Creates a new snapshot with changes applied, without modifying this one.
+	 * @param changedConceptParents concepts with new or changed parents
+	 * @param removedConceptIds concepts no longer in the hierarchy
+	 */
+	public HierarchySnapshot withChanges(Map<Long, ? extends Collection<Long>> changedConceptParents, Collection<Long> removedConceptIds) {
+		Builder builder = new Builder();
+		LongSet skip = new LongOpenHashSet(removedConceptIds);
+		skip.addAll(changedConceptParents.keySet());
+		for (int i = 0; i < conceptIds.length; i++) {
+			long conceptId = conceptIds[i];
+			if (!skip.contains(conceptId)) {
+				long[] conceptParents = new long[parentOffsets[i + 1] - parentOffsets[i]];
+				for (int p = parentOffsets[i], a = 0; p < parentOffsets[i + 1]; p++, a++) {
+					conceptParents[a] = conceptIds[parents[p]];
+				}
+				builder.addConcept(conceptId, conceptParents);
+			}
+		}
+		for (Map.Entry<Long, ? extends Collection<Long>> entry : changedConceptParents.entrySet()) {
+			if (!removedConceptIds.contains(entry.getKey())) {
+				builder.addConcept(entry.getKey(), entry.getValue());
+			}
+		}
+		return builder.build();
+	}
+
+	public int getConceptCount() {
+		return conceptIds.length;
+	}
+
+	public int getEdgeCount() {
+		return parents.length;
+	}
+
+	public boolean contains(long conceptId) {
+		return indexOf(conceptId) >= 0;
+	}
+
+	public LongSet getParents(Collection<Long> conceptIds, boolean includeSelf) {
+		return collectAdjacent(conceptIds, includeSelf, parentOffsets, parents);
+	}
+
+	public LongSet getChildren(Collection<Long> conceptIds, boolean includeSelf) {
+		return collectAdjacent(conceptIds, includeSelf, childOffsets, children);
+	}
+
+	public LongSet getAncestors(Collection<Long> conceptIds, boolean includeSelf) {
+		return collectTransitive(conceptIds, includeSelf, parentOffsets, parents);
+	}
+
+	public LongSet getDescendants(Collection<Long> conceptIds, boolean includeSelf) {
+		return collectTransitive(conceptIds, includeSelf, childOffsets, children);
+	}
+
+	// Counts without collecting concept ids, zero if the concept is not in the hierarchy
+
+	public int countParents(long conceptId, boolean includeSelf) {
+		return countAdjacent(conceptId, includeSelf, parentOffsets);
+	}
+
+	public int countChildren(long conceptId, boolean includeSelf) {
+		return countAdjacent(conceptId, includeSelf, childOffsets);
+	}
+
+	public int countAncestors(long conceptId, boolean includeSelf) {
+		return countTransitive(conceptId, includeSelf, parentOffsets, parents);
+	}
+
+	public int countDescendants(long conceptId, boolean includeSelf) {
+		return countTransitive(conceptId, includeSelf, childOffsets, children);
+	}
+
+	/**
+	 * Estimated heap use, for logging and cache weighing.
+	 */
+	public long getSizeInBytes() {
+		return conceptIds.length * 8L + (parentOffsets.length + parents.length + childOffsets.length + children.length) * 4L;
+	}
+
+	private LongSet collectAdjacent(Collection<Long> startIds, boolean includeSelf, int[] offsets, int[] edges) {
+		LongSet result = new LongOpenHashSet();
+		for (Long startId : startIds) {
+			int index = indexOf(startId);
+			if (index >= 0) {
+				if (includeSelf) {
+					result.add(conceptIds[index]);
+				}
+				for (int e = offsets[index]; e < offsets[index + 1]; e++) {
+					result.add(conceptIds[edges[e]]);
+				}
+			}
+		}
+		return result;
+	}
+
+	private int countAdjacent(long conceptId, boolean includeSelf, int[] offsets) {
+		int index = indexOf(conceptId);
+		if (index < 0) {
+			return 0;
+		}
+		return offsets[index + 1] - offsets[index] + (includeSelf ? 1 : 0);
+	}
+
+	private int countTransitive(long conceptId, boolean includeSelf, int[] offsets, int[] edges) {
+		int start = indexOf(conceptId);
+		if (start < 0) {
+			return 0;
+		}
+		BitSet visited = new BitSet(conceptIds.length);
+		IntArrayList queue = new IntArrayList();
+		queue.add(start);
+		for (int q = 0; q < queue.size(); q++) {
+			int index = queue.getInt(q);
+			for (int e = offsets[index]; e < offsets[index + 1]; e++) {
+				int adjacent = edges[e];
+				if (!visited.get(adjacent)) {
+					visited.set(adjacent);
+					queue.add(adjacent);
+				}
+			}
+		}
+		if (includeSelf) {
+			visited.set(start);
+		}
+		return visited.cardinality();
+	}
+
+	private LongSet collectTransitive(Collection<Long> startIds, boolean includeSelf, int[] offsets, int[] edges) {
+		BitSet visited = new BitSet(conceptIds.length);
+		IntArrayList queue = new IntArrayList();
+		LongSet result = new LongOpenHashSet();
+		for (Long startId : startIds) {
+			int index = indexOf(startId);
+			if (index >= 0) {
+				if (includeSelf) {
+					result.add(conceptIds[index]);
+				}
+				queue.add(index);
+			}
+		}
+		// Breadth first, each concept is expanded at most once
+		for (int q = 0; q < queue.size(); q++) {
+			int index = queue.getInt(q);
+			for (int e = offsets[index]; e < offsets[index + 1]; e++) {
+				int adjacent = edges[e];
+				if (!visited.get(adjacent)) {
+					visited.set(adjacent);
+					result.add(conceptIds[adjacent]);
+					queue.add(adjacent);
+				}
+			}
+		}
+		return result;
+	}
+
+	private int indexOf(long conceptId) {
+		int index = Arrays.binarySearch(conceptIds, conceptId);
+		return index >= 0 ? index : -1;
+	}
+
+	public static final class Builder {
+
+		private final Long2ObjectMap<long[]> conceptParents = new Long2ObjectOpenHashMap<>();
+
+		private Builder() {
+		}
+
+		public Builder addConcept(long conceptId, Collection<Long> parentIds) {
+			return addConcept(conceptId, parentIds.stream().mapToLong(Long::longValue).toArray());
+		}
+
+		public Builder addConcept(long conceptId, long[] parentIds) {
+			conceptParents.put(conceptId, parentIds);
+			return this;
+		}
+
+		public HierarchySnapshot build() {
+			long[] conceptIds = conceptParents.keySet().toLongArray();
+			Arrays.sort(conceptIds);
+			int conceptCount = conceptIds.length;
+
+			// Parent edges, ignoring parents which are not in the hierarchy
+			int[] parentOffsets = new int[conceptCount + 1];
+			IntArrayList parents = new IntArrayList();
+			int[] childCounts = new int[conceptCount];
+			for (int i = 0; i < conceptCount; i++) {
+				parentOffsets[i] = parents.size();
+				for (long parentId : conceptParents.get(conceptIds[i])) {
+					int parentIndex = Arrays.binarySearch(conceptIds, parentId);
+					if (parentIndex >= 0) {
+						parents.add(parentIndex);
+						childCounts[parentIndex]++;
+					}
+				}
+			}
+			parentOffsets[conceptCount] = parents.size();
+
+			// Child edges are the inverse of parent edges
+			int[] childOffsets = new int[conceptCount + 1];
+			for (int i = 0; i < conceptCount; i++) {
+				childOffsets[i + 1] = childOffsets[i] + childCounts[i];
+			}
+			int[] children = new int[parents.size()];
+			int[] childFill = Arrays.copyOf(childOffsets, conceptCount);
+			for (int i = 0; i < conceptCount; i++) {
+				for (int p = parentOffsets[i]; p < parentOffsets[i + 1]; p++) {
+					children[childFill[parents.getInt(p)]++] = i;
+				}
+			}
+
+			return new HierarchySnapshot(conceptIds, parentOffsets, parents.toIntArray(), childOffsets, children);
+		}
+	}
+}
@@ -0,0 +1,194 @@
+package org.snomed.snowstorm.core.rf2.export;
+
+import org.elasticsearch.index.query.BoolQueryBuilder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * One file of an RF2 export.
+ * Rows are serialised by a worker thread into a bounded queue of byte chunks which the zip writer drains,
+ * so a worker blocks rather than buffering the whole file when it gets ahead of the writer.
+ */
+class ExportEntry<T> {
+
+	private static final int CHUNK_SIZE = 1024 * 1024;
+	private static final int QUEUE_CAPACITY = 8;
+	private static final byte[] END = new byte[0];
+
+	private final Class<T> componentClass;
+	private final String filePath;
+	private final BoolQueryBuilder contentQuery;
+	private final Collection<T> components;
+	private final List<String> extraFieldNames;
+	private final boolean concrete;
+	private final ExportFilter<T> exportFilter;
+	private final boolean skipIfEmpty;
+
+	private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private volatile int rows;
+	private volatile long bytes;
+	private volatile long millis;
+	private volatile Throwable failure;
+
+	private ExportEntry(Class<T> componentClass, String filePath, BoolQueryBuilder contentQuery, Collection<T> components, List<String> extraFieldNames,
+			boolean concrete, ExportFilter<T> exportFilter, boolean skipIfEmpty) {
+		this.componentClass = componentClass;
+		this.filePath = filePath;
+		this.contentQuery = contentQuery;
+		this.components = components;
+		this.extraFieldNames = extraFieldNames;
+		this.concrete = concrete;
+		this.exportFilter = exportFilter;
+		this.skipIfEmpty = skipIfEmpty;
+	}
+
+	static <T> ExportEntry<T> forQuery(Class<T> componentClass, String filePath, BoolQueryBuilder contentQuery, List<String> extraFieldNames,
+			ExportFilter<T> exportFilter, boolean skipIfEmpty) {
+		return new ExportEntry<>(componentClass, filePath, contentQuery, null, extraFieldNames, filePath.contains("Concrete"), exportFilter, skipIfEmpty);
+	}
+
+	static <T> ExportEntry<T> forComponents(Class<T> componentClass, String filePath, Collection<T> components, List<String> extraFieldNames,
+			ExportFilter<T> exportFilter) {
+		return new ExportEntry<>(componentClass, filePath, null, components, extraFieldNames, filePath.contains("Concrete"), exportFilter, false);
+	}
+
+	/**
+	 * Stream for the worker thread. Closing it hands over the last partial chunk.
+	 */
+	ChunkOutputStream openChunkStream() {
+		return new ChunkOutputStream();
+	}
+
+	/**
+	 * Called by the worker when it has finished, successfully or not.
+	 */
+	void complete(int rows, long millis, Throwable failure) {
+		this.rows = rows;
+		this.millis = millis;
+		this.failure = failure;
+		try {
+			put(END);
+		} catch (InterruptedIOException e) {
+			// Export aborted, nobody is waiting
+		}
+	}
+
+	/**
+	 * Called by the zip writer.
+	 * @return the next chunk of the file or null once the worker has finished
+	 */
+	byte[] takeChunk() throws InterruptedException {
+		byte[] chunk = chunks.take();
+		return chunk == END ? null : chunk;
+	}
+
+	private void put(byte[] chunk) throws InterruptedIOException {
+		try {
+			chunks.put(chunk);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Export of " + filePath + " interrupted.");
+		}
+	}
+
+	Class<T> getComponentClass() {
+		return componentClass;
+	}
+
+	String getFilePath() {
+		return filePath;
+	}
+
+	BoolQueryBuilder getContentQuery() {
+		return contentQuery;
+	}
+
+	Collection<T> getComponents() {
+		return components;
+	}
+
+	List<String> getExtraFieldNames() {
+		return extraFieldNames;
+	}
+
+	boolean isConcrete() {
+		return concrete;
+	}
+
+	ExportFilter<T> getExportFilter() {
+		return exportFilter;
+	}
+
+	/**
+	 * Refset files are only included in the archive if they have at least one row.
+	 */
+	boolean isSkipIfEmpty() {
+		return skipIfEmpty;
+	}
+
+	int getRows() {
+		return rows;
+	}
+
+	long getBytes() {
+		return bytes;
+	}
+
+	long getMillis() {
+		return millis;
+	}
+
+	Throwable getFailure() {
+		return failure;
+	}
+
+	class ChunkOutputStream extends OutputStream {
+
+		private byte[] chunk = new byte[CHUNK_SIZE];
+		private int position;
+
+		@Override
+		public void write(int b) throws IOException {
+			if (position == chunk.length) {
+				handOver();
+			}
+			chunk[position++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				if (position == chunk.length) {
+					handOver();
+				}
+				int length = Math.min(len, chunk.length - position);
+				System.arraycopy(b, off, chunk, position, length);
+				position += length;
+				off += length;
+				len -= length;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (position > 0) {
+				handOver();
+			}
+		}
+
+		private void handOver() throws IOException {
+			byte[] full = position == chunk.length ? chunk : Arrays.copyOf(chunk, position);
+			bytes += full.length;
+			put(full);
+			chunk = new byte[CHUNK_SIZE];
+			position = 0;
+		}
+	}
+}
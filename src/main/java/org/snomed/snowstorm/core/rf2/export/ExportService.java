@@ -6,7 +6,6 @@ import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.elasticvc.domain.Branch;
 
-import org.apache.tomcat.util.http.fileupload.util.Streams;
 import org.drools.util.StringUtils;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
@@ -16,6 +15,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.domain.jobs.ExportConfiguration;
+import org.snomed.snowstorm.core.data.domain.jobs.ExportFileStats;
 import org.snomed.snowstorm.core.data.repositories.ExportConfigurationRepository;
 import org.snomed.snowstorm.core.data.services.BranchMetadataHelper;
 import org.snomed.snowstorm.core.data.services.BranchMetadataKeys;
@@ -27,6 +27,7 @@ import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.snomed.snowstorm.core.util.DateUtil;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.data.elasticsearch.core.SearchHitsIterator;
@@ -36,8 +37,9 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 import java.io.*;
-import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -73,6 +75,12 @@ public class ExportService {
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	// Export job file stats are saved at most this often while the archive is written, and once at the end
+	private static final long PROGRESS_SAVE_INTERVAL_MILLIS = 10_000;
+
+	@Value("${export.parallelism}")
+	private int exportParallelism;
+
 	private final Set<String> refsetTypesRequiredForClassification = Sets.newHashSet(Concepts.REFSET_MRCM_ATTRIBUTE_DOMAIN, Concepts.OWL_EXPRESSION_TYPE_REFERENCE_SET);
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -110,30 +118,31 @@ public class ExportService {
 			exportConfigurationRepository.save(exportConfiguration);
 		}
 
-		File exportFile = exportRF2ArchiveFile(exportConfiguration.getBranchPath(), exportConfiguration.getFilenameEffectiveDate(),
+		// Zip is streamed straight into the output stream
+		exportRF2Archive(exportConfiguration.getBranchPath(), exportConfiguration.getFilenameEffectiveDate(),
 				exportConfiguration.getType(), exportConfiguration.isConceptsAndRelationshipsOnly(), exportConfiguration.isUnpromotedChangesOnly(),
 				exportConfiguration.getTransientEffectiveTime(), exportConfiguration.getStartEffectiveTime(), exportConfiguration.getModuleIds(),
-				exportConfiguration.isLegacyZipNaming(), exportConfiguration.getRefsetIds(), exportConfiguration.getId());
-		logger.info("Transmitting " + exportConfiguration.getId() + " export file " + exportFile);
-		try (FileInputStream inputStream = new FileInputStream(exportFile)) {
-			long fileSize = Files.size(exportFile.toPath());
-			long bytesTransferred = Streams.copy(inputStream, outputStream, false);
-			logger.info("Transmitted " + bytesTransferred + "bytes (file size = " + fileSize + "bytes) for export " + exportConfiguration.getId());
-		} catch (IOException e) {
-			throw new ExportException("Failed to copy RF2 data into output stream.", e);
-		} finally {
-			exportFile.delete();
-			logger.info("Deleted " + exportConfiguration.getId() + " export file " + exportFile);
-		}
+				exportConfiguration.isLegacyZipNaming(), exportConfiguration.getRefsetIds(), exportConfiguration, outputStream);
 	}
 
 	public File exportRF2ArchiveFile(String branchPath, String filenameEffectiveDate, RF2Type exportType, boolean forClassification) throws ExportException {
-		return exportRF2ArchiveFile(branchPath, filenameEffectiveDate, exportType, forClassification, false, null, null, null, true, new HashSet<>(), null);
+		try {
+			File exportFile = File.createTempFile("export-" + new Date().getTime(), ".zip");
+			try (FileOutputStream outputStream = new FileOutputStream(exportFile)) {
+				exportRF2Archive(branchPath, filenameEffectiveDate, exportType, forClassification, false, null, null, null, true, new HashSet<>(), null, outputStream);
+			} catch (ExportException | IOException e) {
+				exportFile.delete();
+				throw e;
+			}
+			return exportFile;
+		} catch (IOException e) {
+			throw new ExportException("Failed to write RF2 zip file.", e);
+		}
 	}
 
-	private File exportRF2ArchiveFile(String branchPath, String filenameEffectiveDate, RF2Type exportType, boolean forClassification,
+	private void exportRF2Archive(String branchPath, String filenameEffectiveDate, RF2Type exportType, boolean forClassification,
 			boolean unpromotedChangesOnly, String transientEffectiveTime, String startEffectiveTime, Set<String> moduleIds,
-			boolean legacyZipNaming, Set<String> refsetIds, String exportId) throws ExportException {
+			boolean legacyZipNaming, Set<String> refsetIds, ExportConfiguration exportJob, OutputStream outputStream) throws ExportException {
 
 		if (exportType == RF2Type.FULL) {
 			throw new IllegalArgumentException("FULL RF2 export is not implemented.");
@@ -144,13 +153,10 @@ public class ExportService {
 			generateMDR = true;
 		}
 
-		String exportStr = exportId == null ? "" : (" - " + exportId);
+		String exportStr = exportJob == null ? "" : (" - " + exportJob.getId());
 		logger.info("Starting {} export of {}{}", exportType, branchPath, exportStr);
 		Date startTime = new Date();
 
-		BranchCriteria allContentBranchCriteria = versionControlHelper.getBranchCriteria(branchPath);
-		BranchCriteria selectionBranchCriteria = unpromotedChangesOnly ? versionControlHelper.getChangesOnBranchCriteria(branchPath) : allContentBranchCriteria;
-
 		String entryDirectoryPrefix = "SnomedCT_Export/RF2Release/";
 		String codeSystemRF2Name = "INT";
 		if (!legacyZipNaming) {
@@ -161,149 +167,213 @@ public class ExportService {
 				codeSystemRF2Name = codeSystem.getShortCode();
 			}
 		}
+		String filenameSuffix = format("%s_%s_%s.txt", exportType.getName(), codeSystemRF2Name, filenameEffectiveDate);
 
 		//Need to detect if this is an Edition or Extension package so we know what MDRS rows to export
 		//Extensions only mention their own modules, despite being able to "see" those on MAIN
 		Branch branch = branchService.findBranchOrThrow(branchPath, true);
 		final boolean isExtension = (branch.getMetadata() != null && !StringUtils.isEmpty(branch.getMetadata().getString(BranchMetadataKeys.DEPENDENCY_PACKAGE)));
 
+		branchService.lockBranch(branchPath, branchMetadataHelper.getBranchLockMetadata("Exporting RF2 " + exportType.getName()));
+		boolean locked = true;
 		try {
-			branchService.lockBranch(branchPath, branchMetadataHelper.getBranchLockMetadata("Exporting RF2 " + exportType.getName()));
-			File exportFile = File.createTempFile("export-" + new Date().getTime(), ".zip");
-			try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(exportFile))) {
-
-				boolean refsetOnlyExport = refsetIds != null && !refsetIds.isEmpty();
-
-				if (!refsetOnlyExport) {
-					// Write Concepts
-					int conceptLines = exportComponents(Concept.class, entryDirectoryPrefix, "Terminology/", "sct2_Concept_", filenameEffectiveDate, exportType, zipOutputStream,
-							getContentQuery(exportType, moduleIds, startEffectiveTime, selectionBranchCriteria.getEntityBranchCriteria(Concept.class)), transientEffectiveTime, null, codeSystemRF2Name, null);
-					logger.info("{} concept states exported", conceptLines);
-
-					if (!forClassification) {
-						// Write Descriptions
-						BoolQueryBuilder descriptionBranchCriteria = selectionBranchCriteria.getEntityBranchCriteria(Description.class);
-						BoolQueryBuilder descriptionContentQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, descriptionBranchCriteria);
-						descriptionContentQuery.mustNot(termQuery(Description.Fields.TYPE_ID, Concepts.TEXT_DEFINITION));
-						int descriptionLines = exportComponents(Description.class, entryDirectoryPrefix, "Terminology/", "sct2_Description_", filenameEffectiveDate, exportType, zipOutputStream,
-								descriptionContentQuery, transientEffectiveTime, null, codeSystemRF2Name, null);
-						logger.info("{} description states exported", descriptionLines);
-
-						// Write Text Definitions
-						BoolQueryBuilder textDefinitionContentQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, descriptionBranchCriteria);
-						textDefinitionContentQuery.must(termQuery(Description.Fields.TYPE_ID, Concepts.TEXT_DEFINITION));
-						int textDefinitionLines = exportComponents(Description.class, entryDirectoryPrefix, "Terminology/", "sct2_TextDefinition_", filenameEffectiveDate, exportType, zipOutputStream,
-								textDefinitionContentQuery, transientEffectiveTime, null, codeSystemRF2Name, null);
-						logger.info("{} text defintion states exported", textDefinitionLines);
-					}
+			// Content is read at the head timepoint so that the lock can be released before streaming.
+			// Unpromoted changes can only be selected using the latest branch state so in that case the lock is held until the end.
+			Date head = branchService.findLatest(branchPath).getHead();
+			BranchCriteria allContentBranchCriteria = versionControlHelper.getBranchCriteriaAtTimepoint(branchPath, head);
+			BranchCriteria selectionBranchCriteria = unpromotedChangesOnly ? versionControlHelper.getChangesOnBranchCriteria(branchPath) : allContentBranchCriteria;
+			Set<ReferenceSetMember> generatedMDR = generateMDR ?
+					mdrService.generateModuleDependencies(branchPath, transientEffectiveTime, moduleIds, exportType.equals(RF2Type.DELTA), null) : null;
+			if (!unpromotedChangesOnly) {
+				branchService.unlock(branchPath);
+				locked = false;
+			}
 
-					// Write Stated Relationships
-					BoolQueryBuilder relationshipBranchCritera = selectionBranchCriteria.getEntityBranchCriteria(Relationship.class);
-					BoolQueryBuilder relationshipQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, relationshipBranchCritera);
-					relationshipQuery.must(termQuery(Relationship.Fields.CHARACTERISTIC_TYPE_ID, Concepts.STATED_RELATIONSHIP));
-					int statedRelationshipLines = exportComponents(Relationship.class, entryDirectoryPrefix, "Terminology/", "sct2_StatedRelationship_", filenameEffectiveDate, exportType, zipOutputStream,
-							relationshipQuery, transientEffectiveTime, null, codeSystemRF2Name, null);
-					logger.info("{} stated relationship states exported", statedRelationshipLines);
-
-					// Write Inferred non-concrete Relationships
-					relationshipQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, relationshipBranchCritera);
-					// Not 'stated' will include inferred and additional
-					relationshipQuery.mustNot(termQuery(Relationship.Fields.CHARACTERISTIC_TYPE_ID, Concepts.STATED_RELATIONSHIP));
-					relationshipQuery.must(existsQuery(Relationship.Fields.DESTINATION_ID));
-					int inferredRelationshipLines = exportComponents(Relationship.class, entryDirectoryPrefix, "Terminology/", "sct2_Relationship_", filenameEffectiveDate, exportType, zipOutputStream,
-							relationshipQuery, transientEffectiveTime, null, codeSystemRF2Name, null);
-					logger.info("{} inferred (non-concrete) and additional relationship states exported", inferredRelationshipLines);
-
-					// Write Concrete Inferred Relationships
-					relationshipQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, relationshipBranchCritera);
-					relationshipQuery.must(termQuery(Relationship.Fields.CHARACTERISTIC_TYPE_ID, Concepts.INFERRED_RELATIONSHIP));
-					relationshipQuery.must(existsQuery(Relationship.Fields.VALUE));
-					int inferredConcreteRelationshipLines = exportComponents(Relationship.class, entryDirectoryPrefix, "Terminology/", "sct2_RelationshipConcreteValues_", filenameEffectiveDate, exportType,
-							zipOutputStream,
-							relationshipQuery, transientEffectiveTime, null, codeSystemRF2Name, null);
-					logger.info("{} concrete inferred relationship states exported", inferredConcreteRelationshipLines);
-
-					// Write Identifiers
-					BoolQueryBuilder identifierContentQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, selectionBranchCriteria.getEntityBranchCriteria(Identifier.class));
-					int identifierLines = exportComponents(Identifier.class, entryDirectoryPrefix, "Terminology/", "sct2_Identifier_", filenameEffectiveDate, exportType, zipOutputStream,
-							identifierContentQuery, transientEffectiveTime, null, codeSystemRF2Name, null);
-					logger.info("{} identifier states exported", identifierLines);
+			List<ExportEntry<?>> entries = new ArrayList<>();
+			boolean refsetOnlyExport = refsetIds != null && !refsetIds.isEmpty();
+
+			if (!refsetOnlyExport) {
+				// Concepts
+				entries.add(ExportEntry.forQuery(Concept.class, entryDirectoryPrefix + "Terminology/sct2_Concept_" + filenameSuffix,
+						getContentQuery(exportType, moduleIds, startEffectiveTime, selectionBranchCriteria.getEntityBranchCriteria(Concept.class)), null, null, false));
+
+				if (!forClassification) {
+					// Descriptions
+					BoolQueryBuilder descriptionBranchCriteria = selectionBranchCriteria.getEntityBranchCriteria(Description.class);
+					BoolQueryBuilder descriptionContentQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, descriptionBranchCriteria);
+					descriptionContentQuery.mustNot(termQuery(Description.Fields.TYPE_ID, Concepts.TEXT_DEFINITION));
+					entries.add(ExportEntry.forQuery(Description.class, entryDirectoryPrefix + "Terminology/sct2_Description_" + filenameSuffix,
+							descriptionContentQuery, null, null, false));
+
+					// Text Definitions
+					BoolQueryBuilder textDefinitionContentQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, descriptionBranchCriteria);
+					textDefinitionContentQuery.must(termQuery(Description.Fields.TYPE_ID, Concepts.TEXT_DEFINITION));
+					entries.add(ExportEntry.forQuery(Description.class, entryDirectoryPrefix + "Terminology/sct2_TextDefinition_" + filenameSuffix,
+							textDefinitionContentQuery, null, null, false));
 				}
 
-				// Write Reference Sets
-				List<ReferenceSetType> referenceSetTypes = getReferenceSetTypes(allContentBranchCriteria.getEntityBranchCriteria(ReferenceSetType.class)).stream()
-						.filter(type -> !forClassification || refsetTypesRequiredForClassification.contains(type.getConceptId()))
-						.collect(Collectors.toList());
-
-				logger.info("{} Reference Set Types found for this export: {}", referenceSetTypes.size(), referenceSetTypes);
-
-				BoolQueryBuilder memberBranchCriteria = selectionBranchCriteria.getEntityBranchCriteria(ReferenceSetMember.class);
-				for (ReferenceSetType referenceSetType : referenceSetTypes) {
-					List<Long> refsetsOfThisType = new ArrayList<>(queryService.findDescendantIdsAsUnion(allContentBranchCriteria, true, Collections.singleton(Long.parseLong(referenceSetType.getConceptId()))));
-					refsetsOfThisType.add(Long.parseLong(referenceSetType.getConceptId()));
-					for (Long refsetToExport : refsetsOfThisType) {
-						boolean isMDRS =  refsetToExport.toString().equals(Concepts.REFSET_MODULE_DEPENDENCY);
-						//Export filter is pass-through when null
-						ExportFilter<ReferenceSetMember> exportFilter = null;
-						if (isMDRS) {
-							logger.info("MDRS being exported for " + (isExtension?"extension":"edition") + " package style.");
-							exportFilter = new ExportFilter<ReferenceSetMember>() {
-								public boolean isValid(ReferenceSetMember rm) {
-									return mdrService.isExportable(rm, isExtension);
-								}
-							};
-						}
-						if (generateMDR && isMDRS) {
-							logger.info("MDR being generated rather than persisted.");
-							String exportDir = referenceSetType.getExportDir();
-							String entryDirectory = !exportDir.startsWith("/") ? "Refset/" + exportDir + "/" : exportDir.substring(1) + "/";
-							String entryFilenamePrefix = (!entryDirectory.startsWith("Terminology/") ? "der2_" : "sct2_") + referenceSetType.getFieldTypes() + "Refset_" + referenceSetType.getName() + (refsetsOfThisType.size() > 1 ? refsetToExport : "");
-							int rowCount = exportComponents(
-									ReferenceSetMember.class,
-									entryDirectoryPrefix, entryDirectory,
-									entryFilenamePrefix,
-									filenameEffectiveDate,
-									exportType,
-									zipOutputStream,
-									mdrService.generateModuleDependencies(branchPath, transientEffectiveTime, moduleIds, exportType.equals(RF2Type.DELTA), null),
-									transientEffectiveTime,
-									referenceSetType.getFieldNameList(),
-									codeSystemRF2Name,
-									exportFilter);
-							logger.info("Exported Reference Set {} {} with {} members", refsetToExport, referenceSetType.getName(), rowCount);
-						} else if (!refsetOnlyExport || refsetIds.contains(refsetToExport.toString())) {
-							BoolQueryBuilder memberQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, memberBranchCriteria);
-							memberQuery.must(QueryBuilders.termQuery(ReferenceSetMember.Fields.REFSET_ID, refsetToExport));
-							long memberCount = elasticsearchTemplate.count(getNativeSearchQuery(memberQuery), ReferenceSetMember.class);
-							if (memberCount > 0) {
-								logger.info("Exporting Reference Set {} {} with {} members", refsetToExport, referenceSetType.getName(), memberCount);
-								String exportDir = referenceSetType.getExportDir();
-								String entryDirectory = !exportDir.startsWith("/") ? "Refset/" + exportDir + "/" : exportDir.substring(1) + "/";
-								String entryFilenamePrefix = (!entryDirectory.startsWith("Terminology/") ? "der2_" : "sct2_") + referenceSetType.getFieldTypes() + "Refset_" + referenceSetType.getName() + (refsetsOfThisType.size() > 1 ? refsetToExport : "");
-								exportComponents(
-										ReferenceSetMember.class,
-										entryDirectoryPrefix, entryDirectory,
-										entryFilenamePrefix,
-										filenameEffectiveDate,
-										exportType,
-										zipOutputStream,
-										memberQuery,
-										transientEffectiveTime,
-										referenceSetType.getFieldNameList(),
-										codeSystemRF2Name,
-										exportFilter);
+				// Stated Relationships
+				BoolQueryBuilder relationshipBranchCritera = selectionBranchCriteria.getEntityBranchCriteria(Relationship.class);
+				BoolQueryBuilder relationshipQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, relationshipBranchCritera);
+				relationshipQuery.must(termQuery(Relationship.Fields.CHARACTERISTIC_TYPE_ID, Concepts.STATED_RELATIONSHIP));
+				entries.add(ExportEntry.forQuery(Relationship.class, entryDirectoryPrefix + "Terminology/sct2_StatedRelationship_" + filenameSuffix,
+						relationshipQuery, null, null, false));
+
+				// Inferred non-concrete Relationships
+				relationshipQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, relationshipBranchCritera);
+				// Not 'stated' will include inferred and additional
+				relationshipQuery.mustNot(termQuery(Relationship.Fields.CHARACTERISTIC_TYPE_ID, Concepts.STATED_RELATIONSHIP));
+				relationshipQuery.must(existsQuery(Relationship.Fields.DESTINATION_ID));
+				entries.add(ExportEntry.forQuery(Relationship.class, entryDirectoryPrefix + "Terminology/sct2_Relationship_" + filenameSuffix,
+						relationshipQuery, null, null, false));
+
+				// Concrete Inferred Relationships
+				relationshipQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, relationshipBranchCritera);
+				relationshipQuery.must(termQuery(Relationship.Fields.CHARACTERISTIC_TYPE_ID, Concepts.INFERRED_RELATIONSHIP));
+				relationshipQuery.must(existsQuery(Relationship.Fields.VALUE));
+				entries.add(ExportEntry.forQuery(Relationship.class, entryDirectoryPrefix + "Terminology/sct2_RelationshipConcreteValues_" + filenameSuffix,
+						relationshipQuery, null, null, false));
+
+				// Identifiers
+				BoolQueryBuilder identifierContentQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, selectionBranchCriteria.getEntityBranchCriteria(Identifier.class));
+				entries.add(ExportEntry.forQuery(Identifier.class, entryDirectoryPrefix + "Terminology/sct2_Identifier_" + filenameSuffix,
+						identifierContentQuery, null, null, false));
+			}
+
+			// Reference Sets
+			List<ReferenceSetType> referenceSetTypes = getReferenceSetTypes(allContentBranchCriteria.getEntityBranchCriteria(ReferenceSetType.class)).stream()
+					.filter(type -> !forClassification || refsetTypesRequiredForClassification.contains(type.getConceptId()))
+					.collect(Collectors.toList());
+
+			logger.info("{} Reference Set Types found for this export: {}", referenceSetTypes.size(), referenceSetTypes);
+
+			BoolQueryBuilder memberBranchCriteria = selectionBranchCriteria.getEntityBranchCriteria(ReferenceSetMember.class);
+			for (ReferenceSetType referenceSetType : referenceSetTypes) {
+				List<Long> refsetsOfThisType = new ArrayList<>(queryService.findDescendantIdsAsUnion(allContentBranchCriteria, true, Collections.singleton(Long.parseLong(referenceSetType.getConceptId()))));
+				refsetsOfThisType.add(Long.parseLong(referenceSetType.getConceptId()));
+				for (Long refsetToExport : refsetsOfThisType) {
+					boolean isMDRS =  refsetToExport.toString().equals(Concepts.REFSET_MODULE_DEPENDENCY);
+					//Export filter is pass-through when null
+					ExportFilter<ReferenceSetMember> exportFilter = null;
+					if (isMDRS) {
+						logger.info("MDRS being exported for " + (isExtension?"extension":"edition") + " package style.");
+						exportFilter = new ExportFilter<ReferenceSetMember>() {
+							public boolean isValid(ReferenceSetMember rm) {
+								return mdrService.isExportable(rm, isExtension);
 							}
-						}
+						};
+					}
+					String exportDir = referenceSetType.getExportDir();
+					String entryDirectory = !exportDir.startsWith("/") ? "Refset/" + exportDir + "/" : exportDir.substring(1) + "/";
+					String entryFilenamePrefix = (!entryDirectory.startsWith("Terminology/") ? "der2_" : "sct2_") + referenceSetType.getFieldTypes() + "Refset_" + referenceSetType.getName() + (refsetsOfThisType.size() > 1 ? refsetToExport : "");
+					String filePath = entryDirectoryPrefix + entryDirectory + entryFilenamePrefix + filenameSuffix;
+					if (generateMDR && isMDRS) {
+						logger.info("MDR being generated rather than persisted.");
+						entries.add(ExportEntry.forComponents(ReferenceSetMember.class, filePath, generatedMDR, referenceSetType.getFieldNameList(), exportFilter));
+					} else if (!refsetOnlyExport || refsetIds.contains(refsetToExport.toString())) {
+						BoolQueryBuilder memberQuery = getContentQuery(exportType, moduleIds, startEffectiveTime, memberBranchCriteria);
+						memberQuery.must(QueryBuilders.termQuery(ReferenceSetMember.Fields.REFSET_ID, refsetToExport));
+						// Refsets without members are left out of the archive
+						entries.add(ExportEntry.forQuery(ReferenceSetMember.class, filePath, memberQuery, referenceSetType.getFieldNameList(), exportFilter, true));
 					}
 				}
 			}
 
+			writeArchive(entries, transientEffectiveTime, exportJob, outputStream);
 			logger.info("{} export of {}{} complete in {} seconds.", exportType, branchPath, exportStr, TimerUtil.secondsSince(startTime));
-			return exportFile;
 		} catch (IOException e) {
 			throw new ExportException("Failed to write RF2 zip file.", e);
 		} finally {
-			branchService.unlock(branchPath);
+			if (locked) {
+				branchService.unlock(branchPath);
+			}
+		}
+	}
+
+	/**
+	 * Files are fetched and serialised by a pool of workers while a single writer adds them to the zip in plan order.
+	 * Workers are started in plan order so the file being written always has a worker.
+	 */
+	private void writeArchive(List<ExportEntry<?>> entries, String transientEffectiveTime, ExportConfiguration exportJob, OutputStream outputStream) throws IOException {
+		ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, exportParallelism));
+		try {
+			for (ExportEntry<?> entry : entries) {
+				executorService.submit(() -> writeRows(entry, transientEffectiveTime));
+			}
+
+			// Not closing the zip stream because that would close the output stream
+			ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
+			long lastProgressSave = System.currentTimeMillis();
+			boolean progressUnsaved = false;
+			for (ExportEntry<?> entry : entries) {
+				byte[] chunk = entry.takeChunk();
+				if (chunk == null && entry.getFailure() == null && entry.isSkipIfEmpty() && entry.getRows() == 0) {
+					continue;
+				}
+				zipOutputStream.putNextEntry(new ZipEntry(entry.getFilePath()));
+				for (; chunk != null; chunk = entry.takeChunk()) {
+					zipOutputStream.write(chunk);
+				}
+				zipOutputStream.closeEntry();
+				if (entry.getFailure() != null) {
+					throw new ExportException("Failed to write export zip entry '" + entry.getFilePath() + "'", entry.getFailure());
+				}
+
+				ExportFileStats fileStats = new ExportFileStats(entry.getFilePath(), entry.getRows(), entry.getBytes(), entry.getMillis());
+				logger.info("Exported {}", fileStats);
+				if (exportJob != null) {
+					exportJob.getFileStats().add(fileStats);
+					progressUnsaved = true;
+					if (System.currentTimeMillis() - lastProgressSave >= PROGRESS_SAVE_INTERVAL_MILLIS) {
+						exportConfigurationRepository.save(exportJob);
+						lastProgressSave = System.currentTimeMillis();
+						progressUnsaved = false;
+					}
+				}
+			}
+			zipOutputStream.finish();
+			zipOutputStream.flush();
+			if (progressUnsaved) {
+				exportConfigurationRepository.save(exportJob);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExportException("RF2 export interrupted.", e);
+		} finally {
+			// Stops workers that are still running if the export failed
+			executorService.shutdownNow();
+		}
+	}
+
+	private <T> void writeRows(ExportEntry<T> entry, String transientEffectiveTime) {
+		long start = System.currentTimeMillis();
+		int rows = 0;
+		Throwable failure = null;
+		try {
+			ExportEntry<T>.ChunkOutputStream chunkStream = entry.openChunkStream();
+			try (ExportWriter<T> writer = getExportWriter(entry.getComponentClass(), chunkStream, entry.getExtraFieldNames(), entry.isConcrete())) {
+				writer.setTransientEffectiveTime(transientEffectiveTime);
+				writer.writeHeader();
+				ExportFilter<T> exportFilter = entry.getExportFilter();
+				if (entry.getComponents() != null) {
+					entry.getComponents().forEach(c -> doFilteredWrite(exportFilter, writer, c));
+				} else {
+					try (SearchHitsIterator<T> componentStream = elasticsearchTemplate.searchForStream(getNativeSearchQuery(entry.getContentQuery()), entry.getComponentClass())) {
+						componentStream.forEachRemaining(hit -> doFilteredWrite(exportFilter, writer, hit.getContent()));
+					}
+				}
+				rows = writer.getContentLinesWritten();
+			}
+			if (rows > 0 || !entry.isSkipIfEmpty()) {
+				chunkStream.close();
+			}
+		} catch (Exception e) {
+			failure = e;
+		} catch (Error e) {
+			failure = e;
+			throw e;
+		} finally {
+			entry.complete(rows, System.currentTimeMillis() - start, failure);
 		}
 	}
 
@@ -332,63 +402,12 @@ public class ExportService {
 		return contentQuery;
 	}
 
-	private <T> int exportComponents(Class<T> componentClass, String entryDirectoryPrefix, String entryDirectory, String entryFilenamePrefix, String filenameEffectiveDate,
-			RF2Type exportType, ZipOutputStream zipOutputStream, BoolQueryBuilder contentQuery, String transientEffectiveTime, List<String> extraFieldNames, String codeSystemRF2Name, ExportFilter<T> exportFilter) {
-
-		String componentFilePath = entryDirectoryPrefix + entryDirectory + entryFilenamePrefix + format("%s_%s_%s.txt", exportType.getName(), codeSystemRF2Name, filenameEffectiveDate);
-		logger.info("Exporting file {}", componentFilePath);
-		logger.info("Export filter is " + (exportFilter==null?"null" : "present"));
-		try {
-			// Open zip entry
-			zipOutputStream.putNextEntry(new ZipEntry(componentFilePath));
-
-			// Stream components into zip
-			try (ExportWriter<T> writer = getExportWriter(componentClass, zipOutputStream, extraFieldNames, entryFilenamePrefix.contains("Concrete"));
-					SearchHitsIterator<T> componentStream = elasticsearchTemplate.searchForStream(getNativeSearchQuery(contentQuery), componentClass)) {
-				writer.setTransientEffectiveTime(transientEffectiveTime);
-				writer.writeHeader();
-				componentStream.forEachRemaining(hit -> doFilteredWrite(exportFilter, writer, hit.getContent()));
-				return writer.getContentLinesWritten();
-			} finally {
-				// Close zip entry
-				zipOutputStream.closeEntry();
-			}
-		} catch (IOException e) {
-			throw new ExportException("Failed to write export zip entry '" + componentFilePath + "'", e);
-		}
-	}
-
 	private <T> void doFilteredWrite(ExportFilter<T> exportFilter, ExportWriter<T> writer, T item) {
 		if (exportFilter == null || exportFilter.isValid(item)) {
 			writer.write(item);
 		}
 	}
 
-	private <T> int exportComponents(Class<T> componentClass, String entryDirectoryPrefix, String entryDirectory, String entryFilenamePrefix, String filenameEffectiveDate,
-			RF2Type exportType, ZipOutputStream zipOutputStream, Set<T> components, String transientEffectiveTime, List<String> extraFieldNames, String codeSystemRF2Name,
-			ExportFilter<T> exportFilter) {
-
-		String componentFilePath = entryDirectoryPrefix + entryDirectory + entryFilenamePrefix + format("%s_%s_%s.txt", exportType.getName(), codeSystemRF2Name, filenameEffectiveDate);
-		logger.info("Exporting file {}", componentFilePath);
-		try {
-			// Open zip entry
-			zipOutputStream.putNextEntry(new ZipEntry(componentFilePath));
-
-			// Stream components into zip
-			try (ExportWriter<T> writer = getExportWriter(componentClass, zipOutputStream, extraFieldNames, entryFilenamePrefix.contains("Concrete"))) {
-				writer.setTransientEffectiveTime(transientEffectiveTime);
-				writer.writeHeader();
-				components.forEach(c -> doFilteredWrite(exportFilter, writer, c));
-				return writer.getContentLinesWritten();
-			} finally {
-				// Close zip entry
-				zipOutputStream.closeEntry();
-			}
-		} catch (IOException e) {
-			throw new ExportException("Failed to write export zip entry '" + componentFilePath + "'", e);
-		}
-	}
-
 	private <T> ExportWriter<T> getExportWriter(Class<T> componentClass, OutputStream outputStream, List<String> extraFieldNames, boolean concrete) {
 		if (componentClass.equals(Concept.class)) {
 			return (ExportWriter<T>) new ConceptExportWriter(getBufferedWriter(outputStream));
@@ -12,8 +12,9 @@ public class FullImportComponentFactoryImpl extends ImportComponentFactoryImpl i
 	private final String stopImportAfterEffectiveTime;
 
 	FullImportComponentFactoryImpl(ConceptUpdateHelper conceptUpdateHelper, ReferenceSetMemberService memberService, IdentifierComponentService identifierComponentService, BranchService branchService,
-								   BranchMetadataHelper branchMetadataHelper, CodeSystemService codeSystemService, String path, String stopImportAfterEffectiveTime) {
-		super(conceptUpdateHelper, memberService, identifierComponentService, branchService, branchMetadataHelper, path, null, false, false);
+								   BranchMetadataHelper branchMetadataHelper, CodeSystemService codeSystemService, String path, String stopImportAfterEffectiveTime,
+								   ImportJob importJob, int saveWorkersPerType) {
+		super(conceptUpdateHelper, memberService, identifierComponentService, branchService, branchMetadataHelper, path, null, false, false, importJob, saveWorkersPerType);
 		this.branchMetadataHelper = branchMetadataHelper;
 		this.basePath = path;
 		this.stopImportAfterEffectiveTime = stopImportAfterEffectiveTime;
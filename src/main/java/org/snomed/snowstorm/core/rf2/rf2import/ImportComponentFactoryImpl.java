@@ -14,12 +14,14 @@ import org.snomed.snowstorm.core.data.services.BranchMetadataHelper;
 import org.snomed.snowstorm.core.data.services.ConceptUpdateHelper;
 import org.snomed.snowstorm.core.data.services.IdentifierComponentService;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
+import org.snomed.snowstorm.core.data.services.RuntimeServiceException;
 import org.snomed.snowstorm.core.rf2.RF2Constants;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHitsIterator;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
@@ -32,6 +34,7 @@ import static org.elasticsearch.index.query.QueryBuilders.*;
 public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 
 	private static final int FLUSH_INTERVAL = 5000;
+	private static final int MAX_BATCHES_IN_FLIGHT = 4;
 
 	private final BranchService branchService;
 	private final BranchMetadataHelper branchMetadataHelper;
@@ -48,18 +51,36 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 	private final List<PersistBuffer<?>> persistBuffers;
 	private final List<PersistBuffer<?>> coreComponentPersistBuffers;
 	private final MaxEffectiveTimeCollector maxEffectiveTimeCollector;
-	private final Map<String, AtomicLong> componentTypeSkippedMap = new HashMap<>();
+	private final Map<String, AtomicLong> componentTypeSkippedMap = new ConcurrentHashMap<>();
+	private final ImportJob importJob;
+	private final int saveWorkersPerType;
+	private final int batchSize;
+	private final int maxBatchesInFlight;
+	private final Object coreComponentsFlushLock = new Object();
 
 	private static final Logger logger = LoggerFactory.getLogger(ImportComponentFactoryImpl.class);
 
 	// A small number of stated relationships also appear in the inferred file. These should not be persisted when importing a snapshot.
 	Set<Long> statedRelationshipsToSkip = Sets.newHashSet(3187444026L, 3192499027L, 3574321020L);
-	boolean coreComponentsFlushed;
+	volatile boolean coreComponentsFlushed;
 
 	ImportComponentFactoryImpl(ConceptUpdateHelper conceptUpdateHelper, ReferenceSetMemberService memberService, IdentifierComponentService identifierComponentService, BranchService branchService,
-							   BranchMetadataHelper branchMetadataHelper, String path, Integer patchReleaseVersion, boolean copyReleaseFields, boolean clearEffectiveTimes) {
+							   BranchMetadataHelper branchMetadataHelper, String path, Integer patchReleaseVersion, boolean copyReleaseFields, boolean clearEffectiveTimes,
+							   ImportJob importJob, int saveWorkersPerType) {
+
+		this(conceptUpdateHelper, memberService, identifierComponentService, branchService, branchMetadataHelper, path, patchReleaseVersion, copyReleaseFields,
+				clearEffectiveTimes, importJob, saveWorkersPerType, FLUSH_INTERVAL, MAX_BATCHES_IN_FLIGHT);
+	}
+
+	ImportComponentFactoryImpl(ConceptUpdateHelper conceptUpdateHelper, ReferenceSetMemberService memberService, IdentifierComponentService identifierComponentService, BranchService branchService,
+							   BranchMetadataHelper branchMetadataHelper, String path, Integer patchReleaseVersion, boolean copyReleaseFields, boolean clearEffectiveTimes,
+							   ImportJob importJob, int saveWorkersPerType, int batchSize, int maxBatchesInFlight) {
 
 		this.branchService = branchService;
+		this.importJob = importJob;
+		this.saveWorkersPerType = Math.max(1, saveWorkersPerType);
+		this.batchSize = batchSize;
+		this.maxBatchesInFlight = maxBatchesInFlight;
 		this.branchMetadataHelper = branchMetadataHelper;
 		this.path = path;
 		persistBuffers = new ArrayList<>();
@@ -68,44 +89,51 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 		ElasticsearchOperations elasticsearchTemplate = conceptUpdateHelper.getElasticsearchTemplate();
 		versionControlHelper = conceptUpdateHelper.getVersionControlHelper();
 
-		conceptPersistBuffer = new PersistBuffer<>() {
+		conceptPersistBuffer = new PersistBuffer<>(Concept.class) {
 			@Override
-			public void persistCollection(Collection<Concept> entities) {
+			void processCollection(Collection<Concept> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, Concept.class, copyReleaseFields, clearEffectiveTimes);
-				if (!entities.isEmpty()) {
-					conceptUpdateHelper.doSaveBatchConcepts(entities, commit);
-				}
+			}
+
+			@Override
+			void persistCollection(Collection<Concept> entities) {
+				conceptUpdateHelper.doSaveBatchConcepts(entities, commit);
 			}
 		};
 		coreComponentPersistBuffers.add(conceptPersistBuffer);
 
-		descriptionPersistBuffer = new PersistBuffer<>() {
+		descriptionPersistBuffer = new PersistBuffer<>(Description.class) {
 			@Override
-			public void persistCollection(Collection<Description> entities) {
+			void processCollection(Collection<Description> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, Description.class, copyReleaseFields, clearEffectiveTimes);
-				if (!entities.isEmpty()) {
-					conceptUpdateHelper.doSaveBatchDescriptions(entities, commit);
-				}
+			}
+
+			@Override
+			void persistCollection(Collection<Description> entities) {
+				conceptUpdateHelper.doSaveBatchDescriptions(entities, commit);
 			}
 		};
 		coreComponentPersistBuffers.add(descriptionPersistBuffer);
 
-		relationshipPersistBuffer = new PersistBuffer<>() {
+		relationshipPersistBuffer = new PersistBuffer<>(Relationship.class) {
 			@Override
-			public void persistCollection(Collection<Relationship> entities) {
+			void processCollection(Collection<Relationship> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, Relationship.class, copyReleaseFields, clearEffectiveTimes);
-				if (!entities.isEmpty()) {
-					conceptUpdateHelper.doSaveBatchRelationships(entities, commit);
-				}
+			}
+
+			@Override
+			void persistCollection(Collection<Relationship> entities) {
+				conceptUpdateHelper.doSaveBatchRelationships(entities, commit);
 			}
 		};
 		coreComponentPersistBuffers.add(relationshipPersistBuffer);
 
-		memberPersistBuffer = new PersistBuffer<>() {
+		memberPersistBuffer = new PersistBuffer<>(ReferenceSetMember.class) {
 			@Override
-			public void persistCollection(Collection<ReferenceSetMember> entities) {
+			void processCollection(Collection<ReferenceSetMember> entities) {
 				if (!coreComponentsFlushed) { // Avoid having to sync to check this
-					synchronized (this) {
+					// Not the buffer monitor, the reading thread may hold it while waiting for this batch to finish
+					synchronized (coreComponentsFlushLock) {
 						if (!coreComponentsFlushed) {
 							coreComponentPersistBuffers.forEach(PersistBuffer::flush);
 							coreComponentsFlushed = true;
@@ -113,19 +141,23 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 					}
 				}
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, ReferenceSetMember.class, copyReleaseFields, clearEffectiveTimes);
-				if (!entities.isEmpty()) {
-					memberService.doSaveBatchMembers(entities, commit);
-				}
+			}
+
+			@Override
+			void persistCollection(Collection<ReferenceSetMember> entities) {
+				memberService.doSaveBatchMembers(entities, commit);
 			}
 		};
 
-		identifierPersistBuffer = new PersistBuffer<>() {
+		identifierPersistBuffer = new PersistBuffer<>(Identifier.class) {
 			@Override
-			public void persistCollection(Collection<Identifier> entities) {
+			void processCollection(Collection<Identifier> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, Identifier.class, copyReleaseFields, clearEffectiveTimes);
-				if (!entities.isEmpty()) {
-					identifierComponentService.doSaveBatchIdentifiers(entities, commit);
-				}
+			}
+
+			@Override
+			void persistCollection(Collection<Identifier> entities) {
+				identifierComponentService.doSaveBatchIdentifiers(entities, commit);
 			}
 		};
 	}
@@ -225,11 +257,19 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 			}
 		}
 		persistBuffers.forEach(PersistBuffer::flush);
+		shutdownPipelines();
 		commit.markSuccessful();
 		commit.close();
 		commit = null;
 	}
 
+	/**
+	 * Stops the lookup and save workers. Workers are started again if more components are loaded.
+	 */
+	void shutdownPipelines() {
+		persistBuffers.forEach(PersistBuffer::shutdown);
+	}
+
 	@Override
 	public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
 		Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
@@ -335,26 +375,140 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 		return commit;
 	}
 
+	/**
+	 * Collects components into batches which are passed through two stages with their own workers:
+	 * the lookup of existing component states, then saving to the store.
+	 * The lookup of one batch runs while the previous batch is being saved and while the next is being read from the RF2 file.
+	 * The number of batches in flight is limited, reading of the component type waits when the store can not keep up.
+	 * The buffer monitor only guards the buffered components and pending batches, it is never held while waiting for a batch.
+	 */
 	private abstract class PersistBuffer<E extends Entity> {
 
+		private final String componentType;
+		private final Semaphore batchesInFlight = new Semaphore(maxBatchesInFlight);
+		private final List<CompletableFuture<Void>> pendingBatches = new ArrayList<>();
 		private List<E> entities = new ArrayList<>();
+		private ExecutorService lookupExecutor;
+		private ExecutorService saveExecutor;
 
-		PersistBuffer() {
+		PersistBuffer(Class<E> componentClass) {
+			componentType = componentClass.getSimpleName();
 			persistBuffers.add(this);
 		}
 
-		synchronized void save(E entity) {
-			entities.add(entity);
-			if (entities.size() >= FLUSH_INTERVAL) {
-				flush();
+		void save(E entity) {
+			List<E> batch;
+			synchronized (this) {
+				entities.add(entity);
+				if (entities.size() < batchSize) {
+					return;
+				}
+				batch = takeEntities();
+			}
+			submitBatch(batch);
+		}
+
+		/**
+		 * Submits any partial batch and waits for all batches of this type to be saved.
+		 */
+		void flush() {
+			List<E> batch;
+			synchronized (this) {
+				batch = takeEntities();
+			}
+			if (!batch.isEmpty()) {
+				submitBatch(batch);
+			}
+			List<CompletableFuture<Void>> batches;
+			synchronized (this) {
+				batches = new ArrayList<>(pendingBatches);
+			}
+			for (CompletableFuture<Void> pendingBatch : batches) {
+				waitFor(pendingBatch);
+			}
+			synchronized (this) {
+				pendingBatches.removeAll(batches);
+			}
+		}
+
+		synchronized void shutdown() {
+			if (lookupExecutor != null) {
+				lookupExecutor.shutdownNow();
+				saveExecutor.shutdownNow();
+				try {
+					// Let a failed import roll back only after in-flight saves have stopped
+					if (!lookupExecutor.awaitTermination(1, TimeUnit.MINUTES) || !saveExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+						logger.warn("{} import workers did not stop within one minute.", componentType);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				lookupExecutor = null;
+				saveExecutor = null;
+			}
+		}
+
+		private List<E> takeEntities() {
+			List<E> batch = entities;
+			entities = new ArrayList<>();
+			return batch;
+		}
+
+		private void submitBatch(List<E> batch) {
+			if (importJob != null) {
+				importJob.getProgress(componentType).addRead(batch.size());
+			}
+
+			// Fail fast if an earlier batch failed
+			List<CompletableFuture<Void>> doneBatches;
+			synchronized (this) {
+				doneBatches = pendingBatches.stream().filter(CompletableFuture::isDone).collect(Collectors.toList());
+				pendingBatches.removeAll(doneBatches);
+			}
+			doneBatches.forEach(this::waitFor);
+
+			// Waiting without the monitor so that lookups and flushes of other threads can go ahead
+			try {
+				batchesInFlight.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeServiceException("Interrupted while waiting to save " + componentType + " components.", e);
+			}
+			int readCount = batch.size();
+			synchronized (this) {
+				if (lookupExecutor == null) {
+					lookupExecutor = Executors.newSingleThreadExecutor();
+					saveExecutor = Executors.newFixedThreadPool(saveWorkersPerType);
+				}
+				pendingBatches.add(CompletableFuture
+						.runAsync(() -> processCollection(batch), lookupExecutor)
+						.thenRunAsync(() -> {
+							if (!batch.isEmpty()) {
+								persistCollection(batch);
+							}
+							if (importJob != null) {
+								importJob.getProgress(componentType).addSaved(batch.size()).addSkipped(readCount - batch.size());
+							}
+						}, saveExecutor)
+						.whenComplete((result, throwable) -> batchesInFlight.release()));
 			}
 		}
 
-		synchronized void flush() {
-			persistCollection(entities);
-			entities.clear();
+		private boolean waitFor(CompletableFuture<Void> pendingBatch) {
+			try {
+				pendingBatch.join();
+				return true;
+			} catch (CompletionException e) {
+				Throwable cause = e.getCause();
+				throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeServiceException("Failed to save " + componentType + " components.", cause);
+			}
 		}
 
+		/**
+		 * Lookup stage, may remove components which should not be saved.
+		 */
+		abstract void processCollection(Collection<E> entities);
+
 		abstract void persistCollection(Collection<E> entities);
 
 	}
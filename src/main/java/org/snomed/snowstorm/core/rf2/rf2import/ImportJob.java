@@ -3,7 +3,10 @@ package org.snomed.snowstorm.core.rf2.rf2import;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.snomed.snowstorm.core.rf2.RF2Type;
 
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ImportJob {
 
@@ -22,6 +25,8 @@ public class ImportJob {
 
 	private String errorMessage;
 
+	private final Map<String, ComponentProgress> progress = new ConcurrentSkipListMap<>();
+
 	public void setStatus(ImportStatus status) {
 		this.status = status;
 	}
@@ -66,4 +71,49 @@ public class ImportJob {
 	public String getErrorMessage() {
 		return errorMessage;
 	}
+
+	/**
+	 * @return counts of components read from the RF2 files, saved and skipped because the same or a newer state exists, by component type
+	 */
+	public Map<String, ComponentProgress> getProgress() {
+		return progress;
+	}
+
+	ComponentProgress getProgress(String componentType) {
+		return progress.computeIfAbsent(componentType, type -> new ComponentProgress());
+	}
+
+	public static final class ComponentProgress {
+
+		private final AtomicLong read = new AtomicLong();
+		private final AtomicLong saved = new AtomicLong();
+		private final AtomicLong skipped = new AtomicLong();
+
+		ComponentProgress addRead(long count) {
+			read.addAndGet(count);
+			return this;
+		}
+
+		ComponentProgress addSaved(long count) {
+			saved.addAndGet(count);
+			return this;
+		}
+
+		ComponentProgress addSkipped(long count) {
+			skipped.addAndGet(count);
+			return this;
+		}
+
+		public long getRead() {
+			return read.get();
+		}
+
+		public long getSaved() {
+			return saved.get();
+		}
+
+		public long getSkipped() {
+			return skipped.get();
+		}
+	}
 }
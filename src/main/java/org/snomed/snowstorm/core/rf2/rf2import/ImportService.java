@@ -13,6 +13,7 @@ import org.snomed.snowstorm.core.data.domain.CodeSystem;
 import org.snomed.snowstorm.core.data.services.*;
 import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -61,6 +62,9 @@ public class ImportService {
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Value("${import.save-workers-per-type}")
+	private int saveWorkersPerType;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	public ImportService() {
@@ -160,7 +164,7 @@ public class ImportService {
 			case SNAPSHOT:
 				return snapshotImport(releaseFileStream, job, branchPath, patchReleaseVersion, releaseImporter, loadingProfile);
 			case FULL:
-				return fullImport(releaseFileStream, branchPath, releaseImporter, loadingProfile);
+				return fullImport(releaseFileStream, job, branchPath, releaseImporter, loadingProfile);
 			default:
 				throw new IllegalStateException("Unexpected import type: " + importType);
 		}
@@ -193,16 +197,18 @@ public class ImportService {
 		branchService.updateMetadata(branchPath, metadata);
 	}
 
-	private Integer fullImport(final InputStream releaseFileStream, final String branchPath, final ReleaseImporter releaseImporter,
+	private Integer fullImport(final InputStream releaseFileStream, final ImportJob job, final String branchPath, final ReleaseImporter releaseImporter,
 			final LoadingProfile loadingProfile) throws ReleaseImportException {
 
-		final FullImportComponentFactoryImpl importComponentFactory = getFullImportComponentFactory(branchPath);
+		final FullImportComponentFactoryImpl importComponentFactory = getFullImportComponentFactory(branchPath, job);
 		try {
 			releaseImporter.loadFullReleaseFiles(releaseFileStream, loadingProfile, importComponentFactory, true);
 			return null;
 		} catch (ReleaseImportException e) {
 			rollbackIncompleteCommit(importComponentFactory);
 			throw e;
+		} finally {
+			importComponentFactory.shutdownPipelines();
 		}
 	}
 
@@ -211,13 +217,15 @@ public class ImportService {
 
 		// If we are not creating a new version copy the release fields from the existing components
 		final ImportComponentFactoryImpl importComponentFactory =
-				getImportComponentFactory(branchPath, patchReleaseVersion, !job.isCreateCodeSystemVersion(), job.isClearEffectiveTimes());
+				getImportComponentFactory(branchPath, patchReleaseVersion, !job.isCreateCodeSystemVersion(), job.isClearEffectiveTimes(), job);
 		try {
 			releaseImporter.loadSnapshotReleaseFiles(releaseFileStream, loadingProfile, importComponentFactory, true);
 			return importComponentFactory.getMaxEffectiveTime();
 		} catch (ReleaseImportException e) {
 			rollbackIncompleteCommit(importComponentFactory);
 			throw e;
+		} finally {
+			importComponentFactory.shutdownPipelines();
 		}
 	}
 
@@ -226,17 +234,21 @@ public class ImportService {
 
 		// If we are not creating a new version copy the release fields from the existing components
 		final ImportComponentFactoryImpl importComponentFactory =
-				getImportComponentFactory(branchPath, patchReleaseVersion, !job.isCreateCodeSystemVersion(), job.isClearEffectiveTimes());
+				getImportComponentFactory(branchPath, patchReleaseVersion, !job.isCreateCodeSystemVersion(), job.isClearEffectiveTimes(), job);
 		try {
 			releaseImporter.loadDeltaReleaseFiles(releaseFileStream, loadingProfile, importComponentFactory, true);
 			return importComponentFactory.getMaxEffectiveTime();
 		} catch (ReleaseImportException e) {
 			rollbackIncompleteCommit(importComponentFactory);
 			throw e;
+		} finally {
+			importComponentFactory.shutdownPipelines();
 		}
 	}
 
 	private void rollbackIncompleteCommit(ImportComponentFactoryImpl importComponentFactory) {
+		// Stop saving components before the commit is rolled back
+		importComponentFactory.shutdownPipelines();
 		final Commit commit = importComponentFactory.getCommit();
 		if (commit != null) {
 			logger.info("Triggering rollback of failed import commit on {} at {}", commit.getBranch().getPath(), commit.getTimepoint().getTime());
@@ -245,14 +257,15 @@ public class ImportService {
 		}
 	}
 
-	private ImportComponentFactoryImpl getImportComponentFactory(String branchPath, Integer patchReleaseVersion, boolean copyReleaseFields, boolean clearEffectiveTimes) {
+	private ImportComponentFactoryImpl getImportComponentFactory(String branchPath, Integer patchReleaseVersion, boolean copyReleaseFields, boolean clearEffectiveTimes,
+			ImportJob job) {
 		return new ImportComponentFactoryImpl(conceptUpdateHelper, memberService, identifierComponentService, branchService, branchMetadataHelper,
-				branchPath, patchReleaseVersion, copyReleaseFields, clearEffectiveTimes);
+				branchPath, patchReleaseVersion, copyReleaseFields, clearEffectiveTimes, job, saveWorkersPerType);
 	}
 
-	private FullImportComponentFactoryImpl getFullImportComponentFactory(String branchPath) {
+	private FullImportComponentFactoryImpl getFullImportComponentFactory(String branchPath, ImportJob job) {
 		return new FullImportComponentFactoryImpl(conceptUpdateHelper, memberService, identifierComponentService, branchService, branchMetadataHelper, codeSystemService,
-				branchPath, null);
+				branchPath, null, job, saveWorkersPerType);
 	}
 
 	@PreAuthorize("hasPermission('AUTHOR', #branchPath)")
@@ -4,13 +4,13 @@ public class MaxEffectiveTimeCollector {
 
 	private Integer maxEffectiveTime;
 
-	public void add(Integer effectiveTime) {
+	public synchronized void add(Integer effectiveTime) {
 		if (maxEffectiveTime == null || maxEffectiveTime < effectiveTime) {
 			maxEffectiveTime = effectiveTime;
 		}
 	}
 
-	public Integer getMaxEffectiveTime() {
+	public synchronized Integer getMaxEffectiveTime() {
 		return maxEffectiveTime;
 	}
 }
@@ -0,0 +1,60 @@
+package org.snomed.snowstorm.ecl;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.SearchAfterPageRequest;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Objects;
+
+final class ECLCacheEntry {
+
+	private final String path;
+	private final Date head;
+	private final String ecl;
+	private final boolean stated;
+	private final PageRequest pageRequest;
+	private final Object[] searchAfter;
+
+	ECLCacheEntry(String path, Date head, String ecl, boolean stated, PageRequest pageRequest) {
+		this.path = path;
+		this.head = head;
+		this.ecl = ecl != null ? BranchVersionECLCache.normaliseEclString(ecl) : "";
+		this.stated = stated;
+		this.pageRequest = pageRequest;
+		if (pageRequest instanceof SearchAfterPageRequest) {
+			SearchAfterPageRequest searchAfterPageRequest = (SearchAfterPageRequest) pageRequest;
+			this.searchAfter = searchAfterPageRequest.getSearchAfter();
+		} else {
+			this.searchAfter = null;
+		}
+	}
+
+	String getPath() {
+		return path;
+	}
+
+	Date getHead() {
+		return head;
+	}
+
+	String getEcl() {
+		return ecl;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		ECLCacheEntry that = (ECLCacheEntry) o;
+		return stated == that.stated && path.equals(that.path) && head.equals(that.head) && ecl.equals(that.ecl)
+				&& Objects.equals(pageRequest, that.pageRequest) && Arrays.equals(searchAfter, that.searchAfter);
+	}
+
+	@Override
+	public int hashCode() {
+		int result = Objects.hash(path, head, ecl, stated, pageRequest);
+		result = 31 * result + Arrays.hashCode(searchAfter);
+		return result;
+	}
+}
@@ -0,0 +1,298 @@
+package org.snomed.snowstorm.ecl;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.collect.Iterables;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.api.PathUtil;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import org.elasticsearch.index.query.BoolQueryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.QueryConcept;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.snomed.snowstorm.ecl.domain.SRefinement;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
+import static org.elasticsearch.index.query.QueryBuilders.termsQuery;
+
+/**
+ * Works out which version of content an ECL result depends on, so that cached results can be shared.
+ * <p>
+ * A branch without any content of its own gives the same results as its parent at the branch base timepoint.
+ * ECL that only uses the semantic index gives the same results until a commit changes QueryConcept documents,
+ * so commits that only change descriptions or refset members do not expire those results.
+ * The MRCM version of a branch is resolved in the same way, from commits changing MRCM reference set members, see MRCMLoader.
+ * <p>
+ * Semantic and MRCM versions are tracked in memory from commits made on this instance. When nothing is known the branch head is used.
+ */
+@Service
+public class ECLCacheVersionService implements CommitListener {
+
+	private static final Set<String> MRCM_REFSETS = Set.of(Concepts.REFSET_MRCM_DOMAIN_INTERNATIONAL,
+			Concepts.REFSET_MRCM_ATTRIBUTE_DOMAIN_INTERNATIONAL, Concepts.REFSET_MRCM_ATTRIBUTE_RANGE_INTERNATIONAL);
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchRestTemplate elasticsearchTemplate;
+
+	// Every content commit changes the content, a branch only shares the content of its parent while it has none of its own
+	private final TrackedContent allContent = new TrackedContent("content", commit -> true, Branch::isContainsContent);
+
+	private final TrackedContent semanticContent = new TrackedContent("semantic", this::isSemanticIndexChanged, Branch::isContainsContent);
+
+	private final TrackedContent mrcmContent = new TrackedContent("MRCM", this::isMRCMChanged, this::isMRCMChangedOnBranch);
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		semanticContent.commitCompleting(commit);
+		mrcmContent.commitCompleting(commit);
+	}
+
+	/**
+	 * @param path branch path
+	 * @param timepoint timepoint of the branch criteria used for the ECL
+	 * @param semanticIndexOnly true if the ECL only uses the semantic index, see {@link SRefinement#isSemanticIndexOnly()}
+	 * @return the earliest branch version known to have the same relevant content
+	 */
+	public ContentVersion resolve(String path, Date timepoint, boolean semanticIndexOnly) {
+		return (semanticIndexOnly ? semanticContent : allContent).resolve(path, timepoint);
+	}
+
+	/**
+	 * @return the earliest branch version known to have the same MRCM reference set members as the given branch version
+	 */
+	public ContentVersion resolveMRCM(String path, Date timepoint) {
+		return mrcmContent.resolve(path, timepoint);
+	}
+
+	private boolean isSemanticIndexChanged(Commit commit) {
+		if (!commit.getEntityVersionsReplaced().getOrDefault(QueryConcept.class.getSimpleName(), Collections.emptySet()).isEmpty()) {
+			return true;
+		}
+		return elasticsearchTemplate.count(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(versionControlHelper.getBranchCriteriaChangesAndDeletionsWithinOpenCommitOnly(commit).getEntityBranchCriteria(QueryConcept.class)))
+				.build(), QueryConcept.class) > 0;
+	}
+
+	private boolean isMRCMChanged(Commit commit) {
+		BranchCriteria changesCriteria = versionControlHelper.getBranchCriteriaChangesAndDeletionsWithinOpenCommitOnly(commit);
+		return elasticsearchTemplate.count(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(changesCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+						.must(termsQuery(ReferenceSetMember.Fields.REFSET_ID, MRCM_REFSETS)))
+				.build(), ReferenceSetMember.class) > 0;
+	}
+
+	/**
+	 * @return true if MRCM members have been added, changed or deleted on the branch itself since it was last rebased
+	 */
+	private boolean isMRCMChangedOnBranch(Branch branch) {
+		if (!branch.isContainsContent()) {
+			return false;
+		}
+		BoolQueryBuilder mrcmChangesQuery = boolQuery()
+				.must(versionControlHelper.getChangesOnBranchCriteria(branch).getEntityBranchCriteria(ReferenceSetMember.class))
+				.must(termsQuery(ReferenceSetMember.Fields.REFSET_ID, MRCM_REFSETS));
+		if (elasticsearchTemplate.count(new NativeSearchQueryBuilder().withQuery(mrcmChangesQuery).build(), ReferenceSetMember.class) > 0) {
+			return true;
+		}
+		Set<String> membersReplaced = branch.getVersionsReplaced().getOrDefault(ReferenceSetMember.class.getSimpleName(), Collections.emptySet());
+		for (List<String> internalIdBatch : Iterables.partition(membersReplaced, 10_000)) {
+			if (elasticsearchTemplate.count(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(termsQuery("_id", internalIdBatch))
+							.must(termsQuery(ReferenceSetMember.Fields.REFSET_ID, MRCM_REFSETS)))
+					.build(), ReferenceSetMember.class) > 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Versions of one kind of content, tracked from commits which leave that content unchanged.
+	 */
+	private final class TrackedContent {
+
+		private final String name;
+		private final Predicate<Commit> changedInCommit;
+		private final Predicate<Branch> changedOnBranch;
+
+		// Branch path -> content version of the latest commit on that branch, made on this instance
+		private final Map<String, TrackedCommit> commits = new ConcurrentHashMap<>();
+
+		// Branch version -> content version. Resolved versions never change once a branch version exists.
+		private final Cache<ContentVersion, ContentVersion> resolvedVersions = Caffeine.newBuilder().maximumSize(10_000).build();
+
+		private TrackedContent(String name, Predicate<Commit> changedInCommit, Predicate<Branch> changedOnBranch) {
+			this.name = name;
+			this.changedInCommit = changedInCommit;
+			this.changedOnBranch = changedOnBranch;
+		}
+
+		private void commitCompleting(Commit commit) {
+			Branch branch = commit.getBranch();
+			String path = branch.getPath();
+			if (commit.getCommitType() != Commit.CommitType.CONTENT || changedInCommit.test(commit)) {
+				// Content will be versioned by the new head
+				commits.remove(path);
+			} else {
+				// Content not changed, carry the version of the previous head forward
+				ContentVersion previousVersion = resolve(path, branch.getHead());
+				TrackedCommit previousCommit = commits.get(path);
+				Date since = previousCommit != null && previousCommit.getTimepoint().equals(branch.getHead()) ? previousCommit.getSince() : branch.getHead();
+				commits.put(path, new TrackedCommit(commit.getTimepoint(), since, previousVersion));
+				logger.debug("Commit on {} has no {} changes, {} content version is still {}.", path, name, name, previousVersion);
+			}
+		}
+
+		private ContentVersion resolve(String path, Date timepoint) {
+			ContentVersion key = new ContentVersion(path, timepoint);
+			ContentVersion contentVersion = resolvedVersions.getIfPresent(key);
+			if (contentVersion == null) {
+				// Not using a mapping function because resolving may recurse to the parent branch
+				contentVersion = doResolve(path, timepoint);
+				if (contentVersion.isCommitted()) {
+					resolvedVersions.put(key, contentVersion);
+				}
+			}
+			return contentVersion;
+		}
+
+		private ContentVersion doResolve(String path, Date timepoint) {
+			Branch branch = branchService.findLatest(path);
+			if (branch == null || !timepoint.equals(branch.getHead())) {
+				// Not the latest version of the branch, may be a criteria including an open commit
+				return new ContentVersion(path, timepoint, branch == null || !timepoint.after(branch.getHead()));
+			}
+
+			TrackedCommit trackedCommit = commits.get(path);
+			if (trackedCommit != null && trackedCommit.getTimepoint().equals(timepoint)) {
+				return trackedCommit.getContentVersion();
+			}
+
+			String parentPath = PathUtil.getParentPath(path);
+			if (parentPath != null && !changedOnBranch.test(branch)) {
+				// Same content as parent at base
+				return resolveParentAtBase(parentPath, branch.getBase());
+			}
+			return new ContentVersion(path, timepoint);
+		}
+
+		private ContentVersion resolveParentAtBase(String parentPath, Date base) {
+			Branch parentBranch = branchService.findLatest(parentPath);
+			if (parentBranch != null) {
+				if (base.equals(parentBranch.getHead())) {
+					return resolve(parentPath, base);
+				}
+				// Parent has moved on, the content is still shared if it has not changed on the parent since the base
+				TrackedCommit parentCommit = commits.get(parentPath);
+				if (parentCommit != null && parentCommit.getTimepoint().equals(parentBranch.getHead()) && !base.before(parentCommit.getSince())) {
+					return parentCommit.getContentVersion();
+				}
+			}
+			// Results can still be shared with sibling branches that have the same base
+			return new ContentVersion(parentPath, base);
+		}
+	}
+
+	public static final class ContentVersion {
+
+		private final String path;
+		private final Date timepoint;
+		private final boolean committed;
+
+		public ContentVersion(String path, Date timepoint) {
+			this(path, timepoint, true);
+		}
+
+		public ContentVersion(String path, Date timepoint, boolean committed) {
+			this.path = path;
+			this.timepoint = timepoint;
+			this.committed = committed;
+		}
+
+		public String getPath() {
+			return path;
+		}
+
+		public Date getTimepoint() {
+			return timepoint;
+		}
+
+		/**
+		 * @return false if the version is after the branch head, for example branch criteria that include an open commit
+		 */
+		public boolean isCommitted() {
+			return committed;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			ContentVersion that = (ContentVersion) o;
+			return path.equals(that.path) && timepoint.equals(that.timepoint);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(path, timepoint);
+		}
+
+		@Override
+		public String toString() {
+			return path + "@" + timepoint.getTime();
+		}
+	}
+
+	private static final class TrackedCommit {
+
+		private final Date timepoint;
+		private final Date since;
+		private final ContentVersion contentVersion;
+
+		private TrackedCommit(Date timepoint, Date since, ContentVersion contentVersion) {
+			this.timepoint = timepoint;
+			this.since = since;
+			this.contentVersion = contentVersion;
+		}
+
+		private Date getTimepoint() {
+			return timepoint;
+		}
+
+		/**
+		 * @return the earliest head of the branch known to have this content version
+		 */
+		private Date getSince() {
+			return since;
+		}
+
+		private ContentVersion getContentVersion() {
+			return contentVersion;
+		}
+	}
+}
@@ -0,0 +1,46 @@
+package org.snomed.snowstorm.ecl;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.snomed.snowstorm.core.util.SearchAfterPage;
+import org.snomed.snowstorm.core.util.SearchAfterPageImpl;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+/**
+ * Compact form of a page of concept ids held in the ECL cache.
+ * Ids are kept in a primitive array rather than a list of boxed longs, which uses around a third of the memory.
+ */
+final class ECLCachedPage {
+
+	private final long[] ids;
+	private final Pageable pageable;
+	private final long totalElements;
+	private final Object[] searchAfter;
+
+	private ECLCachedPage(long[] ids, Pageable pageable, long totalElements, Object[] searchAfter) {
+		this.ids = ids;
+		this.pageable = pageable;
+		this.totalElements = totalElements;
+		this.searchAfter = searchAfter;
+	}
+
+	static ECLCachedPage of(Page<Long> page) {
+		long[] ids = page.getContent().stream().mapToLong(Long::longValue).toArray();
+		Object[] searchAfter = page instanceof SearchAfterPage ? ((SearchAfterPage<Long>) page).getSearchAfter() : null;
+		return new ECLCachedPage(ids, page.getPageable(), page.getTotalElements(), searchAfter);
+	}
+
+	Page<Long> toPage() {
+		// Copy so that callers can not modify the cached array
+		LongArrayList content = new LongArrayList(ids);
+		if (searchAfter != null) {
+			return new SearchAfterPageImpl<>(content, pageable, totalElements, searchAfter);
+		}
+		return new PageImpl<>(content, pageable, totalElements);
+	}
+
+	long getWeightInBytes() {
+		return ids.length * 8L;
+	}
+}
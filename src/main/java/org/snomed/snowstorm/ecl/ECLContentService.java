@@ -11,10 +11,16 @@ import org.snomed.langauges.ecl.domain.ConceptReference;
 import org.snomed.langauges.ecl.domain.expressionconstraint.SubExpressionConstraint;
 import org.snomed.langauges.ecl.domain.filter.*;
 import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.services.AttributeIndexService;
 import org.snomed.snowstorm.core.data.services.DescriptionService;
+import org.snomed.snowstorm.core.data.services.FrozenVersionSnapshotService;
+import org.snomed.snowstorm.core.data.services.HierarchySnapshotService;
 import org.snomed.snowstorm.core.data.services.QueryService;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
 import org.snomed.snowstorm.core.data.services.RelationshipService;
+import org.snomed.snowstorm.core.data.services.snapshot.AttributeIndex;
+import org.snomed.snowstorm.core.data.services.snapshot.FrozenVersionSnapshot;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.HierarchySnapshot;
 import org.snomed.snowstorm.core.util.PageHelper;
 import org.snomed.snowstorm.core.util.SearchAfterPage;
 import org.snomed.snowstorm.core.util.SearchAfterPageImpl;
@@ -61,6 +67,18 @@ public class ECLContentService {
 	@Autowired
 	private QueryService queryService;
 
+	@Autowired
+	private HierarchySnapshotService hierarchySnapshotService;
+
+	@Autowired
+	private AttributeIndexService attributeIndexService;
+
+	@Autowired
+	private FrozenVersionSnapshotService frozenVersionSnapshotService;
+
+	@Autowired
+	private ECLQueryPlanner queryPlanner;
+
 	@Autowired
 	@Lazy
 	private ReferenceSetMemberService memberService;
@@ -125,6 +143,12 @@ public class ECLContentService {
 	}
 
 	public Set<Long> findConceptIdsInReferenceSet(Collection<Long> referenceSetIds, List<MemberFilterConstraint> memberFilterConstraints, RefinementBuilder refinementBuilder) {
+		if (memberFilterConstraints == null) {
+			Optional<FrozenVersionSnapshot> frozenVersionSnapshot = frozenVersionSnapshotService.getSnapshot(refinementBuilder.getBranchCriteria());
+			if (frozenVersionSnapshot.isPresent()) {
+				return frozenVersionSnapshot.get().getConceptIdsInReferenceSets(referenceSetIds);
+			}
+		}
 		BoolQueryBuilder masterMemberQuery = buildECLMemberQuery(memberFilterConstraints, refinementBuilder.isStated(), refinementBuilder.getBranchCriteria());
 		return memberService.findConceptsInReferenceSet(referenceSetIds, memberFilterConstraints, refinementBuilder, masterMemberQuery);
 	}
@@ -150,6 +174,11 @@ public class ECLContentService {
 	}
 
 	public List<Long> findRelationshipDestinationIds(Collection<Long> sourceConceptIds, List<Long> attributeTypeIds, BranchCriteria branchCriteria, boolean stated) {
+		Optional<List<Long>> inMemoryDestinationIds = findRelationshipDestinationIdsInMemory(sourceConceptIds, attributeTypeIds, branchCriteria, stated);
+		if (inMemoryDestinationIds.isPresent()) {
+			return inMemoryDestinationIds.get();
+		}
+
 		if (!stated) {
 			// Use relationships - it's faster
 			return relationshipService.findRelationshipDestinationIds(sourceConceptIds, attributeTypeIds, branchCriteria, false);
@@ -209,12 +238,42 @@ public class ECLContentService {
 		return sortedIds;
 	}
 
+	private Optional<List<Long>> findRelationshipDestinationIdsInMemory(Collection<Long> sourceConceptIds, List<Long> attributeTypeIds,
+			BranchCriteria branchCriteria, boolean stated) {
+
+		Optional<AttributeIndex> attributeIndex = attributeIndexService.getIndex(branchCriteria, stated);
+		if (attributeIndex.isEmpty()) {
+			return Optional.empty();
+		}
+		// Same as the Elasticsearch lookups, all attributes of the inferred form include is-a, all attributes of the stated form do not
+		boolean includeIsA = attributeTypeIds != null ? attributeTypeIds.contains(Concepts.IS_A_LONG) : !stated;
+		Set<Long> destinationIds = attributeIndex.get().getDestinations(sourceConceptIds, attributeTypeIds);
+		if (includeIsA) {
+			Optional<HierarchySnapshot> hierarchySnapshot = hierarchySnapshotService.getSnapshot(branchCriteria, stated);
+			if (sourceConceptIds == null || hierarchySnapshot.isEmpty()) {
+				return Optional.empty();
+			}
+			destinationIds.addAll(hierarchySnapshot.get().getParents(sourceConceptIds, false));
+		}
+		List<Long> sortedIds = new LongArrayList(destinationIds);
+		sortedIds.sort(LongComparators.OPPOSITE_COMPARATOR);
+		return Optional.of(sortedIds);
+	}
+
 	private void addDestinationId(Object destinationId, Set<Long> destinationIds) {
 		if (destinationId instanceof String) {
 			destinationIds.add(parseLong((String)destinationId));
 		}
 	}
 
+	public ECLQueryPlanner getQueryPlanner() {
+		return queryPlanner;
+	}
+
+	public Optional<HierarchySnapshot> findHierarchySnapshot(BranchCriteria branchCriteria, boolean stated) {
+		return hierarchySnapshotService.getSnapshot(branchCriteria, stated);
+	}
+
 	public Set<Long> findAncestorIdsAsUnion(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIds) {
 		return queryService.findAncestorIdsAsUnion(branchCriteria, stated, conceptIds);
 	}
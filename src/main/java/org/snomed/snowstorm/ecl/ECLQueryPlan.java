@@ -0,0 +1,66 @@
+package org.snomed.snowstorm.ecl;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Explains how an ECL expression, or part of one, will be evaluated. Operands are listed in the order they will be evaluated.
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class ECLQueryPlan {
+
+	public enum Strategy {
+
+		// Translated into a single semantic index query together with the rest of the expression
+		SEMANTIC_INDEX_QUERY,
+
+		// Answered from the in-memory hierarchy
+		IN_MEMORY_HIERARCHY,
+
+		// All concept ids selected first, then filters and supplements applied
+		PREFETCH,
+
+		// Operands prefetched, most selective first, the result of each narrowing the selection of the next
+		PREFETCH_MOST_SELECTIVE_FIRST,
+
+		// Operands prefetched independently, in parallel
+		PREFETCH_PARALLEL
+	}
+
+	private final String ecl;
+	private final Strategy strategy;
+	private final Long estimatedCardinality;
+	private final List<ECLQueryPlan> operands = new ArrayList<>();
+
+	public ECLQueryPlan(String ecl, Strategy strategy, Long estimatedCardinality) {
+		this.ecl = ecl;
+		this.strategy = strategy;
+		this.estimatedCardinality = estimatedCardinality;
+	}
+
+	ECLQueryPlan addOperand(ECLQueryPlan operand) {
+		operands.add(operand);
+		return this;
+	}
+
+	public String getEcl() {
+		return ecl;
+	}
+
+	public Strategy getStrategy() {
+		return strategy;
+	}
+
+	/**
+	 * @return the estimated number of concepts selected before any filters, null if unknown
+	 */
+	public Long getEstimatedCardinality() {
+		return estimatedCardinality;
+	}
+
+	public List<ECLQueryPlan> getOperands() {
+		return operands;
+	}
+}
@@ -0,0 +1,303 @@
+package org.snomed.snowstorm.ecl;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.snomed.langauges.ecl.domain.expressionconstraint.ExpressionConstraint;
+import org.snomed.langauges.ecl.domain.expressionconstraint.SubExpressionConstraint;
+import org.snomed.langauges.ecl.domain.refinement.Operator;
+import org.snomed.snowstorm.core.data.services.FrozenVersionSnapshotService;
+import org.snomed.snowstorm.core.data.services.HierarchySnapshotService;
+import org.snomed.snowstorm.core.data.services.RuntimeServiceException;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.HierarchySnapshot;
+import org.snomed.snowstorm.ecl.ECLQueryPlan.Strategy;
+import org.snomed.snowstorm.ecl.domain.RefinementBuilder;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.SCompoundExpressionConstraint;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.SExpressionConstraint;
+import org.snomed.snowstorm.ecl.domain.expressionconstraint.SSubExpressionConstraint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static java.lang.Long.parseLong;
+
+/**
+ * Plans the evaluation of compound ECL where operands have to be prefetched because they have filters or supplements.
+ * <p>
+ * The number of concepts each operand selects is estimated from the in-memory hierarchy and frozen version snapshots, when already built.
+ * Estimation never starts a snapshot build.
+ * Conjunction operands are evaluated most selective first, the result is then pushed down as a concept id filter into the other operands,
+ * which are evaluated in parallel. Disjunction and exclusion operands are independent so are all evaluated in parallel.
+ * Compound ECL without filters or supplements is translated into a single semantic index query, so needs no plan.
+ */
+@Service
+public class ECLQueryPlanner {
+
+	private static final long UNKNOWN = Long.MAX_VALUE;
+
+	// Largest selection pushed down into the queries of other operands, larger selections are intersected afterwards
+	private static final int MAX_PUSH_DOWN_SIZE = 10_000;
+
+	@Value("${ecl.planner.prefetch-threads}")
+	private int prefetchThreads;
+
+	@Autowired
+	private HierarchySnapshotService hierarchySnapshotService;
+
+	@Autowired
+	private FrozenVersionSnapshotService frozenVersionSnapshotService;
+
+	private ExecutorService prefetchExecutor;
+
+	// Operands of nested compound expressions are evaluated serially on the prefetch thread, waiting on the same pool could deadlock
+	private final ThreadLocal<Boolean> prefetchThread = ThreadLocal.withInitial(() -> false);
+
+	@PostConstruct
+	public void init() {
+		if (prefetchThreads > 1) {
+			prefetchExecutor = Executors.newFixedThreadPool(prefetchThreads);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (prefetchExecutor != null) {
+			prefetchExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return sorted ids of the concepts selected by all operands
+	 */
+	public List<Long> selectConjunction(List<SubExpressionConstraint> operands, RefinementBuilder refinementBuilder) {
+		List<SSubExpressionConstraint> ordered = orderBySelectivity(operands, refinementBuilder.getBranchCriteria(), refinementBuilder.isStated());
+		LongLinkedOpenHashSet result = new LongLinkedOpenHashSet(select(ordered.get(0), null, refinementBuilder));
+		if (!result.isEmpty() && ordered.size() > 1) {
+			Collection<Long> conceptIdFilter = result.size() <= MAX_PUSH_DOWN_SIZE ? new LongOpenHashSet(result) : null;
+			List<Supplier<List<Long>>> selections = ordered.subList(1, ordered.size()).stream()
+					.map(operand -> (Supplier<List<Long>>) () -> select(operand, conceptIdFilter, refinementBuilder))
+					.collect(Collectors.toList());
+			for (List<Long> ids : selectAll(selections)) {
+				result.retainAll(new LongOpenHashSet(ids));
+			}
+		}
+		return sortedList(result);
+	}
+
+	/**
+	 * @return sorted ids of the concepts selected by any operand
+	 */
+	public List<Long> selectDisjunction(List<SubExpressionConstraint> operands, RefinementBuilder refinementBuilder) {
+		List<Supplier<List<Long>>> selections = operands.stream()
+				.map(operand -> (Supplier<List<Long>>) () -> select((SSubExpressionConstraint) operand, null, refinementBuilder))
+				.collect(Collectors.toList());
+		LongOpenHashSet result = new LongOpenHashSet();
+		for (List<Long> ids : selectAll(selections)) {
+			result.addAll(ids);
+		}
+		return sortedList(result);
+	}
+
+	/**
+	 * @return ids of the concepts selected by the first operand and not the second, in the order of the first
+	 */
+	public List<Long> selectExclusion(SSubExpressionConstraint first, SSubExpressionConstraint second, RefinementBuilder refinementBuilder) {
+		List<List<Long>> results = selectAll(Arrays.asList(
+				() -> select(first, null, refinementBuilder),
+				() -> select(second, null, refinementBuilder)));
+		List<Long> ids = new LongArrayList(results.get(0));
+		ids.removeAll(new LongOpenHashSet(results.get(1)));
+		return ids;
+	}
+
+	public ECLQueryPlan explain(SExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated) {
+		Long estimate = toNullable(estimateCardinality(expressionConstraint, branchCriteria, stated));
+		String ecl = expressionConstraint.toEclString();
+		if (expressionConstraint instanceof SCompoundExpressionConstraint) {
+			SCompoundExpressionConstraint compound = (SCompoundExpressionConstraint) expressionConstraint;
+			List<SubExpressionConstraint> operands;
+			Strategy prefetchStrategy = Strategy.PREFETCH_PARALLEL;
+			if (compound.getConjunctionExpressionConstraints() != null) {
+				operands = compound.getConjunctionExpressionConstraints();
+				prefetchStrategy = Strategy.PREFETCH_MOST_SELECTIVE_FIRST;
+			} else if (compound.getDisjunctionExpressionConstraints() != null) {
+				operands = compound.getDisjunctionExpressionConstraints();
+			} else {
+				operands = Arrays.asList(compound.getExclusionExpressionConstraints().getFirst(), compound.getExclusionExpressionConstraints().getSecond());
+			}
+			boolean prefetch = operands.stream().anyMatch(operand -> ((SSubExpressionConstraint) operand).isAnyFiltersOrSupplements());
+			if (prefetch && prefetchStrategy == Strategy.PREFETCH_MOST_SELECTIVE_FIRST) {
+				operands = new ArrayList<>(orderBySelectivity(operands, branchCriteria, stated));
+			}
+			ECLQueryPlan plan = new ECLQueryPlan(ecl, prefetch ? prefetchStrategy : Strategy.SEMANTIC_INDEX_QUERY, estimate);
+			operands.forEach(operand -> plan.addOperand(explain((SExpressionConstraint) operand, branchCriteria, stated)));
+			return plan;
+		} else if (expressionConstraint instanceof SSubExpressionConstraint) {
+			SSubExpressionConstraint sub = (SSubExpressionConstraint) expressionConstraint;
+			Strategy strategy;
+			if (sub.getOperator() == Operator.memberOf || sub.isAnyFiltersOrSupplements()) {
+				strategy = Strategy.PREFETCH;
+			} else if (sub.getConceptId() != null && sub.getOperator() != null && hierarchySnapshotService.getSnapshotIfBuilt(branchCriteria, stated).isPresent()) {
+				strategy = Strategy.IN_MEMORY_HIERARCHY;
+			} else {
+				strategy = Strategy.SEMANTIC_INDEX_QUERY;
+			}
+			ECLQueryPlan plan = new ECLQueryPlan(ecl, strategy, estimate);
+			if (sub.getNestedExpressionConstraint() != null) {
+				plan.addOperand(explain((SExpressionConstraint) sub.getNestedExpressionConstraint(), branchCriteria, stated));
+			}
+			return plan;
+		}
+		return new ECLQueryPlan(ecl, Strategy.SEMANTIC_INDEX_QUERY, estimate);
+	}
+
+	/**
+	 * @return the estimated number of concepts selected before any filters are applied, Long.MAX_VALUE if unknown
+	 */
+	long estimateCardinality(ExpressionConstraint expressionConstraint, BranchCriteria branchCriteria, boolean stated) {
+		if (expressionConstraint instanceof SSubExpressionConstraint) {
+			SSubExpressionConstraint sub = (SSubExpressionConstraint) expressionConstraint;
+			Operator operator = sub.getOperator();
+			if (sub.getConceptId() != null) {
+				long conceptId = parseLong(sub.getConceptId());
+				if (operator == null) {
+					return 1;
+				} else if (operator == Operator.memberOf) {
+					return frozenVersionSnapshotService.getSnapshot(branchCriteria)
+							.map(snapshot -> (long) snapshot.countConceptsInReferenceSet(conceptId))
+							.orElse(UNKNOWN);
+				}
+				return hierarchySnapshotService.getSnapshotIfBuilt(branchCriteria, stated)
+						.map(snapshot -> countHierarchy(snapshot, conceptId, operator))
+						.orElse(UNKNOWN);
+			} else if (sub.getNestedExpressionConstraint() != null && operator == null) {
+				return estimateCardinality(sub.getNestedExpressionConstraint(), branchCriteria, stated);
+			} else if (sub.isWildcard() && operator != Operator.memberOf) {
+				return hierarchySnapshotService.getSnapshotIfBuilt(branchCriteria, stated)
+						.map(snapshot -> (long) snapshot.getConceptCount())
+						.orElse(UNKNOWN);
+			}
+		} else if (expressionConstraint instanceof SCompoundExpressionConstraint) {
+			SCompoundExpressionConstraint compound = (SCompoundExpressionConstraint) expressionConstraint;
+			if (compound.getConjunctionExpressionConstraints() != null) {
+				return compound.getConjunctionExpressionConstraints().stream()
+						.mapToLong(operand -> estimateCardinality(operand, branchCriteria, stated))
+						.min().orElse(UNKNOWN);
+			} else if (compound.getDisjunctionExpressionConstraints() != null) {
+				long total = 0;
+				for (SubExpressionConstraint operand : compound.getDisjunctionExpressionConstraints()) {
+					long estimate = estimateCardinality(operand, branchCriteria, stated);
+					if (estimate == UNKNOWN) {
+						return UNKNOWN;
+					}
+					total += estimate;
+				}
+				return total;
+			} else {
+				return estimateCardinality(compound.getExclusionExpressionConstraints().getFirst(), branchCriteria, stated);
+			}
+		}
+		return UNKNOWN;
+	}
+
+	private long countHierarchy(HierarchySnapshot snapshot, long conceptId, Operator operator) {
+		switch (operator) {
+			case childof:
+				return snapshot.countChildren(conceptId, false);
+			case childorselfof:
+				return snapshot.countChildren(conceptId, true);
+			case descendantof:
+				return snapshot.countDescendants(conceptId, false);
+			case descendantorselfof:
+				return snapshot.countDescendants(conceptId, true);
+			case parentof:
+				return snapshot.countParents(conceptId, false);
+			case parentorselfof:
+				return snapshot.countParents(conceptId, true);
+			case ancestorof:
+				return snapshot.countAncestors(conceptId, false);
+			case ancestororselfof:
+				return snapshot.countAncestors(conceptId, true);
+			default:
+				return UNKNOWN;
+		}
+	}
+
+	private List<SSubExpressionConstraint> orderBySelectivity(List<SubExpressionConstraint> operands, BranchCriteria branchCriteria, boolean stated) {
+		Map<SSubExpressionConstraint, Long> estimates = new IdentityHashMap<>();
+		for (SubExpressionConstraint operand : operands) {
+			estimates.put((SSubExpressionConstraint) operand, estimateCardinality(operand, branchCriteria, stated));
+		}
+		// Stable sort, operands without an estimate keep their order
+		List<SSubExpressionConstraint> ordered = new ArrayList<>(operands.size());
+		operands.forEach(operand -> ordered.add((SSubExpressionConstraint) operand));
+		ordered.sort(Comparator.comparing(estimates::get));
+		return ordered;
+	}
+
+	private List<Long> select(SSubExpressionConstraint operand, Collection<Long> conceptIdFilter, RefinementBuilder refinementBuilder) {
+		BranchCriteria branchCriteria = refinementBuilder.getBranchCriteria();
+		boolean stated = refinementBuilder.isStated();
+		ECLContentService eclContentService = refinementBuilder.getEclContentService();
+		return operand.select(branchCriteria, stated, conceptIdFilter, null, eclContentService, false)
+				// Wildcard
+				.orElseGet(() -> ConceptSelectorHelper.select(operand, branchCriteria, stated, conceptIdFilter, null, eclContentService, false))
+				.getContent();
+	}
+
+	private List<List<Long>> selectAll(List<Supplier<List<Long>>> selections) {
+		List<List<Long>> results = new ArrayList<>();
+		if (prefetchExecutor == null || selections.size() < 2 || prefetchThread.get()) {
+			selections.forEach(selection -> results.add(selection.get()));
+			return results;
+		}
+		List<Future<List<Long>>> futures = new ArrayList<>();
+		for (Supplier<List<Long>> selection : selections) {
+			futures.add(prefetchExecutor.submit(() -> {
+				prefetchThread.set(true);
+				try {
+					return selection.get();
+				} finally {
+					prefetchThread.set(false);
+				}
+			}));
+		}
+		try {
+			for (Future<List<Long>> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeServiceException("ECL prefetch interrupted.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new RuntimeServiceException("ECL prefetch failed.", e.getCause());
+		} finally {
+			futures.forEach(future -> future.cancel(true));
+		}
+	}
+
+	private static LongArrayList sortedList(Collection<Long> ids) {
+		LongArrayList longs = new LongArrayList(ids);
+		longs.sort(null);
+		return longs;
+	}
+
+	private static Long toNullable(long estimate) {
+		return estimate == UNKNOWN ? null : estimate;
+	}
+}
@@ -2,6 +2,7 @@ package org.snomed.snowstorm.ecl;
 
 import ch.qos.logback.classic.Level;
 import io.kaicode.elasticvc.api.BranchCriteria;
+import io.micrometer.core.instrument.MeterRegistry;
 import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.slf4j.Logger;
@@ -24,6 +25,7 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -48,18 +50,34 @@ public class ECLQueryService {
 	@Autowired
 	private ECLContentService eclContentService;
 
+	@Autowired
+	private ECLCacheVersionService eclCacheVersionService;
+
+	@Autowired
+	private ECLResultStore eclResultStore;
+
 	@Value("${timer.ecl.duration-threshold}")
 	private int eclDurationLoggingThreshold;
 
 	@Value("${cache.ecl.enabled}")
 	private boolean eclCacheEnabled;
 
-	private final ECLResultsCache resultsCache;
+	@Value("${cache.ecl.max-size-mb}")
+	private long eclCacheMaxSizeMb;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	private ECLResultsCache resultsCache;
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
-	public ECLQueryService() {
-		resultsCache = new ECLResultsCache();
+	@PostConstruct
+	public void init() {
+		resultsCache = new ECLResultsCache(eclCacheMaxSizeMb * 1024 * 1024);
+		if (meterRegistry != null) {
+			resultsCache.bindMetrics(meterRegistry);
+		}
 	}
 
 	public Page<Long> selectConceptIds(String ecl, BranchCriteria branchCriteria, boolean stated, PageRequest pageRequest) throws ECLException {
@@ -89,6 +107,15 @@ public class ECLQueryService {
 		return doSelectConceptIds(expressionConstraint, branchCriteria, stated, conceptIdFilter, pageRequest);
 	}
 
+	/**
+	 * @return how the ECL would be evaluated on the branch, without evaluating it
+	 */
+	public ECLQueryPlan explain(String ecl, BranchCriteria branchCriteria, boolean stated) throws ECLException {
+		SExpressionConstraint expressionConstraint = (SExpressionConstraint) eclQueryBuilder.createQuery(ecl);
+		expressionConstraint = eclPreprocessingService.replaceIncorrectConcreteAttributeValue(expressionConstraint, branchCriteria.getBranchPath());
+		return eclContentService.getQueryPlanner().explain(expressionConstraint, branchCriteria, stated);
+	}
+
 	public static boolean isMemberFieldsSearch(SExpressionConstraint expressionConstraint) {
 		if (expressionConstraint instanceof SSubExpressionConstraint) {
 			SSubExpressionConstraint constraint = (SSubExpressionConstraint) expressionConstraint;
@@ -140,7 +167,10 @@ public class ECLQueryService {
 
 		Optional<Page<Long>> pageOptional;
 		if (eclCacheEnabled) {
-			BranchVersionECLCache branchVersionCache = resultsCache.getOrCreateBranchVersionCache(path, branchCriteria.getTimepoint());
+			// Results may be shared with other branch versions that have the same relevant content
+			ECLCacheVersionService.ContentVersion contentVersion =
+					eclCacheVersionService.resolve(path, branchCriteria.getTimepoint(), expressionConstraint.isSemanticIndexOnly());
+			BranchVersionECLCache branchVersionCache = resultsCache.getBranchVersionCache(contentVersion.getPath(), contentVersion.getTimepoint());
 
 			PageRequest queryPageRequest = pageRequest;
 			LongPredicate filter = null;
@@ -156,14 +186,24 @@ public class ECLQueryService {
 			if (cachedPage != null) {
 				final int pageNumber = pageRequest != null ? pageRequest.getPageNumber() : 0;
 				final int pageSize = pageRequest != null ? pageRequest.getPageSize() : -1;
-				logger.info("ECL cache hit {}@{} \"{}\" {}:{}", path, branchCriteria.getTimepoint().getTime(), ecl, pageNumber, pageSize);
-				branchVersionCache.recordHit();
+				logger.info("ECL cache hit {}@{} \"{}\" {}:{}, content version {}", path, branchCriteria.getTimepoint().getTime(), ecl, pageNumber, pageSize, contentVersion);
 
 				pageOptional = Optional.of(cachedPage);
 			} else {
-				// Select 1
-				// When is pageRequest null?
-				pageOptional = expressionConstraint.select(branchCriteria, stated, null, queryPageRequest, eclContentService, true);
+				Optional<List<Long>> storedResult = eclResultStore.isUsable(contentVersion) ? eclResultStore.find(contentVersion, ecl, stated) : Optional.empty();
+				if (storedResult.isPresent()) {
+					logger.info("ECL result store hit {}@{} \"{}\", content version {}", path, branchCriteria.getTimepoint().getTime(), ecl, contentVersion);
+					pageOptional = Optional.of(ConceptSelectorHelper.getPage(queryPageRequest, storedResult.get()));
+				} else {
+					// Select 1
+					// When is pageRequest null?
+					long start = System.currentTimeMillis();
+					pageOptional = expressionConstraint.select(branchCriteria, stated, null, queryPageRequest, eclContentService, true);
+					if (pageOptional.isPresent() && eclResultStore.isUsable(contentVersion)) {
+						eclResultStore.storeIfSlow(contentVersion, ecl, stated, System.currentTimeMillis() - start, pageOptional.get(),
+								() -> expressionConstraint.select(branchCriteria, stated, null, null, eclContentService, true));
+					}
+				}
 				if (pageOptional.isPresent()) {
 					// Cache results
 					final Page<Long> page = pageOptional.get();
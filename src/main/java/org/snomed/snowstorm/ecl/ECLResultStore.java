@@ -0,0 +1,248 @@
+package org.snomed.snowstorm.ecl;
+
+import com.google.common.hash.Hashing;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongComparators;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.ECLStoredResult;
+import org.snomed.snowstorm.core.data.repositories.ECLStoredResultRepository;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService.ContentVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.elasticsearch.core.ElasticsearchRestTemplate;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.elasticsearch.index.query.QueryBuilders.rangeQuery;
+
+/**
+ * Second level ECL results store, held in Elasticsearch so that results survive restarts and are shared between instances.
+ * <p>
+ * Only the complete results of slow ECL queries are stored, keyed by content version, ECL and form.
+ * Stored results never go stale because a new version of the content gets a new key, old entries are removed after a number of days.
+ * Concept ids are stored sorted, delta encoded as variable length integers and deflated, around 2 bytes per concept.
+ * <p>
+ * The ids of stored results are held in memory and refreshed every minute, so Elasticsearch is only read for expressions which were stored.
+ * Results stored by other instances are found once the ids have been refreshed.
+ */
+@Service
+public class ECLResultStore {
+
+	@Value("${cache.ecl.store.enabled}")
+	private boolean enabled;
+
+	@Value("${cache.ecl.store.min-duration-ms}")
+	private long minDurationMillis;
+
+	@Value("${cache.ecl.store.max-results}")
+	private int maxResults;
+
+	@Value("${cache.ecl.store.max-age-days}")
+	private int maxAgeDays;
+
+	@Autowired
+	private ECLStoredResultRepository repository;
+
+	@Autowired
+	private ElasticsearchRestTemplate elasticsearchTemplate;
+
+	private final Set<String> resultsStoring = ConcurrentHashMap.newKeySet();
+
+	// Leading 64 bits of the ids of stored results, a rare false match only costs a lookup
+	private volatile LongSet storedIdPrefixes = LongSets.synchronize(new LongOpenHashSet());
+
+	private long storedIdsLoadedUntil;
+
+	private final ExecutorService storeExecutor = Executors.newSingleThreadExecutor();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@PreDestroy
+	public void shutdown() {
+		storeExecutor.shutdownNow();
+	}
+
+	/**
+	 * @return true if the store is enabled and the content version can be read again later
+	 */
+	public boolean isUsable(ContentVersion contentVersion) {
+		return enabled && contentVersion.isCommitted();
+	}
+
+	/**
+	 * @return all concept ids selected by the ECL, in ECL result order, if stored
+	 */
+	public Optional<List<Long>> find(ContentVersion contentVersion, String ecl, boolean stated) {
+		String id = getId(contentVersion, ecl, stated);
+		if (!storedIdPrefixes.contains(getIdPrefix(id))) {
+			return Optional.empty();
+		}
+		try {
+			return repository.findById(id)
+					.map(storedResult -> decode(storedResult.getConceptIds(), storedResult.getCount()));
+		} catch (RuntimeException e) {
+			// The store is an optimisation, the query can still be run
+			logger.warn("Failed to read stored ECL result for {} \"{}\".", contentVersion, ecl, e);
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Stores the results of the ECL if the query took long enough to be worth storing.
+	 * @param page the page of results which was selected
+	 * @param fullSelect selects all results, used in the background if the page was not complete
+	 */
+	public void storeIfSlow(ContentVersion contentVersion, String ecl, boolean stated, long queryMillis, Page<Long> page, Supplier<Optional<Page<Long>>> fullSelect) {
+		if (queryMillis < minDurationMillis || page.getTotalElements() > maxResults) {
+			return;
+		}
+		String id = getId(contentVersion, ecl, stated);
+		if (!resultsStoring.add(id)) {
+			return;
+		}
+		boolean complete = page.getNumberOfElements() == page.getTotalElements();
+		List<Long> pageContent = complete ? page.getContent() : null;
+		storeExecutor.submit(() -> {
+			try {
+				List<Long> conceptIds = pageContent;
+				if (conceptIds == null) {
+					Optional<Page<Long>> fullPage = fullSelect.get();
+					if (fullPage.isEmpty()) {
+						return;
+					}
+					conceptIds = fullPage.get().getContent();
+				}
+				repository.save(new ECLStoredResult(id, contentVersion.getPath(), contentVersion.getTimepoint().getTime(), stated, ecl, conceptIds.size(),
+						encode(conceptIds)));
+				storedIdPrefixes.add(getIdPrefix(id));
+				logger.info("Stored {} ECL results for {} \"{}\" which took {} ms.", conceptIds.size(), contentVersion, ecl, queryMillis);
+			} catch (RuntimeException e) {
+				logger.warn("Failed to store ECL result for {} \"{}\".", contentVersion, ecl, e);
+			} finally {
+				resultsStoring.remove(id);
+			}
+		});
+	}
+
+	/**
+	 * Adds the ids of results stored since the last load, including those stored by other instances.
+	 */
+	@Scheduled(fixedDelay = 60_000)
+	public void loadStoredIds() {
+		if (enabled) {
+			loadStoredIds(false);
+		}
+	}
+
+	@Scheduled(fixedDelay = 3600_000, initialDelay = 600_000)
+	public void deleteExpired() {
+		if (!enabled) {
+			return;
+		}
+		long expiry = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(maxAgeDays);
+		elasticsearchTemplate.delete(new NativeSearchQueryBuilder()
+				.withQuery(rangeQuery(ECLStoredResult.Fields.CREATED).lt(expiry))
+				.build(), ECLStoredResult.class, elasticsearchTemplate.getIndexCoordinatesFor(ECLStoredResult.class));
+		// Drop the ids of deleted results
+		loadStoredIds(true);
+	}
+
+	private synchronized void loadStoredIds(boolean all) {
+		long loadStart = System.currentTimeMillis();
+		// Overlap allows for results saved during the last load and for clock differences between instances
+		long createdFrom = all ? 0 : storedIdsLoadedUntil - 60_000;
+		LongSet loadedIdPrefixes = all ? LongSets.synchronize(new LongOpenHashSet()) : storedIdPrefixes;
+		try (SearchHitsIterator<ECLStoredResult> stream = elasticsearchTemplate.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(rangeQuery(ECLStoredResult.Fields.CREATED).gte(createdFrom))
+				.withFields(ECLStoredResult.Fields.CREATED)
+				.withPageable(LARGE_PAGE)
+				.build(), ECLStoredResult.class)) {
+			stream.forEachRemaining(hit -> loadedIdPrefixes.add(getIdPrefix(hit.getId())));
+		} catch (RuntimeException e) {
+			logger.warn("Failed to load stored ECL result ids.", e);
+			return;
+		}
+		storedIdPrefixes = loadedIdPrefixes;
+		storedIdsLoadedUntil = loadStart;
+	}
+
+	private static String getId(ContentVersion contentVersion, String ecl, boolean stated) {
+		String key = contentVersion + "|" + (stated ? "stated" : "inferred") + "|" + BranchVersionECLCache.normaliseEclString(ecl);
+		return Hashing.sha256().hashString(key, StandardCharsets.UTF_8).toString();
+	}
+
+	private static long getIdPrefix(String id) {
+		return Long.parseUnsignedLong(id.substring(0, 16), 16);
+	}
+
+	static String encode(Collection<Long> conceptIds) {
+		long[] sorted = conceptIds.stream().mapToLong(Long::longValue).sorted().toArray();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+			long previous = 0;
+			for (long conceptId : sorted) {
+				writeVarLong(out, conceptId - previous);
+				previous = conceptId;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return Base64.getEncoder().encodeToString(bytes.toByteArray());
+	}
+
+	static List<Long> decode(String encoded, int count) {
+		LongArrayList conceptIds = new LongArrayList(count);
+		try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(encoded))))) {
+			long previous = 0;
+			for (int i = 0; i < count; i++) {
+				previous += readVarLong(in);
+				conceptIds.add(previous);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		// Same order as ECL results
+		conceptIds.sort(LongComparators.OPPOSITE_COMPARATOR);
+		return conceptIds;
+	}
+
+	private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	private static long readVarLong(DataInputStream in) throws IOException {
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return value;
+	}
+}
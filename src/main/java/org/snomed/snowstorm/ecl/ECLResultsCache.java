@@ -1,45 +1,112 @@
 package org.snomed.snowstorm.ecl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
+/**
+ * ECL results cache with a single memory budget shared by all branches.
+ * Entries are weighed by their approximate size in bytes and evicted using Caffeine's frequency / recency policy,
+ * so rarely used results on quiet task branches make way for results on busy branches.
+ */
 public class ECLResultsCache {
 
-	private final Map<String, BranchVersionECLCache> cacheMap;
+	public static final String METRICS_NAME = "ecl";
+
+	// Approximate bytes used by the key, value wrapper and cache node of each entry
+	private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+	private final Cache<ECLCacheEntry, ECLCachedPage> cache;
+
+	private final long maxWeightBytes;
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
-	public ECLResultsCache() {
-		cacheMap = new ConcurrentHashMap<>();
+	public ECLResultsCache(long maxWeightBytes) {
+		this(maxWeightBytes, ForkJoinPool.commonPool());
 	}
 
-	public BranchVersionECLCache getOrCreateBranchVersionCache(String path, Date timepoint) {
-		BranchVersionECLCache branchVersionCache = cacheMap.get(path);
-		if (branchVersionCache == null || branchVersionCache.isExpired(timepoint)) {
+	/**
+	 * @param maintenanceExecutor runs evictions, a direct executor makes evictions happen before a write returns
+	 */
+	ECLResultsCache(long maxWeightBytes, Executor maintenanceExecutor) {
+		this.maxWeightBytes = maxWeightBytes;
+		cache = Caffeine.newBuilder()
+				.maximumWeight(maxWeightBytes)
+				.weigher(ECLResultsCache::weigh)
+				.executor(maintenanceExecutor)
+				.recordStats()
+				.build();
+	}
 
-			if (branchVersionCache != null) {
-				logger.info("ECL cache expired {}@{}", path, timepoint.getTime());
-			}
+	static int weigh(ECLCacheEntry entry, ECLCachedPage page) {
+		long weight = ENTRY_OVERHEAD_BYTES + (entry.getEcl().length() * 2L) + page.getWeightInBytes();
+		return (int) Math.min(weight, Integer.MAX_VALUE);
+	}
 
-			branchVersionCache = new BranchVersionECLCache(timepoint);
+	public BranchVersionECLCache getBranchVersionCache(String path, Date timepoint) {
+		// Entries for versions that are no longer requested are evicted by the cache policy
+		return new BranchVersionECLCache(path, timepoint, cache);
+	}
 
-			// Replacing the existing item will allow the old cache entry to be garbage collected
-			cacheMap.put(path, branchVersionCache);
-		}
-		return branchVersionCache;
+	public void bindMetrics(MeterRegistry meterRegistry) {
+		CaffeineCacheMetrics.monitor(meterRegistry, cache, METRICS_NAME);
+		Gauge.builder("cache.weight", this, ECLResultsCache::getWeightedSize)
+				.description("The approximate size in bytes of all entries in the cache")
+				.tag("cache", METRICS_NAME)
+				.baseUnit("bytes")
+				.register(meterRegistry);
+		Gauge.builder("cache.weight.max", this, ECLResultsCache::getMaxWeightBytes)
+				.description("The maximum size in bytes of the cache")
+				.tag("cache", METRICS_NAME)
+				.baseUnit("bytes")
+				.register(meterRegistry);
 	}
 
-	public Map<String, BranchVersionECLCache> getCacheMap() {
-		return new HashMap<>(cacheMap);
+	public long getWeightedSize() {
+		Optional<Policy.Eviction<ECLCacheEntry, ECLCachedPage>> eviction = cache.policy().eviction();
+		return eviction.isPresent() ? eviction.get().weightedSize().orElse(0L) : 0L;
+	}
+
+	public long getMaxWeightBytes() {
+		return maxWeightBytes;
+	}
+
+	public Map<String, Long> getStats() {
+		Map<String, Long> stats = new LinkedHashMap<>();
+		CacheStats cacheStats = cache.stats();
+		stats.put("size", cache.estimatedSize());
+		stats.put("weight-bytes", getWeightedSize());
+		stats.put("max-weight-bytes", maxWeightBytes);
+		stats.put("hits", cacheStats.hitCount());
+		stats.put("misses", cacheStats.missCount());
+		stats.put("evictions", cacheStats.evictionCount());
+		stats.put("eviction-weight-bytes", cacheStats.evictionWeight());
+		return stats;
+	}
+
+	public Map<String, Map<String, Long>> getBranchStats() {
+		Map<String, Map<String, Long>> branchStats = new TreeMap<>();
+		for (Map.Entry<ECLCacheEntry, ECLCachedPage> entry : cache.asMap().entrySet()) {
+			Map<String, Long> stats = branchStats.computeIfAbsent(entry.getKey().getPath(), path -> new LinkedHashMap<>());
+			stats.merge("size", 1L, Long::sum);
+			stats.merge("weight-bytes", (long) weigh(entry.getKey(), entry.getValue()), Long::sum);
+		}
+		return branchStats;
 	}
 
 	public void clearCache() {
-		cacheMap.clear();
+		cache.invalidateAll();
 		logger.info("ECL cache cleared.");
 	}
 }
@@ -12,4 +12,10 @@ public interface SRefinement {
 
 	@JsonIgnore
 	Set<String> getConceptIds();
+
+	/**
+	 * @return true if evaluated using the semantic index alone, so results only change when QueryConcept documents change
+	 */
+	@JsonIgnore
+	boolean isSemanticIndexOnly();
 }
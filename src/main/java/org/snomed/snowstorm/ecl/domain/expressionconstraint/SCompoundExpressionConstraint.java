@@ -1,9 +1,6 @@
 package org.snomed.snowstorm.ecl.domain.expressionconstraint;
 
 import io.kaicode.elasticvc.api.BranchCriteria;
-import it.unimi.dsi.fastutil.longs.LongArrayList;
-import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
-import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.snomed.langauges.ecl.domain.expressionconstraint.CompoundExpressionConstraint;
 import org.snomed.langauges.ecl.domain.expressionconstraint.SubExpressionConstraint;
@@ -22,7 +19,6 @@ import java.util.Set;
 import java.util.function.Consumer;
 
 import static com.google.common.collect.Sets.newHashSet;
-import static com.google.common.collect.Sets.union;
 import static java.util.stream.Collectors.toSet;
 import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
 
@@ -54,6 +50,22 @@ public class SCompoundExpressionConstraint extends CompoundExpressionConstraint
 		return conceptIds;
 	}
 
+	@Override
+	public boolean isSemanticIndexOnly() {
+		if (conjunctionExpressionConstraints != null) {
+			return isSemanticIndexOnly(conjunctionExpressionConstraints);
+		} else if (disjunctionExpressionConstraints != null) {
+			return isSemanticIndexOnly(disjunctionExpressionConstraints);
+		} else {
+			return ((SSubExpressionConstraint) exclusionExpressionConstraints.getFirst()).isSemanticIndexOnly()
+					&& ((SSubExpressionConstraint) exclusionExpressionConstraints.getSecond()).isSemanticIndexOnly();
+		}
+	}
+
+	private boolean isSemanticIndexOnly(List<SubExpressionConstraint> subExpressionConstraints) {
+		return subExpressionConstraints.stream().allMatch(constraint -> ((SSubExpressionConstraint) constraint).isSemanticIndexOnly());
+	}
+
 	private Set<String> getConceptIds(List<SubExpressionConstraint> subExpressionConstraints) {
 		return subExpressionConstraints.stream()
 				.map(SSubExpressionConstraint.class::cast)
@@ -68,18 +80,9 @@ public class SCompoundExpressionConstraint extends CompoundExpressionConstraint
 
 		if (conjunctionExpressionConstraints != null) {
 			if (anyWithFiltersOrSupplements(conjunctionExpressionConstraints)) {
-				// Prefetch all
-				Set<Long> result = null;
-				for (SubExpressionConstraint conjunctionExpressionConstraint : conjunctionExpressionConstraints) {
-					List<Long> ids = ConceptSelectorHelper.select((SSubExpressionConstraint) conjunctionExpressionConstraint, refinementBuilder).getContent();
-					Set<Long> resultSet = new LongLinkedOpenHashSet(ids);
-					if (result == null) {
-						result = resultSet;
-					} else {
-						result = union(result, resultSet);
-					}
-				}
-				filteredOrSupplementedContentCallback.accept(result != null ? sortedList(result) : null);
+				// Prefetch all, most selective first
+				filteredOrSupplementedContentCallback.accept(refinementBuilder.getEclContentService().getQueryPlanner()
+						.selectConjunction(conjunctionExpressionConstraints, refinementBuilder));
 
 			} else {
 				for (SubExpressionConstraint conjunctionExpressionConstraint : conjunctionExpressionConstraints) {
@@ -88,17 +91,9 @@ public class SCompoundExpressionConstraint extends CompoundExpressionConstraint
 			}
 		} else if (disjunctionExpressionConstraints != null) {
 			if (anyWithFiltersOrSupplements(disjunctionExpressionConstraints)) {
-				// Prefetch all
-				Set<Long> result = null;
-				for (SubExpressionConstraint disjunctionExpressionConstraint : disjunctionExpressionConstraints) {
-					List<Long> ids = ConceptSelectorHelper.select((SSubExpressionConstraint) disjunctionExpressionConstraint, refinementBuilder).getContent();
-					if (result == null) {
-						result = new LongOpenHashSet(ids);
-					} else {
-						result.addAll(ids);
-					}
-				}
-				filteredOrSupplementedContentCallback.accept(result != null ? sortedList(result) : null);
+				// Prefetch all, in parallel
+				filteredOrSupplementedContentCallback.accept(refinementBuilder.getEclContentService().getQueryPlanner()
+						.selectDisjunction(disjunctionExpressionConstraints, refinementBuilder));
 
 			} else {
 				BoolQueryBuilder shouldQueries = boolQuery();
@@ -114,9 +109,8 @@ public class SCompoundExpressionConstraint extends CompoundExpressionConstraint
 			SSubExpressionConstraint second = (SSubExpressionConstraint) exclusionExpressionConstraints.getSecond();
 
 			if (first.isAnyFiltersOrSupplements() || second.isAnyFiltersOrSupplements()) {
-				List<Long> ids = new LongArrayList(ConceptSelectorHelper.select(first, refinementBuilder).getContent());
-				ids.removeAll(ConceptSelectorHelper.select(second, refinementBuilder).getContent());
-				filteredOrSupplementedContentCallback.accept(ids);
+				filteredOrSupplementedContentCallback.accept(refinementBuilder.getEclContentService().getQueryPlanner()
+						.selectExclusion(first, second, refinementBuilder));
 
 			} else {
 				first.addCriteria(refinementBuilder, (ids) -> {}, triedCache);
@@ -127,12 +121,6 @@ public class SCompoundExpressionConstraint extends CompoundExpressionConstraint
 		}
 	}
 
-	private LongArrayList sortedList(Set<Long> result) {
-		LongArrayList longs = new LongArrayList(result);
-		longs.sort(null);
-		return longs;
-	}
-
 	private boolean anyWithFiltersOrSupplements(List<SubExpressionConstraint> subExpressionConstraints) {
 		return subExpressionConstraints.stream().anyMatch(constraint -> ((SSubExpressionConstraint) constraint).isAnyFiltersOrSupplements());
 	}
@@ -92,6 +92,12 @@ public class SDottedExpressionConstraint extends DottedExpressionConstraint impl
 		return conceptIds;
 	}
 
+	@Override
+	public boolean isSemanticIndexOnly() {
+		// Attribute values are read from inferred relationships
+		return false;
+	}
+
 	@Override
 	public void addCriteria(RefinementBuilder refinementBuilder, Consumer<List<Long>> filteredOrSupplementedContentCallback, boolean triedCache) {
 		((SSubExpressionConstraint)subExpressionConstraint).addCriteria(refinementBuilder, (ids) -> {}, triedCache);
@@ -49,6 +49,11 @@ public class SRefinedExpressionConstraint extends RefinedExpressionConstraint im
 		return conceptIds;
 	}
 
+	@Override
+	public boolean isSemanticIndexOnly() {
+		return ((SSubExpressionConstraint) subexpressionConstraint).isSemanticIndexOnly() && ((SEclRefinement) eclRefinement).isSemanticIndexOnly();
+	}
+
 	@Override
 	public void addCriteria(RefinementBuilder refinementBuilder, Consumer<List<Long>> filteredOrSupplementedContentCallback, boolean triedCache) {
 		triedCache = false;// The subExpressionConstraint has not been through the cache
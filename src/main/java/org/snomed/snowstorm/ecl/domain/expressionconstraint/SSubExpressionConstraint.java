@@ -3,7 +3,10 @@ package org.snomed.snowstorm.ecl.domain.expressionconstraint;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongComparators;
 import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.snomed.langauges.ecl.domain.ConceptReference;
@@ -13,6 +16,7 @@ import org.snomed.langauges.ecl.domain.filter.*;
 import org.snomed.langauges.ecl.domain.refinement.Operator;
 import org.snomed.snowstorm.core.data.domain.Concepts;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.HierarchySnapshot;
 import org.snomed.snowstorm.ecl.ConceptSelectorHelper;
 import org.snomed.snowstorm.ecl.ECLContentService;
 import org.snomed.snowstorm.ecl.deserializer.ECLModelDeserializer;
@@ -50,6 +54,10 @@ public class SSubExpressionConstraint extends SubExpressionConstraint implements
 		if (isUnconstrained()) {
 			return Optional.empty();
 		}
+		Optional<Page<Long>> hierarchyPage = selectUsingHierarchySnapshot(branchCriteria, stated, conceptIdFilter, pageRequest, eclContentService);
+		if (hierarchyPage.isPresent()) {
+			return hierarchyPage;
+		}
 		return Optional.of(ConceptSelectorHelper.select(this, branchCriteria, stated, conceptIdFilter, pageRequest, eclContentService, triedCache));
 	}
 
@@ -75,9 +83,67 @@ public class SSubExpressionConstraint extends SubExpressionConstraint implements
 		if (isUnconstrained()) {
 			return Optional.empty();
 		}
+		Optional<Page<Long>> hierarchyPage = selectUsingHierarchySnapshot(refinementBuilder.getBranchCriteria(), refinementBuilder.isStated(), null, null,
+				refinementBuilder.getEclContentService());
+		if (hierarchyPage.isPresent()) {
+			return hierarchyPage;
+		}
 		return Optional.of(ConceptSelectorHelper.select(this, refinementBuilder));
 	}
 
+	/**
+	 * Answers a hierarchy operator on a single concept, for example "<< 404684003", from the in-memory hierarchy when available.
+	 */
+	private Optional<Page<Long>> selectUsingHierarchySnapshot(BranchCriteria branchCriteria, boolean stated, Collection<Long> conceptIdFilter,
+			PageRequest pageRequest, ECLContentService eclContentService) {
+
+		if (conceptId == null || operator == null || operator == Operator.memberOf || isAnyFiltersOrSupplements()) {
+			return Optional.empty();
+		}
+		Optional<HierarchySnapshot> snapshotOptional = eclContentService.findHierarchySnapshot(branchCriteria, stated);
+		if (snapshotOptional.isEmpty()) {
+			return Optional.empty();
+		}
+		HierarchySnapshot snapshot = snapshotOptional.get();
+		Set<Long> focusConcept = Collections.singleton(parseLong(conceptId));
+		LongSet conceptIds;
+		switch (operator) {
+			case childof:
+				conceptIds = snapshot.getChildren(focusConcept, false);
+				break;
+			case childorselfof:
+				conceptIds = snapshot.getChildren(focusConcept, true);
+				break;
+			case descendantof:
+				conceptIds = snapshot.getDescendants(focusConcept, false);
+				break;
+			case descendantorselfof:
+				conceptIds = snapshot.getDescendants(focusConcept, true);
+				break;
+			case parentof:
+				conceptIds = snapshot.getParents(focusConcept, false);
+				break;
+			case parentorselfof:
+				conceptIds = snapshot.getParents(focusConcept, true);
+				break;
+			case ancestorof:
+				conceptIds = snapshot.getAncestors(focusConcept, false);
+				break;
+			case ancestororselfof:
+				conceptIds = snapshot.getAncestors(focusConcept, true);
+				break;
+			default:
+				return Optional.empty();
+		}
+		if (conceptIdFilter != null) {
+			conceptIds.retainAll(conceptIdFilter instanceof Set ? conceptIdFilter : new LongOpenHashSet(conceptIdFilter));
+		}
+		// Same order as Elasticsearch selection
+		LongArrayList sortedIds = new LongArrayList(conceptIds);
+		sortedIds.sort(LongComparators.OPPOSITE_COMPARATOR);
+		return Optional.of(ConceptSelectorHelper.getPage(pageRequest, sortedIds));
+	}
+
 	@Override
 	public Set<String> getConceptIds() {
 		Set<String> conceptIds = newHashSet();
@@ -131,6 +197,15 @@ public class SSubExpressionConstraint extends SubExpressionConstraint implements
 		return conceptIds;
 	}
 
+	@Override
+	public boolean isSemanticIndexOnly() {
+		// Member-of, filters and supplements read refset members, concepts or descriptions
+		if (operator == Operator.memberOf || isAnyFiltersOrSupplements()) {
+			return false;
+		}
+		return nestedExpressionConstraint == null || ((SExpressionConstraint) nestedExpressionConstraint).isSemanticIndexOnly();
+	}
+
 	private void collectConceptIds(Set<String> conceptIds, List<FieldFilter> fieldFilters) {
 		for (FieldFilter fieldFilter : orEmpty(fieldFilters)) {
 			for (ConceptReference conceptReference : orEmpty(fieldFilter.getConceptReferences())) {
@@ -205,6 +205,13 @@ public class SEclAttribute extends EclAttribute implements SRefinement {
 		return conceptIds;
 	}
 
+	@Override
+	public boolean isSemanticIndexOnly() {
+		// Reverse attributes read relationship destinations, concrete values are held in the semantic index
+		return !reverse && ((SSubExpressionConstraint) attributeName).isSemanticIndexOnly()
+				&& (isConcreteValueQuery() || ((SSubExpressionConstraint) value).isSemanticIndexOnly());
+	}
+
 	private AttributeRange getAttributeRange() {
 		if (attributeRange == null) {
 			Optional<Page<Long>> attributeTypesOptional = ((SSubExpressionConstraint) attributeName).select(refinementBuilder);
@@ -36,6 +36,11 @@ public class SEclAttributeGroup extends EclAttributeGroup implements SRefinement
 		return ((SEclAttributeSet) attributeSet).getConceptIds();
 	}
 
+	@Override
+	public boolean isSemanticIndexOnly() {
+		return ((SEclAttributeSet) attributeSet).isSemanticIndexOnly();
+	}
+
 	boolean isMatch(MatchContext matchContext) {
 		MatchContext groupMatchContext = new MatchContext(matchContext, true);
 		((SEclAttributeSet) attributeSet).isMatch(groupMatchContext);
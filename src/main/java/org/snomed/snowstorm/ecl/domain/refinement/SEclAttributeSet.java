@@ -64,6 +64,13 @@ public class SEclAttributeSet extends EclAttributeSet implements SRefinement {
 		return conceptIds;
 	}
 
+	@Override
+	public boolean isSemanticIndexOnly() {
+		return ((SSubAttributeSet) subAttributeSet).isSemanticIndexOnly()
+				&& (conjunctionAttributeSet == null || conjunctionAttributeSet.stream().allMatch(set -> ((SSubAttributeSet) set).isSemanticIndexOnly()))
+				&& (disjunctionAttributeSet == null || disjunctionAttributeSet.stream().allMatch(set -> ((SSubAttributeSet) set).isSemanticIndexOnly()));
+	}
+
 	@Override
 	@JsonIgnore
 	public EclAttributeGroup getParentGroup() {
@@ -55,6 +55,13 @@ public class SEclRefinement extends EclRefinement implements SRefinement {
 		return conceptIds;
 	}
 
+	@Override
+	public boolean isSemanticIndexOnly() {
+		return ((SSubRefinement) subRefinement).isSemanticIndexOnly()
+				&& (conjunctionSubRefinements == null || conjunctionSubRefinements.stream().allMatch(sub -> ((SSubRefinement) sub).isSemanticIndexOnly()))
+				&& (disjunctionSubRefinements == null || disjunctionSubRefinements.stream().allMatch(sub -> ((SSubRefinement) sub).isSemanticIndexOnly()));
+	}
+
 	private Set<String> getConceptIds(List<SubRefinement> subRefinements) {
 		return subRefinements.stream()
 				.map(SSubRefinement.class::cast)
@@ -32,6 +32,14 @@ public class SSubAttributeSet extends SubAttributeSet implements SRefinement {
 		return ((SEclAttributeSet) attributeSet).getConceptIds();
 	}
 
+	@Override
+	public boolean isSemanticIndexOnly() {
+		if (attribute != null) {
+			return ((SEclAttribute) attribute).isSemanticIndexOnly();
+		}
+		return ((SEclAttributeSet) attributeSet).isSemanticIndexOnly();
+	}
+
 	public void checkConceptConstraints(MatchContext matchContext) {
 		if (attribute != null) {
 			((SEclAttribute)attribute).checkConceptConstraints(matchContext);
@@ -37,6 +37,17 @@ public class SSubRefinement extends SubRefinement implements SRefinement {
 		}
 	}
 
+	@Override
+	public boolean isSemanticIndexOnly() {
+		if (eclAttributeSet != null) {
+			return ((SEclAttributeSet) eclAttributeSet).isSemanticIndexOnly();
+		} else if (eclAttributeGroup != null) {
+			return ((SEclAttributeGroup) eclAttributeGroup).isSemanticIndexOnly();
+		} else {
+			return ((SEclRefinement) eclRefinement).isSemanticIndexOnly();
+		}
+	}
+
 	boolean isMatch(MatchContext matchContext) {
 		if (eclAttributeSet != null) {
 			return ((SEclAttributeSet)eclAttributeSet).isMatch(matchContext.clear());
@@ -26,6 +26,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static org.snomed.snowstorm.core.data.domain.Concepts.CONCEPT_MODEL_DATA_ATTRIBUTE;
@@ -40,7 +41,7 @@ public class ECLPreprocessingService implements CommitListener {
 
 	private static final String RETURN_ALL_CONCRETE_ATTRIBUTES_ECL_QUERY = "< " + CONCEPT_MODEL_DATA_ATTRIBUTE;
 
-	private static final Map<String, List<String>> CACHED_CONCRETE_CONCEPT_IDS = new HashMap<>();
+	private static final Map<String, List<String>> CACHED_CONCRETE_CONCEPT_IDS = new ConcurrentHashMap<>();
 
 	@Autowired
 	private ECLQueryService eclQueryService;
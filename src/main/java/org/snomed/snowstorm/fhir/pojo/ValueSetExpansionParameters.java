@@ -37,16 +37,17 @@ public final class ValueSetExpansionParameters {
 	private final CanonicalUri forceSystemVersion;
 	private final String version;
 	private final ValueSet valueSet;
+	private final String cursor;
 
 	public ValueSetExpansionParameters(ValueSet valueSet, boolean includeDefinition1) {
 		this(null, valueSet, null, null, null, null, null, null, null, null, null,
-				null, includeDefinition1, null, null, null, null, null, null, null, null, null, null);
+				null, includeDefinition1, null, null, null, null, null, null, null, null, null, null, null);
 	}
 
 	public ValueSetExpansionParameters(String id, ValueSet valueSet, String url, String valueSetVersion, String context, String contextDirection, String filter, String date,
 			Integer offset, Integer count, Boolean includeDesignations, List<String> designations, Boolean includeDefinition, Boolean activeOnly,
 			Boolean excludeNested, Boolean excludeNotForUI, Boolean excludePostCoordinated, String displayLanguage, CanonicalUri excludeSystem, CanonicalUri systemVersion,
-			CanonicalUri checkSystemVersion, CanonicalUri forceSystemVersion, String version) {
+			CanonicalUri checkSystemVersion, CanonicalUri forceSystemVersion, String version, String cursor) {
 
 		this.id = id;
 		this.url = url;
@@ -71,6 +72,7 @@ public final class ValueSetExpansionParameters {
 		this.forceSystemVersion = forceSystemVersion;
 		this.version = version;
 		this.valueSet = valueSet;
+		this.cursor = cursor;
 	}
 
 	public PageRequest getPageRequest(Sort sort) {
@@ -175,4 +177,11 @@ public final class ValueSetExpansionParameters {
 	public ValueSet getValueSet() {
 		return valueSet;
 	}
+
+	/**
+	 * Continuation cursor returned in the previous page of a SNOMED CT expansion.
+	 */
+	public String getCursor() {
+		return cursor;
+	}
 }
@@ -1,8 +1,12 @@
 package org.snomed.snowstorm.fhir.services;
 
+import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
+import org.snomed.snowstorm.core.data.services.HierarchySnapshotService;
+import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.HierarchySnapshot;
 import org.snomed.snowstorm.fhir.domain.FHIRCodeSystemVersion;
 import org.snomed.snowstorm.fhir.domain.FHIRConcept;
 import org.snomed.snowstorm.fhir.domain.FHIRGraphNode;
@@ -13,7 +17,9 @@ import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import static org.elasticsearch.index.query.QueryBuilders.boolQuery;
@@ -34,10 +40,21 @@ public class FHIRGraphService {
 	@Autowired
 	private ElasticsearchRestTemplate elasticsearchTemplate;
 
+	@Autowired
+	private HierarchySnapshotService hierarchySnapshotService;
+
 	/**
 	 * Returns true if codeA is an ancestor of codeB
 	 */
 	public boolean subsumes(String codeA, String codeB, FHIRCodeSystemVersion codeSystemVersion) {
+		if (codeSystemVersion.isSnomed() && IdentifierService.isConceptId(codeA) && IdentifierService.isConceptId(codeB)) {
+			// Answered from the in-memory hierarchy when held, always the case for frozen released versions
+			BranchCriteria branchCriteria = snomedVersionControlHelper.getBranchCriteria(codeSystemVersion.getSnomedBranch());
+			Optional<HierarchySnapshot> snapshot = hierarchySnapshotService.getSnapshot(branchCriteria, false);
+			if (snapshot.isPresent()) {
+				return snapshot.get().getAncestors(Collections.singleton(Long.parseLong(codeB)), false).contains(Long.parseLong(codeA));
+			}
+		}
 		GraphCriteria graphCriteria = getGraphCriteria(codeSystemVersion, PageRequest.of(0, 1));
 		graphCriteria.getCriteria()
 				.must(termQuery(graphCriteria.getCodeField(), codeB))
@@ -0,0 +1,113 @@
+package org.snomed.snowstorm.fhir.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static java.lang.String.format;
+import static org.snomed.snowstorm.fhir.services.FHIRHelper.exception;
+
+/**
+ * Holds the complete, ordered list of concept ids of large SNOMED CT ValueSet expansions
+ * so that deep pages can be read by offset rather than paging through the whole expansion again for every request.
+ * <p>
+ * Keys include the branch head timestamp of the code system version, so a new commit on the branch gives a new key
+ * and expansions of the old content are no longer used. Those entries are evicted by the size and age limits.
+ * <p>
+ * Continuation cursors are the key hash and an offset, encoded so that clients treat them as opaque.
+ */
+@Service
+public class FHIRValueSetExpansionCache {
+
+	public static final String METRICS_NAME = "fhir-expansion";
+
+	private static final int ENTRY_OVERHEAD_BYTES = 256;
+
+	@Value("${cache.fhir-expansion.max-size-mb}")
+	private long maxSizeMb;
+
+	@Value("${cache.fhir-expansion.expire-after-access-minutes}")
+	private long expireAfterAccessMinutes;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	private Cache<String, long[]> cache;
+
+	@PostConstruct
+	public void init() {
+		cache = Caffeine.newBuilder()
+				.maximumWeight(maxSizeMb * 1024 * 1024)
+				.weigher((String key, long[] conceptIds) -> (int) Math.min(ENTRY_OVERHEAD_BYTES + conceptIds.length * 8L, Integer.MAX_VALUE))
+				.expireAfterAccess(expireAfterAccessMinutes, TimeUnit.MINUTES)
+				.recordStats()
+				.build();
+		if (meterRegistry != null) {
+			CaffeineCacheMetrics.monitor(meterRegistry, cache, METRICS_NAME);
+		}
+	}
+
+	/**
+	 * @param expansionKey from {@link #createExpansionKey(String...)}
+	 * @param expansionLoader loads all concept ids of the expansion, in expansion order
+	 * @return all concept ids of the expansion, in expansion order
+	 */
+	public long[] getOrLoad(String expansionKey, Supplier<long[]> expansionLoader) {
+		return cache.get(expansionKey, key -> expansionLoader.get());
+	}
+
+	public static String createExpansionKey(String... keyParts) {
+		return Hashing.sha256().hashString(String.join("|", keyParts), StandardCharsets.UTF_8).toString();
+	}
+
+	public static String createCursor(String expansionKey, int offset) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString((expansionKey + ":" + offset).getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * @return the offset held by the cursor
+	 * @throws SnowstormFHIRServerResponseException if the cursor is not valid or was created for a different expansion,
+	 * which includes the same request made against content which has since changed
+	 */
+	public static int readCursorOffset(String cursor, String expansionKey) {
+		String decoded;
+		try {
+			decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw invalidCursor(cursor);
+		}
+		int separator = decoded.lastIndexOf(':');
+		if (separator == -1) {
+			throw invalidCursor(cursor);
+		}
+		if (!decoded.substring(0, separator).equals(expansionKey)) {
+			throw exception("The cursor does not belong to this expansion. Either the request parameters or the content of the code system have changed, " +
+					"please start the expansion again.", OperationOutcome.IssueType.INVALID, 400);
+		}
+		try {
+			int offset = Integer.parseInt(decoded.substring(separator + 1));
+			if (offset < 0) {
+				throw invalidCursor(cursor);
+			}
+			return offset;
+		} catch (NumberFormatException e) {
+			throw invalidCursor(cursor);
+		}
+	}
+
+	private static SnowstormFHIRServerResponseException invalidCursor(String cursor) {
+		return exception(format("Invalid cursor '%s'.", cursor), OperationOutcome.IssueType.INVALID, 400);
+	}
+}
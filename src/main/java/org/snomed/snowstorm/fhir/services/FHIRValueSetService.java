@@ -1,5 +1,9 @@
 package org.snomed.snowstorm.fhir.services;
 
+import ca.uhn.fhir.context.FhirContext;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import io.kaicode.elasticvc.api.BranchService;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.index.query.BoolQueryBuilder;
@@ -77,6 +81,15 @@ public class FHIRValueSetService {
 	@Autowired
 	private ElasticsearchRestTemplate elasticsearchTemplate;
 
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private FHIRValueSetExpansionCache expansionCache;
+
+	@Autowired
+	private FhirContext fhirContext;
+
 	private final Map<String, Set<String>> codeSystemVersionToRefsetsWithMembersCache = new HashMap<>();
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -146,6 +159,21 @@ public class FHIRValueSetService {
 		return valueSetRepository.save(new FHIRValueSet(valueSet));
 	}
 
+	private long[] loadAllSnomedConceptIds(QueryService.ConceptQueryBuilder conceptQuery, String snomedBranch, Sort sort) {
+		LongArrayList allConceptIds = new LongArrayList();
+		SearchAfterPage<Long> previousPage = null;
+		boolean loadedAll = false;
+		while (!loadedAll) {
+			PageRequest largePageRequest = previousPage == null ? PageRequest.of(0, LARGE_PAGE.getPageSize(), sort) :
+					SearchAfterPageRequest.of(previousPage.getSearchAfter(), LARGE_PAGE.getPageSize(), previousPage.getSort());
+			SearchAfterPage<Long> page = snomedQueryService.searchForIds(conceptQuery, snomedBranch, largePageRequest);
+			allConceptIds.addAll(page.getContent());
+			loadedAll = page.getNumberOfElements() < largePageRequest.getPageSize();
+			previousPage = page;
+		}
+		return allConceptIds.toLongArray();
+	}
+
 	private boolean equalVersions(String versionA, String versionB) {
 		return versionA == null && versionB == null
 				|| (versionA != null && versionA.equals(versionB));
@@ -206,6 +234,8 @@ public class FHIRValueSetService {
 		}
 
 		Page<FHIRConcept> conceptsPage;
+		int expansionOffset;
+		String nextCursor = null;
 		String copyright = null;
 		boolean includeDesignations = TRUE.equals(params.getIncludeDesignations());
 		if (isSnomed) {
@@ -219,44 +249,41 @@ public class FHIRValueSetService {
 			// Constraints:
 			// - Elasticsearch prevents us from requesting results beyond the first 10K
 			// Strategy:
-			// - Load concept ids until we reach the requested page
-			// - Then load the concepts for that page
-			int offsetRequested = (int) pageRequest.getOffset();
-			int limitRequested = (int) (pageRequest.getOffset() + pageRequest.getPageSize());
+			// - For pages beyond the first 10K load all concept ids of the expansion once and cache them
+			// - Then load the concepts for the requested page
+			// - Cursors are only offered for expansions larger than 10K, or to requests already continuing from a cursor
+			String snomedBranch = codeSystemVersion.getSnomedBranch();
+			// The key needs a branch lookup and a hash of the whole compose so is only created for the cache or a cursor
+			Supplier<String> expansionKey = Suppliers.memoize(() -> FHIRValueSetExpansionCache.createExpansionKey(
+					fhirContext.newJsonParser().encodeResourceToString(new ValueSet().setCompose(hapiValueSet.getCompose())),
+					codeSystemVersion.getId(), snomedBranch, String.valueOf(branchService.findBranchOrThrow(snomedBranch).getHeadTimestamp()),
+					String.valueOf(filter), String.valueOf(activeOnly), String.valueOf(languageDialects)));
+			String cursor = params.getCursor();
+			int offsetRequested = cursor != null ? FHIRValueSetExpansionCache.readCursorOffset(cursor, expansionKey.get()) : (int) pageRequest.getOffset();
+			int limitRequested = offsetRequested + pageRequest.getPageSize();
 
 			QueryService.ConceptQueryBuilder conceptQuery = getSnomedConceptQuery(filter, activeOnly, codeSelectionCriteria, languageDialects);
 
-			int totalResults = 0;
+			int totalResults;
 			List<Long> conceptsToLoad;
 			if (limitRequested > LARGE_PAGE.getPageSize()) {
-				// Have to use search-after feature to paginate to the page requested because of Elasticsearch 10k limit.
-				SearchAfterPage<Long> previousPage = null;
-				List<Long> allConceptIds = new LongArrayList();
-				boolean loadedAll = false;
-				while (allConceptIds.size() < limitRequested && !loadedAll) {
-					PageRequest largePageRequest;
-					if (previousPage == null) {
-						largePageRequest = PageRequest.of(0, LARGE_PAGE.getPageSize(), pageRequest.getSort());
-					} else {
-						int pageSize = Math.min(limitRequested - allConceptIds.size(), LARGE_PAGE.getPageSize());
-						largePageRequest = SearchAfterPageRequest.of(previousPage.getSearchAfter(), pageSize, previousPage.getSort());
-					}
-					SearchAfterPage<Long> page = snomedQueryService.searchForIds(conceptQuery, codeSystemVersion.getSnomedBranch(), largePageRequest);
-					allConceptIds.addAll(page.getContent());
-					loadedAll = page.getNumberOfElements() < largePageRequest.getPageSize();
-					if (previousPage == null) {
-						// Collect results total
-						totalResults = (int) page.getTotalElements();
-					}
-					previousPage = page;
-				}
-				if (allConceptIds.size() > offsetRequested) {
-					conceptsToLoad = new LongArrayList(allConceptIds).subList(offsetRequested, Math.min(limitRequested, allConceptIds.size()));
+				Sort sort = pageRequest.getSort();
+				long[] allConceptIds = expansionCache.getOrLoad(expansionKey.get(), () -> loadAllSnomedConceptIds(conceptQuery, snomedBranch, sort));
+				totalResults = allConceptIds.length;
+				if (allConceptIds.length > offsetRequested) {
+					conceptsToLoad = LongArrayList.wrap(Arrays.copyOfRange(allConceptIds, offsetRequested, Math.min(limitRequested, allConceptIds.length)));
 				} else {
 					conceptsToLoad = new ArrayList<>();
 				}
+			} else if (cursor != null) {
+				// Cursor offset within the first 10K, may not be at a page boundary
+				SearchAfterPage<Long> resultsPage = snomedQueryService.searchForIds(conceptQuery, snomedBranch,
+						PageRequest.of(0, limitRequested, pageRequest.getSort()));
+				List<Long> conceptIds = resultsPage.getContent();
+				conceptsToLoad = conceptIds.size() > offsetRequested ? new ArrayList<>(conceptIds.subList(offsetRequested, conceptIds.size())) : new ArrayList<>();
+				totalResults = (int) resultsPage.getTotalElements();
 			} else {
-				SearchAfterPage<Long> resultsPage = snomedQueryService.searchForIds(conceptQuery, codeSystemVersion.getSnomedBranch(), pageRequest);
+				SearchAfterPage<Long> resultsPage = snomedQueryService.searchForIds(conceptQuery, snomedBranch, pageRequest);
 				conceptsToLoad = resultsPage.getContent();
 				totalResults = (int) resultsPage.getTotalElements();
 			}
@@ -273,8 +300,13 @@ public class FHIRValueSetService {
 			}
 
 			conceptsPage = new PageImpl<>(conceptsOnRequestedPage, pageRequest, totalResults);
+			expansionOffset = offsetRequested;
+			if (limitRequested < totalResults && (cursor != null || totalResults > LARGE_PAGE.getPageSize())) {
+				nextCursor = FHIRValueSetExpansionCache.createCursor(expansionKey.get(), limitRequested);
+			}
 		} else {
 			// FHIR Concept Expansion (non-SNOMED)
+			notSupported("cursor", params.getCursor(), "Cursors are only available when expanding SNOMED CT value sets.");
 			String sortField = filter != null ? "displayLen" : "code";
 			pageRequest = PageRequest.of(pageRequest.getPageNumber(), pageRequest.getPageSize(), Sort.Direction.ASC, sortField);
 			BoolQueryBuilder fhirConceptQuery = getFhirConceptQuery(codeSelectionCriteria, filter);
@@ -321,6 +353,7 @@ public class FHIRValueSetService {
 			} else {
 				conceptsPage = conceptService.findConcepts(fhirConceptQuery, pageRequest);
 			}
+			expansionOffset = conceptsPage.getNumber() * conceptsPage.getSize();
 		}
 
 		Map<String, String> idAndVersionToUrl = allInclusionVersions.stream()
@@ -355,7 +388,10 @@ public class FHIRValueSetService {
 					return component;
 		})
 				.collect(Collectors.toList()));
-		expansion.setOffset(conceptsPage.getNumber() * conceptsPage.getSize());
+		if (nextCursor != null) {
+			expansion.addParameter(new ValueSet.ValueSetExpansionParameterComponent(new StringType("cursor")).setValue(new StringType(nextCursor)));
+		}
+		expansion.setOffset(expansionOffset);
 		expansion.setTotal((int) conceptsPage.getTotalElements());
 		hapiValueSet.setExpansion(expansion);
 
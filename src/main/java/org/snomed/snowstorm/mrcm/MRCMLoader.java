@@ -1,9 +1,9 @@
 package org.snomed.snowstorm.mrcm;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import io.kaicode.elasticvc.api.BranchCriteria;
-import io.kaicode.elasticvc.api.CommitListener;
 import io.kaicode.elasticvc.api.VersionControlHelper;
-import io.kaicode.elasticvc.domain.Commit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.langauges.ecl.ECLException;
@@ -18,25 +18,33 @@ import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
 import org.snomed.snowstorm.core.data.services.ServiceException;
 import org.snomed.snowstorm.core.data.services.pojo.MemberSearchRequest;
 import org.snomed.snowstorm.core.util.TimerUtil;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService.ContentVersion;
 import org.snomed.snowstorm.mrcm.model.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 
+/**
+ * Loads the MRCM of a branch from the MRCM reference set members.
+ * <p>
+ * Cached MRCMs are keyed by MRCM version, the earliest branch version known to have the same MRCM reference set members,
+ * so a commit only expires the MRCM of the branch if it changes MRCM members, and child branches which have not changed MRCM members
+ * share the MRCM of their parent at the branch base. MRCM versions are resolved by the ECLCacheVersionService.
+ */
 @Service
-public class MRCMLoader implements CommitListener {
+public class MRCMLoader {
     private static final Logger LOGGER = LoggerFactory.getLogger(MRCMLoader.class);
 
-    private final Map<String, MRCM> cache = new HashMap<>();
+    // MRCM version -> MRCM
+    private final Cache<ContentVersion, MRCM> cache = Caffeine.newBuilder().maximumSize(100).build();
 
     @Autowired
     private ECLQueryBuilder eclQueryBuilder;
@@ -48,9 +56,11 @@ public class MRCMLoader implements CommitListener {
     @Autowired
     private VersionControlHelper versionControlHelper;
 
-    @Override
-    public void preCommitCompletion(final Commit commit) throws IllegalStateException {
-        this.cache.remove(commit.getBranch().getPath());
+    @Autowired
+    private ECLCacheVersionService eclCacheVersionService;
+
+    public void clearCache() {
+        cache.invalidateAll();
     }
 
     /**
@@ -73,30 +83,42 @@ public class MRCMLoader implements CommitListener {
 
     /**
      * Retrieve the latest MRCM for the given branch. If the MRCM has been read
-     * for the given branch, then the data is read from an internal cache. The cache will
-     * subsequently be cleared whenever the MRCM is updated.
+     * for the given branch, or for a branch version with the same MRCM, then the data is read from an internal cache.
      *
      * @param branchPath The branch to read MRCM data from.
      * @return The MRCM for the given branch.
      * @throws ServiceException When there is an issue reading MRCM.
      */
     public MRCM loadActiveMRCMFromCache(String branchPath) throws ServiceException {
-        LOGGER.debug("Checking cache for MRCM.");
-        final MRCM cachedMRCM = cache.get(branchPath);
+        return loadActiveMRCMFromCache(versionControlHelper.getBranchCriteria(branchPath));
+    }
+
+    /**
+     * Retrieve the MRCM for the branch version of the given branch criteria, which the caller already holds,
+     * so the branch is not loaded again. The data is read from an internal cache in the same way.
+     *
+     * @param branchCriteria The branch criteria of the branch version to read MRCM data from.
+     * @return The MRCM for the given branch version.
+     * @throws ServiceException When there is an issue reading MRCM.
+     */
+    public MRCM loadActiveMRCMFromCache(BranchCriteria branchCriteria) throws ServiceException {
+        final String branchPath = branchCriteria.getBranchPath();
+        final ContentVersion mrcmVersion = eclCacheVersionService.resolveMRCM(branchPath, branchCriteria.getTimepoint());
+        LOGGER.debug("Checking cache for MRCM version {}.", mrcmVersion);
+        final MRCM cachedMRCM = cache.getIfPresent(mrcmVersion);
         if (cachedMRCM != null) {
             LOGGER.debug("MRCM present in cache.");
             return cachedMRCM;
         }
         LOGGER.debug("MRCM not present in cache; loading MRCM.");
 
-        final BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
-        final TimerUtil timer = new TimerUtil("MRCM");
-        final List<Domain> domains = getDomains(branchPath, branchCriteria, timer);
-        final List<AttributeDomain> attributeDomains = getAttributeDomains(branchPath, branchCriteria, timer);
-        final List<AttributeRange> attributeRanges = getAttributeRanges(branchPath, branchCriteria, timer);
-        final MRCM mrcm = new MRCM(domains, attributeDomains, attributeRanges);
-
-        cache.putIfAbsent(branchPath, mrcm);
+        final BranchCriteria mrcmBranchCriteria = mrcmVersion.getPath().equals(branchPath) && mrcmVersion.getTimepoint().equals(branchCriteria.getTimepoint()) ?
+                branchCriteria : versionControlHelper.getBranchCriteriaAtTimepoint(mrcmVersion.getPath(), mrcmVersion.getTimepoint());
+        final MRCM mrcm = loadActiveMRCM(mrcmVersion.getPath(), mrcmBranchCriteria);
+        if (mrcmVersion.isCommitted()) {
+            // Not the MRCM of a version including an open commit
+            cache.put(mrcmVersion, mrcm);
+        }
         return mrcm;
     }
 
@@ -236,5 +258,4 @@ public class MRCMLoader implements CommitListener {
 
         return null;
     }
-
 }
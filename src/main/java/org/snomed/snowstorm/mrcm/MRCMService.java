@@ -5,7 +5,6 @@ import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.snomed.langauges.ecl.domain.refinement.Operator;
 import org.snomed.snowstorm.core.data.domain.ConceptMini;
 import org.snomed.snowstorm.core.data.domain.Concepts;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
@@ -62,11 +61,15 @@ public class MRCMService {
 		return mrcmLoader.loadActiveMRCMFromCache(branchPath);
 	}
 
+	public MRCM loadActiveMRCMFromCache(BranchCriteria branchCriteria) throws ServiceException {
+		return mrcmLoader.loadActiveMRCMFromCache(branchCriteria);
+	}
+
 	public Collection<ConceptMini> retrieveDomainAttributeConceptMinis(ContentType contentType, boolean proximalPrimitiveModeling, Set<Long> parentIds,
 			String branchPath, List<LanguageDialect> languageDialects) throws ServiceException {
 
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
-		final MRCM branchMRCM = mrcmLoader.loadActiveMRCM(branchPath, branchCriteria);
+		final MRCM branchMRCM = mrcmLoader.loadActiveMRCMFromCache(branchCriteria);
 
 		final List<AttributeDomain> attributeDomains = doRetrieveDomainAttributes(contentType, proximalPrimitiveModeling, parentIds, branchCriteria, branchMRCM);
 		Set<String> attributeIds = attributeDomains.stream().map(AttributeDomain::getReferencedComponentId).collect(Collectors.toSet());
@@ -117,28 +120,19 @@ public class MRCMService {
 		attributeDomains.add(IS_A_ATTRIBUTE_DOMAIN);
 
 		if (!CollectionUtils.isEmpty(parentIds)) {
-			// Lookup ancestors using stated parents
-			Set<Long> allAncestors = queryService.findAncestorIdsAsUnion(branchCriteria, false, parentIds);
-			allAncestors.addAll(parentIds);
-
-			// Find matching domains
-			Set<Domain> matchedDomains = branchMRCM.getDomains().stream().filter(domain -> {
-				Constraint constraint = proximalPrimitiveModeling ? domain.getProximalPrimitiveConstraint() : domain.getDomainConstraint();
-				Long domainConceptId = parseLong(constraint.getConceptId());
-				Operator operator = constraint.getOperator();
-				if ((operator == null || operator == Operator.descendantorselfof)
-						&& parentIds.contains(domainConceptId)) {
-					return true;
+			// Lookup ancestors using stated parents, answered from memory when the hierarchy snapshot of the branch is held
+			Set<Long> ancestorIds = queryService.findAncestorIdsAsUnion(branchCriteria, false, parentIds);
+
+			// Find matching domains and applicable attributes using the MRCM lookup tables
+			Set<String> domainReferenceComponents = branchMRCM.findDomains(parentIds, ancestorIds, proximalPrimitiveModeling).stream()
+					.map(Domain::getReferencedComponentId).collect(Collectors.toCollection(LinkedHashSet::new));
+			for (String domainId : domainReferenceComponents) {
+				for (AttributeDomain attributeDomain : branchMRCM.getAttributeDomainsOfDomain(domainId)) {
+					if (attributeDomain.getContentType().ruleAppliesToContentType(contentType)) {
+						attributeDomains.add(attributeDomain);
+					}
 				}
-				return (operator == Operator.descendantof || operator == Operator.descendantorselfof)
-						&& allAncestors.contains(domainConceptId);
-			}).collect(Collectors.toSet());
-			Set<String> domainReferenceComponents = matchedDomains.stream().map(Domain::getReferencedComponentId).collect(Collectors.toSet());
-
-			// Find applicable attributes
-			attributeDomains.addAll(branchMRCM.getAttributeDomains().stream()
-					.filter(attributeDomain -> attributeDomain.getContentType().ruleAppliesToContentType(contentType)
-							&& domainReferenceComponents.contains(attributeDomain.getDomainId())).collect(Collectors.toList()));
+			}
 		}
 
 		return attributeDomains;
@@ -155,15 +149,13 @@ public class MRCMService {
 
 	private void addAttributeRangesToExtraConceptMiniFields(final ConceptMini attributeConceptMini, final ContentType contentType, final MRCM branchMRCM) {
 		attributeConceptMini.addExtraField("attributeRange",
-				branchMRCM.getAttributeRanges().stream()
-						.filter(attributeRange -> attributeRange.getReferencedComponentId().equals(attributeConceptMini.getConceptId()))
+				branchMRCM.getAttributeRanges(attributeConceptMini.getConceptId()).stream()
 						.filter(attributeRange -> contentType.ruleAppliesToContentType(attributeRange.getContentType()))
 						.collect(Collectors.toList()));
 	}
 
 	public Collection<ConceptMini> retrieveAttributeValues(ContentType contentType, String attributeId, String termPrefix, String branchPath, List<LanguageDialect> languageDialects) throws ServiceException {
-		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
-		MRCM branchMRCM = mrcmLoader.loadActiveMRCM(branchPath, branchCriteria);
+		MRCM branchMRCM = mrcmLoader.loadActiveMRCMFromCache(branchPath);
 		return retrieveAttributeValues(contentType, attributeId, termPrefix, branchPath, languageDialects, branchMRCM);
 	}
 
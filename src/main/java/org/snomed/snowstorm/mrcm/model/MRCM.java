@@ -1,11 +1,9 @@
 package org.snomed.snowstorm.mrcm.model;
 
+import org.snomed.langauges.ecl.domain.refinement.Operator;
 import org.snomed.snowstorm.core.data.domain.Concepts;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 import java.util.stream.Collectors;
 
 public class MRCM {
@@ -20,10 +18,30 @@ public class MRCM {
 	private final List<AttributeDomain> attributeDomains;
 	private final List<AttributeRange> attributeRanges;
 
+	// Lookup tables, built once because a cached MRCM is shared by many requests
+	private final Map<Long, List<Domain>> domainsByConstraintConceptId;
+	private final Map<Long, List<Domain>> domainsByProximalPrimitiveConstraintConceptId;
+	private final Map<String, List<AttributeDomain>> attributeDomainsByDomainId;
+	private final Map<String, List<AttributeRange>> attributeRangesByAttributeId;
+
 	public MRCM(List<Domain> domains, List<AttributeDomain> attributeDomains, List<AttributeRange> attributeRanges) {
 		this.domains = domains;
 		this.attributeDomains = attributeDomains;
 		this.attributeRanges = attributeRanges;
+		domainsByConstraintConceptId = new HashMap<>();
+		domainsByProximalPrimitiveConstraintConceptId = new HashMap<>();
+		for (Domain domain : domains) {
+			addDomainByConstraint(domain.getDomainConstraint(), domain, domainsByConstraintConceptId);
+			addDomainByConstraint(domain.getProximalPrimitiveConstraint(), domain, domainsByProximalPrimitiveConstraintConceptId);
+		}
+		attributeDomainsByDomainId = attributeDomains.stream().filter(attributeDomain -> attributeDomain.getDomainId() != null).collect(Collectors.groupingBy(AttributeDomain::getDomainId));
+		attributeRangesByAttributeId = attributeRanges.stream().collect(Collectors.groupingBy(AttributeRange::getReferencedComponentId));
+	}
+
+	private static void addDomainByConstraint(Constraint constraint, Domain domain, Map<Long, List<Domain>> domainsByConstraintConceptId) {
+		if (constraint != null && constraint.getConceptId() != null) {
+			domainsByConstraintConceptId.computeIfAbsent(Long.parseLong(constraint.getConceptId()), id -> new ArrayList<>()).add(domain);
+		}
 	}
 
 	public List<Domain> getDomains() {
@@ -51,11 +69,50 @@ public class MRCM {
 		if (Concepts.ISA.equals(attributeId)) {
 			attributeRanges = Collections.singleton(IS_A_ATTRIBUTE_RANGE);
 		} else {
-			attributeRanges = getAttributeRanges().stream()
+			attributeRanges = getAttributeRanges(attributeId).stream()
 					.filter(attributeRange -> attributeRange.getContentType().ruleAppliesToContentType(contentType)
-							&& attributeRange.getRuleStrength() == RuleStrength.MANDATORY
-							&& attributeRange.getReferencedComponentId().equals(attributeId)).collect(Collectors.toSet());
+							&& attributeRange.getRuleStrength() == RuleStrength.MANDATORY).collect(Collectors.toSet());
 		}
 		return attributeRanges;
 	}
+
+	/**
+	 * Finds the domains of a concept with the given parents.
+	 * @param parentIds the parents of the concept
+	 * @param ancestorIds the ancestors of the parents, excluding the parents themselves
+	 * @param proximalPrimitiveModeling match using the proximal primitive constraint of the domains rather than the domain constraint
+	 */
+	public Set<Domain> findDomains(Set<Long> parentIds, Set<Long> ancestorIds, boolean proximalPrimitiveModeling) {
+		Map<Long, List<Domain>> domainsByConceptId = proximalPrimitiveModeling ? domainsByProximalPrimitiveConstraintConceptId : domainsByConstraintConceptId;
+		Set<Domain> matchedDomains = new HashSet<>();
+		for (Long parentId : parentIds) {
+			for (Domain domain : domainsByConceptId.getOrDefault(parentId, Collections.emptyList())) {
+				Operator operator = getConstraint(domain, proximalPrimitiveModeling).getOperator();
+				if (operator == null || operator == Operator.descendantof || operator == Operator.descendantorselfof) {
+					matchedDomains.add(domain);
+				}
+			}
+		}
+		for (Long ancestorId : ancestorIds) {
+			for (Domain domain : domainsByConceptId.getOrDefault(ancestorId, Collections.emptyList())) {
+				Operator operator = getConstraint(domain, proximalPrimitiveModeling).getOperator();
+				if (operator == Operator.descendantof || operator == Operator.descendantorselfof) {
+					matchedDomains.add(domain);
+				}
+			}
+		}
+		return matchedDomains;
+	}
+
+	private static Constraint getConstraint(Domain domain, boolean proximalPrimitiveModeling) {
+		return proximalPrimitiveModeling ? domain.getProximalPrimitiveConstraint() : domain.getDomainConstraint();
+	}
+
+	public List<AttributeDomain> getAttributeDomainsOfDomain(String domainId) {
+		return attributeDomainsByDomainId.getOrDefault(domainId, Collections.emptyList());
+	}
+
+	public List<AttributeRange> getAttributeRanges(String attributeId) {
+		return attributeRangesByAttributeId.getOrDefault(attributeId, Collections.emptyList());
+	}
 }
@@ -2,6 +2,8 @@ package org.snomed.snowstorm.rest;
 
 import ch.qos.logback.classic.Level;
 import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.rest.util.branchpathrewrite.BranchPathUriUtil;
@@ -18,10 +20,14 @@ import org.snomed.snowstorm.core.data.services.*;
 import org.snomed.snowstorm.core.data.services.pojo.*;
 import org.snomed.snowstorm.core.pojo.BranchTimepoint;
 import org.snomed.snowstorm.core.pojo.LanguageDialect;
+import org.snomed.snowstorm.core.pojo.TermLangPojo;
+import org.snomed.snowstorm.core.util.DescriptionHelper;
 import org.snomed.snowstorm.core.util.PageHelper;
 import org.snomed.snowstorm.core.util.SearchAfterPage;
 import org.snomed.snowstorm.core.util.SearchAfterPageImpl;
 import org.snomed.snowstorm.core.util.TimerUtil;
+import org.snomed.snowstorm.ecl.ECLQueryPlan;
+import org.snomed.snowstorm.ecl.ECLQueryService;
 import org.snomed.snowstorm.ecl.validation.ECLValidator;
 import org.snomed.snowstorm.rest.converter.SearchAfterHelper;
 import org.snomed.snowstorm.rest.pojo.*;
@@ -44,11 +50,18 @@ import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.*;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.snomed.snowstorm.core.pojo.BranchTimepoint.BRANCH_CREATION_TIMEPOINT;
 import static org.snomed.snowstorm.rest.ControllerHelper.getCreatedLocationHeaders;
@@ -60,6 +73,7 @@ import static org.springframework.util.CollectionUtils.isEmpty;
 @RequestMapping(produces = "application/json")
 public class ConceptController {
 	private static final PageRequest PAGE_REQUEST = PageRequest.of(0, 10);
+	private static final String NDJSON = "application/x-ndjson";
 
 	@Autowired
 	private ConceptService conceptService;
@@ -85,6 +99,9 @@ public class ConceptController {
 	@Autowired
 	private ECLValidator eclValidator;
 
+	@Autowired
+	private ECLQueryService eclQueryService;
+
 	@Autowired
 	private DroolsValidationService validationService;
 
@@ -97,6 +114,12 @@ public class ConceptController {
 	@Autowired
 	private IdentifierComponentService identifierComponentService;
 
+	@Autowired
+	private ConceptMiniBulkLookupService conceptMiniBulkLookupService;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
 	@Value("${snowstorm.rest-api.allowUnlimitedConceptPagination:false}")
 	private boolean allowUnlimitedConceptPagination;
 
@@ -333,6 +356,128 @@ public class ConceptController {
 		return conceptService.find(path, conceptIds, ControllerHelper.parseAcceptLanguageHeaderWithDefaultFallback(acceptLanguageHeader));
 	}
 
+	@Operation(summary = "Look up the concept minis of a large set of concepts.",
+			description = "Results are streamed as newline delimited JSON, one concept mini per line, as they are loaded. " +
+					"The order of results does not follow the order of the request. Concepts which do not exist on the branch are left out.")
+	@PostMapping(value = "/{branch}/concepts/bulk-minis", produces = NDJSON)
+	@ReadOnlyApiWhenEnabled
+	public void findConceptMinisBulk(
+			@PathVariable String branch,
+			@RequestBody ConceptMiniBulkLookupRequest request,
+			@RequestHeader(value = "Accept-Language", defaultValue = Config.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader,
+			HttpServletResponse response) throws IOException {
+
+		String path = BranchPathUriUtil.decodePath(branch);
+		List<LanguageDialect> languageDialects = ControllerHelper.parseAcceptLanguageHeaderWithDefaultFallback(acceptLanguageHeader);
+		response.setContentType(NDJSON);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+		conceptMiniBulkLookupService.findConceptMinis(path, request.getConceptIds(), languageDialects, writeNDJSON(writer));
+		writer.flush();
+	}
+
+	@Operation(summary = "Export all concepts selected by ECL as newline delimited JSON.",
+			description = "All matching concepts are returned, without paging. Results are streamed as they are loaded, one concept mini per line. " +
+					"The order of results is not defined.")
+	@GetMapping(value = "/{branch}/concepts/ecl-export", produces = NDJSON)
+	public void exportConceptsByECL(
+			@PathVariable String branch,
+			@RequestParam(required = false) String ecl,
+			@RequestParam(required = false) String statedEcl,
+			@RequestHeader(value = "Accept-Language", defaultValue = Config.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader,
+			HttpServletResponse response) throws IOException {
+
+		String path = BranchPathUriUtil.decodePath(branch);
+		validateExportECL(ecl, statedEcl, path);
+		List<LanguageDialect> languageDialects = ControllerHelper.parseAcceptLanguageHeaderWithDefaultFallback(acceptLanguageHeader);
+		response.setContentType(NDJSON);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+		conceptMiniBulkLookupService.findConceptMinisByECL(path, ecl != null ? ecl : statedEcl, ecl == null, languageDialects, writeNDJSON(writer));
+		writer.flush();
+	}
+
+	@Operation(summary = "Export all concepts selected by ECL as tab separated values.",
+			description = "All matching concepts are returned, without paging. Results are streamed as they are loaded. " +
+					"Columns are the same as the CSV format of the concept search, with a preferred term column for each language reference set in the Accept-Language header. " +
+					"The order of results is not defined.")
+	@GetMapping(value = "/{branch}/concepts/ecl-export", produces = "text/csv")
+	public void exportConceptsByECLAsCSV(
+			@PathVariable String branch,
+			@RequestParam(required = false) String ecl,
+			@RequestParam(required = false) String statedEcl,
+			@RequestHeader(value = "Accept-Language", defaultValue = Config.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader,
+			HttpServletResponse response) throws IOException {
+
+		String path = BranchPathUriUtil.decodePath(branch);
+		validateExportECL(ecl, statedEcl, path);
+		List<LanguageDialect> languageDialects = ControllerHelper.parseAcceptLanguageHeaderWithDefaultFallback(acceptLanguageHeader);
+		List<LanguageDialect> preferredTermDialects = languageDialects.stream()
+				.filter(languageDialect -> languageDialect.getLanguageReferenceSet() != null).collect(Collectors.toList());
+		response.setContentType("text/csv");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8));
+		writer.write("id\tfsn\teffectiveTime\tactive\tmoduleId\tdefinitionStatus");
+		for (LanguageDialect languageDialect : preferredTermDialects) {
+			writer.write("\tpt_" + languageDialect.getLanguageReferenceSet());
+		}
+		writer.write('\n');
+		conceptMiniBulkLookupService.findConceptMinisByECL(path, ecl != null ? ecl : statedEcl, ecl == null, languageDialects, conceptMinis -> {
+			for (ConceptMini conceptMini : conceptMinis) {
+				writer.write(String.join("\t", conceptMini.getConceptId(), nullToEmpty(conceptMini.getFsnTerm()), nullToEmpty(conceptMini.getEffectiveTime()),
+						conceptMini.getActive() != null ? conceptMini.getActive().toString() : "", nullToEmpty(conceptMini.getModuleId()),
+						nullToEmpty(conceptMini.getDefinitionStatus())));
+				for (LanguageDialect languageDialect : preferredTermDialects) {
+					TermLangPojo pt = DescriptionHelper.getPtDescriptionTermAndLang(conceptMini.getActiveDescriptions(), Collections.singletonList(languageDialect));
+					writer.write('\t');
+					writer.write(nullToEmpty(pt.getTerm()));
+				}
+				writer.write('\n');
+			}
+			writer.flush();
+		});
+		writer.flush();
+	}
+
+	@Operation(summary = "Explain how ECL would be evaluated.",
+			description = "Returns the evaluation plan of the ECL without evaluating it. Each part of the expression is listed with the strategy used " +
+					"and the estimated number of concepts selected before any filters, when known. Operands are listed in the order they are evaluated.")
+	@GetMapping(value = "/{branch}/concepts/ecl-plan")
+	public ECLQueryPlan explainECL(
+			@PathVariable String branch,
+			@RequestParam(required = false) String ecl,
+			@RequestParam(required = false) String statedEcl) {
+
+		String path = BranchPathUriUtil.decodePath(branch);
+		validateExportECL(ecl, statedEcl, path);
+		return eclQueryService.explain(ecl != null ? ecl : statedEcl, versionControlHelper.getBranchCriteria(path), ecl == null);
+	}
+
+	private void validateExportECL(String ecl, String statedEcl, String path) {
+		if (ecl != null && statedEcl != null) {
+			throw new IllegalArgumentException("Parameters ecl and statedEcl can not be combined.");
+		}
+		if (isBlank(ecl) && isBlank(statedEcl)) {
+			throw new IllegalArgumentException("One of the parameters ecl or statedEcl is required.");
+		}
+		eclValidator.validate(ecl != null ? ecl : statedEcl, path);
+	}
+
+	/**
+	 * Writes each chunk of concept minis as newline delimited JSON, flushing after each chunk so the client receives results as they are loaded.
+	 */
+	private ConceptMiniBulkLookupService.ChunkConsumer writeNDJSON(Writer writer) {
+		ObjectWriter conceptMiniWriter = objectMapper.writerWithView(View.Component.class);
+		return conceptMinis -> {
+			for (ConceptMini conceptMini : conceptMinis) {
+				writer.write(conceptMiniWriter.writeValueAsString(conceptMini));
+				writer.write('\n');
+			}
+			writer.flush();
+		};
+	}
+
+	private static String nullToEmpty(String value) {
+		return value != null ? value : "";
+	}
+
 	@Operation(summary = "Load a concept in the browser format.",
 			description = "During content authoring previous versions of the concept can be loaded from version control.\n" +
 					"To do this use the branch path format {branch@" + BranchTimepoint.DATE_FORMAT_STRING + "} or {branch@epoch_milliseconds}.\n" +
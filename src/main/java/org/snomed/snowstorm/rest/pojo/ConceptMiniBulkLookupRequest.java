@@ -0,0 +1,30 @@
+package org.snomed.snowstorm.rest.pojo;
+
+import com.fasterxml.jackson.annotation.JsonSetter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+public class ConceptMiniBulkLookupRequest {
+
+	private List<String> conceptIds;
+
+	public ConceptMiniBulkLookupRequest() {
+		conceptIds = new ArrayList<>();
+	}
+
+	public ConceptMiniBulkLookupRequest(List<String> conceptIds) {
+		this.conceptIds = conceptIds;
+	}
+
+	public List<String> getConceptIds() {
+		return conceptIds;
+	}
+
+	@JsonSetter(value = "conceptIds")
+	public void setConceptIdsSafely(List<String> conceptIds) {
+		conceptIds.removeIf(Objects::isNull);
+		this.conceptIds = conceptIds;
+	}
+}
@@ -2,10 +2,12 @@ package org.snomed.snowstorm.validation;
 
 import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.BranchCriteria;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.ihtsdo.drools.domain.Relationship;
 import org.snomed.snowstorm.config.Config;
 import org.snomed.snowstorm.core.data.domain.Concept;
 import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
 import org.snomed.snowstorm.validation.domain.DroolsConcept;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.SearchHit;
@@ -24,18 +26,31 @@ public class ConceptDroolsValidationService implements org.ihtsdo.drools.service
 	private final ElasticsearchOperations elasticsearchTemplate;
 	private final DisposableQueryService queryService;
 	private final Set<String> inferredTopLevelHierarchies;
+	private final LongSet activeConceptIds;
 	private final Map<String, Boolean> conceptActiveStates = Collections.synchronizedMap(new HashMap<>());
 	private final Map<String, DroolsConcept> concepts = Collections.synchronizedMap(new HashMap<>());
 
 	ConceptDroolsValidationService(BranchCriteria branchCriteria, ElasticsearchOperations elasticsearchTemplate, DisposableQueryService queryService, Set<String> inferredTopLevelHierarchies) {
+		this(branchCriteria, elasticsearchTemplate, queryService, inferredTopLevelHierarchies, null);
+	}
+
+	/**
+	 * @param activeConceptIds read-only snapshot of all active concepts on the branch, used in place of a lookup per concept. May be null.
+	 */
+	ConceptDroolsValidationService(BranchCriteria branchCriteria, ElasticsearchOperations elasticsearchTemplate, DisposableQueryService queryService,
+			Set<String> inferredTopLevelHierarchies, LongSet activeConceptIds) {
 		this.branchCriteria = branchCriteria;
 		this.elasticsearchTemplate = elasticsearchTemplate;
 		this.queryService = queryService;
 		this.inferredTopLevelHierarchies = inferredTopLevelHierarchies;
+		this.activeConceptIds = activeConceptIds;
 	}
 
 	@Override
 	public boolean isActive(String conceptId) {
+		if (activeConceptIds != null && IdentifierService.isConceptId(conceptId)) {
+			return activeConceptIds.contains(Long.parseLong(conceptId));
+		}
 		if (!conceptActiveStates.containsKey(conceptId)) {
 			NativeSearchQuery query = new NativeSearchQueryBuilder()
 					.withQuery(boolQuery()
@@ -6,10 +6,9 @@ import org.snomed.snowstorm.core.util.SearchAfterPage;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
@@ -19,8 +18,9 @@ public class DisposableQueryService {
     private final QueryService queryService;
     private final String branchPath;
 
-    private final Map<QueryService.ConceptQueryBuilder, Page<Long>> searchCache = Collections.synchronizedMap(new HashMap<>());
-    private final Map<QueryService.ConceptQueryBuilder, Boolean> anyResultsCache = Collections.synchronizedMap(new HashMap<>());
+    // Shared by the workers of a batch validation
+    private final Map<QueryService.ConceptQueryBuilder, Page<Long>> searchCache = new ConcurrentHashMap<>();
+    private final Map<QueryService.ConceptQueryBuilder, Boolean> anyResultsCache = new ConcurrentHashMap<>();
     private final BranchCriteria branchCriteria;
 
     public DisposableQueryService(QueryService queryService, String branchPath, BranchCriteria branchCriteria) {
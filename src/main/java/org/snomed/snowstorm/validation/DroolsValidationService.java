@@ -1,11 +1,14 @@
 package org.snomed.snowstorm.validation;
 
-import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.elasticvc.domain.Branch;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.ihtsdo.drools.RuleExecutor;
 import org.ihtsdo.drools.RuleExecutorFactory;
 import org.ihtsdo.drools.response.InvalidContent;
@@ -21,20 +24,22 @@ import org.snomed.snowstorm.validation.domain.DroolsConcept;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ResourceLoader;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.SearchAfterPageRequest;
 import org.springframework.data.elasticsearch.core.SearchHitsIterator;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static io.kaicode.elasticvc.api.VersionControlHelper.LARGE_PAGE;
@@ -68,6 +73,9 @@ public class DroolsValidationService {
 	private RuleExecutor ruleExecutor;
 	private TestResourceProvider testResourceProvider;
 	private final ExecutorService batchExecutorService;
+	private final ExecutorService batchShardExecutorService;
+	private final int batchThreads;
+	private final int batchShardSize;
 
 	private Set<String> semanticTags;
 
@@ -75,6 +83,8 @@ public class DroolsValidationService {
 
 	public DroolsValidationService(
 			@Value("${validation.drools.rules.path}") String droolsRulesPath,
+			@Value("${validation.drools.batch.threads}") int batchThreads,
+			@Value("${validation.drools.batch.shard-size}") int batchShardSize,
 			@Autowired TestResourcesResourceManagerConfiguration resourceManagerConfiguration,
 			@Autowired ResourceLoader cloudResourceLoader) {
 
@@ -82,6 +92,15 @@ public class DroolsValidationService {
 		testResourceManager = new ResourceManager(resourceManagerConfiguration, cloudResourceLoader);
 		newRuleExecutorAndResources();
 		batchExecutorService = Executors.newFixedThreadPool(1);
+		this.batchThreads = batchThreads;
+		this.batchShardSize = batchShardSize;
+		batchShardExecutorService = Executors.newFixedThreadPool(batchThreads);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		batchExecutorService.shutdownNow();
+		batchShardExecutorService.shutdownNow();
 	}
 
 	public Set<String> getSemanticTags() {
@@ -95,12 +114,7 @@ public class DroolsValidationService {
 	public List<InvalidContent> validateConcepts(String branchPath, Set<Concept> concepts) throws ServiceException {
 		// Get drools assertion groups to run
 		Branch branchWithInheritedMetadata = branchService.findBranchOrThrow(branchPath, true);
-		String assertionGroupNamesMetaString = branchWithInheritedMetadata.getMetadata().getString(BranchMetadataKeys.ASSERTION_GROUP_NAMES);
-		if (assertionGroupNamesMetaString == null) {
-			throw new ServiceException("'" + BranchMetadataKeys.ASSERTION_GROUP_NAMES + "' not set on branch metadata for Snomed-Drools validation configuration.");
-		}
-		String[] names = assertionGroupNamesMetaString.split(",");
-		Set<String> ruleSetNames = new HashSet<>(Arrays.asList(names));
+		Set<String> ruleSetNames = getAssertionGroupNames(branchWithInheritedMetadata);
 		if (ruleSetNames.isEmpty()) {
 			logger.info("Branch metadata item '{}' set as empty for {}, skipping Snomed-Drools validation.", BranchMetadataKeys.ASSERTION_GROUP_NAMES, branchPath);
 			return Collections.emptyList();
@@ -125,43 +139,152 @@ public class DroolsValidationService {
 		return invalidContents;
 	}
 
+	/**
+	 * Validates all concepts selected by the ECL in the background, writing the results to a TSV file in the working directory.
+	 * <p>
+	 * Concepts are split into shards of {@code validation.drools.batch.shard-size} which are loaded and validated on
+	 * {@code validation.drools.batch.threads} workers. Each shard is run in its own rule engine session.
+	 * The workers share one read-only snapshot of the active concepts on the branch, loaded in bulk before validation starts,
+	 * and the caches of the ECL and description lookups made by the rules.
+	 */
 	public void validateBatch(String branch, String ecl, boolean afterClassification) {
 		batchExecutorService.submit(() -> {
 			try {
-				final PageRequest page = PageRequest.of(0, 2_000);
-				long startTime = new Date().getTime();
-				final SearchAfterPage<Long> conceptIds = queryService.searchForIds(queryService.createQueryBuilder(false).ecl(ecl), branch, page);
-				final int total = conceptIds.getNumberOfElements();
-				long doneCount = 0;
-				final String fileName = "validation-bulk-" + new Date().getTime() + ".tsv";
-				logger.info("Validating batch of {} concepts using ECL {} on branch {}, writing to {}", total, ecl, branch, fileName);
-
-				try (PrintWriter writer = new PrintWriter(fileName)) {
-					writer.println("conceptId\tfsn\terrorCount\tmessages\ttsv-duration\ttotal-duration");
-					writer.printf("-\t-\t-\tValidating batch of %s concepts using ECL %s on branch %s\t0\t0%n", total, ecl, branch);
-					for (List<Long> partition : Iterables.partition(conceptIds, 100)) {
-						final Page<Concept> concepts = conceptService.find(partition, Config.DEFAULT_LANGUAGE_DIALECTS, branch, page);
-						for (Concept concept : concepts) {
-							doneCount++;
-							if (doneCount % 10 == 0) {
-								logger.info("Validating concept {} of {}.", doneCount, total);
-							}
-						}
-					}
-					long end = new Date().getTime() - startTime;
-					writer.printf("-\t-\t-\tValidated batch of %s concepts using ECL %s on branch %s\t0\t%s%n", total, ecl, branch, end);
-				} catch (FileNotFoundException e) {
-					e.printStackTrace();
-				}
-
-				logger.info("Validated batch of {} concepts using ECL {} on branch {}, written to {}", total, ecl, branch, fileName);
+				doValidateBatch(branch, ecl, afterClassification);
 			} catch (Exception e) {
 				logger.error("Failed to validate batch using ECL {} on branch {}", ecl, branch, e);
-				throw e;
 			}
 		});
 	}
 
+	private void doValidateBatch(String branch, String ecl, boolean afterClassification) throws ServiceException, InterruptedException {
+		long startTime = new Date().getTime();
+		Branch branchWithInheritedMetadata = branchService.findBranchOrThrow(branch, true);
+		Set<String> ruleSetNames = getAssertionGroupNames(branchWithInheritedMetadata);
+		if (ruleSetNames.isEmpty()) {
+			logger.info("Branch metadata item '{}' set as empty for {}, skipping Snomed-Drools batch validation.", BranchMetadataKeys.ASSERTION_GROUP_NAMES, branch);
+			return;
+		}
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchWithInheritedMetadata);
+		final List<Long> conceptIds = findAllConceptIds(ecl, branchCriteria);
+		final int total = conceptIds.size();
+		final String fileName = "validation-bulk-" + new Date().getTime() + ".tsv";
+		logger.info("Validating batch of {} concepts using ECL {} on branch {} with {} threads, writing to {}", total, ecl, branch, batchThreads, fileName);
+
+		// Shared by all workers
+		final RuleExecutor batchRuleExecutor = ruleExecutor;
+		final LongSet activeConceptIds = findActiveConceptIds(branchCriteria);
+		final Set<String> inferredTopLevelHierarchies = getTopLevelHierarchies();
+		final DisposableQueryService disposableQueryService = new DisposableQueryService(queryService, branch, branchCriteria);
+		final ConceptDroolsValidationService droolsConceptService =
+				new ConceptDroolsValidationService(branchCriteria, elasticsearchOperations, disposableQueryService, inferredTopLevelHierarchies, activeConceptIds);
+		final DescriptionDroolsValidationService droolsDescriptionService = new DescriptionDroolsValidationService(branch, branchCriteria, elasticsearchOperations,
+				descriptionService, disposableQueryService, testResourceProvider, inferredTopLevelHierarchies);
+		final RelationshipDroolsValidationService relationshipService = new RelationshipDroolsValidationService(disposableQueryService);
+		logger.info("Loaded {} active concepts for batch validation in {} seconds.", activeConceptIds.size(), (new Date().getTime() - startTime) / 1_000);
+
+		Function<List<Long>, ShardResult> validateShard = shard -> {
+			long shardStart = new Date().getTime();
+			Collection<Concept> concepts = conceptService.find(branchCriteria, branch, shard, Config.DEFAULT_LANGUAGE_DIALECTS);
+			long loadDuration = new Date().getTime() - shardStart;
+			Set<DroolsConcept> droolsConcepts = concepts.stream().map(DroolsConcept::new).collect(Collectors.toSet());
+			List<InvalidContent> invalidContents = batchRuleExecutor.execute(ruleSetNames, droolsConcepts,
+					droolsConceptService, droolsDescriptionService, relationshipService, false, afterClassification);
+			return new ShardResult(concepts, invalidContents, loadDuration, new Date().getTime() - shardStart - loadDuration);
+		};
+
+		BatchProgress progress = new BatchProgress();
+		try (PrintWriter writer = new PrintWriter(fileName)) {
+			writer.println("conceptId\tfsn\terrorCount\tmessages\ttsv-duration\ttotal-duration");
+			writer.printf("-\t-\t-\tValidating batch of %s concepts using ECL %s on branch %s\t0\t0%n", total, ecl, branch);
+			runShards(Lists.partition(conceptIds, batchShardSize), validateShard, shardResult -> {
+				for (InvalidConcept invalidConcept : shardResult.getInvalidConcepts()) {
+					writer.printf("%s\t%s\t%s\t%s\t%s\t%s%n", invalidConcept.getConceptId(), invalidConcept.getFsn(), invalidConcept.getErrorCount(),
+							invalidConcept.getMessages(), shardResult.getExecuteDuration(), new Date().getTime() - startTime);
+				}
+				progress.add(shardResult);
+				logger.info("Validated {} of {} concepts, {} invalid content found.", progress.doneCount, total, progress.invalidCount);
+			});
+			long end = new Date().getTime() - startTime;
+			writer.printf("-\t-\t-\tValidated batch of %s concepts using ECL %s on branch %s\t0\t%s%n", total, ecl, branch, end);
+		} catch (FileNotFoundException e) {
+			logger.error("Failed to write batch validation results to {}", fileName, e);
+			return;
+		}
+
+		logger.info("Validated batch of {} concepts using ECL {} on branch {} in {} seconds, written to {}. " +
+						"Total time loading concepts {} seconds, running rules {} seconds.",
+				total, ecl, branch, (new Date().getTime() - startTime) / 1_000, fileName, progress.loadDuration / 1_000, progress.executeDuration / 1_000);
+		progress.ruleInvalidCounts.entrySet().stream()
+				.sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+				.forEach(entry -> logger.info("Batch validation rule {} invalid content count {}", entry.getKey(), entry.getValue()));
+	}
+
+	/**
+	 * Validates the shards on the shard workers and passes each result to the consumer on the calling thread, in completion order.
+	 * Only shards not yet consumed are referenced, so the results of a large batch are not all held at once.
+	 * If a shard fails the remaining shards are cancelled and the failure is thrown.
+	 */
+	void runShards(List<List<Long>> shards, Function<List<Long>, ShardResult> validateShard, Consumer<ShardResult> resultConsumer)
+			throws ServiceException, InterruptedException {
+
+		CompletionService<ShardResult> completionService = new ExecutorCompletionService<>(batchShardExecutorService);
+		Set<Future<ShardResult>> pendingShards = new HashSet<>();
+		for (List<Long> shard : shards) {
+			pendingShards.add(completionService.submit(() -> validateShard.apply(shard)));
+		}
+		try {
+			for (int i = 0; i < shards.size(); i++) {
+				Future<ShardResult> completedShard = completionService.take();
+				pendingShards.remove(completedShard);
+				resultConsumer.accept(completedShard.get());
+			}
+		} catch (ExecutionException e) {
+			throw new ServiceException("Failed to validate batch shard.", e.getCause());
+		} finally {
+			// Empty unless a shard failed or the batch was interrupted
+			pendingShards.forEach(future -> future.cancel(true));
+		}
+	}
+
+	private List<Long> findAllConceptIds(String ecl, BranchCriteria branchCriteria) {
+		List<Long> conceptIds = new LongArrayList();
+		SearchAfterPage<Long> previousPage = null;
+		boolean loadedAll = false;
+		while (!loadedAll) {
+			PageRequest pageRequest = previousPage == null ? PageRequest.of(0, LARGE_PAGE.getPageSize()) :
+					SearchAfterPageRequest.of(previousPage.getSearchAfter(), LARGE_PAGE.getPageSize(), previousPage.getSort());
+			SearchAfterPage<Long> page = queryService.searchForIds(queryService.createQueryBuilder(false).ecl(ecl), branchCriteria, pageRequest);
+			conceptIds.addAll(page.getContent());
+			loadedAll = page.getNumberOfElements() < pageRequest.getPageSize();
+			previousPage = page;
+		}
+		return conceptIds;
+	}
+
+	private LongSet findActiveConceptIds(BranchCriteria branchCriteria) {
+		LongSet activeConceptIds = new LongOpenHashSet();
+		try (SearchHitsIterator<Concept> conceptStream = elasticsearchOperations.searchForStream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(Concept.class))
+						.must(termQuery(Concept.Fields.ACTIVE, true)))
+				.withFields(Concept.Fields.CONCEPT_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), Concept.class)) {
+			conceptStream.forEachRemaining(hit -> activeConceptIds.add(hit.getContent().getConceptIdAsLong()));
+		}
+		return activeConceptIds;
+	}
+
+	private Set<String> getAssertionGroupNames(Branch branchWithInheritedMetadata) throws ServiceException {
+		String assertionGroupNamesMetaString = branchWithInheritedMetadata.getMetadata().getString(BranchMetadataKeys.ASSERTION_GROUP_NAMES);
+		if (assertionGroupNamesMetaString == null) {
+			throw new ServiceException("'" + BranchMetadataKeys.ASSERTION_GROUP_NAMES + "' not set on branch metadata for Snomed-Drools validation configuration.");
+		}
+		String[] names = assertionGroupNamesMetaString.split(",");
+		return new HashSet<>(Arrays.asList(names));
+	}
+
 	private void setReleaseHashAndEffectiveTime(Set<Concept> concepts, BranchCriteria branchCriteria) {
 		Map<Long, Concept> conceptMap = new Long2ObjectOpenHashMap<>();
 		Map<Long, Description> descriptionMap = new Long2ObjectOpenHashMap<>();
@@ -264,4 +387,99 @@ public class DroolsValidationService {
 		}
 		return topLevelHierarchies;
 	}
+
+	/**
+	 * Invalid content found in one shard. The loaded concepts are not kept, only the rows written for the invalid ones.
+	 */
+	static final class ShardResult {
+
+		private final int conceptCount;
+		private final List<InvalidConcept> invalidConcepts = new ArrayList<>();
+		private final Map<String, Long> ruleInvalidCounts = new HashMap<>();
+		private final int invalidCount;
+		private final long loadDuration;
+		private final long executeDuration;
+
+		ShardResult(Collection<Concept> concepts, List<InvalidContent> invalidContents, long loadDuration, long executeDuration) {
+			conceptCount = concepts.size();
+			invalidCount = invalidContents.size();
+			this.loadDuration = loadDuration;
+			this.executeDuration = executeDuration;
+			Map<String, List<InvalidContent>> conceptInvalidContents = invalidContents.stream()
+					.filter(invalidContent -> invalidContent.getConceptId() != null)
+					.collect(Collectors.groupingBy(InvalidContent::getConceptId));
+			for (Concept concept : concepts) {
+				List<InvalidContent> conceptInvalid = conceptInvalidContents.getOrDefault(concept.getConceptId(), Collections.emptyList());
+				if (!conceptInvalid.isEmpty()) {
+					String messages = conceptInvalid.stream().map(invalidContent -> invalidContent.getRuleId() + ": " + invalidContent.getMessage())
+							.collect(Collectors.joining(" | "));
+					invalidConcepts.add(new InvalidConcept(concept.getConceptId(), concept.getFsn() != null ? concept.getFsn().getTerm() : "",
+							conceptInvalid.size(), messages));
+				}
+			}
+			for (InvalidContent invalidContent : invalidContents) {
+				ruleInvalidCounts.merge(invalidContent.getRuleId(), 1L, Long::sum);
+			}
+		}
+
+		int getConceptCount() {
+			return conceptCount;
+		}
+
+		private List<InvalidConcept> getInvalidConcepts() {
+			return invalidConcepts;
+		}
+
+		private long getExecuteDuration() {
+			return executeDuration;
+		}
+	}
+
+	private static final class InvalidConcept {
+
+		private final String conceptId;
+		private final String fsn;
+		private final int errorCount;
+		private final String messages;
+
+		private InvalidConcept(String conceptId, String fsn, int errorCount, String messages) {
+			this.conceptId = conceptId;
+			this.fsn = fsn;
+			this.errorCount = errorCount;
+			this.messages = messages;
+		}
+
+		private String getConceptId() {
+			return conceptId;
+		}
+
+		private String getFsn() {
+			return fsn;
+		}
+
+		private int getErrorCount() {
+			return errorCount;
+		}
+
+		private String getMessages() {
+			return messages;
+		}
+	}
+
+	private static final class BatchProgress {
+
+		private long doneCount;
+		private long invalidCount;
+		private long loadDuration;
+		private long executeDuration;
+		private final Map<String, Long> ruleInvalidCounts = new HashMap<>();
+
+		private void add(ShardResult shardResult) {
+			doneCount += shardResult.conceptCount;
+			invalidCount += shardResult.invalidCount;
+			loadDuration += shardResult.loadDuration;
+			executeDuration += shardResult.executeDuration;
+			shardResult.ruleInvalidCounts.forEach((ruleId, count) -> ruleInvalidCounts.merge(ruleId, count, Long::sum));
+		}
+	}
 }
@@ -13,13 +13,17 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.snomed.snowstorm.core.data.domain.Concept;
 import org.snomed.snowstorm.core.data.domain.QueryConcept;
 import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.snomed.snowstorm.core.data.services.ActiveConceptSnapshotService;
+import org.snomed.snowstorm.core.data.services.CachingVersionControlHelper;
 import org.snomed.snowstorm.core.data.services.CodeSystemService;
 import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.MultiSearchService;
 import org.snomed.snowstorm.core.data.services.PermissionService;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
 import org.snomed.snowstorm.core.data.services.classification.ClassificationService;
 import org.snomed.snowstorm.core.data.services.servicehook.CommitServiceHookClient;
 import org.snomed.snowstorm.core.data.services.traceability.Activity;
+import org.snomed.snowstorm.mrcm.MRCMLoader;
 import org.snomed.snowstorm.rest.View;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -66,6 +70,18 @@ public abstract class AbstractTest {
 	@Autowired
 	private ReferenceSetMemberService referenceSetMemberService;
 
+	@Autowired
+	private CachingVersionControlHelper versionControlHelper;
+
+	@Autowired
+	private MRCMLoader mrcmLoader;
+
+	@Autowired
+	private MultiSearchService multiSearchService;
+
+	@Autowired
+	private ActiveConceptSnapshotService activeConceptSnapshotService;
+
 	@MockBean
 	protected CommitServiceHookClient commitServiceHookClient; // Mocked as calls on external service.
 
@@ -101,6 +117,10 @@ public abstract class AbstractTest {
 		codeSystemService.deleteAll();
 		classificationService.deleteAll();
 		permissionService.deleteAll();
+		versionControlHelper.clearCache();
+		mrcmLoader.clearCache();
+		multiSearchService.clearCache();
+		activeConceptSnapshotService.clearCache();
 	}
 
 	@BeforeAll
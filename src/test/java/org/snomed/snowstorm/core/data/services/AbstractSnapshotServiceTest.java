@@ -0,0 +1,149 @@
+package org.snomed.snowstorm.core.data.services;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AbstractSnapshotServiceTest extends AbstractTest {
+
+	@Autowired
+	private AutowireCapableBeanFactory beanFactory;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	private TestSnapshotService snapshotService;
+
+	@BeforeEach
+	void setup() {
+		snapshotService = new TestSnapshotService();
+		beanFactory.autowireBean(snapshotService);
+		snapshotService.initSnapshots();
+	}
+
+	@AfterEach
+	void shutdown() {
+		snapshotService.shutdown();
+	}
+
+	@Test
+	void testBuildOnlyScheduledForBranchHead() throws Exception {
+		conceptService.create(new Concept("100001"), MAIN);
+		Date oldHead = branchService.findLatest(MAIN).getHead();
+		conceptService.create(new Concept("100002"), MAIN);
+
+		BranchCriteria oldCriteria = versionControlHelper.getBranchCriteriaAtTimepoint(MAIN, oldHead);
+		BranchCriteria headCriteria = versionControlHelper.getBranchCriteria(MAIN);
+		assertFalse(snapshotService.getOrScheduleBuild("old", oldCriteria).isPresent());
+		assertFalse(snapshotService.getOrScheduleBuild("head", headCriteria).isPresent());
+
+		assertEquals("snapshot head", waitForSnapshot("head", headCriteria));
+		assertFalse(snapshotService.getOrScheduleBuild("old", oldCriteria).isPresent(), "Older timepoint not built");
+		assertEquals(1, snapshotService.builds.get());
+	}
+
+	@Test
+	void testBuildScheduledOnceWhileBuilding() throws Exception {
+		conceptService.create(new Concept("100001"), MAIN);
+		BranchCriteria headCriteria = versionControlHelper.getBranchCriteria(MAIN);
+		snapshotService.buildStarted = new CountDownLatch(1);
+		snapshotService.buildReleased = new CountDownLatch(1);
+
+		assertFalse(snapshotService.getOrScheduleBuild("head", headCriteria).isPresent());
+		assertTrue(snapshotService.buildStarted.await(10, TimeUnit.SECONDS));
+		assertFalse(snapshotService.getOrScheduleBuild("head", headCriteria).isPresent());
+		snapshotService.buildReleased.countDown();
+
+		assertEquals("snapshot head", waitForSnapshot("head", headCriteria));
+		assertEquals(1, snapshotService.builds.get());
+	}
+
+	@Test
+	void testUpdateRunsAfterPreviousBuildWithoutBlockingCaller() throws Exception {
+		conceptService.create(new Concept("100001"), MAIN);
+		BranchCriteria headCriteria = versionControlHelper.getBranchCriteria(MAIN);
+		snapshotService.buildStarted = new CountDownLatch(1);
+		snapshotService.buildReleased = new CountDownLatch(1);
+
+		snapshotService.scheduleBuild("v1");
+		assertTrue(snapshotService.buildStarted.await(10, TimeUnit.SECONDS));
+		// Returns while the build of the previous version is still running
+		snapshotService.scheduleUpdate("v2", "v1", previous -> previous + " updated");
+		assertFalse(snapshotService.getOrScheduleBuild("v2", headCriteria).isPresent(), "Not given until the update has run");
+		snapshotService.buildReleased.countDown();
+
+		assertEquals("snapshot v1 updated", waitForSnapshot("v2", headCriteria));
+		assertEquals(1, snapshotService.builds.get(), "New version derived, not built");
+	}
+
+	@Test
+	void testUpdateSkippedWithoutPreviousSnapshot() throws Exception {
+		snapshotService.scheduleUpdate("v2", "v1", previous -> previous + " updated");
+		snapshotService.scheduleBuild("v3");
+		for (int i = 0; i < 100 && snapshotService.getIfPresent("v3") == null; i++) {
+			Thread.sleep(100);
+		}
+		assertEquals("snapshot v3", snapshotService.getIfPresent("v3"));
+		assertNull(snapshotService.getIfPresent("v2"));
+	}
+
+	private String waitForSnapshot(String key, BranchCriteria branchCriteria) throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			Optional<String> snapshot = snapshotService.getOrScheduleBuild(key, branchCriteria);
+			if (snapshot.isPresent()) {
+				return snapshot.get();
+			}
+			Thread.sleep(100);
+		}
+		return fail("Snapshot " + key + " not built.");
+	}
+
+	private static class TestSnapshotService extends AbstractSnapshotService<String, String> {
+
+		private final AtomicInteger builds = new AtomicInteger();
+		private CountDownLatch buildStarted = new CountDownLatch(0);
+		private CountDownLatch buildReleased = new CountDownLatch(0);
+
+		private TestSnapshotService() {
+			super("test snapshot");
+		}
+
+		@Override
+		protected int getMaxCount() {
+			return 10;
+		}
+
+		@Override
+		protected String buildSnapshot(String key) {
+			buildStarted.countDown();
+			try {
+				buildReleased.await(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			builds.incrementAndGet();
+			return "snapshot " + key;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package org.snomed.snowstorm.core.data.services;
+
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.domain.Commit;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingVersionControlHelperTest extends AbstractTest {
+
+	@Autowired
+	private CachingVersionControlHelper versionControlHelper;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	@Test
+	void testCriteriaCachedUntilCommit() throws Exception {
+		BranchCriteria first = versionControlHelper.getBranchCriteria(MAIN);
+		assertSame(first, versionControlHelper.getBranchCriteria(MAIN));
+
+		conceptService.create(new Concept("100001"), MAIN);
+
+		BranchCriteria afterCommit = versionControlHelper.getBranchCriteria(MAIN);
+		assertNotSame(first, afterCommit);
+		assertEquals(branchService.findLatest(MAIN).getHead(), afterCommit.getTimepoint());
+		assertSame(afterCommit, versionControlHelper.getBranchCriteria(MAIN));
+	}
+
+	@Test
+	void testCriteriaOfHeadCachedWhileCommitCompleting() {
+		BranchCriteria before = versionControlHelper.getBranchCriteria(MAIN);
+		try (Commit commit = branchService.openCommit(MAIN)) {
+			versionControlHelper.preCommitCompletion(commit);
+			BranchCriteria during = versionControlHelper.getBranchCriteria(MAIN);
+			assertEquals(before.getTimepoint(), during.getTimepoint(), "Open commit not included");
+			assertSame(during, versionControlHelper.getBranchCriteria(MAIN));
+			commit.markSuccessful();
+		}
+
+		BranchCriteria afterCommit = versionControlHelper.getBranchCriteria(MAIN);
+		assertEquals(branchService.findLatest(MAIN).getHead(), afterCommit.getTimepoint());
+		assertSame(afterCommit, versionControlHelper.getBranchCriteria(MAIN));
+	}
+
+	@Test
+	void testCommitSeenWithoutInvalidation() throws Exception {
+		// Not registered as a commit listener, like the cache of another instance
+		CachingVersionControlHelper otherInstanceHelper = new CachingVersionControlHelper(10, 300);
+		applicationContext.getAutowireCapableBeanFactory().autowireBean(otherInstanceHelper);
+		otherInstanceHelper.init();
+
+		BranchCriteria first = otherInstanceHelper.getBranchCriteria(MAIN);
+		assertSame(first, otherInstanceHelper.getBranchCriteria(MAIN));
+
+		conceptService.create(new Concept("100001"), MAIN);
+
+		BranchCriteria afterCommit = otherInstanceHelper.getBranchCriteria(MAIN);
+		assertEquals(branchService.findLatest(MAIN).getHead(), afterCommit.getTimepoint());
+		assertSame(afterCommit, otherInstanceHelper.getBranchCriteria(MAIN));
+	}
+
+	@Test
+	void testCriteriaCachedAgainAfterRollback() {
+		BranchCriteria before = versionControlHelper.getBranchCriteria(MAIN);
+		try (Commit commit = branchService.openCommit(MAIN)) {
+			versionControlHelper.preCommitCompletion(commit);
+			// Not marked successful, rolled back on close
+		}
+
+		BranchCriteria afterRollback = versionControlHelper.getBranchCriteria(MAIN);
+		assertEquals(before.getTimepoint(), afterRollback.getTimepoint());
+		assertSame(afterRollback, versionControlHelper.getBranchCriteria(MAIN));
+	}
+}
@@ -0,0 +1,74 @@
+package org.snomed.snowstorm.core.data.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.ConceptMini;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.snomed.snowstorm.config.Config.DEFAULT_LANGUAGE_DIALECTS;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+class ConceptMiniBulkLookupServiceTest extends AbstractTest {
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private ConceptMiniBulkLookupService conceptMiniBulkLookupService;
+
+	@Test
+	void findConceptMinisInChunks() throws ServiceException, IOException {
+		List<Concept> concepts = new ArrayList<>();
+		for (int i = 1; i <= 2_500; i++) {
+			concepts.add(new Concept(String.valueOf(100000000L + i * 10L)).addFSN("Concept " + i + " (finding)"));
+		}
+		conceptService.batchCreate(concepts, "MAIN");
+
+		List<String> requested = concepts.stream().map(Concept::getConceptId).collect(Collectors.toList());
+		// Duplicate and missing ids
+		requested.add(requested.get(0));
+		requested.add("123000");
+
+		List<Integer> chunkSizes = new ArrayList<>();
+		Set<String> found = new HashSet<>();
+		int count = conceptMiniBulkLookupService.findConceptMinis("MAIN", requested, DEFAULT_LANGUAGE_DIALECTS, conceptMinis -> {
+			chunkSizes.add(conceptMinis.size());
+			conceptMinis.stream().map(ConceptMini::getConceptId).forEach(found::add);
+		});
+
+		assertEquals(2_500, count);
+		assertEquals(2_500, found.size());
+		assertEquals(3, chunkSizes.size());
+	}
+
+	@Test
+	void findConceptMinisByECLInChunks() throws ServiceException, IOException {
+		List<Concept> concepts = new ArrayList<>();
+		for (int i = 1; i <= 2_500; i++) {
+			concepts.add(new Concept(String.valueOf(100000000L + i * 10L)).addFSN("Concept " + i + " (finding)"));
+		}
+		conceptService.batchCreate(concepts, "MAIN");
+
+		List<Integer> chunkSizes = new ArrayList<>();
+		Set<String> found = new HashSet<>();
+		int count = conceptMiniBulkLookupService.findConceptMinisByECL("MAIN", "*", false, DEFAULT_LANGUAGE_DIALECTS, conceptMinis -> {
+			chunkSizes.add(conceptMinis.size());
+			conceptMinis.stream().map(ConceptMini::getConceptId).forEach(found::add);
+		});
+
+		assertEquals(2_500, count);
+		assertEquals(2_500, found.size());
+		assertEquals(3, chunkSizes.size());
+	}
+}
@@ -24,6 +24,7 @@ import org.snomed.snowstorm.core.data.services.pojo.DescriptionCriteria;
 import org.snomed.snowstorm.core.data.services.pojo.MemberSearchRequest;
 import org.snomed.snowstorm.core.pojo.BranchTimepoint;
 import org.snomed.snowstorm.core.pojo.LanguageDialect;
+import org.snomed.snowstorm.core.util.TimerUtil;
 import org.snomed.snowstorm.ecl.ECLQueryService;
 import org.snomed.snowstorm.rest.View;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,6 +37,10 @@ import org.springframework.security.core.context.SecurityContextHolder;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -2341,6 +2346,48 @@ class ConceptServiceTest extends AbstractTest {
 		assertEquals("11000172109", concept.getModuleId());
 	}
 
+	@Test
+	void testRunJoinsWaitsForRunningJoinsOnFailure() {
+		CountDownLatch slowJoinStarted = new CountDownLatch(1);
+		AtomicBoolean slowJoinFinished = new AtomicBoolean();
+		Map<String, Consumer<TimerUtil>> joins = new LinkedHashMap<>();
+		joins.put("failing", timer -> {
+			try {
+				slowJoinStarted.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			throw new IllegalStateException("Join failed.");
+		});
+		joins.put("slow", timer -> {
+			slowJoinStarted.countDown();
+			try {
+				Thread.sleep(300);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			slowJoinFinished.set(true);
+		});
+
+		IllegalStateException exception = assertThrows(IllegalStateException.class, () -> conceptService.runJoins(joins, new TimerUtil("test")));
+		assertEquals("Join failed.", exception.getMessage());
+		assertTrue(slowJoinFinished.get(), "Running join finished before the failure was thrown");
+	}
+
+	@Test
+	void testRunJoinsThrowsFailureOfPooledJoin() {
+		AtomicBoolean callerJoinRan = new AtomicBoolean();
+		Map<String, Consumer<TimerUtil>> joins = new LinkedHashMap<>();
+		joins.put("caller", timer -> callerJoinRan.set(true));
+		joins.put("failing", timer -> {
+			throw new IllegalStateException("Pooled join failed.");
+		});
+
+		IllegalStateException exception = assertThrows(IllegalStateException.class, () -> conceptService.runJoins(joins, new TimerUtil("test")));
+		assertEquals("Pooled join failed.", exception.getMessage());
+		assertTrue(callerJoinRan.get());
+	}
+
 	private boolean waitUntil(Supplier<Boolean> supplier, int maxSecondsToWait) {
 		try {
 			int sleptSeconds = 0;
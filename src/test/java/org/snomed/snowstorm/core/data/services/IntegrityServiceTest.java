@@ -1,9 +1,11 @@
 package org.snomed.snowstorm.core.data.services;
 
 import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
 import io.kaicode.elasticvc.domain.Branch;
 import io.kaicode.elasticvc.domain.Commit;
 import io.kaicode.elasticvc.domain.Metadata;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.snomed.snowstorm.AbstractTest;
@@ -54,6 +56,12 @@ class IntegrityServiceTest extends AbstractTest {
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Autowired
+	private ActiveConceptSnapshotService activeConceptSnapshotService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
 	@Test
 	/*
 		Test the method that checks all the components visible on the branch.
@@ -132,6 +140,32 @@ class IntegrityServiceTest extends AbstractTest {
 		assertNull(reportProjectTest2Run3.getRelationshipsWithMissingOrInactiveDestination());
 	}
 
+	@Test
+	void testFindAllComponentsWithBadIntegrityUsingActiveConceptSnapshot() throws ServiceException {
+		sBranchService.create("MAIN/PROJECT");
+		conceptService.create(new Concept("100001"), "MAIN/PROJECT");
+		conceptService.create(new Concept("10000101").addRelationship(new Relationship("10000101", "100001").setInferred(false)), "MAIN/PROJECT");
+		conceptService.create(new Concept("100002").addRelationship(new Relationship("10000101", "100001").setInferred(false)), "MAIN/PROJECT");
+
+		// Full check loads the active concepts of the branch version
+		IntegrityIssueReport report = integrityService.findAllComponentsWithBadIntegrity(branchService.findLatest("MAIN/PROJECT"), true);
+		assertTrue(report.isEmpty());
+		assertTrue(activeConceptSnapshotService.getActiveConcepts(versionControlHelper.getBranchCriteria("MAIN/PROJECT")).orElseThrow().contains(100001L));
+
+		conceptService.update((Concept) new Concept("100001").setActive(false), "MAIN/PROJECT");
+
+		// Active concepts of the new version are derived from the commit rather than loaded again
+		Optional<LongSet> activeConcepts = activeConceptSnapshotService.getActiveConcepts(versionControlHelper.getBranchCriteria("MAIN/PROJECT"));
+		assertTrue(activeConcepts.isPresent());
+		assertFalse(activeConcepts.get().contains(100001L));
+		assertTrue(activeConcepts.get().contains(100002L));
+
+		report = integrityService.findAllComponentsWithBadIntegrity(branchService.findLatest("MAIN/PROJECT"), true);
+		assertNull(report.getRelationshipsWithMissingOrInactiveType());
+		assertEquals(2, report.getRelationshipsWithMissingOrInactiveDestination().size());
+		assertEquals(Collections.singleton(100001L), new HashSet<>(report.getRelationshipsWithMissingOrInactiveDestination().values()));
+	}
+
 	private void makeRelationshipInactive(Collection<Long> relationshipIds, String branchPath) {
 		try (Commit commit = branchService.openCommit(branchPath)) {
 			Set<Relationship> relationships = relationshipIds.stream().map(id -> {
@@ -1,6 +1,7 @@
 package org.snomed.snowstorm.core.data.services;
 
 import com.google.common.collect.Sets;
+import io.kaicode.elasticvc.api.BranchService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,6 +12,7 @@ import org.snomed.snowstorm.core.pojo.BranchTimepoint;
 import org.snomed.snowstorm.mrcm.MRCMService;
 import org.snomed.snowstorm.mrcm.model.AttributeRange;
 import org.snomed.snowstorm.mrcm.model.ContentType;
+import org.snomed.snowstorm.mrcm.model.MRCM;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
@@ -20,8 +22,7 @@ import java.util.List;
 import java.util.Map;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
-import static org.junit.Assert.assertEquals;
-import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.*;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.snomed.snowstorm.core.data.domain.Concepts.ISA;
 
@@ -38,6 +39,12 @@ class MRCMServiceTest extends AbstractTest {
 	@Autowired
 	private QueryService queryService;
 
+	@Autowired
+	private ReferenceSetMemberService memberService;
+
+	@Autowired
+	private BranchService branchService;
+
 	@BeforeEach
 	void setup() throws ServiceException {
 		conceptService.create(new Concept(Concepts.SNOMEDCT_ROOT).addFSN("SNOMED CT"), "MAIN");
@@ -85,4 +92,36 @@ class MRCMServiceTest extends AbstractTest {
 			assertEquals(ConcreteValue.DataType.DECIMAL, attributeRange.getDataType());
 		});
 	}
+
+	@Test
+	void testCachedMRCMSharedUntilMRCMChanged() throws ServiceException {
+		memberService.createMember(MAIN, createDomainMember("404684003", "<< 404684003 |Clinical finding (finding)|"));
+		MRCM mainMRCM = mrcmService.loadActiveMRCMFromCache(MAIN);
+		assertEquals(1, mainMRCM.getDomains().size());
+
+		// Commit without MRCM changes keeps the cached MRCM
+		conceptService.create(new Concept("404684003").addFSN("Clinical finding (finding)"), MAIN);
+		assertSame(mainMRCM, mrcmService.loadActiveMRCMFromCache(MAIN));
+
+		// Child branch without MRCM changes shares the MRCM of the parent
+		branchService.create("MAIN/A");
+		conceptService.create(new Concept("71388002").addFSN("Procedure (procedure)"), "MAIN/A");
+		assertSame(mainMRCM, mrcmService.loadActiveMRCMFromCache("MAIN/A"));
+
+		// MRCM change on the child branch only
+		memberService.createMember("MAIN/A", createDomainMember("71388002", "<< 71388002 |Procedure (procedure)|"));
+		MRCM childMRCM = mrcmService.loadActiveMRCMFromCache("MAIN/A");
+		assertNotSame(mainMRCM, childMRCM);
+		assertEquals(2, childMRCM.getDomains().size());
+		assertSame(mainMRCM, mrcmService.loadActiveMRCMFromCache(MAIN));
+	}
+
+	private ReferenceSetMember createDomainMember(String domainId, String domainConstraint) {
+		return new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.REFSET_MRCM_DOMAIN_INTERNATIONAL, domainId)
+				.setAdditionalField("domainConstraint", domainConstraint)
+				.setAdditionalField("parentDomain", null)
+				.setAdditionalField("proximalPrimitiveConstraint", domainConstraint)
+				.setAdditionalField("proximalPrimitiveRefinement", null)
+				.setAdditionalField("guideURL", "");
+	}
 }
@@ -9,7 +9,9 @@ import org.snomed.snowstorm.core.data.domain.CodeSystem;
 import org.snomed.snowstorm.core.data.domain.Concept;
 import org.snomed.snowstorm.core.data.domain.Concepts;
 import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
 import org.snomed.snowstorm.core.data.services.pojo.DescriptionCriteria;
+import org.snomed.snowstorm.core.data.services.pojo.PageWithBucketAggregations;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
@@ -35,6 +37,12 @@ class MultiSearchServiceTest extends AbstractTest {
 	@Autowired
 	private ConceptService conceptService;
 
+	@Autowired
+	private ReferenceSetMemberService referenceSetMemberService;
+
+	@Autowired
+	private MultiSearchDescriptionIndexService multiSearchDescriptionIndexService;
+
 	private ServiceTestUtil testUtil;
 
 	@BeforeEach
@@ -92,6 +100,44 @@ class MultiSearchServiceTest extends AbstractTest {
 
 	}
 
+	@Test
+	void testFindDescriptionsReferenceSets() throws ServiceException {
+		CodeSystem codeSystemInternational = new CodeSystem("SNOMEDCT", "MAIN");
+		codeSystemService.createCodeSystem(codeSystemInternational);
+		testUtil.createConceptWithPathIdAndTerms("MAIN", Concepts.CLINICAL_FINDING, "Clinical finding", "Finding");
+		testUtil.createConceptWithPathIdAndTerm("MAIN", "404684003", "Other finding");
+		referenceSetMemberService.createMember("MAIN", new ReferenceSetMember(Concepts.CORE_MODULE, "723264001", Concepts.CLINICAL_FINDING));
+		codeSystemService.createVersion(codeSystemInternational, 20190731, "");
+
+		PageWithBucketAggregations<Description> page = multiSearchService.findDescriptionsReferenceSets(new DescriptionCriteria().term("fin"), PageRequest.of(0, 1));
+		assertEquals(3, page.getTotalElements());
+		assertEquals(1, page.getContent().size());
+		assertEquals("Concepts are counted once per reference set", Long.valueOf(1), page.getBuckets().get("membership").get("723264001"));
+	}
+
+	@Test
+	void testFindDescriptionsBeforeVersionIndexed() throws ServiceException {
+		CodeSystem codeSystemInternational = new CodeSystem("SNOMEDCT", "MAIN");
+		codeSystemService.createCodeSystem(codeSystemInternational);
+		testUtil.createConceptWithPathIdAndTerms("MAIN", Concepts.CLINICAL_FINDING, "Clinical finding", "Finding");
+		referenceSetMemberService.createMember("MAIN", new ReferenceSetMember(Concepts.CORE_MODULE, "723264001", Concepts.CLINICAL_FINDING));
+		codeSystemService.createVersion(codeSystemInternational, 20190731, "");
+
+		// Simulate the version not yet being indexed
+		multiSearchDescriptionIndexService.deleteAll();
+		multiSearchService.clearCache();
+
+		assertEquals("Found in the version branch content", 2, runSearch("fin").getTotalElements());
+		assertEquals(0, runSearch("fin", false).getTotalElements());
+		PageWithBucketAggregations<Description> page = multiSearchService.findDescriptionsReferenceSets(new DescriptionCriteria().term("fin"), PageRequest.of(0, 1));
+		assertEquals(2, page.getTotalElements());
+		assertEquals(Long.valueOf(1), page.getBuckets().get("membership").get("723264001"));
+
+		multiSearchService.updateDescriptionIndex();
+		assertEquals(2, runSearch("fin").getTotalElements());
+		assertEquals(2, runSearch("fin", true).getTotalElements());
+	}
+
 	private Page<Description> runSearch(String term) {
 		DescriptionCriteria criteria = new DescriptionCriteria().term(term);
 		return multiSearchService.findDescriptions(criteria, PageRequest.of(0, 10));
@@ -1,6 +1,7 @@
 package org.snomed.snowstorm.core.data.services;
 
 import com.google.common.collect.Lists;
+import io.kaicode.elasticvc.api.VersionControlHelper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -39,6 +40,9 @@ class QueryServiceTest extends AbstractTest {
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
 	private static final PageRequest PAGE_REQUEST = PageRequest.of(0, 50);
 	public static final String PATH = "MAIN";
 	public static final int TEST_ET = 20210131;
@@ -83,6 +87,26 @@ class QueryServiceTest extends AbstractTest {
 		
 	}
 
+	@Test
+	void testJoinDescendantCountAndLeafFlag() {
+		ConceptMini rootMini = new ConceptMini(SNOMEDCT_ROOT, null);
+		ConceptMini pizzaMini = new ConceptMini(pizza_2.getId(), null);
+		ConceptMini soCheesyMini = new ConceptMini(reallyCheesyPizza_5.getId(), null);
+		ConceptMini inactiveMini = new ConceptMini(inactivePizza_6.getId(), null);
+		service.joinDescendantCountAndLeafFlag(Lists.newArrayList(rootMini, pizzaMini, soCheesyMini, inactiveMini), Relationship.CharacteristicType.inferred,
+				versionControlHelper.getBranchCriteria(PATH));
+
+		assertEquals(4L, rootMini.getDescendantCount());
+		assertFalse(rootMini.getIsLeafInferred());
+		assertEquals(3L, pizzaMini.getDescendantCount());
+		assertFalse(pizzaMini.getIsLeafInferred());
+		assertEquals(0L, soCheesyMini.getDescendantCount());
+		assertTrue(soCheesyMini.getIsLeafInferred());
+		assertEquals(0L, inactiveMini.getDescendantCount());
+		assertTrue(inactiveMini.getIsLeafInferred());
+		assertNull(rootMini.getIsLeafStated());
+	}
+
 	@Test
 	void testSearchResultOrdering() {
 		List<ConceptMini> matches = service.search(service.createQueryBuilder(false).activeFilter(true).descriptionTerm("Piz"), PATH, PAGE_REQUEST).getContent();
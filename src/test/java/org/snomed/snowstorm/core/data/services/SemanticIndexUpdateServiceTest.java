@@ -14,10 +14,11 @@ import org.snomed.snowstorm.config.Config;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.repositories.QueryConceptRepository;
 import org.snomed.snowstorm.core.data.services.classification.BranchClassificationStatusService;
+import org.snomed.snowstorm.core.data.services.commit.CommitListenerPipeline;
 import org.snomed.snowstorm.core.data.services.traceability.TraceabilityLogService;
 import org.snomed.snowstorm.core.data.services.transitiveclosure.GraphBuilderException;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService;
 import org.snomed.snowstorm.ecl.validation.ECLPreprocessingService;
-import org.snomed.snowstorm.mrcm.MRCMLoader;
 import org.snomed.snowstorm.mrcm.MRCMUpdateService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -80,9 +81,14 @@ class SemanticIndexUpdateServiceTest extends AbstractTest {
 
 	@Test
 	void testCommitListenerOrderingConfig() {
-		List<CommitListener> commitListeners = branchService.getCommitListeners();
+		List<CommitListener> branchServiceListeners = branchService.getCommitListeners();
+		assertEquals(1, branchServiceListeners.size());
+		assertEquals(CommitListenerPipeline.class, branchServiceListeners.get(0).getClass());
+
+		// Listeners saving content or branch metadata keep the original order
+		List<CommitListener> commitListeners = ((CommitListenerPipeline) branchServiceListeners.get(0)).getListeners();
 		assertEquals(13, commitListeners.size());
-		assertEquals(MRCMLoader.class, commitListeners.get(0).getClass());
+		assertEquals(CachingVersionControlHelper.class, commitListeners.get(0).getClass());
 		assertEquals(ConceptDefinitionStatusUpdateService.class, commitListeners.get(1).getClass());
 		assertEquals(SemanticIndexUpdateService.class, commitListeners.get(2).getClass());
 		assertEquals(MRCMUpdateService.class, commitListeners.get(3).getClass());
@@ -90,8 +96,8 @@ class SemanticIndexUpdateServiceTest extends AbstractTest {
 		assertEquals(RefsetDescriptorUpdaterService.class, commitListeners.get(5).getClass());
 		assertEquals(TraceabilityLogService.class, commitListeners.get(6).getClass());
 		assertEquals(IntegrityService.class, commitListeners.get(7).getClass());
-		assertEquals(MultiSearchService.class, commitListeners.get(8).getClass());
-		assertEquals(ECLPreprocessingService.class, commitListeners.get(9).getClass());
+		assertEquals(ECLPreprocessingService.class, commitListeners.get(8).getClass());
+		assertEquals(ECLCacheVersionService.class, commitListeners.get(9).getClass());
 	}
 
 	@Test
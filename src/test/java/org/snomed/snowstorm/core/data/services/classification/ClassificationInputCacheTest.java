@@ -0,0 +1,115 @@
+package org.snomed.snowstorm.core.data.services.classification;
+
+import io.kaicode.elasticvc.domain.Branch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.snomed.snowstorm.core.data.services.CodeSystemService;
+import org.snomed.snowstorm.core.rf2.RF2Type;
+import org.snomed.snowstorm.core.rf2.export.ExportService;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService.ContentVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = ClassificationInputCache.class)
+@TestPropertySource(properties = {"classification-service.input-cache.max-files=1", "classification-service.input-cache.expire-after-access-minutes=60"})
+class ClassificationInputCacheTest {
+
+	@Autowired
+	private ClassificationInputCache classificationInputCache;
+
+	@MockBean
+	private ExportService exportService;
+
+	@MockBean
+	private CodeSystemService codeSystemService;
+
+	@MockBean
+	private ECLCacheVersionService contentVersionService;
+
+	@TempDir
+	File tempDir;
+
+	private int exportCount;
+
+	@BeforeEach
+	void setup() throws Exception {
+		when(contentVersionService.resolve(anyString(), any(Date.class), eq(false)))
+				.thenAnswer(invocation -> new ContentVersion(invocation.getArgument(0), invocation.getArgument(1)));
+		when(exportService.exportRF2ArchiveFile(anyString(), anyString(), eq(RF2Type.DELTA), eq(true))).thenAnswer(invocation -> createArchive());
+	}
+
+	@AfterEach
+	void clearCache() {
+		classificationInputCache.shutdown();
+	}
+
+	@Test
+	void testArchiveReused() throws Exception {
+		Branch branch = branch("MAIN/A", 1000);
+		ClassificationInputCache.ClassificationInput input = classificationInputCache.getDeltaArchive(branch);
+		classificationInputCache.release(input);
+		assertTrue(input.getDeltaArchive().isFile(), "Cached archive kept after use");
+
+		ClassificationInputCache.ClassificationInput again = classificationInputCache.getDeltaArchive(branch);
+		assertEquals(input.getDeltaArchive(), again.getDeltaArchive());
+		assertEquals(1, exportCount);
+		classificationInputCache.release(again);
+	}
+
+	@Test
+	void testEvictionDuringUse() throws Exception {
+		ClassificationInputCache.ClassificationInput inputA = classificationInputCache.getDeltaArchive(branch("MAIN/A", 1000));
+		// Only one archive is held, one of the two archives leaves the cache while both are in use
+		ClassificationInputCache.ClassificationInput inputB = classificationInputCache.getDeltaArchive(branch("MAIN/B", 1000));
+		assertTrue(inputA.getDeltaArchive().isFile(), "Archive in use is not deleted");
+		assertTrue(inputB.getDeltaArchive().isFile(), "Archive in use is not deleted");
+
+		classificationInputCache.release(inputA);
+		classificationInputCache.release(inputB);
+		assertEquals(1, (inputA.getDeltaArchive().isFile() ? 1 : 0) + (inputB.getDeltaArchive().isFile() ? 1 : 0),
+				"Evicted archive deleted once released, cached archive kept");
+	}
+
+	@Test
+	void testCacheClearedDuringUse() throws Exception {
+		ClassificationInputCache.ClassificationInput first = classificationInputCache.getDeltaArchive(branch("MAIN/A", 1000));
+		classificationInputCache.shutdown();
+		assertTrue(first.getDeltaArchive().isFile(), "Archive in use is not deleted when the cache is cleared");
+
+		ClassificationInputCache.ClassificationInput second = classificationInputCache.getDeltaArchive(branch("MAIN/A", 1000));
+		assertNotEquals(first.getDeltaArchive(), second.getDeltaArchive(), "Evicted archive is not reused");
+
+		classificationInputCache.release(first);
+		assertFalse(first.getDeltaArchive().isFile());
+		classificationInputCache.release(second);
+		assertTrue(second.getDeltaArchive().isFile());
+	}
+
+	private Branch branch(String path, long head) {
+		Branch branch = new Branch(path);
+		branch.setHead(new Date(head));
+		return branch;
+	}
+
+	private File createArchive() throws IOException {
+		File archive = new File(tempDir, "delta-" + exportCount++ + ".zip");
+		assertTrue(archive.createNewFile());
+		return archive;
+	}
+}
@@ -137,6 +137,30 @@ class ClassificationServiceTest extends AbstractTest {
 //		assertEquals(1, activity.getChanges().size());
 	}
 
+	@Test
+	void testSaveRelationshipChangesOfManyConceptsInBatches() throws IOException, ServiceException, InterruptedException {
+		// Saved in batches of at least three changes, the next batch is read while the previous one is saved
+		String path = "MAIN";
+		List<String> conceptIds = Arrays.asList("100001", "100002", "100003", "100004", "100005");
+		StringBuilder rf2 = new StringBuilder(rf2RelationshipHeader());
+		for (String conceptId : conceptIds) {
+			conceptService.create(new Concept(conceptId).addAxiom(new Relationship(ISA, SNOMEDCT_ROOT), new Relationship("363698007", "84301002")), path);
+			rf2.append(rf2RelationshipRow(null, null, "1", null, conceptId, SNOMEDCT_ROOT, "0", ISA, INFERRED_RELATIONSHIP, EXISTENTIAL)).append("\n");
+			rf2.append(rf2RelationshipRow(null, null, "1", null, conceptId, "84301002", "0", "363698007", INFERRED_RELATIONSHIP, EXISTENTIAL)).append("\n");
+		}
+
+		String classificationId = UUID.randomUUID().toString();
+		Classification classification = createClassification(path, classificationId);
+		classificationService.saveRelationshipChanges(classification, new ByteArrayInputStream(rf2.toString().getBytes()), false);
+
+		assertEquals(SAVED, saveClassificationAndWaitForCompletion(path, classificationId));
+		for (String conceptId : conceptIds) {
+			Set<Relationship> relationships = conceptService.find(conceptId, path).getRelationships();
+			assertEquals(2, relationships.size(), "Inferred relationships saved for concept " + conceptId);
+			assertTrue(relationships.stream().allMatch(relationship -> INFERRED_RELATIONSHIP.equals(relationship.getCharacteristicTypeId())));
+		}
+	}
+
 	@Test
 	void testSaveRelationshipChangesFailsWithLoop() throws IOException, ServiceException, InterruptedException {
 		// Create concept with some stated modeling in an axiom
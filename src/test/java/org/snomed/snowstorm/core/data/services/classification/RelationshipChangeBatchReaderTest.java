@@ -0,0 +1,57 @@
+package org.snomed.snowstorm.core.data.services.classification;
+
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.classification.RelationshipChange;
+import org.snomed.snowstorm.core.data.repositories.classification.RelationshipChangeRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.snomed.snowstorm.core.data.domain.Concepts.*;
+
+class RelationshipChangeBatchReaderTest extends AbstractTest {
+
+	@Autowired
+	private RelationshipChangeRepository relationshipChangeRepository;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchOperations;
+
+	@Test
+	void testBatchesHoldWholeConcepts() {
+		String classificationId = UUID.randomUUID().toString();
+		Map<String, Integer> changesPerConcept = new LinkedHashMap<>();
+		changesPerConcept.put("100001", 2);
+		changesPerConcept.put("100002", 4);// More than a page
+		changesPerConcept.put("100003", 1);
+		changesPerConcept.put("100004", 3);
+		changesPerConcept.put("100005", 1);
+		List<RelationshipChange> changes = new ArrayList<>();
+		changesPerConcept.forEach((conceptId, count) -> {
+			for (int i = 0; i < count; i++) {
+				changes.add(new RelationshipChange(classificationId, null, true, conceptId, "20000" + i, 0, ISA, EXISTENTIAL, false));
+			}
+		});
+		relationshipChangeRepository.saveAll(changes);
+
+		RelationshipChangeBatchReader batchReader = new RelationshipChangeBatchReader(elasticsearchOperations, classificationId, 3);
+		Map<String, Integer> batchOfConcept = new HashMap<>();
+		Map<String, Integer> changesRead = new HashMap<>();
+		int batchNumber = 0;
+		while (!batchReader.isExhausted()) {
+			List<RelationshipChange> batch = batchReader.readBatch();
+			assertFalse(batch.isEmpty());
+			for (RelationshipChange change : batch) {
+				Integer existingBatch = batchOfConcept.putIfAbsent(change.getSourceId(), batchNumber);
+				assertTrue(existingBatch == null || existingBatch == batchNumber, "Changes of concept " + change.getSourceId() + " split across batches");
+				changesRead.merge(change.getSourceId(), 1, Integer::sum);
+			}
+			batchNumber++;
+		}
+		assertEquals(changesPerConcept, changesRead);
+		assertTrue(batchNumber > 1);
+	}
+}
@@ -0,0 +1,105 @@
+package org.snomed.snowstorm.core.data.services.commit;
+
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.domain.Branch;
+import io.kaicode.elasticvc.domain.Commit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.QueryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit.jupiter.SpringExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.snomed.snowstorm.core.data.domain.Concepts.*;
+
+@ExtendWith(SpringExtension.class)
+@ContextConfiguration(classes = TestConfig.class)
+class CommitListenerPipelineTest extends AbstractTest {
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private QueryService queryService;
+
+	@Test
+	void testDependenciesRunInOrder() {
+		List<String> events = Collections.synchronizedList(new ArrayList<>());
+		CommitListenerPipeline pipeline = new CommitListenerPipeline(4, null);
+		pipeline.add("a", commit -> record(events, "a", 200));
+		pipeline.add("b", commit -> record(events, "b", 0), "a");
+		pipeline.add("c", commit -> record(events, "c", 100));
+		pipeline.add("d", commit -> record(events, "d", 0), "b", "c");
+		try (Commit commit = branchService.openCommit(MAIN)) {
+			pipeline.preCommitCompletion(commit);
+		} finally {
+			pipeline.shutdown();
+		}
+
+		assertEquals(8, events.size());
+		assertTrue(events.indexOf("end a") < events.indexOf("start b"));
+		assertTrue(events.indexOf("end b") < events.indexOf("start d"));
+		assertTrue(events.indexOf("end c") < events.indexOf("start d"));
+		// Listeners without a dependency between them overlap
+		assertTrue(events.indexOf("start c") < events.indexOf("end a"));
+	}
+
+	@Test
+	void testFirstFailureThrownAndDependentsSkipped() {
+		AtomicInteger dependentRuns = new AtomicInteger();
+		AtomicInteger independentRuns = new AtomicInteger();
+		CommitListenerPipeline pipeline = new CommitListenerPipeline(4, null);
+		pipeline.add("failing", commit -> {
+			throw new IllegalStateException("Listener failed on " + commit.getBranch().getPath());
+		});
+		pipeline.add("dependent", commit -> dependentRuns.incrementAndGet(), "failing");
+		pipeline.add("independent", commit -> independentRuns.incrementAndGet());
+		try (Commit commit = branchService.openCommit(MAIN)) {
+			IllegalStateException exception = assertThrows(IllegalStateException.class, () -> pipeline.preCommitCompletion(commit));
+			assertEquals("Listener failed on MAIN", exception.getMessage());
+		} finally {
+			pipeline.shutdown();
+		}
+		assertEquals(0, dependentRuns.get());
+		assertEquals(1, independentRuns.get());
+	}
+
+	@Test
+	void testContentCommitThroughConfiguredPipeline() throws Exception {
+		Branch before = branchService.findLatest(MAIN);
+		conceptService.create(new Concept(SNOMEDCT_ROOT), MAIN);
+		conceptService.create(new Concept("100001").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)), MAIN);
+
+		Branch after = branchService.findLatest(MAIN);
+		assertTrue(after.getHead().after(before.getHead()));
+		assertFalse(after.isLocked());
+		// Semantic index listener ran within the commit
+		assertEquals(1, queryService.search(queryService.createQueryBuilder(true).ecl("<" + SNOMEDCT_ROOT), MAIN, PageRequest.of(0, 10))
+				.getTotalElements());
+	}
+
+	private void record(List<String> events, String name, long sleepMillis) {
+		events.add("start " + name);
+		try {
+			Thread.sleep(sleepMillis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		events.add("end " + name);
+	}
+}
@@ -0,0 +1,56 @@
+package org.snomed.snowstorm.core.data.services.snapshot;
+
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AttributeIndexTest {
+
+	private static final long HAS_ACTIVE_INGREDIENT = 127489000L;
+	private static final long HAS_DOSE_FORM = 411116001L;
+
+	@Test
+	void getDestinations() {
+		Map<String, Set<Object>> attributes = new HashMap<>();
+		attributes.put(Long.toString(HAS_ACTIVE_INGREDIENT), Sets.newHashSet("387517004", "372687004"));
+		attributes.put(Long.toString(HAS_DOSE_FORM), Sets.newHashSet("385055001"));
+		attributes.put("1142135004", Sets.newHashSet(500));
+		attributes.put("all", Sets.newHashSet("387517004", "372687004", "385055001"));
+
+		AttributeIndex index = AttributeIndex.builder()
+				.addConcept(322236009L, attributes)
+				.addAttribute(322280009L, HAS_ACTIVE_INGREDIENT, 387517004L)
+				.build();
+
+		assertEquals(2, index.getConceptCount());
+		assertEquals(4, index.getAttributeCount(), "Concrete values and the wildcard entry are not held.");
+
+		assertEquals(Sets.newHashSet(387517004L, 372687004L),
+				index.getDestinations(Collections.singleton(322236009L), Collections.singleton(HAS_ACTIVE_INGREDIENT)));
+		assertEquals(Sets.newHashSet(387517004L, 372687004L, 385055001L),
+				index.getDestinations(Collections.singleton(322236009L), null));
+		assertEquals(Sets.newHashSet(387517004L, 372687004L),
+				index.getDestinations(null, Collections.singleton(HAS_ACTIVE_INGREDIENT)));
+		assertEquals(Collections.emptySet(), index.getDestinations(Collections.singleton(322280009L), Collections.singleton(HAS_DOSE_FORM)));
+		assertEquals(Collections.emptySet(), index.getDestinations(Collections.singleton(100000000L), null));
+	}
+
+	@Test
+	void withChanges() {
+		AttributeIndex index = AttributeIndex.builder()
+				.addAttribute(322236009L, HAS_ACTIVE_INGREDIENT, 387517004L)
+				.addAttribute(322280009L, HAS_ACTIVE_INGREDIENT, 387517004L)
+				.build();
+
+		Map<Long, Map<String, Set<Object>>> changed = new HashMap<>();
+		changed.put(322236009L, Collections.singletonMap(Long.toString(HAS_DOSE_FORM), Sets.newHashSet("385055001")));
+		AttributeIndex updated = index.withChanges(changed, Collections.singleton(322280009L));
+
+		assertEquals(Sets.newHashSet(385055001L), updated.getDestinations(null, null));
+		assertEquals(Sets.newHashSet(387517004L), index.getDestinations(null, null), "Original index not modified.");
+	}
+
+}
@@ -0,0 +1,60 @@
+package org.snomed.snowstorm.core.data.services.snapshot;
+
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.ConceptMini;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.services.transitiveclosure.HierarchySnapshot;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService.ContentVersion;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.snomed.snowstorm.config.Config.DEFAULT_LANGUAGE_DIALECTS;
+
+class FrozenVersionSnapshotTest {
+
+	@Test
+	void lookups() {
+		Concept concept = new Concept("100001", 20240131, true, Concepts.CORE_MODULE, Concepts.PRIMITIVE)
+				.addFSN("Thing (finding)")
+				.addDescription(new Description("Thing").addAcceptability(Concepts.US_EN_LANG_REFSET, Concepts.PREFERRED_CONSTANT))
+				.addDescription(new Description("Old thing").setActive(false));
+
+		HierarchySnapshot hierarchy = HierarchySnapshot.builder()
+				.addConcept(100001L, new long[]{})
+				.addConcept(200002L, new long[]{100001L})
+				.build();
+
+		FrozenVersionSnapshot snapshot = FrozenVersionSnapshot.builder("SNOMEDCT", "MAIN/2024-01-31", new ContentVersion("MAIN", new Date()))
+				.addConcept(concept)
+				.addConcept(new Concept("200002", 20240131, false, Concepts.CORE_MODULE, Concepts.PRIMITIVE))
+				.addReferenceSetMember(723264001L, 100001L)
+				.addReferenceSetMember(723264001L, 200002L)
+				.addReferenceSetMember(447562003L, 200002L)
+				.setHierarchy(false, hierarchy)
+				.build();
+
+		assertEquals(2, snapshot.getConceptCount());
+		assertEquals(2, snapshot.getReferenceSetCount());
+
+		Map<String, ConceptMini> conceptMinis = snapshot.getConceptMinis(Arrays.asList("100001", "200002", "300003"), DEFAULT_LANGUAGE_DIALECTS);
+		assertEquals(Sets.newHashSet("100001", "200002"), conceptMinis.keySet());
+		ConceptMini conceptMini = conceptMinis.get("100001");
+		assertEquals("Thing (finding)", conceptMini.getFsnTerm());
+		assertEquals("Thing", conceptMini.getPt().getTerm());
+		assertEquals(2, conceptMini.getActiveDescriptions().size(), "Inactive descriptions are not held.");
+		assertFalse(conceptMinis.get("200002").getActive());
+
+		assertEquals(Sets.newHashSet(100001L, 200002L), snapshot.getConceptIdsInReferenceSets(Collections.singleton(723264001L)));
+		assertEquals(Sets.newHashSet(200002L), snapshot.getConceptIdsInReferenceSets(Collections.singleton(447562003L)));
+		assertEquals(Sets.newHashSet(100001L, 200002L), snapshot.getConceptIdsInReferenceSets(null));
+		assertEquals(Collections.emptySet(), snapshot.getConceptIdsInReferenceSets(Collections.singleton(900000000000497000L)));
+
+		assertSame(hierarchy, snapshot.getHierarchy(false));
+		assertNull(snapshot.getHierarchy(true));
+	}
+
+}
@@ -0,0 +1,32 @@
+package org.snomed.snowstorm.core.data.services.traceability;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TraceabilityOutboxTest {
+
+	@Test
+	void testEncodeDecode() {
+		Activity activity = new Activity("user1", "MAIN/A", 1600000000000L, null, Activity.ActivityType.CONTENT_CHANGE);
+		activity.addConceptActivity("100001").addComponentChange(
+				new Activity.ComponentChange(Activity.ComponentType.DESCRIPTION, 900000000000013009L, "200003", Activity.ChangeType.CREATE, true));
+		activity.addConceptActivity("100002").addComponentChange(
+				new Activity.ComponentChange(Activity.ComponentType.CONCEPT, null, "100002", Activity.ChangeType.INACTIVATE, true));
+
+		TraceabilityOutbox outbox = new TraceabilityOutbox();
+		Activity decoded = outbox.decode(outbox.encode(activity));
+
+		assertEquals("user1", decoded.getUserId());
+		assertEquals("MAIN/A", decoded.getBranchPath());
+		assertEquals(1600000000000L, decoded.getCommitTimestamp());
+		assertEquals(Activity.ActivityType.CONTENT_CHANGE, decoded.getActivityType());
+		assertEquals(2, decoded.getChanges().size());
+		Activity.ConceptActivity conceptActivity = decoded.getChangesMap().get("100001");
+		assertEquals(activity.getChangesMap().get("100001").getComponentChanges(), conceptActivity.getComponentChanges());
+		Activity.ComponentChange change = conceptActivity.getComponentChanges().iterator().next();
+		assertEquals(Activity.ComponentType.DESCRIPTION, change.getComponentType());
+		assertEquals(900000000000013009L, change.getComponentSubType());
+		assertEquals(Activity.ChangeType.CREATE, change.getChangeType());
+	}
+}
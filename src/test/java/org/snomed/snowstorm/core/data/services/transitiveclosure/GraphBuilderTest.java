@@ -0,0 +1,57 @@
+package org.snomed.snowstorm.core.data.services.transitiveclosure;
+
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GraphBuilderTest {
+
+	@Test
+	void transitiveClosureAndUpdatedFlag() throws GraphBuilderException {
+		// 1 <- 2 <- 3 <- 5
+		//      2 <- 4 <- 5
+		//      1 <- 6
+		GraphBuilder graphBuilder = new GraphBuilder();
+		graphBuilder.addParent(2L, 1L);
+		graphBuilder.addParent(3L, 2L);
+		graphBuilder.addParent(4L, 2L);
+		graphBuilder.addParent(5L, 3L);
+		graphBuilder.addParent(5L, 4L);
+		graphBuilder.addParent(5L, 4L);
+		graphBuilder.addParent(6L, 1L);
+		graphBuilder.clearParentsAndMarkUpdated(4L);
+		graphBuilder.addParent(4L, 6L);
+
+		assertEquals(6, graphBuilder.getNodeCount());
+		Map<Long, Node> nodes = graphBuilder.getNodes().stream().collect(Collectors.toMap(Node::getId, Function.identity()));
+		assertEquals(Sets.newHashSet(3L, 4L), nodes.get(5L).getParentIds());
+		assertEquals(Sets.newHashSet(1L, 2L, 3L, 4L, 6L), nodes.get(5L).getTransitiveClosure("MAIN", true));
+		assertEquals(Sets.newHashSet(1L, 6L), nodes.get(4L).getTransitiveClosure("MAIN", true));
+		assertEquals(Sets.newHashSet(), nodes.get(1L).getTransitiveClosure("MAIN", true));
+
+		assertTrue(nodes.get(4L).isAncestorOrSelfUpdated());
+		assertTrue(nodes.get(5L).isAncestorOrSelfUpdated());
+		assertFalse(nodes.get(3L).isAncestorOrSelfUpdated());
+		assertFalse(nodes.get(6L).isAncestorOrSelfUpdated());
+	}
+
+	@Test
+	void loopInTransitiveClosure() throws GraphBuilderException {
+		GraphBuilder graphBuilder = new GraphBuilder();
+		graphBuilder.addParent(2L, 1L);
+		graphBuilder.addParent(3L, 2L);
+		graphBuilder.addParent(2L, 3L);
+		graphBuilder.addParent(4L, 3L);
+		Map<Long, Node> nodes = graphBuilder.getNodes().stream().collect(Collectors.toMap(Node::getId, Function.identity()));
+
+		assertEquals(Sets.newHashSet(1L, 2L, 3L), nodes.get(4L).getTransitiveClosure("MAIN", true));
+		assertEquals(Sets.newHashSet(1L, 3L), nodes.get(2L).getTransitiveClosure("MAIN", false));
+		GraphBuilderException exception = assertThrows(GraphBuilderException.class, () -> nodes.get(2L).getTransitiveClosure("MAIN", true));
+		assertEquals("Loop found in transitive closure for concept 2 on branch MAIN. The concept 2 is in its own set of ancestors: [1, 3, 2]", exception.getMessage());
+	}
+}
@@ -0,0 +1,76 @@
+package org.snomed.snowstorm.core.data.services.transitiveclosure;
+
+import com.google.common.collect.Sets;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HierarchySnapshotTest {
+
+	@Test
+	void hierarchyLookups() {
+		// 1 <- 2 <- 3 <- 5
+		//      2 <- 4 <- 5
+		HierarchySnapshot snapshot = HierarchySnapshot.builder()
+				.addConcept(1L, new long[]{})
+				.addConcept(2L, new long[]{1L})
+				.addConcept(3L, new long[]{2L})
+				.addConcept(4L, new long[]{2L})
+				.addConcept(5L, new long[]{3L, 4L})
+				.build();
+
+		assertEquals(5, snapshot.getConceptCount());
+		assertEquals(5, snapshot.getEdgeCount());
+		assertEquals(Sets.newHashSet(2L, 3L, 4L, 5L), snapshot.getDescendants(Collections.singleton(1L), false));
+		assertEquals(Sets.newHashSet(3L, 5L), snapshot.getDescendants(Collections.singleton(3L), true));
+		assertEquals(Sets.newHashSet(3L, 4L), snapshot.getChildren(Collections.singleton(2L), false));
+		assertEquals(Sets.newHashSet(3L, 4L), snapshot.getParents(Collections.singleton(5L), false));
+		assertEquals(Sets.newHashSet(1L, 2L, 3L, 4L), snapshot.getAncestors(Collections.singleton(5L), false));
+		assertEquals(Sets.newHashSet(1L, 2L, 3L, 4L, 5L), snapshot.getAncestors(Collections.singleton(5L), true));
+		assertEquals(Collections.emptySet(), snapshot.getDescendants(Collections.singleton(99L), true));
+	}
+
+	@Test
+	void hierarchyCounts() {
+		// 1 <- 2 <- 3 <- 5
+		//      2 <- 4 <- 5
+		HierarchySnapshot snapshot = HierarchySnapshot.builder()
+				.addConcept(1L, new long[]{})
+				.addConcept(2L, new long[]{1L})
+				.addConcept(3L, new long[]{2L})
+				.addConcept(4L, new long[]{2L})
+				.addConcept(5L, new long[]{3L, 4L})
+				.build();
+
+		assertEquals(4, snapshot.countDescendants(1L, false));
+		assertEquals(2, snapshot.countDescendants(3L, true));
+		assertEquals(2, snapshot.countChildren(2L, false));
+		assertEquals(3, snapshot.countChildren(2L, true));
+		assertEquals(2, snapshot.countParents(5L, false));
+		assertEquals(4, snapshot.countAncestors(5L, false));
+		assertEquals(5, snapshot.countAncestors(5L, true));
+		assertEquals(0, snapshot.countDescendants(99L, true));
+	}
+
+	@Test
+	void withChanges() {
+		HierarchySnapshot snapshot = HierarchySnapshot.builder()
+				.addConcept(1L, new long[]{})
+				.addConcept(2L, new long[]{1L})
+				.addConcept(3L, new long[]{2L})
+				.build();
+
+		Map<Long, Set<Long>> changedParents = Map.of(3L, Set.of(1L), 4L, Set.of(3L));
+		HierarchySnapshot updated = snapshot.withChanges(changedParents, Collections.singleton(2L));
+
+		assertEquals(Sets.newHashSet(3L, 4L), updated.getDescendants(Collections.singleton(1L), false));
+		assertFalse(updated.contains(2L));
+		// Original not modified
+		assertEquals(Sets.newHashSet(2L, 3L), snapshot.getDescendants(Collections.singleton(1L), false));
+	}
+
+}
@@ -7,6 +7,7 @@ import org.snomed.snowstorm.AbstractTest;
 import org.snomed.snowstorm.TestConfig;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.domain.jobs.ExportConfiguration;
+import org.snomed.snowstorm.core.data.domain.jobs.ExportFileStats;
 import org.snomed.snowstorm.core.data.services.*;
 import org.snomed.snowstorm.core.rf2.RF2Constants;
 import org.snomed.snowstorm.core.rf2.RF2Type;
@@ -149,6 +150,11 @@ class ExportServiceTest extends AbstractTest {
 			exportConfiguration.setFilenameEffectiveDate("20210731");
 			exportService.createJob(exportConfiguration);
 			exportService.exportRF2Archive(exportConfiguration, outputStream);
+
+			// Throughput of each file is reported in the job status
+			List<ExportFileStats> fileStats = exportService.getExportJobOrThrow(exportConfiguration.getId()).getFileStats();
+			assertEquals("SnomedCT_Export/Delta/Terminology/sct2_Concept_Delta_INT_20210731.txt", fileStats.get(0).getFilePath());
+			assertEquals(1, fileStats.get(0).getRows());
 		}
 
 		// Test export
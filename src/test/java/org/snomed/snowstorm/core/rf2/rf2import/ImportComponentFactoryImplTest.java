@@ -0,0 +1,100 @@
+package org.snomed.snowstorm.core.rf2.rf2import;
+
+import io.kaicode.elasticvc.api.BranchService;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.services.*;
+import org.snomed.snowstorm.core.data.services.identifier.VerhoeffCheck;
+import org.snomed.snowstorm.core.data.services.pojo.MemberSearchRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ImportComponentFactoryImplTest extends AbstractTest {
+
+	private static final int COMPONENT_COUNT = 60;
+	private static final String[] MEMBER_FIELD_NAMES = {"id", "effectiveTime", "active", "moduleId", "refsetId", "referencedComponentId"};
+
+	@Autowired
+	private ConceptUpdateHelper conceptUpdateHelper;
+
+	@Autowired
+	private ReferenceSetMemberService memberService;
+
+	@Autowired
+	private IdentifierComponentService identifierComponentService;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private BranchMetadataHelper branchMetadataHelper;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@Autowired
+	private RelationshipService relationshipService;
+
+	@Test
+	void testComponentTypesLoadedAtTheSameTime() throws Exception {
+		// Small batches and a single batch in flight per type, so that readers wait on the store while member lookups flush the core components
+		ImportComponentFactoryImpl factory = new ImportComponentFactoryImpl(conceptUpdateHelper, memberService, identifierComponentService, branchService,
+				branchMetadataHelper, MAIN, null, false, false, null, 1, 5, 1);
+		factory.loadingComponentsStarting();
+
+		ExecutorService readers = Executors.newFixedThreadPool(3);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			futures.add(readers.submit(() -> {
+				for (int i = 1; i <= COMPONENT_COUNT; i++) {
+					factory.newConceptState(conceptId(i), "", "1", Concepts.CORE_MODULE, Concepts.PRIMITIVE);
+				}
+			}));
+			futures.add(readers.submit(() -> {
+				for (int i = 1; i <= COMPONENT_COUNT; i++) {
+					factory.newRelationshipState(componentId(i, "02"), "", "1", Concepts.CORE_MODULE, conceptId(i), Concepts.SNOMEDCT_ROOT, "0",
+							Concepts.ISA, Concepts.INFERRED_RELATIONSHIP, Concepts.EXISTENTIAL);
+				}
+			}));
+			futures.add(readers.submit(() -> {
+				for (int i = 1; i <= COMPONENT_COUNT; i++) {
+					factory.newReferenceSetMemberState(MEMBER_FIELD_NAMES, UUID.randomUUID().toString(), "", "1", Concepts.CORE_MODULE, Concepts.REFSET_SIMPLE,
+							conceptId(i));
+				}
+			}));
+			for (Future<?> future : futures) {
+				// Fails with a timeout if the readers and lookups wait on each other
+				future.get(2, TimeUnit.MINUTES);
+			}
+		} finally {
+			readers.shutdownNow();
+		}
+		factory.loadingComponentsCompleted();
+
+		assertEquals(COMPONENT_COUNT, conceptService.findAll(MAIN, PageRequest.of(0, 1)).getTotalElements());
+		assertEquals(COMPONENT_COUNT, relationshipService.findRelationships(MAIN, null, null, null, null, null, null, null, null, null, PageRequest.of(0, 1))
+				.getTotalElements());
+		assertEquals(COMPONENT_COUNT, memberService.findMembers(MAIN, new MemberSearchRequest().referenceSet(Concepts.REFSET_SIMPLE), PageRequest.of(0, 1))
+				.getTotalElements());
+	}
+
+	private static String conceptId(int itemId) {
+		return componentId(itemId, "00");
+	}
+
+	private static String componentId(int itemId, String partition) {
+		String withoutCheckDigit = (100000 + itemId) + partition;
+		return withoutCheckDigit + VerhoeffCheck.calculateChecksum(withoutCheckDigit, false);
+	}
+}
@@ -342,6 +342,23 @@ class ECLQueryServiceFilterTest {
 		assertEquals(newArrayList("200001", "200002", "200002"), selectList("^ [referencedComponentId] (< 900000000000522004 |historical association|)"));
 	}
 
+	@Test
+	public void testCompoundWithFilters() {
+		String conjunction = "< 64572001 |Disease| {{ C definitionStatus = defined }} AND < 64572001 |Disease| {{ C moduleId = 900000000000207008 }}";
+		assertEquals(newHashSet(), select(conjunction));
+		assertEquals(newHashSet("100003"), select("< 64572001 |Disease| {{ C definitionStatus = defined }} AND < 64572001 |Disease| {{ C moduleId = 25000001 }}"));
+		assertEquals(newHashSet("100001", "100002", "100003", "698271000"),
+				select("< 64572001 |Disease| {{ C definitionStatus = defined }} OR < 64572001 |Disease| {{ C moduleId = 900000000000207008 }}"));
+		assertEquals(newHashSet("100001", "100002", "698271000"),
+				select("< 64572001 |Disease| MINUS < 64572001 |Disease| {{ C definitionStatus = defined }}"));
+
+		ECLQueryPlan plan = eclQueryService.explain(conjunction, branchCriteria, false);
+		assertEquals(ECLQueryPlan.Strategy.PREFETCH_MOST_SELECTIVE_FIRST, plan.getStrategy());
+		assertEquals(2, plan.getOperands().size());
+		assertEquals(ECLQueryPlan.Strategy.PREFETCH, plan.getOperands().get(0).getStrategy());
+		assertEquals(ECLQueryPlan.Strategy.SEMANTIC_INDEX_QUERY, eclQueryService.explain("< 64572001 |Disease| AND < 404684003", branchCriteria, false).getStrategy());
+	}
+
 	@Test
 	public void historySupplement() {
 		Page<ReferenceSetMember> members = memberService.findMembers(MAIN, new MemberSearchRequest().referenceSet(REFSET_SAME_AS_ASSOCIATION), PageRequest.of(0, 10));
@@ -0,0 +1,102 @@
+package org.snomed.snowstorm.ecl;
+
+import io.kaicode.elasticvc.api.BranchService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.ecl.ECLCacheVersionService.ContentVersion;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ECLResultStoreServiceTest extends AbstractTest {
+
+	private static final String ECL = "<< 404684003";
+
+	@Autowired
+	private ECLResultStore eclResultStore;
+
+	@Autowired
+	private ECLCacheVersionService eclCacheVersionService;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	@BeforeEach
+	void enableStore() {
+		// Disabled by default, every query is slow enough to store
+		ReflectionTestUtils.setField(eclResultStore, "enabled", true);
+		ReflectionTestUtils.setField(eclResultStore, "minDurationMillis", 0L);
+	}
+
+	@AfterEach
+	void disableStore() {
+		ReflectionTestUtils.setField(eclResultStore, "enabled", false);
+		ReflectionTestUtils.setField(eclResultStore, "minDurationMillis", 2000L);
+	}
+
+	@Test
+	void testStoredResultReadUntilCommit() throws Exception {
+		conceptService.create(new Concept("100001"), MAIN);
+		ContentVersion contentVersion = resolveMainHead();
+		assertTrue(eclResultStore.isUsable(contentVersion));
+		assertFalse(eclResultStore.find(contentVersion, ECL, false).isPresent());
+
+		List<Long> conceptIds = LongStream.rangeClosed(1, 100_000).map(i -> i * 1_000 + 100).boxed().collect(Collectors.toList());
+		eclResultStore.storeIfSlow(contentVersion, ECL, false, 5_000, new PageImpl<>(conceptIds, PageRequest.of(0, conceptIds.size()), conceptIds.size()),
+				Optional::empty);
+
+		List<Long> expected = new ArrayList<>(conceptIds);
+		expected.sort(Comparator.reverseOrder());
+		assertEquals(expected, waitForStoredResult(contentVersion, ECL));
+		assertFalse(eclResultStore.find(contentVersion, ECL, true).isPresent(), "Stored by form");
+
+		// A commit on the branch gives a new content version, the stored result is not used
+		conceptService.create(new Concept("100002"), MAIN);
+		ContentVersion afterCommit = resolveMainHead();
+		assertNotEquals(contentVersion, afterCommit);
+		assertFalse(eclResultStore.find(afterCommit, ECL, false).isPresent());
+		assertEquals(expected, eclResultStore.find(contentVersion, ECL, false).orElseThrow());
+	}
+
+	@Test
+	void testIncompletePageStoredUsingFullSelect() throws Exception {
+		conceptService.create(new Concept("100001"), MAIN);
+		ContentVersion contentVersion = resolveMainHead();
+		String ecl = "<< 138875005";
+
+		List<Long> conceptIds = Arrays.asList(300L, 200L, 100L);
+		eclResultStore.storeIfSlow(contentVersion, ecl, false, 5_000, new PageImpl<>(conceptIds.subList(0, 1), PageRequest.of(0, 1), conceptIds.size()),
+				() -> Optional.of(new PageImpl<>(conceptIds)));
+
+		assertEquals(conceptIds, waitForStoredResult(contentVersion, ecl));
+	}
+
+	private ContentVersion resolveMainHead() {
+		return eclCacheVersionService.resolve(MAIN, branchService.findLatest(MAIN).getHead(), false);
+	}
+
+	private List<Long> waitForStoredResult(ContentVersion contentVersion, String ecl) throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			Optional<List<Long>> storedResult = eclResultStore.find(contentVersion, ecl, false);
+			if (storedResult.isPresent()) {
+				return storedResult.get();
+			}
+			Thread.sleep(100);
+		}
+		return fail("ECL result not stored.");
+	}
+}
@@ -0,0 +1,27 @@
+package org.snomed.snowstorm.ecl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ECLResultStoreTest {
+
+	@Test
+	void testEncodeDecode() {
+		List<Long> conceptIds = Arrays.asList(900000000000441003L, 404684003L, 138875005L, 10L, 1L);
+		String encoded = ECLResultStore.encode(conceptIds);
+		assertEquals(conceptIds, ECLResultStore.decode(encoded, conceptIds.size()));
+
+		// Order of input does not matter, results are returned in ECL order
+		assertEquals(conceptIds, ECLResultStore.decode(ECLResultStore.encode(Arrays.asList(10L, 138875005L, 1L, 900000000000441003L, 404684003L)), 5));
+	}
+
+	@Test
+	void testEncodeDecodeEmpty() {
+		assertEquals(Collections.emptyList(), ECLResultStore.decode(ECLResultStore.encode(Collections.emptyList()), 0));
+	}
+}
@@ -0,0 +1,70 @@
+package org.snomed.snowstorm.ecl;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ECLResultsCacheTest {
+
+	private static final int RESULTS_PER_PAGE = 1_000;
+
+	@Test
+	void testEvictedPastWeightLimit() {
+		// Room for around ten pages, evictions run before each put returns
+		long maxWeightBytes = 10 * (RESULTS_PER_PAGE * 8L + 300);
+		ECLResultsCache resultsCache = new ECLResultsCache(maxWeightBytes, Runnable::run);
+		Date head = new Date();
+
+		int pageCount = 100;
+		for (int i = 0; i < pageCount; i++) {
+			BranchVersionECLCache branchCache = resultsCache.getBranchVersionCache("MAIN/task-" + (i % 5), head);
+			branchCache.put(ecl(i), false, null, expectedPage(i));
+			assertTrue(resultsCache.getWeightedSize() <= maxWeightBytes, "Weight within the limit after put " + i);
+		}
+
+		Map<String, Long> stats = resultsCache.getStats();
+		assertTrue(stats.get("evictions") > 0);
+		assertTrue(stats.get("size") < pageCount);
+		assertEquals(pageCount - stats.get("size"), stats.get("evictions"));
+
+		// Results still held are those put for the branch and ECL, evicted results are missed rather than mixed up
+		int held = 0;
+		for (int i = 0; i < pageCount; i++) {
+			Page<Long> cachedPage = resultsCache.getBranchVersionCache("MAIN/task-" + (i % 5), head).get(ecl(i), false, null);
+			if (cachedPage != null) {
+				held++;
+				assertEquals(expectedPage(i).getContent(), cachedPage.getContent());
+				assertEquals(RESULTS_PER_PAGE, cachedPage.getTotalElements());
+			}
+		}
+		assertEquals(stats.get("size").intValue(), held);
+	}
+
+	@Test
+	void testResultLargerThanLimitNotHeld() {
+		ECLResultsCache resultsCache = new ECLResultsCache(RESULTS_PER_PAGE * 4L, Runnable::run);
+		BranchVersionECLCache branchCache = resultsCache.getBranchVersionCache("MAIN", new Date());
+
+		branchCache.put(ecl(1), false, PageRequest.of(0, RESULTS_PER_PAGE), expectedPage(1));
+		assertNull(branchCache.get(ecl(1), false, PageRequest.of(0, RESULTS_PER_PAGE)));
+		assertEquals(0, resultsCache.getWeightedSize());
+	}
+
+	private static String ecl(int i) {
+		return "<< " + (100_000 + i) + "00";
+	}
+
+	private static Page<Long> expectedPage(int i) {
+		List<Long> conceptIds = LongStream.range(0, RESULTS_PER_PAGE).map(id -> i * 1_000_000L + id).boxed().collect(Collectors.toList());
+		return new PageImpl<>(conceptIds, PageRequest.of(0, RESULTS_PER_PAGE), RESULTS_PER_PAGE);
+	}
+}
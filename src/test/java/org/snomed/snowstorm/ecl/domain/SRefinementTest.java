@@ -210,6 +210,27 @@ class SRefinementTest {
         assertThat(actualConceptIds).containsExactlyInAnyOrderElementsOf(expectedConceptIds);
     }
 
+    @Test
+    public void isSemanticIndexOnly() {
+        assertThat(isSemanticIndexOnly("<< 404684003")).isTrue();
+        assertThat(isSemanticIndexOnly("< 404684003 : 363698007 = << 39057004")).isTrue();
+        assertThat(isSemanticIndexOnly("(< 404684003) MINUS (<< 64572001)")).isTrue();
+        assertThat(isSemanticIndexOnly("< 404684003 |Clinical finding ^ {{ term }}| : [0..0] 116676008 = << 26036001")).isTrue();
+        assertThat(isSemanticIndexOnly("< 373873005 : 1142135004 < #50")).isTrue();
+
+        assertThat(isSemanticIndexOnly("^ 447562003")).isFalse();
+        assertThat(isSemanticIndexOnly("< 404684003 : 363698007 = (^ 723264001)")).isFalse();
+        assertThat(isSemanticIndexOnly("< 404684003 : 363698007 = (<< 39057004 {{ D term = \"heart\" }})")).isFalse();
+        assertThat(isSemanticIndexOnly("<< 195967001 {{ d active = 0 }}")).isFalse();
+        assertThat(isSemanticIndexOnly("<< 195967001 {{ +HISTORY }}")).isFalse();
+        assertThat(isSemanticIndexOnly("< 105590001 : R 127489000 = 249999999101")).isFalse();
+        assertThat(isSemanticIndexOnly("< 125605004 . 363698007")).isFalse();
+    }
+
+    private boolean isSemanticIndexOnly(String eclExpression) {
+        return ((SExpressionConstraint) eclQueryBuilder.createQuery(eclExpression)).isSemanticIndexOnly();
+    }
+
     private Set<String> getConceptIdsScenario(String eclExpression) {
         ExpressionConstraint expressionConstraint = eclQueryBuilder.createQuery(eclExpression);
 
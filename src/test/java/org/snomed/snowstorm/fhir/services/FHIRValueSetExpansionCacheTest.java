@@ -0,0 +1,25 @@
+package org.snomed.snowstorm.fhir.services;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class FHIRValueSetExpansionCacheTest {
+
+	@Test
+	void cursorRoundTrip() {
+		String expansionKey = FHIRValueSetExpansionCache.createExpansionKey("compose", "MAIN", "1650000000000", "null", "true");
+		String cursor = FHIRValueSetExpansionCache.createCursor(expansionKey, 20_000);
+		assertEquals(20_000, FHIRValueSetExpansionCache.readCursorOffset(cursor, expansionKey));
+	}
+
+	@Test
+	void cursorOfOtherExpansionRejected() {
+		String expansionKey = FHIRValueSetExpansionCache.createExpansionKey("compose", "MAIN", "1650000000000");
+		String newerKey = FHIRValueSetExpansionCache.createExpansionKey("compose", "MAIN", "1650000000001");
+		String cursor = FHIRValueSetExpansionCache.createCursor(expansionKey, 100);
+		assertThrows(SnowstormFHIRServerResponseException.class, () -> FHIRValueSetExpansionCache.readCursorOffset(cursor, newerKey));
+		assertThrows(SnowstormFHIRServerResponseException.class, () -> FHIRValueSetExpansionCache.readCursorOffset("not a cursor", expansionKey));
+	}
+}
@@ -0,0 +1,138 @@
+package org.snomed.snowstorm.fhir.services;
+
+import org.hl7.fhir.r4.model.ValueSet;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.snomed.snowstorm.core.data.domain.CodeSystem;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.Relationship;
+import org.snomed.snowstorm.core.data.services.CodeSystemConfigurationService;
+import org.snomed.snowstorm.core.data.services.CodeSystemService;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.data.services.ServiceException;
+import org.snomed.snowstorm.core.data.services.identifier.VerhoeffCheck;
+import org.snomed.snowstorm.core.data.services.pojo.CodeSystemConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Expansions larger than the Elasticsearch 10K result window, using a code system of its own so that other FHIR tests are not affected.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class FHIRValueSetProviderExpandLargeTest extends AbstractFHIRTest {
+
+	private static final String LARGE_SHORT_NAME = "SNOMEDCT-LARGE";
+	private static final String LARGE_MODULE = "1234100001";
+	private static final int CHILD_COUNT = 10_050;
+
+	@Autowired
+	private CodeSystemService codeSystemService;
+
+	@Autowired
+	private CodeSystemConfigurationService codeSystemConfigurationService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	private CodeSystemConfiguration configuration;
+	private String parentId;
+
+	@BeforeAll
+	void createLargeCodeSystem() throws ServiceException {
+		configuration = new CodeSystemConfiguration(LARGE_SHORT_NAME, LARGE_SHORT_NAME, LARGE_MODULE, null, null);
+		codeSystemConfigurationService.getConfigurations().add(configuration);
+		CodeSystem codeSystem = codeSystemService.createCodeSystem(new CodeSystem(LARGE_SHORT_NAME, "MAIN/" + LARGE_SHORT_NAME));
+
+		parentId = conceptId(900000);
+		List<Concept> concepts = new ArrayList<>();
+		concepts.add(new Concept(parentId).addRelationship(new Relationship(Concepts.ISA, Concepts.SNOMEDCT_ROOT)));
+		for (int i = 1; i <= CHILD_COUNT; i++) {
+			concepts.add(new Concept(conceptId(900000 + i)).addRelationship(new Relationship(Concepts.ISA, parentId)));
+		}
+		conceptService.batchCreate(concepts, codeSystem.getBranchPath());
+	}
+
+	@AfterAll
+	void deleteLargeCodeSystem() {
+		codeSystemService.deleteCodeSystemAndVersions(codeSystemService.find(LARGE_SHORT_NAME));
+		codeSystemConfigurationService.getConfigurations().remove(configuration);
+	}
+
+	@Test
+	void testExpandPageBeyondFirst10K() {
+		ValueSet firstWindowEnd = getValueSet(expandUrl() + "&offset=9960&count=40");
+		ValueSet beyondFirstWindow = getValueSet(expandUrl() + "&offset=10000&count=40");
+
+		assertEquals(CHILD_COUNT, beyondFirstWindow.getExpansion().getTotal());
+		assertEquals(10_000, beyondFirstWindow.getExpansion().getOffset());
+		Set<String> codesBeyond = codes(beyondFirstWindow);
+		assertEquals(40, codesBeyond.size());
+		Set<String> overlap = new HashSet<>(codes(firstWindowEnd));
+		overlap.retainAll(codesBeyond);
+		assertTrue(overlap.isEmpty(), "Pages do not overlap");
+
+		ValueSet lastPage = getValueSet(expandUrl() + "&offset=10040&count=40");
+		assertEquals(CHILD_COUNT - 10_040, lastPage.getExpansion().getContains().size());
+		assertNull(getCursor(lastPage));
+	}
+
+	@Test
+	void testExpandWithCursor() {
+		// Pages of 4000 cover a plain first page, a cursor within the first 10K and a cursor beyond it
+		ValueSet page = getValueSet(expandUrl() + "&count=4000");
+		Set<String> allCodes = new HashSet<>(codes(page));
+		int pages = 1;
+		String cursor = getCursor(page);
+		while (cursor != null) {
+			page = getValueSet(expandUrl() + "&count=4000&cursor=" + cursor);
+			assertEquals(CHILD_COUNT, page.getExpansion().getTotal());
+			allCodes.addAll(codes(page));
+			cursor = getCursor(page);
+			pages++;
+		}
+		assertEquals(3, pages);
+		assertEquals(CHILD_COUNT, allCodes.size());
+	}
+
+	@Test
+	void testNoCursorForSmallExpansion() {
+		ValueSet page = getValueSet(baseUrl + "/ValueSet/$expand?url=http://snomed.info/sct?fhir_vs=ecl/<" + Concepts.SNOMEDCT_ROOT + "&count=5&_format=json");
+		assertTrue(page.getExpansion().getTotal() > 5);
+		assertNull(getCursor(page), "Offset paging is enough within the first 10K");
+	}
+
+	private String expandUrl() {
+		return baseUrl + "/ValueSet/$expand?url=http://snomed.info/xsct/" + LARGE_MODULE + "?fhir_vs=ecl/<" + parentId + "&_format=json";
+	}
+
+	private ValueSet getValueSet(String url) {
+		ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.GET, defaultRequestEntity, String.class);
+		expectResponse(response, 200);
+		return fhirJsonParser.parseResource(ValueSet.class, response.getBody());
+	}
+
+	private Set<String> codes(ValueSet valueSet) {
+		return valueSet.getExpansion().getContains().stream().map(ValueSet.ValueSetExpansionContainsComponent::getCode).collect(Collectors.toSet());
+	}
+
+	private String getCursor(ValueSet valueSet) {
+		return valueSet.getExpansion().getParameter().stream()
+				.filter(parameter -> parameter.getName().equals("cursor"))
+				.map(parameter -> parameter.getValue().primitiveValue())
+				.findFirst().orElse(null);
+	}
+
+	private static String conceptId(int itemId) {
+		String withoutCheckDigit = itemId + "00";
+		return withoutCheckDigit + VerhoeffCheck.calculateChecksum(withoutCheckDigit, false);
+	}
+}
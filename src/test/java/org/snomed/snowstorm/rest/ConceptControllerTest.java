@@ -317,6 +317,23 @@ class ConceptControllerTest extends AbstractTest {
 		assertEquals("Concepts in the ECL request do not exist or are inactive on branch MAIN: 257751006.", jsonObject.get("message"));
 	}
 
+	@Test
+	void testFailsECLExportWithInactiveConceptIdInStatedEclExpression() throws ServiceException, JSONException {
+		String conceptId = "257751006";
+		Concept concept = conceptService.find(conceptId, "MAIN");
+		concept.setActive(false);
+		conceptService.update(concept, "MAIN");
+
+		// JSON accepted for the error response
+		HttpHeaders headers = new HttpHeaders();
+		headers.add("Accept", "application/x-ndjson, application/json");
+		ResponseEntity<String> responseEntity = this.restTemplate.exchange("http://localhost:" + port + "/MAIN/concepts/ecl-export?statedEcl=" + conceptId,
+				HttpMethod.GET, new HttpEntity<>(null, headers), String.class);
+		assertEquals(400, responseEntity.getStatusCode().value());
+		JSONObject jsonObject = new JSONObject(responseEntity.getBody());
+		assertEquals("Concepts in the ECL request do not exist or are inactive on branch MAIN: 257751006.", jsonObject.get("message"));
+	}
+
 	@Test
 	void testCreateConceptWithValidationEnabled() {
 		branchService.updateMetadata("MAIN", ImmutableMap.of(
@@ -18,11 +18,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit.jupiter.SpringExtension;
 
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.snomed.snowstorm.core.data.domain.Concepts.*;
@@ -155,6 +156,66 @@ class DroolsValidationServiceTest extends AbstractTest {
         assertEquals("Active FSN should end with a valid semantic tag.", invalidContents.get(index).getMessage());
     }
 
+    @Test
+    void testRunShardsConsumesEveryShard() throws Exception {
+        List<List<Long>> shards = new ArrayList<>();
+        for (long shard = 0; shard < 10; shard++) {
+            shards.add(LongStream.range(shard * 3, shard * 3 + 3).boxed().collect(Collectors.toList()));
+        }
+
+        List<Integer> consumedConceptCounts = Collections.synchronizedList(new ArrayList<>());
+        droolValidationService.runShards(shards,
+                shard -> new DroolsValidationService.ShardResult(shard.stream().map(id -> new Concept(id.toString())).collect(Collectors.toList()),
+                        Collections.emptyList(), 0, 0),
+                shardResult -> consumedConceptCounts.add(shardResult.getConceptCount()));
+
+        assertEquals(10, consumedConceptCounts.size());
+        assertEquals(30, consumedConceptCounts.stream().mapToInt(Integer::intValue).sum());
+    }
+
+    @Test
+    void testRunShardsCancelsRemainingShardsOnFailure() throws Exception {
+        List<List<Long>> shards = new ArrayList<>();
+        for (long shard = 0; shard < 20; shard++) {
+            shards.add(Collections.singletonList(shard));
+        }
+
+        // Shard 0 fails once the other shards on the pool are running, the rest block until cancelled
+        CountDownLatch othersRunning = new CountDownLatch(3);
+        CountDownLatch neverReleased = new CountDownLatch(1);
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger interrupted = new AtomicInteger();
+        AtomicInteger consumed = new AtomicInteger();
+        IllegalStateException failure = new IllegalStateException("Shard failed");
+
+        ServiceException exception = assertThrows(ServiceException.class, () -> droolValidationService.runShards(shards, shard -> {
+            started.incrementAndGet();
+            try {
+                if (shard.get(0) == 0) {
+                    othersRunning.await(1, TimeUnit.MINUTES);
+                    throw failure;
+                }
+                othersRunning.countDown();
+                neverReleased.await();
+            } catch (InterruptedException e) {
+                interrupted.incrementAndGet();
+                Thread.currentThread().interrupt();
+            }
+            return new DroolsValidationService.ShardResult(Collections.emptyList(), Collections.emptyList(), 0, 0);
+        }, shardResult -> consumed.incrementAndGet()));
+
+        assertSame(failure, exception.getCause());
+
+        // Every blocked shard is interrupted and the queued shards are not run
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        while (interrupted.get() < started.get() - 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(started.get() - 1, interrupted.get());
+        assertTrue(started.get() < shards.size());
+        assertEquals(0, consumed.get());
+    }
+
     private ReferenceSetMember constructMrcmRange(String referencedComponentId, String rangeConstraint) {
         ReferenceSetMember rangeMember = new ReferenceSetMember("900000000000207008", REFSET_MRCM_ATTRIBUTE_RANGE_INTERNATIONAL, referencedComponentId);
         rangeMember.setAdditionalField("rangeConstraint", rangeConstraint);